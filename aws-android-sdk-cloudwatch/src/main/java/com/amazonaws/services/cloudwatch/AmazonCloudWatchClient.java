@@ -264,7 +264,8 @@ public class AmazonCloudWatchClient extends AmazonWebServiceClient implements Am
      */
     public AmazonCloudWatchClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
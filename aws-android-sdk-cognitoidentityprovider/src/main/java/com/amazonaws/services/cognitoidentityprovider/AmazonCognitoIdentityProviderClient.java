@@ -265,7 +265,8 @@ public class AmazonCognitoIdentityProviderClient extends AmazonWebServiceClient
      */
     public AmazonCognitoIdentityProviderClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -248,7 +248,8 @@ public class AmazonComprehendClient extends AmazonWebServiceClient implements Am
      */
     public AmazonComprehendClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
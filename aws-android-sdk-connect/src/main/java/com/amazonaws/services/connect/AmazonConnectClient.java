@@ -272,7 +272,8 @@ public class AmazonConnectClient extends AmazonWebServiceClient implements Amazo
      */
     public AmazonConnectClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -22,8 +22,10 @@ import org.junit.Test;
 import static com.amazonaws.internal.keyvaluestore.AWSKeyValueStore.SHARED_PREFERENCES_IV_SUFFIX;
 import static com.amazonaws.internal.keyvaluestore.AWSKeyValueStore.SHARED_PREFERENCES_STORE_VERSION_SUFFIX;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import android.content.Context;
@@ -34,6 +36,7 @@ import android.util.Log;
 import java.security.Key;
 import java.security.KeyStore;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AWSKeyValueStoreIntegrationTest extends CoreIntegrationTestBase {
 
@@ -416,6 +419,116 @@ public class AWSKeyValueStoreIntegrationTest extends CoreIntegrationTestBase {
         }
     }
 
+    @Test
+    public void testAllEntriesDecryptedOnFirstRead() {
+        for (int iterator = 1; iterator <= 10; iterator++) {
+            awsKeyValueStore.put("access-key-" + iterator, "a-dummy-access-key-" + iterator);
+        }
+
+        // A new process starts with an empty in-memory cache
+        AWSKeyValueStore.cacheFactory.clear();
+        final AWSKeyValueStore keyStore = new AWSKeyValueStore(ApplicationProvider.getApplicationContext(),
+                DEFAULT_SHARED_PREFERENCES_NAME,
+                true);
+        assertEquals("a-dummy-access-key-1", keyStore.get("access-key-1"));
+        assertEquals(10, AWSKeyValueStore.cacheFactory.get(DEFAULT_SHARED_PREFERENCES_NAME).size());
+
+        for (int iterator = 1; iterator <= 10; iterator++) {
+            assertTrue(keyStore.contains("access-key-" + iterator));
+            assertEquals("a-dummy-access-key-" + iterator, keyStore.get("access-key-" + iterator));
+        }
+        assertFalse(keyStore.contains("access-key-11"));
+        assertNull(keyStore.get("access-key-11"));
+    }
+
+    @Test
+    public void testCorruptEntryRemovedOnFirstRead() {
+        awsKeyValueStore.put("access-key", "a-dummy-access-key");
+        awsKeyValueStore.put("secret-key", "a-dummy-secret-key");
+
+        final SharedPreferences sharedPreferences = ApplicationProvider.getApplicationContext()
+                .getSharedPreferences(DEFAULT_SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+        sharedPreferences.edit()
+                .putString("access-key" + AWSKeyValueStore.SHARED_PREFERENCES_DATA_IDENTIFIER_SUFFIX,
+                        "bm90IGVuY3J5cHRlZA==")
+                .commit();
+
+        AWSKeyValueStore.cacheFactory.clear();
+        final AWSKeyValueStore keyStore = new AWSKeyValueStore(ApplicationProvider.getApplicationContext(),
+                DEFAULT_SHARED_PREFERENCES_NAME,
+                true);
+        assertEquals("a-dummy-secret-key", keyStore.get("secret-key"));
+        assertNull(keyStore.get("access-key"));
+        assertFalse(sharedPreferences.contains(
+                "access-key" + AWSKeyValueStore.SHARED_PREFERENCES_DATA_IDENTIFIER_SUFFIX));
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws InterruptedException {
+        for (int iterator = 1; iterator <= 10; iterator++) {
+            awsKeyValueStore.put("access-key-" + iterator, "a-dummy-access-key-" + iterator);
+        }
+        AWSKeyValueStore.cacheFactory.clear();
+        final AWSKeyValueStore keyStore = new AWSKeyValueStore(ApplicationProvider.getApplicationContext(),
+                DEFAULT_SHARED_PREFERENCES_NAME,
+                true);
+
+        final AtomicInteger failures = new AtomicInteger();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        final int iterator = i % 10 + 1;
+                        if (thread == 0 && i % 100 == 0) {
+                            keyStore.put("access-key-" + iterator, "a-dummy-access-key-" + iterator);
+                        }
+                        if (!("a-dummy-access-key-" + iterator).equals(
+                                keyStore.get("access-key-" + iterator))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void benchmarkStartupReads() {
+        // The reads of a CognitoCachingCredentialsProvider at app startup
+        final String[] keys = {
+                "identityId", "accessKey", "secretKey", "sessionToken", "expirationDate"
+        };
+        for (final String key : keys) {
+            awsKeyValueStore.put(key, "a-dummy-value-for-" + key);
+        }
+
+        AWSKeyValueStore.cacheFactory.clear();
+        long begin = System.nanoTime();
+        final AWSKeyValueStore keyStore = new AWSKeyValueStore(ApplicationProvider.getApplicationContext(),
+                DEFAULT_SHARED_PREFERENCES_NAME,
+                true);
+        for (final String key : keys) {
+            assertNotNull(keyStore.get(key));
+        }
+        long end = System.nanoTime();
+        Log.d(TAG, "Startup reads of " + keys.length + " values: " + String.valueOf(end - begin) + " ns.");
+
+        begin = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            keyStore.get(keys[i % keys.length]);
+        }
+        end = System.nanoTime();
+        Log.d(TAG, "Cached read: " + String.valueOf((end - begin) / 1000) + " ns.");
+    }
+
     @Test
     public void benchmarkKeyStoreOperations() {
         long begin = System.nanoTime();
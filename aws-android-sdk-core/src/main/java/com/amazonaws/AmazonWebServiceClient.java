@@ -25,7 +25,6 @@ import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.http.AmazonHttpClient;
 import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpClient;
-import com.amazonaws.http.UrlHttpClient;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
 import com.amazonaws.regions.Region;
@@ -110,6 +109,12 @@ public abstract class AmazonWebServiceClient {
     protected volatile String endpointPrefix;
     private volatile Region region;
 
+    /**
+     * The region parsed from the host of the last endpoint a signer was
+     * computed for, so that it isn't parsed again for every request.
+     */
+    private volatile ParsedEndpoint parsedEndpoint;
+
     /**
      * Constructs a new AmazonWebServiceClient object using the specified
      * configuration.
@@ -118,7 +123,7 @@ public abstract class AmazonWebServiceClient {
      */
     protected AmazonWebServiceClient(
             final ClientConfiguration clientConfiguration) {
-        this(clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(clientConfiguration, AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -133,7 +138,8 @@ public abstract class AmazonWebServiceClient {
     protected AmazonWebServiceClient(
             final ClientConfiguration clientConfiguration,
             final RequestMetricCollector requestMetricCollector) {
-        this(clientConfiguration, new UrlHttpClient(clientConfiguration), null);
+        this(clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration), null);
     }
 
     /**
@@ -370,11 +376,22 @@ public abstract class AmazonWebServiceClient {
                     "Endpoint is not set. Use setEndpoint to set an endpoint before performing any request.");
         }
         final String service = getServiceNameIntern();
-        final String region = AwsHostNameUtils.parseRegionName(uri.getHost(), service);
+        final String region = parseRegionName(uri.getHost(), service);
         return computeSignerByServiceRegion(
                 service, region, signerRegionOverride, isRegionIdAsSignerParam);
     }
 
+    private String parseRegionName(final String host, final String service) {
+        final ParsedEndpoint parsed = parsedEndpoint;
+        if (parsed != null && parsed.host.equals(host)
+                && (parsed.service == null ? service == null : parsed.service.equals(service))) {
+            return parsed.region;
+        }
+        final String region = AwsHostNameUtils.parseRegionName(host, service);
+        parsedEndpoint = new ParsedEndpoint(host, service, region);
+        return region;
+    }
+
     /**
      * Returns the signer for the given service name, region id, and the current
      * client configuration.
@@ -860,4 +877,19 @@ public abstract class AmazonWebServiceClient {
             this.signerRegionOverride = signerRegionOverride;
         }
     }
+
+    /**
+     * The region of an endpoint host for a service.
+     */
+    private static final class ParsedEndpoint {
+        private final String host;
+        private final String service;
+        private final String region;
+
+        ParsedEndpoint(String host, String service, String region) {
+            this.host = host;
+            this.service = service;
+            this.region = region;
+        }
+    }
 }
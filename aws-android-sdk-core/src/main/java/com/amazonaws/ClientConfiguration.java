@@ -15,8 +15,12 @@
 
 package com.amazonaws;
 
+import com.amazonaws.http.HttpClientFactory;
+import com.amazonaws.retry.HedgingPolicy;
 import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryMode;
 import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryQuota;
 import com.amazonaws.util.VersionInfoUtils;
 
 import java.net.InetAddress;
@@ -56,6 +60,15 @@ public class ClientConfiguration {
      */
     public static final RetryPolicy DEFAULT_RETRY_POLICY = PredefinedRetryPolicies.DEFAULT;
 
+    /** The default retry mode, which retries requests independently. */
+    public static final RetryMode DEFAULT_RETRY_MODE = RetryMode.LEGACY;
+
+    /**
+     * The default capacity of the retry quota of a client, enough for 100
+     * retries in a row.
+     */
+    public static final int DEFAULT_RETRY_QUOTA_CAPACITY = 100 * RetryQuota.RETRY_COST;
+
     /** The HTTP user agent header passed with all HTTP requests. */
     private String userAgent = DEFAULT_USER_AGENT;
 
@@ -173,6 +186,21 @@ public class ClientConfiguration {
      */
     private boolean enableGzip = false;
 
+    /**
+     * Optional factory of the HTTP client that sends the requests, null to
+     * use {@link com.amazonaws.http.UrlHttpClient}.
+     */
+    private HttpClientFactory httpClientFactory = null;
+
+    /** How requests are retried across the requests of a client. */
+    private RetryMode retryMode = DEFAULT_RETRY_MODE;
+
+    /** The capacity of the retry quota of a client. */
+    private int retryQuotaCapacity = DEFAULT_RETRY_QUOTA_CAPACITY;
+
+    /** Which requests are hedged, null if none are. */
+    private HedgingPolicy hedgingPolicy = null;
+
     /**
      * Constructor.
      */
@@ -206,6 +234,10 @@ public class ClientConfiguration {
         this.trustManager = other.trustManager;
         this.curlLogging = other.curlLogging;
         this.enableGzip = other.enableGzip;
+        this.httpClientFactory = other.httpClientFactory;
+        this.retryMode = other.retryMode;
+        this.retryQuotaCapacity = other.retryQuotaCapacity;
+        this.hedgingPolicy = other.hedgingPolicy;
     }
 
     /**
@@ -1120,4 +1152,164 @@ public class ClientConfiguration {
         setEnableGzip(enableGzip);
         return this;
     }
+
+    /**
+     * Returns the factory of the HTTP client used by clients created with
+     * this configuration, or null if they use
+     * {@link com.amazonaws.http.UrlHttpClient}.
+     *
+     * @return The HTTP client factory, or null.
+     */
+    public HttpClientFactory getHttpClientFactory() {
+        return httpClientFactory;
+    }
+
+    /**
+     * Sets the factory of the HTTP client used by clients created with this
+     * configuration. It replaces the default
+     * {@link com.amazonaws.http.UrlHttpClient}; an HTTP client given
+     * explicitly to a client constructor is still used as is. If null,
+     * {@link com.amazonaws.http.UrlHttpClient} is used.
+     *
+     * @param httpClientFactory The HTTP client factory.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public void setHttpClientFactory(HttpClientFactory httpClientFactory) {
+        this.httpClientFactory = httpClientFactory;
+    }
+
+    /**
+     * Sets the factory of the HTTP client used by clients created with this
+     * configuration, and returns the updated ClientConfiguration object so
+     * that additional calls may be chained together.
+     *
+     * @param httpClientFactory The HTTP client factory.
+     * @return The updated ClientConfiguration object.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ClientConfiguration withHttpClientFactory(HttpClientFactory httpClientFactory) {
+        setHttpClientFactory(httpClientFactory);
+        return this;
+    }
+
+    /**
+     * Returns how the clients created with this configuration retry requests
+     * across their requests.
+     *
+     * @return The retry mode.
+     */
+    public RetryMode getRetryMode() {
+        return retryMode;
+    }
+
+    /**
+     * Sets how the clients created with this configuration retry requests
+     * across their requests. With {@link RetryMode#STANDARD}, retries take
+     * capacity from a quota of the client, and requests stop being retried
+     * while it is exhausted. With {@link RetryMode#ADAPTIVE}, clients also
+     * limit the rate they send requests at once the service throttles them.
+     * The retry policy still decides which requests may be retried.
+     *
+     * @param retryMode The retry mode.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public void setRetryMode(RetryMode retryMode) {
+        if (retryMode == null) {
+            throw new IllegalArgumentException("retryMode cannot be null");
+        }
+        this.retryMode = retryMode;
+    }
+
+    /**
+     * Sets how the clients created with this configuration retry requests
+     * across their requests, and returns the updated ClientConfiguration
+     * object so that additional calls may be chained together.
+     *
+     * @param retryMode The retry mode.
+     * @return The updated ClientConfiguration object.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ClientConfiguration withRetryMode(RetryMode retryMode) {
+        setRetryMode(retryMode);
+        return this;
+    }
+
+    /**
+     * Returns the capacity of the retry quota of the clients created with
+     * this configuration, used unless the retry mode is
+     * {@link RetryMode#LEGACY}.
+     *
+     * @return The capacity of the retry quota.
+     */
+    public int getRetryQuotaCapacity() {
+        return retryQuotaCapacity;
+    }
+
+    /**
+     * Sets the capacity of the retry quota of the clients created with this
+     * configuration, used unless the retry mode is {@link RetryMode#LEGACY}.
+     * A retry takes {@link RetryQuota#RETRY_COST} of it, or
+     * {@link RetryQuota#TIMEOUT_RETRY_COST} after a timeout.
+     *
+     * @param retryQuotaCapacity The capacity of the retry quota.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public void setRetryQuotaCapacity(int retryQuotaCapacity) {
+        if (retryQuotaCapacity < 0) {
+            throw new IllegalArgumentException("retryQuotaCapacity cannot be negative");
+        }
+        this.retryQuotaCapacity = retryQuotaCapacity;
+    }
+
+    /**
+     * Sets the capacity of the retry quota of the clients created with this
+     * configuration, and returns the updated ClientConfiguration object so
+     * that additional calls may be chained together.
+     *
+     * @param retryQuotaCapacity The capacity of the retry quota.
+     * @return The updated ClientConfiguration object.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ClientConfiguration withRetryQuotaCapacity(int retryQuotaCapacity) {
+        setRetryQuotaCapacity(retryQuotaCapacity);
+        return this;
+    }
+
+    /**
+     * Returns the hedging policy of the clients created with this
+     * configuration.
+     *
+     * @return The hedging policy, or null if requests aren't hedged.
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Sets the hedging policy of the clients created with this configuration.
+     * When an attempt of a request the policy applies to is slower than the
+     * latency percentile of its operation, the client sends it a second time
+     * and uses whichever response arrives first. Requests aren't hedged by
+     * default.
+     *
+     * @param hedgingPolicy The hedging policy, or null to not hedge requests.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Sets the hedging policy of the clients created with this configuration,
+     * and returns the updated ClientConfiguration object so that additional
+     * calls may be chained together.
+     *
+     * @param hedgingPolicy The hedging policy, or null to not hedge requests.
+     * @return The updated ClientConfiguration object.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ClientConfiguration withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        setHedgingPolicy(hedgingPolicy);
+        return this;
+    }
 }
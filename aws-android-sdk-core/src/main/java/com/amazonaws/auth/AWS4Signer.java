@@ -21,6 +21,7 @@ import com.amazonaws.util.AwsHostNameUtils;
 import com.amazonaws.util.BinaryUtils;
 import com.amazonaws.util.DateUtils;
 import com.amazonaws.util.HttpUtils;
+import com.amazonaws.util.Sha256HashedInputStream;
 import com.amazonaws.util.StringUtils;
 
 import com.amazonaws.logging.Log;
@@ -28,11 +29,14 @@ import com.amazonaws.logging.LogFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Signer implementation that signs requests with the AWS4 signing protocol.
@@ -48,6 +52,23 @@ public class AWS4Signer extends AbstractAWSSigner
 
     /** Seconds in a week, which is the max expiration time Sig-v4 accepts */
     private static final long MAX_EXPIRATION_TIME_IN_SECONDS = 60 * 60 * 24 * 7;
+
+    /** Max number of derived signing keys kept in memory */
+    private static final int MAX_SIGNING_KEY_CACHE_SIZE = 300;
+
+    /**
+     * Derived signing keys shared by all signer instances, since the same
+     * credentials are commonly used by several clients.
+     */
+    static final AWS4SigningKeyCache SIGNING_KEY_CACHE =
+            new AWS4SigningKeyCache(MAX_SIGNING_KEY_CACHE_SIZE);
+
+    /**
+     * Whether a signer class customizes how the canonical request is built,
+     * in which case it can't be hashed without building it.
+     */
+    private static final Map<Class<?>, Boolean> CANONICAL_REQUEST_OVERRIDES =
+            new ConcurrentHashMap<Class<?>, Boolean>();
     /**
      * Service name override for use when the endpoint can't be used to
      * determine the service name.
@@ -208,46 +229,53 @@ public class AWS4Signer extends AbstractAWSSigner
     }
 
     protected String getCanonicalizedHeaderString(Request<?> request) {
-        final List<String> sortedHeaders = new ArrayList<String>();
-        sortedHeaders.addAll(request.getHeaders().keySet());
-        Collections.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
+        final List<String> sortedHeaders = getSortedSignedHeaders(request);
 
         final StringBuilder buffer = new StringBuilder();
         for (final String header : sortedHeaders) {
-            if (needsSign(header)) {
-                final String key = StringUtils.lowerCase(header).replaceAll("\\s+", " ");
-                final String value = request.getHeaders().get(header);
+            final String key = StringUtils.lowerCase(header).replaceAll("\\s+", " ");
+            final String value = request.getHeaders().get(header);
 
-                buffer.append(key).append(":");
-                if (value != null) {
-                    buffer.append(value.replaceAll("\\s+", " "));
-                }
-
-                buffer.append("\n");
+            buffer.append(key).append(":");
+            if (value != null) {
+                buffer.append(value.replaceAll("\\s+", " "));
             }
+
+            buffer.append("\n");
         }
 
         return buffer.toString();
     }
 
     protected String getSignedHeadersString(Request<?> request) {
-        final List<String> sortedHeaders = new ArrayList<String>();
-        sortedHeaders.addAll(request.getHeaders().keySet());
-        Collections.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
+        final List<String> sortedHeaders = getSortedSignedHeaders(request);
 
         final StringBuilder buffer = new StringBuilder();
         for (final String header : sortedHeaders) {
-            if (needsSign(header)) {
-                if (buffer.length() > 0) {
-                    buffer.append(";");
-                }
-                buffer.append(StringUtils.lowerCase(header));
+            if (buffer.length() > 0) {
+                buffer.append(";");
             }
+            buffer.append(StringUtils.lowerCase(header));
         }
 
         return buffer.toString();
     }
 
+    /**
+     * Returns the names of the headers that need to be signed, sorted case
+     * insensitively.
+     */
+    private List<String> getSortedSignedHeaders(Request<?> request) {
+        final List<String> sortedHeaders = new ArrayList<String>(request.getHeaders().size());
+        for (final String header : request.getHeaders().keySet()) {
+            if (needsSign(header)) {
+                sortedHeaders.add(header);
+            }
+        }
+        Collections.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
+        return sortedHeaders;
+    }
+
     protected String getCanonicalRequest(Request<?> request, String contentSha256) {
         /* This would url-encode the resource path for the first time */
         final String path = HttpUtils.appendUri(request.getEndpoint().getPath(),
@@ -268,6 +296,88 @@ public class AWS4Signer extends AbstractAWSSigner
         return canonicalRequest;
     }
 
+    /**
+     * Computes the SHA-256 hash of the canonical request that
+     * {@link #getCanonicalRequest(Request, String)} would build, without
+     * building it. The header names are sorted once and shared between the
+     * canonical headers and the signed headers, and the canonical request is
+     * fed to the digest incrementally from a reusable per thread buffer.
+     *
+     * @param request the request to sign.
+     * @param contentSha256 the hex encoded hash of the request payload.
+     * @return the hash of the canonical request.
+     */
+    byte[] hashCanonicalRequest(Request<?> request, String contentSha256) {
+        /* This would url-encode the resource path for the first time */
+        final String path = HttpUtils.appendUri(request.getEndpoint().getPath(),
+                request.getResourcePath());
+        final List<String> sortedHeaders = getSortedSignedHeaders(request);
+        final Map<String, String> headers = request.getHeaders();
+
+        final CanonicalRequestDigest digest = CanonicalRequestDigest.get();
+        digest.append(request.getHttpMethod().toString()).append('\n')
+                .append(getCanonicalizedResourcePath(path, doubleUrlEncode)).append('\n')
+                .append(getCanonicalizedQueryString(request)).append('\n');
+
+        for (final String header : sortedHeaders) {
+            digest.appendCollapsingWhitespace(StringUtils.lowerCase(header)).append(':');
+            final String value = headers.get(header);
+            if (value != null) {
+                digest.appendCollapsingWhitespace(value);
+            }
+            digest.append('\n');
+        }
+        digest.append('\n');
+
+        boolean first = true;
+        for (final String header : sortedHeaders) {
+            if (!first) {
+                digest.append(';');
+            }
+            digest.append(StringUtils.lowerCase(header));
+            first = false;
+        }
+        digest.append('\n').append(contentSha256);
+        return digest.digest();
+    }
+
+    /**
+     * The canonical request can only be hashed without building it when
+     * nothing needs the string itself: debug logging is off and the
+     * subclass doesn't customize how it is built.
+     */
+    private boolean canStreamCanonicalRequest() {
+        return !log.isDebugEnabled() && !overridesCanonicalRequest(getClass());
+    }
+
+    private static boolean overridesCanonicalRequest(Class<?> signerClass) {
+        Boolean overrides = CANONICAL_REQUEST_OVERRIDES.get(signerClass);
+        if (overrides == null) {
+            overrides = Boolean.FALSE;
+            for (Class<?> c = signerClass; c != AWS4Signer.class; c = c.getSuperclass()) {
+                if (declaresCanonicalRequestMethod(c)) {
+                    overrides = Boolean.TRUE;
+                    break;
+                }
+            }
+            CANONICAL_REQUEST_OVERRIDES.put(signerClass, overrides);
+        }
+        return overrides.booleanValue();
+    }
+
+    private static boolean declaresCanonicalRequestMethod(Class<?> c) {
+        for (final Method method : c.getDeclaredMethods()) {
+            final String name = method.getName();
+            if ("getCanonicalRequest".equals(name)
+                    || "getCanonicalizedHeaderString".equals(name)
+                    || "getSignedHeadersString".equals(name)
+                    || "getStringToSign".equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected String getStringToSign(String algorithm, String dateTime, String scope,
             String canonicalRequest) {
         final String stringToSign =
@@ -291,21 +401,56 @@ public class AWS4Signer extends AbstractAWSSigner
         final String serviceName = extractServiceName(request.getEndpoint());
         final String scope = dateStamp + "/" + regionName + "/" + serviceName + "/" + TERMINATOR;
 
-        final String stringToSign = getStringToSign(algorithm, timeStamp, scope,
-                getCanonicalRequest(request, contentSha256));
+        final String stringToSign;
+        if (canStreamCanonicalRequest()) {
+            stringToSign = algorithm + "\n" +
+                    timeStamp + "\n" +
+                    scope + "\n" +
+                    BinaryUtils.toHex(hashCanonicalRequest(request, contentSha256));
+        } else {
+            stringToSign = getStringToSign(algorithm, timeStamp, scope,
+                    getCanonicalRequest(request, contentSha256));
+        }
+
+        final byte[] kSigning = getSigningKey(sanitizedCredentials, dateStamp,
+                regionName, serviceName);
 
+        final byte[] signature = sign(stringToSign.getBytes(StringUtils.UTF8), kSigning,
+                SigningAlgorithm.HmacSHA256);
+        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+    }
+
+    /**
+     * Returns the signing key for the given credentials and scope, deriving it
+     * only if it isn't already cached. The derived key is the same for every
+     * request signed with the same credentials, region and service on the
+     * same day.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    private byte[] getSigningKey(AWSCredentials sanitizedCredentials, String dateStamp,
+            String regionName, String serviceName) {
+        final String accessKeyId = sanitizedCredentials.getAWSAccessKeyId();
+        final String secretKey = sanitizedCredentials.getAWSSecretKey();
+        byte[] kSigning = SIGNING_KEY_CACHE.get(accessKeyId, secretKey, dateStamp,
+                regionName, serviceName);
+        if (kSigning == null) {
+            kSigning = newSigningKey(secretKey, dateStamp, regionName, serviceName);
+            SIGNING_KEY_CACHE.put(accessKeyId, secretKey, dateStamp,
+                    regionName, serviceName, kSigning);
+        }
+        return kSigning;
+    }
+
+    @SuppressWarnings("checkstyle:hiddenfield")
+    private byte[] newSigningKey(String secretKey, String dateStamp,
+            String regionName, String serviceName) {
         // AWS4 uses a series of derived keys, formed by hashing different
         // pieces of data
-        final byte[] kSecret = ("AWS4" + sanitizedCredentials.getAWSSecretKey())
-                .getBytes(StringUtils.UTF8);
+        final byte[] kSecret = ("AWS4" + secretKey).getBytes(StringUtils.UTF8);
         final byte[] kDate = sign(dateStamp, kSecret, SigningAlgorithm.HmacSHA256);
         final byte[] kRegion = sign(regionName, kDate, SigningAlgorithm.HmacSHA256);
         final byte[] kService = sign(serviceName, kRegion, SigningAlgorithm.HmacSHA256);
-        final byte[] kSigning = sign(TERMINATOR, kService, SigningAlgorithm.HmacSHA256);
-
-        final byte[] signature = sign(stringToSign.getBytes(StringUtils.UTF8), kSigning,
-                SigningAlgorithm.HmacSHA256);
-        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+        return sign(TERMINATOR, kService, SigningAlgorithm.HmacSHA256);
     }
 
     protected final String getTimeStamp(long dateMilli) {
@@ -351,6 +496,14 @@ public class AWS4Signer extends AbstractAWSSigner
      * relating to content-encoding and content-length.)
      */
     protected String calculateContentHash(Request<?> request) {
+        final InputStream content = request.getContent();
+        if (content instanceof Sha256HashedInputStream) {
+            // Hashed while the content was marshalled
+            final String contentSha256 = ((Sha256HashedInputStream) content).getContentSha256();
+            if (contentSha256 != null) {
+                return contentSha256;
+            }
+        }
         final InputStream payloadStream = getBinaryRequestPayloadStream(request);
         payloadStream.mark(-1);
         final String contentSha256 = BinaryUtils.toHex(hash(payloadStream));
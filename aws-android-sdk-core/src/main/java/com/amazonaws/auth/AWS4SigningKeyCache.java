@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Bounded cache of derived AWS4 signing keys. A signing key only depends on
+ * the secret key, the date stamp, the region and the service, so it can be
+ * reused for every request signed with the same credentials on the same day.
+ * <p>
+ * Entries are keyed on the access key id, region and service. An entry is
+ * only returned when both the secret key and the date stamp match, and it is
+ * replaced as soon as either changes, so rotated credentials never leave a
+ * stale key behind. The least recently used entry is evicted once the cache
+ * is full.
+ */
+final class AWS4SigningKeyCache {
+
+    private final InternalCache internalCache;
+
+    /**
+     * Creates a new cache that will contain, at most the specified number of
+     * signing keys.
+     *
+     * @param maxEntries The maximum size of this cache.
+     */
+    AWS4SigningKeyCache(int maxEntries) {
+        internalCache = new InternalCache(maxEntries);
+    }
+
+    /**
+     * Returns the cached signing key for the given scope, or null if there is
+     * none or the cached key was derived from a different secret key or date.
+     *
+     * @param accessKeyId the access key id of the signing credentials.
+     * @param secretKey the secret key of the signing credentials.
+     * @param dateStamp the date stamp (yyyyMMdd) of the signing scope.
+     * @param regionName the region name of the signing scope.
+     * @param serviceName the service name of the signing scope.
+     * @return the signing key, or null.
+     */
+    byte[] get(String accessKeyId, String secretKey, String dateStamp,
+            String regionName, String serviceName) {
+        final String cacheKey = cacheKey(accessKeyId, regionName, serviceName);
+        final SigningKey signingKey;
+        synchronized (internalCache) {
+            signingKey = internalCache.get(cacheKey);
+        }
+        if (signingKey == null
+                || !signingKey.dateStamp.equals(dateStamp)
+                || !signingKey.secretKey.equals(secretKey)) {
+            return null;
+        }
+        return signingKey.key;
+    }
+
+    /**
+     * Stores the signing key for the given scope, replacing any key
+     * previously cached for the same access key id, region and service.
+     *
+     * @param accessKeyId the access key id of the signing credentials.
+     * @param secretKey the secret key of the signing credentials.
+     * @param dateStamp the date stamp (yyyyMMdd) of the signing scope.
+     * @param regionName the region name of the signing scope.
+     * @param serviceName the service name of the signing scope.
+     * @param key the derived signing key.
+     */
+    void put(String accessKeyId, String secretKey, String dateStamp,
+            String regionName, String serviceName, byte[] key) {
+        final String cacheKey = cacheKey(accessKeyId, regionName, serviceName);
+        synchronized (internalCache) {
+            internalCache.put(cacheKey, new SigningKey(secretKey, dateStamp, key));
+        }
+    }
+
+    /**
+     * Removes all cached signing keys.
+     */
+    void clear() {
+        synchronized (internalCache) {
+            internalCache.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached signing keys.
+     */
+    int size() {
+        synchronized (internalCache) {
+            return internalCache.size();
+        }
+    }
+
+    private static String cacheKey(String accessKeyId, String regionName, String serviceName) {
+        return accessKeyId + "/" + regionName + "/" + serviceName;
+    }
+
+    /**
+     * A derived signing key along with the secret key and date it was derived
+     * from.
+     */
+    private static final class SigningKey {
+        private final String secretKey;
+        private final String dateStamp;
+        private final byte[] key;
+
+        SigningKey(String secretKey, String dateStamp, byte[] key) {
+            this.secretKey = secretKey;
+            this.dateStamp = dateStamp;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Access ordered LinkedHashMap that evicts the least recently used entry
+     * once the max size has been reached.
+     */
+    private static final class InternalCache extends LinkedHashMap<String, SigningKey> {
+        private static final long serialVersionUID = 1L;
+        private static final float LOAD_FACTOR = 0.75f;
+        private final int maxSize;
+
+        InternalCache(int maxSize) {
+            super(maxSize, LOAD_FACTOR, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, SigningKey> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import com.amazonaws.AmazonClientException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the SHA-256 hash of an AWS4 canonical request without building the
+ * canonical request as a String. Characters are UTF-8 encoded into a small
+ * fixed size buffer which is fed to the digest whenever it fills up, so the
+ * cost of hashing doesn't depend on allocating the whole canonical request.
+ * <p>
+ * Instances are not thread safe; use {@link #get()} to obtain the instance
+ * owned by the current thread.
+ */
+final class CanonicalRequestDigest {
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final int ONE_BYTE_LIMIT = 0x80;
+    private static final int TWO_BYTE_LIMIT = 0x800;
+    private static final int SIX_BITS = 6;
+    private static final int TWELVE_BITS = 12;
+    private static final int EIGHTEEN_BITS = 18;
+    private static final int LOW_SIX_BITS_MASK = 0x3F;
+    private static final int CONTINUATION_BYTE = 0x80;
+    private static final int TWO_BYTE_LEAD = 0xC0;
+    private static final int THREE_BYTE_LEAD = 0xE0;
+    private static final int FOUR_BYTE_LEAD = 0xF0;
+
+    private static final ThreadLocal<CanonicalRequestDigest> INSTANCE =
+            new ThreadLocal<CanonicalRequestDigest>() {
+                @Override
+                protected CanonicalRequestDigest initialValue() {
+                    return new CanonicalRequestDigest();
+                }
+            };
+
+    private final MessageDigest messageDigest;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    private CanonicalRequestDigest() {
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AmazonClientException(
+                    "Unable to get SHA256 Function" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the instance owned by the current thread, reset and ready to
+     * hash a new canonical request.
+     *
+     * @return the thread local digest.
+     */
+    static CanonicalRequestDigest get() {
+        final CanonicalRequestDigest digest = INSTANCE.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Appends the UTF-8 encoding of the given string.
+     *
+     * @param value the string to append.
+     * @return this object for method chaining.
+     */
+    CanonicalRequestDigest append(String value) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            i = appendChar(value, i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the UTF-8 encoding of the given string, replacing every run of
+     * whitespace with a single space. This is equivalent to appending
+     * <code>value.replaceAll("\\s+", " ")</code>.
+     *
+     * @param value the string to append.
+     * @return this object for method chaining.
+     */
+    CanonicalRequestDigest appendCollapsingWhitespace(String value) {
+        final int length = value.length();
+        boolean inWhitespace = false;
+        for (int i = 0; i < length; i++) {
+            if (isWhitespace(value.charAt(i))) {
+                if (!inWhitespace) {
+                    writeByte(' ');
+                    inWhitespace = true;
+                }
+                continue;
+            }
+            inWhitespace = false;
+            i = appendChar(value, i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a single ASCII character.
+     *
+     * @param c the character to append, must be less than 0x80.
+     * @return this object for method chaining.
+     */
+    CanonicalRequestDigest append(char c) {
+        writeByte(c);
+        return this;
+    }
+
+    /**
+     * Completes the hash computation and resets this digest.
+     *
+     * @return the SHA-256 hash of everything appended since the last reset.
+     */
+    byte[] digest() {
+        flush();
+        return messageDigest.digest();
+    }
+
+    private void reset() {
+        position = 0;
+        messageDigest.reset();
+    }
+
+    /**
+     * Encodes the character at the given index and returns the index of the
+     * last character consumed, which is only different from the given index
+     * for surrogate pairs.
+     */
+    private int appendChar(String value, int index) {
+        final char c = value.charAt(index);
+        if (c < ONE_BYTE_LIMIT) {
+            writeByte(c);
+        } else if (c < TWO_BYTE_LIMIT) {
+            writeByte(TWO_BYTE_LEAD | (c >> SIX_BITS));
+            writeByte(CONTINUATION_BYTE | (c & LOW_SIX_BITS_MASK));
+        } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(index + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+                writeByte(FOUR_BYTE_LEAD | (codePoint >> EIGHTEEN_BITS));
+                writeByte(CONTINUATION_BYTE | ((codePoint >> TWELVE_BITS) & LOW_SIX_BITS_MASK));
+                writeByte(CONTINUATION_BYTE | ((codePoint >> SIX_BITS) & LOW_SIX_BITS_MASK));
+                writeByte(CONTINUATION_BYTE | (codePoint & LOW_SIX_BITS_MASK));
+                return index + 1;
+            }
+            // Unpaired surrogates are replaced, like String.getBytes does
+            writeByte('?');
+        } else {
+            writeByte(THREE_BYTE_LEAD | (c >> TWELVE_BITS));
+            writeByte(CONTINUATION_BYTE | ((c >> SIX_BITS) & LOW_SIX_BITS_MASK));
+            writeByte(CONTINUATION_BYTE | (c & LOW_SIX_BITS_MASK));
+        }
+        return index;
+    }
+
+    private void writeByte(int b) {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void flush() {
+        if (position > 0) {
+            messageDigest.update(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /** Matches the characters of the regular expression class \s. */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
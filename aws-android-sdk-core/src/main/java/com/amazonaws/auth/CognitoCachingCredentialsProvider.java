@@ -466,11 +466,16 @@ public class CognitoCachingCredentialsProvider
 
     @Override
     public AWSSessionCredentials getCredentials() {
+        final AWSSessionCredentials published = getPublishedCredentials();
+        if (published != null) {
+            return published;
+        }
     	credentialsLock.writeLock().lock();
         try {
             // return only if the credentials are valid
         	if (sessionCredentials == null) {
         		loadCachedCredentials();
+        		publishSession();
         	}
 
         	if ((sessionCredentialsExpiration != null) && !needsNewSession()) {
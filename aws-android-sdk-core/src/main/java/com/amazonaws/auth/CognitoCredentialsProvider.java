@@ -38,6 +38,10 @@ import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 import org.json.JSONObject;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.Date;
 import java.util.HashMap;
@@ -91,6 +95,39 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
 
     protected final ReentrantReadWriteLock credentialsLock;
 
+    /**
+     * With background refresh, sessions with less than this many seconds left
+     * are treated as expired, and block callers until they are renewed.
+     */
+    static final int EXPIRED_THRESHOLD_SECONDS = 60;
+
+    /**
+     * Runs the background refreshes of all the providers, one at a time, on a
+     * single daemon thread.
+     */
+    private static final Executor BACKGROUND_REFRESH_EXECUTOR = Executors
+            .newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "cognito-credentials-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private volatile boolean backgroundRefreshEnabled;
+
+    /**
+     * The current session, published whenever it changes so that it can be
+     * read without the lock.
+     */
+    private volatile PublishedSession publishedSession;
+
+    /** Whether a background refresh is scheduled or running. */
+    private final AtomicBoolean backgroundRefreshing = new AtomicBoolean();
+
+    private Executor backgroundRefreshExecutor = BACKGROUND_REFRESH_EXECUTOR;
+
     /**
      * Constructs a new {@link CognitoCredentialsProvider}, which will use the
      * specified Amazon Cognito identity pool to make a request, using the basic
@@ -435,6 +472,7 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
         credentialsLock.writeLock().lock();
         try {
             sessionCredentialsExpiration = expiration;
+            publishSession();
         } finally {
             credentialsLock.writeLock().unlock();
         }
@@ -464,10 +502,16 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
     /**
      * If the current session has expired/credentials are invalid, a new session
      * is started, establishing the credentials. In either case, those
-     * credentials are returned
+     * credentials are returned. With background refresh enabled, a session
+     * within the refresh threshold is returned while a new one is started in
+     * the background.
      */
     @Override
     public AWSSessionCredentials getCredentials() {
+        final AWSSessionCredentials published = getPublishedCredentials();
+        if (published != null) {
+            return published;
+        }
         credentialsLock.writeLock().lock();
         try {
             if (needsNewSession()) {
@@ -561,6 +605,49 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
         return this.refreshThreshold;
     }
 
+    /**
+     * Set whether session credentials are refreshed in the background. When
+     * enabled, {@link #getCredentials()} returns the current session without
+     * locking while it has more than the refresh threshold left. Once it is
+     * within the threshold, a new session is started on a background thread
+     * and the current one is returned in the meantime, so that only a session
+     * that has expired, or is about to, blocks callers. Disabled by default.
+     *
+     * @param backgroundRefreshEnabled whether to refresh session credentials
+     *            in the background.
+     */
+    public void setBackgroundRefreshEnabled(boolean backgroundRefreshEnabled) {
+        this.backgroundRefreshEnabled = backgroundRefreshEnabled;
+    }
+
+    /**
+     * Set whether session credentials are refreshed in the background.
+     * Returns a reference to the object so methods can be chained.
+     *
+     * @see #setBackgroundRefreshEnabled(boolean)
+     * @param backgroundRefreshEnabled whether to refresh session credentials
+     *            in the background.
+     * @return A reference to this updated object so that method calls can be
+     *         chained together.
+     */
+    public CognitoCredentialsProvider withBackgroundRefreshEnabled(
+            boolean backgroundRefreshEnabled) {
+        this.setBackgroundRefreshEnabled(backgroundRefreshEnabled);
+        return this;
+    }
+
+    /**
+     * @return whether session credentials are refreshed in the background.
+     * @see #setBackgroundRefreshEnabled(boolean)
+     */
+    public boolean isBackgroundRefreshEnabled() {
+        return backgroundRefreshEnabled;
+    }
+
+    void setBackgroundRefreshExecutor(Executor backgroundRefreshExecutor) {
+        this.backgroundRefreshExecutor = backgroundRefreshExecutor;
+    }
+
     protected void setIdentityId(String identityId) {
         identityProvider.identityChanged(identityId);
     }
@@ -668,6 +755,7 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
         try {
             sessionCredentials = null;
             sessionCredentialsExpiration = null;
+            publishSession();
         } finally {
             credentialsLock.writeLock().unlock();
         }
@@ -856,13 +944,96 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
         if (sessionCredentials == null) {
             return true;
         }
-        long currentTime = System.currentTimeMillis()
-                - SDKGlobalConfiguration.getGlobalTimeOffset() * 1000;
         long timeRemaining = sessionCredentialsExpiration.getTime()
-                - currentTime;
+                - currentTimeMillis();
         return timeRemaining < (refreshThreshold * 1000);
     }
 
+    private static long currentTimeMillis() {
+        return System.currentTimeMillis()
+                - SDKGlobalConfiguration.getGlobalTimeOffset() * 1000;
+    }
+
+    /**
+     * Publishes the current session to readers that don't take the lock. Must
+     * be called with the write lock held whenever the session changes.
+     */
+    void publishSession() {
+        publishedSession = sessionCredentials == null || sessionCredentialsExpiration == null
+                ? null
+                : new PublishedSession(sessionCredentials,
+                        sessionCredentialsExpiration.getTime());
+    }
+
+    /**
+     * Returns the published session credentials without taking the lock, if
+     * background refresh is enabled and they haven't expired, and starts a
+     * background refresh if they are within the refresh threshold.
+     *
+     * @return the credentials, or null if the caller has to take the lock and
+     *         start a new session.
+     */
+    AWSSessionCredentials getPublishedCredentials() {
+        final PublishedSession session = publishedSession;
+        if (!backgroundRefreshEnabled || session == null) {
+            return null;
+        }
+        final long timeRemaining = session.expirationMillis - currentTimeMillis();
+        if (timeRemaining >= refreshThreshold * 1000L) {
+            return session.credentials;
+        }
+        if (timeRemaining < EXPIRED_THRESHOLD_SECONDS * 1000L) {
+            return null;
+        }
+        if (backgroundRefreshing.compareAndSet(false, true)) {
+            try {
+                backgroundRefreshExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        refreshInBackground();
+                    }
+                });
+            } catch (final RuntimeException e) {
+                backgroundRefreshing.set(false);
+                log.warn("Unable to start a background refresh of credentials", e);
+            }
+        }
+        return session.credentials;
+    }
+
+    private void refreshInBackground() {
+        try {
+            credentialsLock.writeLock().lock();
+            try {
+                // A caller may have started a new session in the meantime
+                if (needsNewSession()) {
+                    refresh();
+                }
+            } finally {
+                credentialsLock.writeLock().unlock();
+            }
+        } catch (final RuntimeException e) {
+            // Callers keep the current session, and start a new one
+            // themselves once it expires
+            log.warn("Failure to refresh credentials in the background", e);
+        } finally {
+            backgroundRefreshing.set(false);
+        }
+    }
+
+    /**
+     * Session credentials with their expiration, published together.
+     */
+    private static final class PublishedSession {
+        private final AWSSessionCredentials credentials;
+        private final long expirationMillis;
+
+        PublishedSession(AWSSessionCredentials credentials, long expirationMillis) {
+            this.credentials = credentials;
+            this.expirationMillis = expirationMillis;
+        }
+    }
+
     /**
      * Append user agent string to the request. The final string is what is set
      * in the ClientCofniguration concatenated with the given userAgent string.
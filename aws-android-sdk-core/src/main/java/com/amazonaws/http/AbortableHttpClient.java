@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+/**
+ * An {@link HttpClient} that can abort a request it's executing, so that the
+ * request stops holding its connection and the thread waiting for it.
+ * {@link AmazonHttpClient} aborts the send of a hedged request whose other
+ * send has already received a response.
+ */
+public interface AbortableHttpClient extends HttpClient {
+
+    /**
+     * Aborts a request executed by this client. The execution of the request
+     * then fails with an {@link java.io.IOException}. It does nothing if the
+     * request isn't in flight: not sent yet, or its response already
+     * returned, in which case the caller closes the response.
+     *
+     * @param request a HTTP request executed by this client
+     */
+    void abort(HttpRequest request);
+}
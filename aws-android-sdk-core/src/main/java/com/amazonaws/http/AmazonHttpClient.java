@@ -34,7 +34,11 @@ import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.internal.CRC32MismatchException;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.retry.ClientRateLimiter;
+import com.amazonaws.retry.HedgingPolicy;
+import com.amazonaws.retry.RetryMode;
 import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryQuota;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.util.AWSRequestMetrics;
 import com.amazonaws.util.AWSRequestMetrics.Field;
@@ -45,10 +49,14 @@ import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 import com.amazonaws.util.URIBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -56,6 +64,19 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Amazon HTTP Client class.
@@ -73,6 +94,8 @@ public class AmazonHttpClient {
     private static final int HTTP_STATUS_SERVICE_UNAVAILABLE = 503;
 
     private static final long TIME_MILLISEC = 1000L;
+    private static final int ASYNC_MIN_THREADS = 2;
+    private static final int BUFFER_SIZE = 4 * 1024;
 
     /**
      * Logger providing detailed information on requests/responses. Users can
@@ -104,6 +127,36 @@ public class AmazonHttpClient {
 
     private final HttpRequestFactory requestFactory = new HttpRequestFactory();
 
+    /**
+     * The capacity of this client for retries, or null if the retry mode is
+     * {@link RetryMode#LEGACY}.
+     */
+    private final RetryQuota retryQuota;
+
+    /**
+     * The rate limit of the requests this client sends, or null if the retry
+     * mode isn't {@link RetryMode#ADAPTIVE}.
+     */
+    private final ClientRateLimiter rateLimiter;
+
+    /**
+     * The delays after which the attempts of the operations this client
+     * hedges are hedged, or null if it has no hedging policy.
+     */
+    private final HedgeDelays hedgeDelays;
+
+    /**
+     * Runs the steps of the requests executed asynchronously, created on
+     * first use.
+     */
+    private ExecutorService asyncExecutor;
+
+    /**
+     * Schedules the retries of the requests executed asynchronously, shared
+     * by all the clients and created on first use.
+     */
+    private static ScheduledExecutorService retryTimer;
+
     /**
      * Constructs a new AWS client using the specified client configuration
      * options (ex: max retry attempts, proxy settings, etc).
@@ -112,7 +165,7 @@ public class AmazonHttpClient {
      *            communicate with AWS (ex: proxy settings, retry count, etc.).
      */
     public AmazonHttpClient(ClientConfiguration config) {
-        this(config, new UrlHttpClient(config));
+        this(config, createDefaultHttpClient(config));
     }
 
     /**
@@ -129,7 +182,7 @@ public class AmazonHttpClient {
     @Deprecated
     public AmazonHttpClient(ClientConfiguration config,
             RequestMetricCollector requestMetricCollector) {
-        this(config, new UrlHttpClient(config), requestMetricCollector);
+        this(config, createDefaultHttpClient(config), requestMetricCollector);
     }
 
     /**
@@ -145,6 +198,9 @@ public class AmazonHttpClient {
         this.config = config;
         this.httpClient = httpClient;
         this.requestMetricCollector = null;
+        this.retryQuota = createRetryQuota(config);
+        this.rateLimiter = createRateLimiter(config);
+        this.hedgeDelays = createHedgeDelays(config);
     }
 
     /**
@@ -165,6 +221,37 @@ public class AmazonHttpClient {
         this.config = config;
         this.httpClient = httpClient;
         this.requestMetricCollector = requestMetricCollector;
+        this.retryQuota = createRetryQuota(config);
+        this.rateLimiter = createRateLimiter(config);
+        this.hedgeDelays = createHedgeDelays(config);
+    }
+
+    /**
+     * Creates the HTTP client of a service client that isn't given one: the
+     * client of the {@link HttpClientFactory} of the configuration if it has
+     * one, otherwise a {@link UrlHttpClient}. An HTTP client given to a
+     * service client is used as is.
+     *
+     * @param config the client configuration.
+     * @return a new HTTP client.
+     */
+    public static HttpClient createDefaultHttpClient(ClientConfiguration config) {
+        final HttpClientFactory factory = config.getHttpClientFactory();
+        return factory == null ? new UrlHttpClient(config) : factory.createHttpClient(config);
+    }
+
+    private static RetryQuota createRetryQuota(ClientConfiguration config) {
+        return config.getRetryMode() == RetryMode.LEGACY ? null
+                : new RetryQuota(config.getRetryQuotaCapacity());
+    }
+
+    private static ClientRateLimiter createRateLimiter(ClientConfiguration config) {
+        return config.getRetryMode() == RetryMode.ADAPTIVE ? new ClientRateLimiter() : null;
+    }
+
+    private static HedgeDelays createHedgeDelays(ClientConfiguration config) {
+        return config.getHedgingPolicy() == null ? null
+                : new HedgeDelays(config.getHedgingPolicy());
     }
 
     /**
@@ -204,25 +291,16 @@ public class AmazonHttpClient {
             HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
             HttpResponseHandler<AmazonServiceException> errorResponseHandler,
             ExecutionContext executionContext) {
-        // Prepend host prefix if specified in the request.
-        if (request.getHostPrefix() != null) {
-            try {
-                URI endpoint = request.getEndpoint();
-                String host = request.getHostPrefix() + endpoint.getHost();
-                request.setEndpoint(URIBuilder.builder(endpoint)
-                        .host(host)
-                        .build());
-            } catch (URISyntaxException error) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Failed to prepend host prefix: " + error.getMessage(), error);
-                }
-            }
-        }
+        prependHostPrefix(request);
         if (executionContext == null) {
             throw new AmazonClientException(
                     "Internal SDK Error: No execution context parameter specified.");
         }
         final List<RequestHandler2> requestHandler2s = requestHandler2s(request, executionContext);
+        if (isHedged(request)) {
+            return executeHedged(request, responseHandler, errorResponseHandler,
+                    executionContext, requestHandler2s);
+        }
         final AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
         Response<T> response = null;
         try {
@@ -237,6 +315,118 @@ public class AmazonHttpClient {
         }
     }
 
+    /**
+     * Executes a request that may be hedged. Its sends race on the async
+     * executor, while the calling thread waits for the result.
+     */
+    private <T> Response<T> executeHedged(Request<?> request,
+            HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+            HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+            ExecutionContext executionContext,
+            List<RequestHandler2> requestHandler2s) {
+        final AsyncExecution<T> execution = new AsyncExecution<T>(
+                new RequestExecution<T>(request, responseHandler, errorResponseHandler,
+                        executionContext),
+                requestHandler2s, null);
+        execution.start();
+        try {
+            return execution.get();
+        } catch (final InterruptedException e) {
+            execution.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting for the response", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AmazonClientException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return true if the hedging policy of this client applies to the
+     *         request.
+     */
+    private boolean isHedged(Request<?> request) {
+        return hedgeDelays != null && request.getOriginalRequest() != null
+                && hedgeDelays.getPolicy().getHedgeCondition()
+                        .shouldHedge(request.getOriginalRequest());
+    }
+
+    /**
+     * Executes the request without blocking the calling thread and returns a
+     * future of the result. The pause before a retry is scheduled on a timer
+     * and doesn't hold any thread. Requests the hedging policy of the client
+     * applies to are hedged.
+     * <p>
+     * Whether a thread waits for the response depends on the HTTP client.
+     * Only an {@link AsyncHttpClient}, such as the OkHttp client configured
+     * with {@link ClientConfiguration#setHttpClientFactory}, sends the
+     * request without blocking; a small pool of threads owned by this client
+     * then only signs requests and handles responses. Any other HTTP client,
+     * including the default {@link UrlHttpClient}, blocks while the request
+     * is in flight: the request is sent on a pool of up to
+     * {@link ClientConfiguration#getMaxConnections()} threads, and each
+     * request in flight holds one of them, like a blocking call submitted to
+     * an executor.
+     *
+     * @param request The AmazonWebServices request to send to the remote server
+     * @param responseHandler A response handler to accept a successful response
+     *            from the remote server
+     * @param errorResponseHandler A response handler to accept an unsuccessful
+     *            response from the remote server
+     * @param executionContext Additional information about the context of this
+     *            web service call
+     * @param callback notified when the request completes, can be null.
+     * @param <T> the response type.
+     * @return the future result of the request. Its
+     *         {@link java.util.concurrent.ExecutionException} wraps the same
+     *         exception {@link #execute} would throw. Cancelling it stops
+     *         the request between attempts, an attempt in flight isn't
+     *         aborted.
+     */
+    public <T> Future<Response<T>> executeAsync(Request<?> request,
+            HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+            HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+            ExecutionContext executionContext,
+            ResponseCallback<T> callback) {
+        prependHostPrefix(request);
+        if (executionContext == null) {
+            throw new AmazonClientException(
+                    "Internal SDK Error: No execution context parameter specified.");
+        }
+        final List<RequestHandler2> requestHandler2s = requestHandler2s(request, executionContext);
+        final AsyncExecution<T> execution = new AsyncExecution<T>(
+                new RequestExecution<T>(request, responseHandler, errorResponseHandler,
+                        executionContext),
+                requestHandler2s, callback);
+        execution.start();
+        return execution;
+    }
+
+    /**
+     * Prepends the host prefix to the endpoint, if the request has one.
+     */
+    private void prependHostPrefix(Request<?> request) {
+        if (request.getHostPrefix() != null) {
+            try {
+                URI endpoint = request.getEndpoint();
+                String host = request.getHostPrefix() + endpoint.getHost();
+                request.setEndpoint(URIBuilder.builder(endpoint)
+                        .host(host)
+                        .build());
+            } catch (URISyntaxException error) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to prepend host prefix: " + error.getMessage(), error);
+                }
+            }
+        }
+    }
+
     void afterError(Request<?> request, Response<?> response,
             List<RequestHandler2> requestHandler2s, AmazonClientException e) {
         for (final RequestHandler2 handler2 : requestHandler2s) {
@@ -280,11 +470,77 @@ public class AmazonHttpClient {
      * @see AmazonHttpClient#execute(Request, HttpResponseHandler,
      *      HttpResponseHandler, ExecutionContext)
      */
-    @SuppressWarnings("checkstyle:methodlength")
     <T> Response<T> executeHelper(Request<?> request,
             HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
             HttpResponseHandler<AmazonServiceException> errorResponseHandler,
             ExecutionContext executionContext) {
+        final AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
+        final RequestExecution<T> execution = new RequestExecution<T>(request,
+                responseHandler, errorResponseHandler, executionContext);
+
+        while (true) {
+            try {
+                final long backoffDelay = execution.beginAttempt();
+                if (execution.isRetry()) {
+                    awsRequestMetrics.startEvent(Field.RetryPauseTime);
+                    try {
+                        pauseBeforeNextRetry(backoffDelay);
+                    } finally {
+                        awsRequestMetrics.endEvent(Field.RetryPauseTime);
+                    }
+                }
+                final long sendDelay = execution.acquireSendCapacity();
+                if (sendDelay > 0) {
+                    awsRequestMetrics.startEvent(Field.RateLimitPauseTime);
+                    try {
+                        pauseBeforeNextRetry(sendDelay);
+                    } finally {
+                        awsRequestMetrics.endEvent(Field.RateLimitPauseTime);
+                    }
+                }
+                final HttpRequest httpRequest = execution.prepareRequest();
+
+                HttpResponse httpResponse;
+                awsRequestMetrics.startEvent(Field.HttpRequestTime);
+                try {
+                    httpResponse = httpClient.execute(httpRequest);
+                } finally {
+                    awsRequestMetrics.endEvent(Field.HttpRequestTime);
+                }
+
+                final Response<T> response = execution.handleResponse(httpResponse);
+                if (response != null) {
+                    return response;
+                }
+            } catch (final IOException ioe) {
+                execution.handleException(ioe);
+            } catch (final RuntimeException e) {
+                throw handleUnexpectedFailure(e, awsRequestMetrics);
+            } catch (final Error e) {
+                throw handleUnexpectedFailure(e, awsRequestMetrics);
+            } finally {
+                execution.releaseConnection();
+            }
+        } /* end while (true) */
+    }
+
+    /**
+     * The state of a request across its attempts: the original parameters,
+     * headers and content to restore before a retry, the redirect and the
+     * last retryable error. The attempts of a request don't overlap, but they
+     * may run on different threads.
+     */
+    private final class RequestExecution<T> {
+        private final Request<?> request;
+        private final HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler;
+        private final HttpResponseHandler<AmazonServiceException> errorResponseHandler;
+        private final ExecutionContext executionContext;
+        private final AWSRequestMetrics awsRequestMetrics;
+        private final AWSCredentials credentials;
+        private final Map<String, String> originalParameters;
+        private final Map<String, String> originalHeaders;
+        private final InputStream originalContent;
+
         /*
          * Depending on which response handler we end up choosing to handle the
          * HTTP response, it might require us to leave the underlying HTTP
@@ -292,41 +548,58 @@ public class AmazonHttpClient {
          * HTTP response stream from the HTTP connection, or if delays reading
          * any of the content until after a response is returned to the caller.
          */
-        boolean leaveHttpConnectionOpen = false;
-        final AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
-        /*
-         * add the service endpoint to the logs. You can infer service name from
-         * service endpoint
-         */
-        awsRequestMetrics.addProperty(Field.ServiceName, request.getServiceName());
-        awsRequestMetrics.addProperty(Field.ServiceEndpoint, request.getEndpoint());
-
-        // Apply whatever request options we know how to handle, such as
-        // user-agent.
-        setUserAgent(request);
-        request.addHeader(HEADER_SDK_TRANSACTION_ID, UUID.randomUUID().toString());
-        int requestCount = 0;
-        long lastBackoffDelay = 0;
-        URI redirectedURI = null;
-        AmazonClientException retriedException = null;
-
-        // Make a copy of the original request params and headers so that we can
-        // permute it in this loop and start over with the original every time.
-        final Map<String, String> originalParameters = new LinkedHashMap<String, String>(
-                request.getParameters());
-        final Map<String, String> originalHeaders = new HashMap<String, String>(request.getHeaders());
-        // mark input stream if supported
-        final InputStream originalContent = request.getContent();
-        if (originalContent != null && originalContent.markSupported()) {
-            originalContent.mark(-1);
-        }
-
-        final AWSCredentials credentials = executionContext.getCredentials();
-        Signer signer = null;
-        HttpResponse httpResponse = null;
-        HttpRequest httpRequest = null;
+        private boolean leaveHttpConnectionOpen = false;
+        private int requestCount = 0;
+        private long lastBackoffDelay = 0;
+        private URI redirectedURI = null;
+        private AmazonClientException retriedException = null;
+        /** The retry quota capacity taken for the current retry. */
+        private int retryCost = 0;
+        private Signer signer = null;
+        private HttpRequest httpRequest = null;
+        private HttpResponse httpResponse = null;
+
+        RequestExecution(Request<?> request,
+                HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+                HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+                ExecutionContext executionContext) {
+            this.request = request;
+            this.responseHandler = responseHandler;
+            this.errorResponseHandler = errorResponseHandler;
+            this.executionContext = executionContext;
+            this.awsRequestMetrics = executionContext.getAwsRequestMetrics();
+            /*
+             * add the service endpoint to the logs. You can infer service name
+             * from service endpoint
+             */
+            awsRequestMetrics.addProperty(Field.ServiceName, request.getServiceName());
+            awsRequestMetrics.addProperty(Field.ServiceEndpoint, request.getEndpoint());
+
+            // Apply whatever request options we know how to handle, such as
+            // user-agent.
+            setUserAgent(request);
+            request.addHeader(HEADER_SDK_TRANSACTION_ID, UUID.randomUUID().toString());
+
+            // Make a copy of the original request params and headers so that
+            // we can permute it in this loop and start over with the original
+            // every time.
+            originalParameters = new LinkedHashMap<String, String>(request.getParameters());
+            originalHeaders = new HashMap<String, String>(request.getHeaders());
+            // mark input stream if supported
+            originalContent = request.getContent();
+            if (originalContent != null && originalContent.markSupported()) {
+                originalContent.mark(-1);
+            }
+            credentials = executionContext.getCredentials();
+        }
 
-        while (true) {
+        /**
+         * Starts the next attempt, restoring the request if it's a retry.
+         *
+         * @return the time to wait before sending the attempt, 0 for the
+         *         first attempt.
+         */
+        long beginAttempt() {
             ++requestCount;
             awsRequestMetrics.setCounter(Field.RequestCount, requestCount);
             if (requestCount > 1) { // retry
@@ -340,154 +613,768 @@ public class AmazonHttpClient {
                         redirectedURI.getScheme() + "://" + redirectedURI.getAuthority()));
                 request.setResourcePath(redirectedURI.getPath());
             }
+            if (requestCount > 1) {
+                lastBackoffDelay = backoffDelay(request.getOriginalRequest(),
+                        retriedException, requestCount, config.getRetryPolicy());
+            }
+            return lastBackoffDelay;
+        }
 
-            try {
-                if (requestCount > 1) { // retry
-                    awsRequestMetrics.startEvent(Field.RetryPauseTime);
-                    try {
-                        lastBackoffDelay = pauseBeforeNextRetry(request.getOriginalRequest(),
-                                retriedException,
-                                requestCount,
-                                config.getRetryPolicy());
-                    } finally {
-                        awsRequestMetrics.endEvent(Field.RetryPauseTime);
-                    }
-                    final InputStream content = request.getContent();
-                    if (content != null && content.markSupported()) {
-                        content.reset();
-                    }
-                }
-                request.addHeader(HEADER_SDK_RETRY_INFO,
-                        (requestCount - 1) + "/" + lastBackoffDelay);
+        boolean isRetry() {
+            return requestCount > 1;
+        }
 
-                // Sign the request if a signer was provided
-                if (signer == null) {
-                    signer = executionContext.getSignerByURI(request.getEndpoint());
-                }
-                if (signer != null && credentials != null) {
-                    awsRequestMetrics.startEvent(Field.RequestSigningTime);
-                    try {
-                        signer.sign(request, credentials);
-                    } finally {
-                        awsRequestMetrics.endEvent(Field.RequestSigningTime);
-                    }
-                }
+        /**
+         * Takes a token of the client rate limit for sending this attempt.
+         *
+         * @return the time to wait before sending the attempt.
+         */
+        long acquireSendCapacity() {
+            return rateLimiter == null ? 0 : rateLimiter.acquire();
+        }
 
-                if (REQUEST_LOG.isDebugEnabled()) {
-                    REQUEST_LOG.debug("Sending Request: " + request.toString());
+        /**
+         * Takes retry quota capacity for retrying after an error.
+         *
+         * @return false if the quota is exhausted and the request shouldn't
+         *         be retried.
+         */
+        private boolean acquireRetryCapacity(int cost) {
+            if (retryQuota == null) {
+                return true;
+            }
+            if (!retryQuota.acquire(cost)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Retry quota exhausted, not retrying");
                 }
+                return false;
+            }
+            retryCost = cost;
+            return true;
+        }
 
-                httpRequest = requestFactory.createHttpRequest(request, config,
-                        executionContext);
+        /**
+         * Signs the request and converts it to the HTTP request of this
+         * attempt.
+         */
+        HttpRequest prepareRequest() throws IOException {
+            if (requestCount > 1) { // retry
+                final InputStream content = request.getContent();
+                if (content != null && content.markSupported()) {
+                    content.reset();
+                }
+            }
+            request.addHeader(HEADER_SDK_RETRY_INFO,
+                    (requestCount - 1) + "/" + lastBackoffDelay);
 
-                retriedException = null;
-                awsRequestMetrics.startEvent(Field.HttpRequestTime);
+            // Sign the request if a signer was provided
+            if (signer == null) {
+                signer = executionContext.getSignerByURI(request.getEndpoint());
+            }
+            if (signer != null && credentials != null) {
+                awsRequestMetrics.startEvent(Field.RequestSigningTime);
                 try {
-                    httpResponse = httpClient.execute(httpRequest);
+                    signer.sign(request, credentials);
                 } finally {
-                    awsRequestMetrics.endEvent(Field.HttpRequestTime);
+                    awsRequestMetrics.endEvent(Field.RequestSigningTime);
                 }
+            }
 
-                if (isRequestSuccessful(httpResponse)) {
-                    awsRequestMetrics.addProperty(Field.StatusCode, httpResponse.getStatusCode());
-                    /*
-                     * If we get back any 2xx status code, then we know we
-                     * should treat the service call as successful.
-                     */
-                    leaveHttpConnectionOpen = responseHandler.needsConnectionLeftOpen();
-                    final T response = handleResponse(request, responseHandler,
-                            httpResponse,
-                            executionContext);
-                    return new Response<T>(response, httpResponse);
-                } else if (isTemporaryRedirect(httpResponse)) {
-                    /*
-                     * S3 sends 307 Temporary Redirects if you try to delete an
-                     * EU bucket from the US endpoint. If we get a 307, we'll
-                     * point the HTTP method to the redirected location, and let
-                     * the next retry deliver the request to the right location.
-                     */
-                    final String redirectedLocation = httpResponse.getHeaders().get("Location");
-                    log.debug("Redirecting to: " + redirectedLocation);
-                    // set redirect uri and retry
-                    redirectedURI = URI.create(redirectedLocation);
-                    request.setEndpoint(null);
-                    request.setResourcePath(null);
-                    awsRequestMetrics.addProperty(Field.StatusCode, httpResponse.getStatusCode());
-                    awsRequestMetrics.addProperty(Field.RedirectLocation, redirectedLocation);
-                    awsRequestMetrics.addProperty(Field.AWSRequestID, null);
-                } else {
-                    leaveHttpConnectionOpen = errorResponseHandler.needsConnectionLeftOpen();
-                    final AmazonServiceException ase = handleErrorResponse(request, errorResponseHandler,
-                            httpResponse);
-                    awsRequestMetrics.addProperty(Field.AWSRequestID, ase.getRequestId());
-                    awsRequestMetrics.addProperty(Field.AWSErrorCode, ase.getErrorCode());
-                    awsRequestMetrics.addProperty(Field.StatusCode, ase.getStatusCode());
-
-                    if (!shouldRetry(request.getOriginalRequest(),
-                            httpRequest.getContent(),
-                            ase,
-                            requestCount,
-                            config.getRetryPolicy())) {
-                        throw ase;
-                    }
+            if (REQUEST_LOG.isDebugEnabled()) {
+                REQUEST_LOG.debug("Sending Request: " + request.toString());
+            }
 
-                    // Cache the retryable exception
-                    retriedException = ase;
-                    /*
-                     * Checking for clock skew error again because we don't want
-                     * to set the global time offset for every service
-                     * exception.
-                     */
-                    if (RetryUtils.isClockSkewError(ase)) {
-                        final long timeOffset = parseClockSkewOffset(httpResponse, ase);
-                        SDKGlobalConfiguration.setGlobalTimeOffset(timeOffset);
-                    }
-                    resetRequestAfterError(request, ase);
+            httpRequest = requestFactory.createHttpRequest(request, config,
+                    executionContext);
+            retriedException = null;
+            return httpRequest;
+        }
+
+        /**
+         * Handles the HTTP response of this attempt.
+         *
+         * @return the response, or null if the request should be retried.
+         * @throws AmazonServiceException if the request failed and shouldn't
+         *             be retried.
+         */
+        Response<T> handleResponse(HttpResponse response) throws IOException {
+            httpResponse = response;
+            if (isRequestSuccessful(httpResponse)) {
+                awsRequestMetrics.addProperty(Field.StatusCode, httpResponse.getStatusCode());
+                /*
+                 * If we get back any 2xx status code, then we know we should
+                 * treat the service call as successful.
+                 */
+                leaveHttpConnectionOpen = responseHandler.needsConnectionLeftOpen();
+                final T result = AmazonHttpClient.this.handleResponse(request, responseHandler,
+                        httpResponse,
+                        executionContext);
+                if (rateLimiter != null) {
+                    rateLimiter.updateSendingRate(false);
                 }
-            } catch (final IOException ioe) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Unable to execute HTTP request: " + ioe.getMessage(), ioe);
+                if (retryQuota != null) {
+                    // Gives back what the retry took, or a little more
+                    retryQuota.release(retryCost > 0 ? retryCost : RetryQuota.NO_RETRY_INCREMENT);
                 }
-                awsRequestMetrics.incrementCounter(Field.Exception);
-                awsRequestMetrics.addProperty(Field.Exception, ioe);
+                return new Response<T>(result, httpResponse);
+            } else if (isTemporaryRedirect(httpResponse)) {
+                /*
+                 * S3 sends 307 Temporary Redirects if you try to delete an EU
+                 * bucket from the US endpoint. If we get a 307, we'll point
+                 * the HTTP method to the redirected location, and let the next
+                 * retry deliver the request to the right location.
+                 */
+                final String redirectedLocation = httpResponse.getHeaders().get("Location");
+                log.debug("Redirecting to: " + redirectedLocation);
+                // set redirect uri and retry
+                redirectedURI = URI.create(redirectedLocation);
+                request.setEndpoint(null);
+                request.setResourcePath(null);
+                awsRequestMetrics.addProperty(Field.StatusCode, httpResponse.getStatusCode());
+                awsRequestMetrics.addProperty(Field.RedirectLocation, redirectedLocation);
                 awsRequestMetrics.addProperty(Field.AWSRequestID, null);
+            } else {
+                leaveHttpConnectionOpen = errorResponseHandler.needsConnectionLeftOpen();
+                final AmazonServiceException ase = handleErrorResponse(request,
+                        errorResponseHandler, httpResponse);
+                awsRequestMetrics.addProperty(Field.AWSRequestID, ase.getRequestId());
+                awsRequestMetrics.addProperty(Field.AWSErrorCode, ase.getErrorCode());
+                awsRequestMetrics.addProperty(Field.StatusCode, ase.getStatusCode());
+                if (rateLimiter != null) {
+                    rateLimiter.updateSendingRate(RetryUtils.isThrottlingException(ase));
+                }
 
-                final AmazonClientException ace = new AmazonClientException(
-                        "Unable to execute HTTP request: " + ioe.getMessage(), ioe);
                 if (!shouldRetry(request.getOriginalRequest(),
                         httpRequest.getContent(),
-                        ace,
+                        ase,
                         requestCount,
-                        config.getRetryPolicy())) {
-                    throw ace;
+                        config.getRetryPolicy())
+                        || !acquireRetryCapacity(RetryQuota.RETRY_COST)) {
+                    throw ase;
                 }
 
                 // Cache the retryable exception
-                retriedException = ace;
-                resetRequestAfterError(request, ioe);
-            } catch (final RuntimeException e) {
-                throw handleUnexpectedFailure(e, awsRequestMetrics);
-            } catch (final Error e) {
-                throw handleUnexpectedFailure(e, awsRequestMetrics);
-            } finally {
+                retriedException = ase;
                 /*
-                 * Some response handlers need to manually manage the HTTP
-                 * connection and will take care of releasing the connection on
-                 * their own, but if this response handler doesn't need the
-                 * connection left open, we go ahead and release the it to free
-                 * up resources.
+                 * Checking for clock skew error again because we don't want to
+                 * set the global time offset for every service exception.
                  */
-                if (!leaveHttpConnectionOpen && httpResponse != null) {
+                if (RetryUtils.isClockSkewError(ase)) {
+                    final long timeOffset = parseClockSkewOffset(httpResponse, ase);
+                    SDKGlobalConfiguration.setGlobalTimeOffset(timeOffset);
+                }
+                resetRequestAfterError(request, ase);
+            }
+            return null;
+        }
+
+        /**
+         * Handles an I/O error of this attempt.
+         *
+         * @throws AmazonClientException if the request shouldn't be retried.
+         */
+        void handleException(IOException ioe) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to execute HTTP request: " + ioe.getMessage(), ioe);
+            }
+            awsRequestMetrics.incrementCounter(Field.Exception);
+            awsRequestMetrics.addProperty(Field.Exception, ioe);
+            awsRequestMetrics.addProperty(Field.AWSRequestID, null);
+
+            final AmazonClientException ace = new AmazonClientException(
+                    "Unable to execute HTTP request: " + ioe.getMessage(), ioe);
+            if (!shouldRetry(request.getOriginalRequest(),
+                    httpRequest == null ? null : httpRequest.getContent(),
+                    ace,
+                    requestCount,
+                    config.getRetryPolicy())
+                    || !acquireRetryCapacity(ioe instanceof InterruptedIOException
+                            ? RetryQuota.TIMEOUT_RETRY_COST : RetryQuota.RETRY_COST)) {
+                throw ace;
+            }
+
+            // Cache the retryable exception
+            retriedException = ace;
+            resetRequestAfterError(request, ioe);
+        }
+
+        /**
+         * Ends this attempt.
+         */
+        void releaseConnection() {
+            /*
+             * Some response handlers need to manually manage the HTTP
+             * connection and will take care of releasing the connection on
+             * their own, but if this response handler doesn't need the
+             * connection left open, we go ahead and release the it to free up
+             * resources.
+             */
+            if (!leaveHttpConnectionOpen && httpResponse != null) {
+                try {
+                    if (httpResponse.getRawContent() != null) {
+                        httpResponse.getRawContent().close();
+                    }
+                } catch (final IOException e) {
+                    log.warn("Cannot close the response content.", e);
+                }
+            }
+            httpResponse = null;
+        }
+    }
+
+    /**
+     * Drives the attempts of a request executed asynchronously. A step runs
+     * on the async executor, or on the thread of the HTTP client that
+     * received the response, and the pause before a retry is a timer task, so
+     * no thread is held while the request waits.
+     */
+    private final class AsyncExecution<T> implements Future<Response<T>>,
+            AsyncHttpClient.Callback {
+        private final RequestExecution<T> execution;
+        private final List<RequestHandler2> requestHandler2s;
+        private final ResponseCallback<T> callback;
+        private final AWSRequestMetrics awsRequestMetrics;
+        private final boolean hedged;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private boolean completed;
+        private boolean cancelled;
+        private Response<T> response;
+        private Throwable error;
+
+        AsyncExecution(RequestExecution<T> execution, List<RequestHandler2> requestHandler2s,
+                ResponseCallback<T> callback) {
+            this.execution = execution;
+            this.requestHandler2s = requestHandler2s;
+            this.callback = callback;
+            this.awsRequestMetrics = execution.awsRequestMetrics;
+            this.hedged = isHedged(execution.request);
+        }
+
+        void start() {
+            attempt();
+        }
+
+        private void attempt() {
+            if (isDone()) {
+                return;
+            }
+            final long backoffDelay;
+            try {
+                backoffDelay = execution.beginAttempt();
+            } catch (final Throwable t) {
+                fail(handleUnexpectedFailure(t, awsRequestMetrics));
+                return;
+            }
+            if (!execution.isRetry()) {
+                sendWhenPermitted();
+                return;
+            }
+            awsRequestMetrics.startEvent(Field.RetryPauseTime);
+            try {
+                getRetryTimer().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        awsRequestMetrics.endEvent(Field.RetryPauseTime);
+                        sendWhenPermitted();
+                    }
+                }, backoffDelay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                fail(new AmazonClientException("The client has been shut down", e));
+            }
+        }
+
+        /**
+         * Sends the attempt once the client rate limit permits it.
+         */
+        private void sendWhenPermitted() {
+            final long sendDelay = execution.acquireSendCapacity();
+            if (sendDelay <= 0) {
+                submitSend();
+                return;
+            }
+            awsRequestMetrics.startEvent(Field.RateLimitPauseTime);
+            try {
+                getRetryTimer().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        awsRequestMetrics.endEvent(Field.RateLimitPauseTime);
+                        submitSend();
+                    }
+                }, sendDelay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                fail(new AmazonClientException("The client has been shut down", e));
+            }
+        }
+
+        private void submitSend() {
+            if (isDone()) {
+                return;
+            }
+            try {
+                getAsyncExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        send();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                fail(new AmazonClientException("The client has been shut down", e));
+            }
+        }
+
+        private void send() {
+            if (isDone()) {
+                return;
+            }
+            final HttpRequest httpRequest;
+            byte[] hedgeContent = null;
+            try {
+                httpRequest = execution.prepareRequest();
+                if (hedged) {
+                    hedgeContent = bufferContent(httpRequest);
+                }
+            } catch (final IOException ioe) {
+                retryAfter(ioe);
+                return;
+            } catch (final Throwable t) {
+                fail(handleUnexpectedFailure(t, awsRequestMetrics));
+                return;
+            }
+
+            awsRequestMetrics.startEvent(Field.HttpRequestTime);
+            if (hedgeContent != null) {
+                new HedgedSend(httpRequest, hedgeContent).start();
+                return;
+            }
+            if (httpClient instanceof AsyncHttpClient) {
+                ((AsyncHttpClient) httpClient).executeAsync(httpRequest, this);
+                return;
+            }
+            final HttpResponse httpResponse;
+            try {
+                httpResponse = httpClient.execute(httpRequest);
+            } catch (final IOException ioe) {
+                onFailure(ioe);
+                return;
+            } catch (final Throwable t) {
+                failSend(t);
+                return;
+            }
+            onResponse(httpResponse);
+        }
+
+        @Override
+        public void onResponse(HttpResponse httpResponse) {
+            awsRequestMetrics.endEvent(Field.HttpRequestTime);
+            if (isCancelled()) {
+                discard(httpResponse);
+                return;
+            }
+            Response<T> result = null;
+            IOException ioe = null;
+            Throwable failure = null;
+            try {
+                result = execution.handleResponse(httpResponse);
+            } catch (final IOException e) {
+                ioe = e;
+            } catch (final Throwable t) {
+                failure = handleUnexpectedFailure(t, awsRequestMetrics);
+            } finally {
+                // Released before the next attempt can start
+                execution.releaseConnection();
+            }
+
+            if (failure != null) {
+                fail(failure);
+            } else if (ioe != null) {
+                retryAfter(ioe);
+            } else if (result != null) {
+                succeed(result);
+            } else {
+                attempt();
+            }
+        }
+
+        @Override
+        public void onFailure(IOException ioe) {
+            awsRequestMetrics.endEvent(Field.HttpRequestTime);
+            execution.releaseConnection();
+            retryAfter(ioe);
+        }
+
+        /**
+         * Ends the HTTP request time after an unexpected failure of the send
+         * of this attempt.
+         */
+        private void failSend(Throwable t) {
+            awsRequestMetrics.endEvent(Field.HttpRequestTime);
+            fail(handleUnexpectedFailure(t, awsRequestMetrics));
+        }
+
+        private void retryAfter(IOException ioe) {
+            try {
+                execution.handleException(ioe);
+            } catch (final AmazonClientException e) {
+                fail(e);
+                return;
+            }
+            attempt();
+        }
+
+        private void succeed(Response<T> result) {
+            try {
+                final TimingInfo timingInfo = awsRequestMetrics.getTimingInfo().endTiming();
+                afterResponse(execution.request, requestHandler2s, result, timingInfo);
+            } catch (final AmazonClientException e) {
+                fail(e);
+                return;
+            }
+            if (complete(result, null) && callback != null) {
+                callback.onResponse(result);
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (t instanceof AmazonClientException) {
+                afterError(execution.request, null, requestHandler2s, (AmazonClientException) t);
+            }
+            if (complete(null, t) && callback != null) {
+                callback.onError(t instanceof Exception
+                        ? (Exception) t
+                        : new AmazonClientException(t.getMessage(), t));
+            }
+        }
+
+        private synchronized boolean complete(Response<T> result, Throwable t) {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            response = result;
+            error = t;
+            done.countDown();
+            return true;
+        }
+
+        /**
+         * Stops the request from being retried. Cancellation takes effect
+         * between attempts: an attempt already sent isn't aborted, it runs
+         * until the HTTP client returns and its response is then closed
+         * without being handled. mayInterruptIfRunning is ignored.
+         */
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            cancelled = true;
+            done.countDown();
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return completed;
+        }
+
+        @Override
+        public Response<T> get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResult();
+        }
+
+        @Override
+        public Response<T> get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private void discard(HttpResponse httpResponse) {
+            try {
+                if (httpResponse.getRawContent() != null) {
+                    httpResponse.getRawContent().close();
+                }
+            } catch (final IOException e) {
+                log.debug("Cannot close the response content of a discarded request", e);
+            }
+        }
+
+        private synchronized Response<T> getResult() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return response;
+        }
+
+        /**
+         * The sends of a hedged attempt: the HTTP request, and a copy of it if
+         * no response has arrived after the hedge delay of the operation. The
+         * first response decides the attempt. The other send is aborted if
+         * the HTTP client is an {@link AbortableHttpClient}, otherwise its
+         * response is closed without being read once it arrives. A failed
+         * send only decides the attempt if the other send has failed too, or
+         * was never sent.
+         * <p>
+         * The request metrics aren't thread safe, so they're only updated by
+         * the thread that decides the attempt, which then carries on with
+         * it. The sends race on other threads, and only change the fields of
+         * this object, under its lock.
+         */
+        private final class HedgedSend {
+            private final HttpRequest httpRequest;
+            private final byte[] content;
+            private final Class<?> operation;
+            private final long startNanos = System.nanoTime();
+            private final List<Sender> inFlight = new ArrayList<Sender>(2);
+            private boolean hedgeSent;
+            private boolean decided;
+            private ScheduledFuture<?> hedgeTimer;
+
+            HedgedSend(HttpRequest httpRequest, byte[] content) {
+                this.httpRequest = httpRequest;
+                this.content = content;
+                this.operation = execution.request.getOriginalRequest().getClass();
+            }
+
+            void start() {
+                final Sender sender = new Sender(httpRequest, false);
+                synchronized (this) {
+                    inFlight.add(sender);
                     try {
-                        if (httpResponse.getRawContent() != null) {
-                            httpResponse.getRawContent().close();
-                        }
-                    } catch (final IOException e) {
-                        log.warn("Cannot close the response content.", e);
+                        hedgeTimer = getRetryTimer().schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                hedge();
+                            }
+                        }, hedgeDelays.delayMicros(operation), TimeUnit.MICROSECONDS);
+                    } catch (final RejectedExecutionException e) {
+                        log.debug("Not hedging, the retry timer has been shut down");
                     }
                 }
+                if (httpClient instanceof AsyncHttpClient) {
+                    ((AsyncHttpClient) httpClient).executeAsync(httpRequest, sender);
+                } else {
+                    sender.run();
+                }
             }
-        } /* end while (true) */
+
+            private void hedge() {
+                final Sender sender;
+                synchronized (this) {
+                    // Hedges would add to the load of a service that throttles
+                    if (decided || isDone() || rateLimiter != null && rateLimiter.isEnabled()) {
+                        return;
+                    }
+                    hedgeSent = true;
+                    sender = new Sender(copyOf(httpRequest, content), true);
+                    inFlight.add(sender);
+                }
+                try {
+                    if (httpClient instanceof AsyncHttpClient) {
+                        ((AsyncHttpClient) httpClient).executeAsync(sender.httpRequest, sender);
+                    } else {
+                        getAsyncExecutor().execute(sender);
+                    }
+                } catch (final RejectedExecutionException e) {
+                    sender.onFailure(new IOException("The client has been shut down"));
+                }
+            }
+
+            private void onResponse(Sender sender, HttpResponse httpResponse) {
+                final List<Sender> losers;
+                synchronized (this) {
+                    inFlight.remove(sender);
+                    if (decided) {
+                        losers = null;
+                    } else {
+                        decide();
+                        losers = new ArrayList<Sender>(inFlight);
+                    }
+                }
+                if (losers == null) {
+                    discard(httpResponse);
+                    return;
+                }
+                for (final Sender loser : losers) {
+                    abort(loser);
+                }
+                recordHedge(sender.hedge);
+                hedgeDelays.record(operation,
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+                AsyncExecution.this.onResponse(httpResponse);
+            }
+
+            private void onFailure(Sender sender, IOException ioe) {
+                if (decideFailure(sender)) {
+                    recordHedge(false);
+                    AsyncExecution.this.onFailure(ioe);
+                }
+            }
+
+            private void onUnexpectedFailure(Sender sender, Throwable t) {
+                if (decideFailure(sender)) {
+                    recordHedge(false);
+                    failSend(t);
+                }
+            }
+
+            /**
+             * @return true if the failure of a send decides the attempt,
+             *         because no other send may still succeed.
+             */
+            private synchronized boolean decideFailure(Sender sender) {
+                inFlight.remove(sender);
+                if (decided || !inFlight.isEmpty()) {
+                    return false;
+                }
+                decide();
+                return true;
+            }
+
+            private void decide() {
+                decided = true;
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel(false);
+                }
+            }
+
+            private synchronized boolean isDecided() {
+                return decided;
+            }
+
+            /**
+             * Updates the request metrics once the attempt is decided, on the
+             * thread that decided it.
+             *
+             * @param hedgeWon whether the response of the hedge decided it
+             */
+            private void recordHedge(boolean hedgeWon) {
+                final boolean hedged;
+                synchronized (this) {
+                    hedged = hedgeSent;
+                }
+                if (hedged) {
+                    awsRequestMetrics.incrementCounter(Field.HedgeCount);
+                }
+                if (hedgeWon) {
+                    awsRequestMetrics.incrementCounter(Field.HedgeWinCount);
+                }
+            }
+
+            /**
+             * Aborts a send that lost the race, so that it doesn't hold its
+             * connection, and its thread if the HTTP client blocks. Its
+             * failure, or its response, is then ignored.
+             */
+            private void abort(Sender loser) {
+                if (!(httpClient instanceof AbortableHttpClient)) {
+                    return;
+                }
+                try {
+                    ((AbortableHttpClient) httpClient).abort(loser.httpRequest);
+                } catch (final RuntimeException e) {
+                    log.debug("Cannot abort the send of a hedged request", e);
+                }
+            }
+
+            /**
+             * A send of the attempt, run on the thread that sends it unless
+             * the HTTP client is asynchronous.
+             */
+            private final class Sender implements Runnable, AsyncHttpClient.Callback {
+                private final HttpRequest httpRequest;
+                private final boolean hedge;
+
+                Sender(HttpRequest httpRequest, boolean hedge) {
+                    this.httpRequest = httpRequest;
+                    this.hedge = hedge;
+                }
+
+                @Override
+                public void run() {
+                    if (isDecided()) {
+                        // Lost the race before it was sent
+                        onFailure(new IOException("The hedged attempt was already decided"));
+                        return;
+                    }
+                    final HttpResponse httpResponse;
+                    try {
+                        httpResponse = httpClient.execute(httpRequest);
+                    } catch (final IOException ioe) {
+                        onFailure(ioe);
+                        return;
+                    } catch (final Throwable t) {
+                        HedgedSend.this.onUnexpectedFailure(this, t);
+                        return;
+                    }
+                    onResponse(httpResponse);
+                }
+
+                @Override
+                public void onResponse(HttpResponse httpResponse) {
+                    HedgedSend.this.onResponse(this, httpResponse);
+                }
+
+                @Override
+                public void onFailure(IOException ioe) {
+                    HedgedSend.this.onFailure(this, ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the content of an HTTP request into memory, so that the request
+     * can be sent twice, and resets the content.
+     *
+     * @return the content, empty if the request has none, or null if it's
+     *         longer than {@link HedgingPolicy#MAX_CONTENT_LENGTH} or can't be
+     *         read again.
+     */
+    static byte[] bufferContent(HttpRequest httpRequest) throws IOException {
+        final InputStream content = httpRequest.getContent();
+        if (content == null) {
+            return new byte[0];
+        }
+        if (!content.markSupported()
+                || httpRequest.getContentLength() > HedgingPolicy.MAX_CONTENT_LENGTH) {
+            return null;
+        }
+        content.mark(HedgingPolicy.MAX_CONTENT_LENGTH + 1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > HedgingPolicy.MAX_CONTENT_LENGTH) {
+                break;
+            }
+        }
+        content.reset();
+        return out.size() > HedgingPolicy.MAX_CONTENT_LENGTH ? null : out.toByteArray();
+    }
+
+    /**
+     * @return a copy of an HTTP request with its own stream of the content.
+     */
+    static HttpRequest copyOf(HttpRequest httpRequest, byte[] content) {
+        final HttpRequest copy = new HttpRequest(httpRequest.getMethod(), httpRequest.getUri(),
+                httpRequest.getHeaders(),
+                httpRequest.getContent() == null ? null : new ByteArrayInputStream(content));
+        copy.setStreaming(httpRequest.isStreaming());
+        return copy;
     }
 
     /**
@@ -571,9 +1458,60 @@ public class AmazonHttpClient {
      * Once a client has been shutdown, it cannot be used to make more requests.
      */
     public void shutdown() {
+        synchronized (this) {
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+            }
+        }
         httpClient.shutdown();
     }
 
+    /**
+     * Returns the executor of the asynchronous requests. When the HTTP client
+     * blocks while a request is sent, every request in flight holds a thread,
+     * so the executor has as many threads as connections are allowed.
+     * Otherwise a few threads are enough to sign requests and handle
+     * responses.
+     */
+    private synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            final int threads = httpClient instanceof AsyncHttpClient
+                    ? Math.max(ASYNC_MIN_THREADS, Runtime.getRuntime().availableProcessors())
+                    : Math.max(1, config.getMaxConnections());
+            asyncExecutor = Executors.newFixedThreadPool(threads,
+                    new DaemonThreadFactory("AmazonHttpClientAsync"));
+        }
+        return asyncExecutor;
+    }
+
+    private static synchronized ScheduledExecutorService getRetryTimer() {
+        if (retryTimer == null) {
+            retryTimer = Executors.newSingleThreadScheduledExecutor(
+                    new DaemonThreadFactory("AmazonHttpClientRetryTimer"));
+        }
+        return retryTimer;
+    }
+
+    /**
+     * Creates daemon threads, so that pending requests don't keep the
+     * process alive.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * Returns true if a failed request should be retried.
      *
@@ -744,8 +1682,8 @@ public class AmazonHttpClient {
     }
 
     /**
-     * Sleep for a period of time on failed request to avoid flooding a service
-     * with retries.
+     * Returns the time to wait before retrying a failed request, to avoid
+     * flooding a service with retries.
      *
      * @param originalRequest The original service request that is being
      *            executed.
@@ -755,7 +1693,7 @@ public class AmazonHttpClient {
      *            after the delay)
      * @param retryPolicy The retry policy configured in this http client.
      */
-    private long pauseBeforeNextRetry(AmazonWebServiceRequest originalRequest,
+    private long backoffDelay(AmazonWebServiceRequest originalRequest,
             AmazonClientException previousException,
             int requestCount,
             RetryPolicy retryPolicy) {
@@ -770,10 +1708,18 @@ public class AmazonHttpClient {
             log.debug("Retriable error detected, " +
                     "will retry in " + delay + "ms, attempt number: " + retries);
         }
+        return delay;
+    }
 
+    /**
+     * Sleep for a period of time on failed request to avoid flooding a service
+     * with retries.
+     *
+     * @param delay the time to sleep in milliseconds.
+     */
+    private void pauseBeforeNextRetry(long delay) {
         try {
             Thread.sleep(delay);
-            return delay;
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new AmazonClientException(e.getMessage(), e);
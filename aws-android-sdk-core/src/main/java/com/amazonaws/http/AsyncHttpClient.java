@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import java.io.IOException;
+
+/**
+ * An {@link HttpClient} that can also execute a request without blocking the
+ * calling thread. {@link AmazonHttpClient#executeAsync} uses it so that no
+ * thread of the SDK waits for the response.
+ */
+public interface AsyncHttpClient extends HttpClient {
+
+    /**
+     * Executes a {@link HttpRequest} and notifies the callback with its
+     * {@link HttpResponse}. The callback is notified exactly once, on a thread
+     * of the HTTP client.
+     *
+     * @param request a HTTP request
+     * @param callback the callback to notify
+     */
+    void executeAsync(HttpRequest request, Callback callback);
+
+    /**
+     * Receives the outcome of {@link AsyncHttpClient#executeAsync}.
+     */
+    interface Callback {
+
+        /**
+         * Called when the response headers are received.
+         *
+         * @param response the response object
+         */
+        void onResponse(HttpResponse response);
+
+        /**
+         * Called when the request couldn't be executed.
+         *
+         * @param e the connection problem
+         */
+        void onFailure(IOException e);
+    }
+}
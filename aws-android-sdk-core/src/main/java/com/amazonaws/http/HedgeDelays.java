@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.http;
+
+import com.amazonaws.metrics.Histogram;
+import com.amazonaws.retry.HedgingPolicy;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The latency of the operations a client hedges, and the delay after which
+ * their attempts are hedged. The latency of every response is recorded into
+ * a {@link Histogram} of its operation, and the delay is the percentile of
+ * the hedging policy, recomputed every {@link #RECOMPUTE_INTERVAL} responses.
+ * The histogram is cleared every {@link #WINDOW_SAMPLES} responses, so that
+ * the delay follows changes of the latency.
+ */
+final class HedgeDelays {
+
+    static final int RECOMPUTE_INTERVAL = 16;
+    static final int WINDOW_SAMPLES = 1024;
+
+    /**
+     * Latencies are kept for up to this number of operations, and attempts of
+     * other operations are hedged after the max delay.
+     */
+    private static final int MAX_OPERATIONS = 256;
+
+    private final HedgingPolicy policy;
+    private final long maxDelayMicros;
+    private final ConcurrentMap<Class<?>, Latency> operations =
+            new ConcurrentHashMap<Class<?>, Latency>();
+
+    HedgeDelays(HedgingPolicy policy) {
+        this.policy = policy;
+        this.maxDelayMicros = TimeUnit.MILLISECONDS.toMicros(policy.getMaxDelayMillis());
+    }
+
+    HedgingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param operation the class of the original request of an operation.
+     * @return the time to wait before hedging an attempt of the operation, in
+     *         microseconds.
+     */
+    long delayMicros(Class<?> operation) {
+        final Latency latency = operations.get(operation);
+        if (latency == null) {
+            return maxDelayMicros;
+        }
+        final long delay = latency.delayMicros;
+        return delay < 0 ? maxDelayMicros : Math.min(delay, maxDelayMicros);
+    }
+
+    /**
+     * Records the time an attempt of an operation took to receive its
+     * response.
+     *
+     * @param operation the class of the original request of the operation.
+     * @param micros the latency, in microseconds.
+     */
+    void record(Class<?> operation, long micros) {
+        Latency latency = operations.get(operation);
+        if (latency == null) {
+            if (operations.size() >= MAX_OPERATIONS) {
+                return;
+            }
+            latency = new Latency();
+            final Latency existing = operations.putIfAbsent(operation, latency);
+            if (existing != null) {
+                latency = existing;
+            }
+        }
+        latency.record(micros);
+    }
+
+    /**
+     * The latency of an operation.
+     */
+    private final class Latency {
+        private final Histogram histogram = new Histogram();
+        private final AtomicInteger samples = new AtomicInteger();
+        /** The current delay, -1 until enough samples are recorded. */
+        private volatile long delayMicros = -1;
+
+        void record(long micros) {
+            histogram.record(micros);
+            if (samples.incrementAndGet() % RECOMPUTE_INTERVAL != 0) {
+                return;
+            }
+            final Histogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() >= HedgingPolicy.MIN_SAMPLES) {
+                delayMicros = snapshot.getValueAtPercentile(policy.getDelayPercentile());
+            }
+            if (snapshot.getCount() >= WINDOW_SAMPLES) {
+                histogram.reset();
+            }
+        }
+    }
+}
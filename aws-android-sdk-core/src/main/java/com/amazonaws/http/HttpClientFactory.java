@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.ClientConfiguration;
+
+/**
+ * Creates the {@link HttpClient} of a service client. Set on a
+ * {@link ClientConfiguration} to replace the default {@link UrlHttpClient}
+ * with another implementation.
+ *
+ * @see ClientConfiguration#setHttpClientFactory(HttpClientFactory)
+ */
+public interface HttpClientFactory {
+
+    /**
+     * Creates an HTTP client for the given configuration.
+     *
+     * @param config the client configuration, with the timeouts, connection
+     *            limits and proxy settings to apply.
+     * @return a new HTTP client.
+     */
+    HttpClient createHttpClient(ClientConfiguration config);
+}
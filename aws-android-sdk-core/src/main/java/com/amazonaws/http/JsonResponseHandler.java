@@ -21,7 +21,6 @@ import com.amazonaws.internal.CRC32MismatchException;
 import com.amazonaws.transform.JsonUnmarshallerContext;
 import com.amazonaws.transform.Unmarshaller;
 import com.amazonaws.transform.VoidJsonUnmarshaller;
-import com.amazonaws.util.CRC32ChecksumCalculatingInputStream;
 import com.amazonaws.util.StringUtils;
 import com.amazonaws.util.json.AwsJsonReader;
 import com.amazonaws.util.json.JsonUtils;
@@ -32,10 +31,9 @@ import com.amazonaws.logging.LogFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
+import java.util.zip.CRC32;
 
 /**
  * Default implementation of HttpResponseHandler that handles a successful
@@ -49,6 +47,8 @@ public class JsonResponseHandler<T> implements HttpResponseHandler<AmazonWebServ
     /** The JSON unmarshaller to use when handling the response */
     private Unmarshaller<T, JsonUnmarshallerContext> responseUnmarshaller;
 
+    private static final int REMAINING_CONTENT_BUFFER_SIZE = 1024;
+
     /** Shared logger for profiling information */
     private static final Log log = LogFactory.getLog("com.amazonaws.request");
 
@@ -100,23 +100,12 @@ public class JsonResponseHandler<T> implements HttpResponseHandler<AmazonWebServ
 
         boolean isGzipEncoded = "gzip".equals(response.getHeaders().get("Content-Encoding"));
 
-        CRC32ChecksumCalculatingInputStream checksumCalculatingInputStream = null;
-
         // Handle various combinations of GZIP encoding and CRC checksums. Some services (e.g.,
         // DynamoDB) return a checksum with gzip encoding, some do not. We'll also cover the case
-        // where a service returns a checksum for non-gzip encoding. The default case (not gzip
-        // encoded, no checksum) is already handled: we'll just operate on the raw content stream.
-        if (crc32Checksum != null) {
-            checksumCalculatingInputStream = new CRC32ChecksumCalculatingInputStream(content);
-            content = checksumCalculatingInputStream;
-        }
-
-        if (isGzipEncoded) {
-            content = new GZIPInputStream(content);
-        }
-
-        final AwsJsonReader jsonReader = JsonUtils.getJsonReader(new InputStreamReader(content,
-                StringUtils.UTF8));
+        // where a service returns a checksum for non-gzip encoding. The checksum is calculated on
+        // the raw bytes as the reader inflates and tokenizes them.
+        final CRC32 crc32 = crc32Checksum != null ? new CRC32() : null;
+        final AwsJsonReader jsonReader = JsonUtils.getJsonReader(content, isGzipEncoded, crc32);
 
         try {
             final AmazonWebServiceResponse<T> awsResponse = new AmazonWebServiceResponse<T>();
@@ -125,9 +114,10 @@ public class JsonResponseHandler<T> implements HttpResponseHandler<AmazonWebServ
 
             final T result = responseUnmarshaller.unmarshall(unmarshallerContext);
 
-            if (checksumCalculatingInputStream != null) {
+            if (crc32 != null) {
+                checksumRemainingContent(content, crc32);
                 final long serverSideCRC = Long.parseLong(crc32Checksum);
-                final long clientSideCRC = checksumCalculatingInputStream.getCRC32Checksum();
+                final long clientSideCRC = crc32.getValue();
                 if (clientSideCRC != serverSideCRC) {
                     throw new CRC32MismatchException(
                             "Client calculated crc32 checksum didn't match that calculated by server side");
@@ -154,6 +144,24 @@ public class JsonResponseHandler<T> implements HttpResponseHandler<AmazonWebServ
         }
     }
 
+    /**
+     * Adds the bytes the reader didn't need, such as trailing whitespace, to
+     * the checksum of the content.
+     */
+    private static void checksumRemainingContent(InputStream content, CRC32 crc32)
+            throws IOException {
+        int b = content.read();
+        if (b == -1) {
+            return;
+        }
+        crc32.update(b);
+        final byte[] buffer = new byte[REMAINING_CONTENT_BUFFER_SIZE];
+        int n;
+        while ((n = content.read(buffer)) != -1) {
+            crc32.update(buffer, 0, n);
+        }
+    }
+
     /**
      * Hook for subclasses to override in order to collect additional metadata
      * from service responses.
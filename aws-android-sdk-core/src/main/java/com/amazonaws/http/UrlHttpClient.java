@@ -16,6 +16,7 @@
 package com.amazonaws.http;
 
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.internal.FileRegionInputStream;
 
 import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
@@ -32,6 +33,7 @@ import java.security.GeneralSecurityException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -46,8 +48,11 @@ import javax.net.ssl.TrustManager;
  * some issue when talking to S3 service. See <a
  * href="http://docs.aws.amazon.com/AmazonS3/latest/API/RESTObjectPUT.html">S3's
  * Put Object API</a> for the requirement of handling 100-continue.
+ * <p>
+ * A request is aborted by disconnecting its connection, which fails the
+ * thread waiting for the response.
  */
-public class UrlHttpClient implements HttpClient {
+public class UrlHttpClient implements AbortableHttpClient {
 
     private static final String TAG = "amazonaws";
     private static final Log log = LogFactory.getLog(UrlHttpClient.class);
@@ -55,6 +60,10 @@ public class UrlHttpClient implements HttpClient {
     private static final int BUFFER_SIZE_MULTIPLIER = 8;
     private final ClientConfiguration config;
 
+    /** The connections of the requests waiting for their response. **/
+    private final Map<HttpRequest, HttpURLConnection> connections =
+            new ConcurrentHashMap<HttpRequest, HttpURLConnection>();
+
     /**
      * Constructor.
      * @param config the client config.
@@ -70,19 +79,32 @@ public class UrlHttpClient implements HttpClient {
         final CurlBuilder curlBuilder = config.isCurlLogging()
                 ? new CurlBuilder(request.getUri().toURL()) : null;
 
-        configureConnection(request, connection);
-        applyHeadersAndMethod(request, connection, curlBuilder);
-        writeContentToConnection(request, connection, curlBuilder);
+        connections.put(request, connection);
+        try {
+            configureConnection(request, connection);
+            applyHeadersAndMethod(request, connection, curlBuilder);
+            writeContentToConnection(request, connection, curlBuilder);
 
-        if (curlBuilder != null) {
-            if (curlBuilder.isValid()) {
-                printToLog(curlBuilder.build());
-            } else {
-                printToLog("Failed to create curl, content too long");
+            if (curlBuilder != null) {
+                if (curlBuilder.isValid()) {
+                    printToLog(curlBuilder.build());
+                } else {
+                    printToLog("Failed to create curl, content too long");
+                }
             }
+
+            return createHttpResponse(request, connection);
+        } finally {
+            connections.remove(request);
         }
+    }
 
-        return createHttpResponse(request, connection);
+    @Override
+    public void abort(final HttpRequest request) {
+        final HttpURLConnection connection = connections.remove(request);
+        if (connection != null) {
+            connection.disconnect();
+        }
     }
 
     @SuppressWarnings("checkstyle:emptyblock")
@@ -168,7 +190,14 @@ public class UrlHttpClient implements HttpClient {
                     curlBuilder.setContentOverflow(true);
                 }
             }
-            write(request.getContent(), os, curlBuilder, curlBuffer);
+            final InputStream content = request.getContent();
+            final FileRegionInputStream fileRegion = FileRegionInputStream.find(content);
+            if (fileRegion != null && curlBuffer == null) {
+                // File content is copied to the connection in large blocks
+                fileRegion.writeTo(content, os);
+            } else {
+                write(content, os, curlBuilder, curlBuffer);
+            }
             if (curlBuilder != null && curlBuffer != null && curlBuffer.position() != 0) {
                 // has content
                 curlBuilder.setContent(new String(curlBuffer.array(), "UTF-8"));
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Request content backed by a region of a file. The region is read with
+ * positional reads on the file's channel, so marking and resetting the stream
+ * for a retry only moves a position and never reopens or re-wraps the file.
+ * <p>
+ * The file must have at least {@code length} bytes after {@code offset}. The
+ * HTTP client finds the region behind the filter streams of a request content
+ * with {@link #find(InputStream)} and sends the content with
+ * {@link #writeTo(InputStream, OutputStream)}, which copies it to the
+ * connection in large blocks.
+ */
+public class FileRegionInputStream extends SdkInputStream {
+
+    private static final int WRITE_BUFFER_SIZE = 128 * 1024;
+
+    private final File file;
+    private final FileInputStream fis;
+    private final FileChannel fileChannel;
+    private final long offset;
+    private final long length;
+
+    /** Position in the region, from 0 to length. */
+    private long position;
+    private long markPos;
+    private byte[] writeBuffer;
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * Creates a stream of the whole file.
+     *
+     * @param file the file to read.
+     * @throws IOException if the file can't be opened.
+     */
+    public FileRegionInputStream(File file) throws IOException {
+        this(file, 0, file.length());
+    }
+
+    /**
+     * Creates a stream of {@code length} bytes of the file starting at
+     * {@code offset}.
+     *
+     * @param file the file to read.
+     * @param offset the position of the first byte of the region.
+     * @param length the number of bytes in the region.
+     * @throws IOException if the file can't be opened.
+     */
+    public FileRegionInputStream(File file, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid region offset " + offset
+                    + ", length " + length);
+        }
+        this.file = file;
+        this.fis = new FileInputStream(file);
+        this.fileChannel = fis.getChannel();
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Finds the file region a request content reads from, looking through the
+     * SDK filter streams wrapping it, such as the length checking and progress
+     * reporting streams.
+     *
+     * @param content the content of a request.
+     * @return the file region, or null if the content doesn't read from one.
+     */
+    public static FileRegionInputStream find(InputStream content) {
+        InputStream in = content;
+        while (in instanceof SdkFilterInputStream) {
+            in = ((SdkFilterInputStream) in).getDelegate();
+        }
+        return in instanceof FileRegionInputStream ? (FileRegionInputStream) in : null;
+    }
+
+    /**
+     * @return the file this stream reads.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes in the region.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Writes the rest of the region to the given stream.
+     *
+     * @param os the stream to write to.
+     * @return the number of bytes written.
+     * @throws IOException if the file can't be read, is shorter than the
+     *             region or the stream can't be written.
+     */
+    public long writeTo(OutputStream os) throws IOException {
+        return writeTo(this, os);
+    }
+
+    /**
+     * Writes the rest of a content that reads from this region to the given
+     * stream, in blocks as large as the region allows. The blocks are read
+     * through the content, so the streams wrapping the region still check and
+     * report them.
+     *
+     * @param content this region or a stream wrapping it.
+     * @param os the stream to write to.
+     * @return the number of bytes written.
+     * @throws IOException if the content can't be read or the stream can't be
+     *             written.
+     */
+    public long writeTo(InputStream content, OutputStream os) throws IOException {
+        if (writeBuffer == null) {
+            // Kept for retries of the same request
+            writeBuffer = new byte[(int) Math.min(WRITE_BUFFER_SIZE, Math.max(length, 1))];
+        }
+        long written = 0;
+        int bytesRead;
+        while ((bytesRead = content.read(writeBuffer, 0, writeBuffer.length)) != -1) {
+            os.write(writeBuffer, 0, bytesRead);
+            written += bytesRead;
+        }
+        return written;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int bytesRead = read(singleByte, 0, 1);
+        return bytesRead == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        abortIfNeeded();
+        if (len == 0) {
+            return 0;
+        }
+        final long remaining = length - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+        final int bytesRead = fileChannel.read(buffer, offset + position);
+        if (bytesRead == -1) {
+            throw new IOException("File " + file + " ended " + remaining
+                    + " bytes before the end of the content");
+        }
+        position += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        abortIfNeeded();
+        final long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        abortIfNeeded();
+        return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        abortIfNeeded();
+        markPos = position;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        abortIfNeeded();
+        position = markPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fis.close();
+    }
+
+    @Override
+    protected InputStream getWrappedInputStream() {
+        return fis;
+    }
+}
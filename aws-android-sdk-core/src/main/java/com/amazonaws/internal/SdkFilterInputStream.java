@@ -29,6 +29,13 @@ public class SdkFilterInputStream extends FilterInputStream implements MetricAwa
         super(in);
     }
 
+    /**
+     * @return the stream this stream reads from.
+     */
+    InputStream getDelegate() {
+        return in;
+    }
+
     @Override
     @Deprecated
     public boolean isMetricActivated() {
@@ -26,10 +26,12 @@ import com.amazonaws.util.Base64;
 import java.security.Key;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
@@ -44,12 +46,26 @@ public class AWSKeyValueStore {
     // This cacheFactory will maintain a reference to the same cache for the same
     // SharedPreferences Name thus producing a 1:1 mapping between a in-memory cache
     // and the SharedPreferences.
-    static Map<String, HashMap<String, String>> cacheFactory = new HashMap<String, HashMap<String, String>>();
+    static Map<String, ConcurrentHashMap<String, String>> cacheFactory =
+            new ConcurrentHashMap<String, ConcurrentHashMap<String, String>>();
 
     // In-memory store operates on the key passed in and does not use the suffixes.
-    private Map<String, String> cache;
+    // Reads of the cache don't lock the store; writes are made while holding
+    // the lock, along with the writes to the SharedPreferences.
+    private ConcurrentHashMap<String, String> cache;
+
+    private volatile boolean isPersistenceEnabled;
+
+    // Whether all the entries of the SharedPreferences have been decrypted
+    // into the cache, after which the cache holds every value of the store.
+    private volatile boolean isPersistentStoreLoaded;
+
+    // The encryption key, resolved once from the KeyProvider.
+    private Key encryptionKey;
+
+    // Reused for every value encrypted or decrypted while holding the lock.
+    private Cipher cipher;
 
-    private boolean isPersistenceEnabled;
     Context context;
     SharedPreferences sharedPreferencesForData;
     private final String sharedPreferencesName;
@@ -98,14 +114,16 @@ public class AWSKeyValueStore {
 
     private static final int AWS_KEY_VALUE_STORE_VERSION = 1;
 
-    private static Map<String, String> getCacheForKey(String key) {
-        if (cacheFactory.containsKey(key)) {
-            return cacheFactory.get(key);
-        } else {
-            HashMap<String, String> cache = new HashMap<String, String>();
-            cacheFactory.put(key, cache);
-            return cache;
+    private static ConcurrentHashMap<String, String> getCacheForKey(String key) {
+        ConcurrentHashMap<String, String> cache = cacheFactory.get(key);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<String, String>();
+            final ConcurrentHashMap<String, String> existing = cacheFactory.putIfAbsent(key, cache);
+            if (existing != null) {
+                cache = existing;
+            }
         }
+        return cache;
     }
 
     /**
@@ -141,6 +159,7 @@ public class AWSKeyValueStore {
             this.isPersistenceEnabled = isPersistenceEnabled;
             // Transitioning from false to true for isPersistenceEnabled
             if (isPersistenceEnabled && !previousIsPersistenceEnabled) {
+                this.isPersistentStoreLoaded = false;
                 this.sharedPreferencesForData = context.getSharedPreferences(sharedPreferencesName,
                         Context.MODE_PRIVATE);
                 this.sharedPreferencesForEncryptionMaterials = context.getSharedPreferences(
@@ -178,90 +197,135 @@ public class AWSKeyValueStore {
      * @return true if a key-value pair exists for the key
      *         passed in.
      */
-    public synchronized boolean contains(final String dataKey) {
-        if (isPersistenceEnabled) {
-            if (cache.containsKey(dataKey)) {
-                return true;
-            } else {
-                return sharedPreferencesForData.contains(getDataKeyUsedInPersistentStore(dataKey));
+    public boolean contains(final String dataKey) {
+        if (dataKey == null) {
+            return false;
+        }
+        if (cache.containsKey(dataKey)) {
+            return true;
+        }
+        if (!isPersistenceEnabled || isPersistentStoreLoaded) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (!isPersistenceEnabled) {
+                return cache.containsKey(dataKey);
             }
-        } else {
-            return cache.containsKey(dataKey);
+            loadPersistentStore();
+            if (isPersistentStoreLoaded) {
+                return cache.containsKey(dataKey);
+            }
+            return sharedPreferencesForData.contains(getDataKeyUsedInPersistentStore(dataKey));
         }
     }
 
     /**
      * Retrieve the value for the given key from the key-value store.
      *
-     * First, retrieve the data from in-memory cache always.
-     * Only if the in-memory cache does not contain the data,
-     * go to the persistent store, read the data and return.
+     * First, retrieve the data from in-memory cache always, without
+     * locking the store. Only if the in-memory cache does not contain
+     * the data, and the persistent store hasn't been read yet, read and
+     * decrypt all the data of the persistent store into the cache, and
+     * return the value from there.
      *
      * @param dataKey key that identifies the value to be retrieved.
      * @return the value corresponding to the key.
      */
-    public synchronized String get(final String dataKey) {
+    public String get(final String dataKey) {
         if (dataKey == null) {
             return null;
         }
 
-        if (cache.containsKey(dataKey) || !isPersistenceEnabled) {
-            return cache.get(dataKey);
+        final String value = cache.get(dataKey);
+        if (value != null || !isPersistenceEnabled || isPersistentStoreLoaded) {
+            return value;
         }
+        return getFromPersistentStore(dataKey);
+    }
 
-        // Retrieve the decryption key used for decrypting the data.
-
-        // dataKey becomes dataKey.encrypted
-        String dataKeyInPersistentStore = getDataKeyUsedInPersistentStore(dataKey);
+    private synchronized String getFromPersistentStore(final String dataKey) {
+        if (isPersistenceEnabled) {
+            loadPersistentStore();
+        }
+        return cache.get(dataKey);
+    }
 
-        String encryptionKeyAlias = getEncryptionKeyAlias();
+    /**
+     * Decrypt all the data of the SharedPreferences into the in-memory cache,
+     * with a single retrieval of the decryption key, so that reads after the
+     * first one never go to the persistent store. Values already in the cache
+     * are kept. If the decryption key cannot be retrieved, the store is left
+     * unloaded and the consumer of get would treat the data as if it is not
+     * present on the persistent store.
+     *
+     * Must be called while holding the lock.
+     */
+    private void loadPersistentStore() {
+        if (isPersistentStoreLoaded) {
+            return;
+        }
 
-        // Based on the encryption key alias, retrieve the encryption key
-        // If the encryption key cannot be retrieved, return null and
-        // the consumer of get would treat it as if this data is not present
-        // on the persistent store.
-        Key decryptionKey = retrieveEncryptionKey(encryptionKeyAlias);
-        if (decryptionKey == null) {
-            logger.error("Error in retrieving the decryption key " +
-                    "used to decrypt the data from the persistent store. " +
-                    "Returning null for the requested dataKey = " + dataKey);
-            return null;
+        final List<String> dataKeys = new ArrayList<String>();
+        for (final String keyInPersistentStore : sharedPreferencesForData.getAll().keySet()) {
+            if (keyInPersistentStore.endsWith(SHARED_PREFERENCES_DATA_IDENTIFIER_SUFFIX)) {
+                dataKeys.add(keyInPersistentStore.substring(0, keyInPersistentStore.length()
+                        - SHARED_PREFERENCES_DATA_IDENTIFIER_SUFFIX.length()));
+            }
         }
 
-        // If the key-value pair is not found in the SharedPreferences,
-        // return null.
-        if (!sharedPreferencesForData.contains(dataKeyInPersistentStore)) {
-            return null;
+        if (!dataKeys.isEmpty()) {
+            // Retrieve the decryption key used for decrypting the data.
+            final Key decryptionKey = getEncryptionKey();
+            if (decryptionKey == null) {
+                logger.error("Error in retrieving the decryption key " +
+                        "used to decrypt the data from the persistent store. " +
+                        "Returning null for the data of " + sharedPreferencesName);
+                return;
+            }
+
+            for (final String dataKey : dataKeys) {
+                if (!cache.containsKey(dataKey)) {
+                    loadFromPersistentStore(decryptionKey, dataKey);
+                }
+            }
         }
+        isPersistentStoreLoaded = true;
+    }
+
+    private void loadFromPersistentStore(final Key decryptionKey, final String dataKey) {
+        // dataKey becomes dataKey.encrypted
+        final String dataKeyInPersistentStore = getDataKeyUsedInPersistentStore(dataKey);
 
         try {
             // If the version of data stored mismatches with the version of the store,
-            // return null.
+            // skip it.
             final int keyValueStoreVersion = Integer.parseInt(
                     sharedPreferencesForData
                             .getString(dataKeyInPersistentStore + SHARED_PREFERENCES_STORE_VERSION_SUFFIX, null));
             if (keyValueStoreVersion != AWS_KEY_VALUE_STORE_VERSION) {
                 logger.error("The version of the data read from SharedPreferences for " +
                         dataKey + " does not match the version of the store.");
-                return null;
+                return;
             }
 
             // Read from the SharedPreferences and decrypt
             final String encryptedData = sharedPreferencesForData.getString(dataKeyInPersistentStore, null);
 
-            String decryptedDataInString = decrypt(decryptionKey,
+            final String decryptedDataInString = decrypt(decryptionKey,
                     getInitializationVector(dataKeyInPersistentStore),
                     encryptedData);
+            if (decryptedDataInString == null) {
+                throw new Exception("The decrypted data for dataKey = " + dataKey + " is null.");
+            }
 
             // Update the in-memory cache after read from disk.
             cache.put(dataKey, decryptedDataInString);
-            return decryptedDataInString;
         } catch (Exception ex) {
             logger.error("Error in retrieving value for dataKey = " + dataKey, ex);
 
             // Remove the dataKey and its associated value if there is an exception in decryption
             remove(dataKey);
-            return null;
         }
     }
 
@@ -285,7 +349,12 @@ public class AWSKeyValueStore {
         }
 
         // Irrespective of persistence is enabled or not, store in memory.
-        cache.put(dataKey, value);
+        // The cache does not hold nulls, so a null value removes the key.
+        if (value == null) {
+            cache.remove(dataKey);
+        } else {
+            cache.put(dataKey, value);
+        }
         if (!isPersistenceEnabled) {
             return;
         }
@@ -294,7 +363,6 @@ public class AWSKeyValueStore {
         // Convert string to bytes -> Encrypt -> Base64 encode -> Store
         if (value == null) {
             logger.debug("Value is null. Removing the data, IV and version from SharedPreferences");
-            cache.remove(dataKey);
             remove(dataKey);
             return;
         }
@@ -307,7 +375,7 @@ public class AWSKeyValueStore {
         // Based on the encryption key alias, retrieve the encryption key
         // If the encryption key cannot be retrieved, create a new encryption key
         // with the encryption key alias.
-        Key encryptionKey = retrieveEncryptionKey(encryptionKeyAlias);
+        Key encryptionKey = getEncryptionKey();
         if (encryptionKey == null) {
             // If the encryption key is null, create a new encryption key
             logger.warn("No encryption key found for encryptionKeyAlias: " + encryptionKeyAlias);
@@ -318,6 +386,7 @@ public class AWSKeyValueStore {
                         "Skipping persisting the data in the persistent store.");
                 return;
             }
+            this.encryptionKey = encryptionKey;
         }
 
         try {
@@ -330,6 +399,12 @@ public class AWSKeyValueStore {
             String base64EncodedEncryptedString = encrypt(encryptionKey,
                     getAlgorithmParameterSpecForIV(iv),
                     value);
+            if (base64EncodedEncryptedString == null) {
+                // Resolve the encryption key again for the next write, in
+                // case it has been replaced.
+                this.encryptionKey = null;
+                throw new Exception("Error in encrypting the data for dataKey = " + dataKey);
+            }
 
             // Persist
             String base64EncodedIV = Base64.encodeAsString(iv);
@@ -359,6 +434,10 @@ public class AWSKeyValueStore {
      * @param dataKey identifies the key-value pair to be removed
      */
     public synchronized void remove(String dataKey) {
+        if (dataKey == null) {
+            return;
+        }
+
         // Irrespective of persistence is enabled or not, mutate in memory.
         cache.remove(dataKey);
 
@@ -401,7 +480,7 @@ public class AWSKeyValueStore {
      */
     private String encrypt(Key encryptionKey, AlgorithmParameterSpec ivSpec, String data) {
         try {
-            Cipher cipher = Cipher.getInstance(CIPHER_AES_GCM_NOPADDING);
+            final Cipher cipher = getCipher();
             cipher.init(Cipher.ENCRYPT_MODE,
                     encryptionKey,
                     ivSpec);
@@ -428,7 +507,7 @@ public class AWSKeyValueStore {
                            final String encryptedData) {
         try {
             byte[] encryptedDecodedData = Base64.decode(encryptedData);
-            Cipher cipher = Cipher.getInstance(CIPHER_AES_GCM_NOPADDING);
+            final Cipher cipher = getCipher();
             cipher.init(Cipher.DECRYPT_MODE,
                     decryptionKey,
                     ivSpec);
@@ -440,6 +519,18 @@ public class AWSKeyValueStore {
         }
     }
 
+    /**
+     * Must be called while holding the lock.
+     *
+     * @return the cipher for AES/GCM, created on first use.
+     */
+    private Cipher getCipher() throws Exception {
+        if (cipher == null) {
+            cipher = Cipher.getInstance(CIPHER_AES_GCM_NOPADDING);
+        }
+        return cipher;
+    }
+
     private AlgorithmParameterSpec getInitializationVector(final String keyOfDataInSharedPreferences) throws Exception {
         final String keyOfIV = keyOfDataInSharedPreferences + SHARED_PREFERENCES_IV_SUFFIX;
 
@@ -475,6 +566,19 @@ public class AWSKeyValueStore {
         }
     }
 
+    /**
+     * Must be called while holding the lock.
+     *
+     * @return the encryption key, retrieved from the KeyProvider the first
+     *         time, or null if it cannot be retrieved.
+     */
+    private Key getEncryptionKey() {
+        if (encryptionKey == null) {
+            encryptionKey = retrieveEncryptionKey(getEncryptionKeyAlias());
+        }
+        return encryptionKey;
+    }
+
     private synchronized Key retrieveEncryptionKey(final String encryptionKeyAlias) {
         try {
             return keyProvider.retrieveKey(encryptionKeyAlias);
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values, with log-linear buckets
+ * in the manner of an HDR histogram: every power of two is split into
+ * {@value #SUB_BUCKETS} linear buckets, so values up to
+ * {@code 2 * SUB_BUCKETS} are counted exactly and larger values to within
+ * about 3%. Recording a value is a few atomic operations and never allocates,
+ * so many threads can record into the same histogram; {@link #snapshot()}
+ * copies the counts for reading.
+ */
+public final class Histogram {
+
+    /** The number of linear buckets every power of two is split into. */
+    static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The largest value counted in its own bucket; larger values are counted
+     * in the last bucket, though the maximum is kept exactly. That is over 19
+     * hours in microseconds, or 64 GB in bytes.
+     */
+    static final long MAX_TRACKABLE_VALUE = (1L << 36) - 1;
+
+    private static final int BUCKETS = bucketOf(MAX_TRACKABLE_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, negative values are recorded as zero.
+     */
+    public void record(long value) {
+        final long v = value < 0 ? 0 : value;
+        counts.incrementAndGet(bucketOf(Math.min(v, MAX_TRACKABLE_VALUE)));
+        sum.addAndGet(v);
+        long current;
+        while (v < (current = min.get()) && !min.compareAndSet(current, v)) {
+            // retry
+        }
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return a copy of the histogram. Values recorded while it is taken may
+     *         or may not be in it.
+     */
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.get(), min.get(), max.get());
+    }
+
+    /**
+     * Clears the histogram. Values recorded while it is cleared may be
+     * partially kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * @return the bucket a value is counted in.
+     */
+    static int bucketOf(long value) {
+        // The number of halvings that bring the value below 2 * SUB_BUCKETS
+        final int magnitude = Math.max(0,
+                63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (magnitude << SUB_BUCKET_BITS) + (int) (value >>> magnitude);
+    }
+
+    /**
+     * @return the smallest value counted in a bucket.
+     */
+    static long lowestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        final int magnitude = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return (long) (bucket - (magnitude << SUB_BUCKET_BITS)) << magnitude;
+    }
+
+    /**
+     * @return the largest value counted in a bucket.
+     */
+    static long highestValueOf(int bucket) {
+        return lowestValueOf(bucket + 1) - 1;
+    }
+
+    /**
+     * An immutable copy of a {@link Histogram}.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = count == 0 ? 0 : min;
+            this.max = count == 0 ? 0 : max;
+        }
+
+        /** @return the number of recorded values. */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return the sum of the recorded values. */
+        public long getSum() {
+            return sum;
+        }
+
+        /** @return the smallest recorded value, or 0 if there are none. */
+        public long getMin() {
+            return min;
+        }
+
+        /** @return the largest recorded value, or 0 if there are none. */
+        public long getMax() {
+            return max;
+        }
+
+        /** @return the mean of the recorded values, or 0 if there are none. */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns the value at a percentile, to within the precision of the
+         * buckets, and never outside the recorded minimum and maximum.
+         *
+         * @param percentile the percentile, from 0 to 100.
+         * @return the highest value of the bucket the percentile falls in, or
+         *         0 if there are no values.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            // The last bucket also counts the values beyond it
+            for (int i = 0; i < counts.length - 1; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.max(min, Math.min(max, highestValueOf(i)));
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", min=" + min + ", mean=" + Math.round(getMean())
+                    + ", p50="
+                    + getValueAtPercentile(50) + ", p90=" + getValueAtPercentile(90)
+                    + ", p99=" + getValueAtPercentile(99) + ", max=" + max;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.metrics;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.TimingInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request metric collector that keeps its metrics in process: the client
+ * execution, HTTP request and signing times, retry counts and bytes processed
+ * of every request, and the hedges of hedged requests, are recorded into
+ * {@link Histogram}s per service and operation, which can be read with {@link #getSnapshot()} or
+ * {@link #export()}. Recording takes no locks and doesn't allocate once an
+ * operation has been seen, so it can be left enabled.
+ * <p>
+ * The collector is opt-in: it isn't installed by default, and nothing is
+ * recorded until it is given to a client or to {@link AwsSdkMetrics}. To
+ * collect the metrics of a client:
+ *
+ * <pre>
+ * HistogramRequestMetricCollector collector = new HistogramRequestMetricCollector();
+ * AmazonKinesisClient client = new AmazonKinesisClient(credentialsProvider,
+ *         clientConfiguration, collector);
+ * </pre>
+ *
+ * or of all clients, with
+ * {@code AwsSdkMetrics.setMetricCollector(collector.asMetricCollector())}.
+ * Times are recorded in microseconds. The {@code HedgeWinCount} of a hedged
+ * request is recorded as 0 when the first send won, so its mean is the
+ * fraction of hedges that won.
+ */
+public class HistogramRequestMetricCollector extends RequestMetricCollector {
+
+    /** The metrics recorded for every operation. */
+    public static final List<Field> METRICS = Collections.unmodifiableList(
+            Arrays.asList(Field.ClientExecuteTime, Field.HttpRequestTime,
+                    Field.RequestSigningTime, Field.RetryCount, Field.BytesProcessed,
+                    Field.HedgeCount, Field.HedgeWinCount));
+
+    private static final String UNKNOWN = "Unknown";
+    private static final String REQUEST_SUFFIX = "Request";
+
+    /** The operations of every service, by the class of their requests. */
+    private final ConcurrentMap<String, ConcurrentMap<Class<?>, Operation>> services =
+            new ConcurrentHashMap<String, ConcurrentMap<Class<?>, Operation>>();
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+        final AWSRequestMetrics metrics = request.getAWSRequestMetrics();
+        if (metrics == null || !metrics.isEnabled()) {
+            return;
+        }
+        final TimingInfo timingInfo = metrics.getTimingInfo();
+        final Operation operation = operationOf(request);
+
+        recordTimes(operation.clientExecuteTime,
+                timingInfo.getAllSubMeasurements(Field.ClientExecuteTime.name()));
+        recordTimes(operation.httpRequestTime,
+                timingInfo.getAllSubMeasurements(Field.HttpRequestTime.name()));
+        recordTimes(operation.requestSigningTime,
+                timingInfo.getAllSubMeasurements(Field.RequestSigningTime.name()));
+        final Number requestCount = timingInfo.getCounter(Field.RequestCount.name());
+        if (requestCount != null) {
+            operation.retryCount.record(requestCount.longValue() - 1);
+        }
+        final Number bytesProcessed = timingInfo.getCounter(Field.BytesProcessed.name());
+        if (bytesProcessed != null) {
+            operation.bytesProcessed.record(bytesProcessed.longValue());
+        }
+        final Number hedgeCount = timingInfo.getCounter(Field.HedgeCount.name());
+        if (hedgeCount != null) {
+            operation.hedgeCount.record(hedgeCount.longValue());
+            final Number hedgeWinCount = timingInfo.getCounter(Field.HedgeWinCount.name());
+            operation.hedgeWinCount.record(hedgeWinCount == null ? 0 : hedgeWinCount.longValue());
+        }
+    }
+
+    private static void recordTimes(Histogram histogram, List<TimingInfo> timings) {
+        if (timings == null) {
+            return;
+        }
+        // Indexed so that recording doesn't allocate an iterator
+        for (int i = 0; i < timings.size(); i++) {
+            final TimingInfo timing = timings.get(i);
+            final Long endTimeNano = timing.getEndTimeNanoIfKnown();
+            if (endTimeNano != null) {
+                histogram.record(TimeUnit.NANOSECONDS.toMicros(
+                        endTimeNano - timing.getStartTimeNano()));
+            }
+        }
+    }
+
+    private Operation operationOf(Request<?> request) {
+        final String serviceName = request.getServiceName() == null ? UNKNOWN
+                : request.getServiceName();
+        ConcurrentMap<Class<?>, Operation> operations = services.get(serviceName);
+        if (operations == null) {
+            operations = new ConcurrentHashMap<Class<?>, Operation>();
+            final ConcurrentMap<Class<?>, Operation> existing =
+                    services.putIfAbsent(serviceName, operations);
+            if (existing != null) {
+                operations = existing;
+            }
+        }
+
+        final AmazonWebServiceRequest originalRequest = request.getOriginalRequest();
+        final Class<?> requestClass = originalRequest == null ? Object.class
+                : originalRequest.getClass();
+        Operation operation = operations.get(requestClass);
+        if (operation == null) {
+            operation = new Operation(serviceName, operationNameOf(requestClass));
+            final Operation existing = operations.putIfAbsent(requestClass, operation);
+            if (existing != null) {
+                operation = existing;
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * @return the name of an operation from the class of its requests, such
+     *         as "PutRecords" for PutRecordsRequest.
+     */
+    static String operationNameOf(Class<?> requestClass) {
+        if (!AmazonWebServiceRequest.class.isAssignableFrom(requestClass)) {
+            return UNKNOWN;
+        }
+        final String name = requestClass.getSimpleName();
+        if (name.endsWith(REQUEST_SUFFIX) && name.length() > REQUEST_SUFFIX.length()) {
+            return name.substring(0, name.length() - REQUEST_SUFFIX.length());
+        }
+        return name;
+    }
+
+    /**
+     * Returns a snapshot of the metrics, keyed by operation as
+     * {@code "<service name>.<operation>"}, such as
+     * {@code "AmazonKinesis.PutRecords"}, in order. The metrics of an
+     * operation are keyed by the fields of {@link #METRICS}.
+     *
+     * @return the snapshot of the metrics of every operation seen so far.
+     */
+    public Map<String, Map<Field, Histogram.Snapshot>> getSnapshot() {
+        final Map<String, Map<Field, Histogram.Snapshot>> snapshot =
+                new TreeMap<String, Map<Field, Histogram.Snapshot>>();
+        for (final Operation operation : operations()) {
+            final Map<Field, Histogram.Snapshot> histograms =
+                    new EnumMap<Field, Histogram.Snapshot>(Field.class);
+            histograms.put(Field.ClientExecuteTime, operation.clientExecuteTime.snapshot());
+            histograms.put(Field.HttpRequestTime, operation.httpRequestTime.snapshot());
+            histograms.put(Field.RequestSigningTime, operation.requestSigningTime.snapshot());
+            histograms.put(Field.RetryCount, operation.retryCount.snapshot());
+            histograms.put(Field.BytesProcessed, operation.bytesProcessed.snapshot());
+            histograms.put(Field.HedgeCount, operation.hedgeCount.snapshot());
+            histograms.put(Field.HedgeWinCount, operation.hedgeWinCount.snapshot());
+            snapshot.put(operation.serviceName + "." + operation.operationName,
+                    Collections.unmodifiableMap(histograms));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Exports a snapshot of the metrics as text, with a line per operation
+     * and metric that has values, such as:
+     *
+     * <pre>
+     * AmazonKinesis.PutRecords HttpRequestTime count=12, min=48211, mean=61090, p50=57343, p90=81919, p99=98303, max=98807
+     * </pre>
+     *
+     * @return the metrics as text.
+     */
+    public String export() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, Map<Field, Histogram.Snapshot>> operation
+                : getSnapshot().entrySet()) {
+            for (final Map.Entry<Field, Histogram.Snapshot> metric
+                    : operation.getValue().entrySet()) {
+                if (metric.getValue().getCount() > 0) {
+                    sb.append(operation.getKey()).append(' ').append(metric.getKey())
+                            .append(' ').append(metric.getValue()).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Clears the metrics of every operation.
+     */
+    public void reset() {
+        for (final Operation operation : operations()) {
+            operation.clientExecuteTime.reset();
+            operation.httpRequestTime.reset();
+            operation.requestSigningTime.reset();
+            operation.retryCount.reset();
+            operation.bytesProcessed.reset();
+            operation.hedgeCount.reset();
+            operation.hedgeWinCount.reset();
+        }
+    }
+
+    private List<Operation> operations() {
+        final List<Operation> operations = new ArrayList<Operation>();
+        for (final ConcurrentMap<Class<?>, Operation> service : services.values()) {
+            operations.addAll(service.values());
+        }
+        return operations;
+    }
+
+    /**
+     * @return a metric collector with this as its request metric collector,
+     *         to be set with {@link AwsSdkMetrics#setMetricCollector}.
+     */
+    public MetricCollector asMetricCollector() {
+        return new MetricCollector() {
+            @Override
+            public boolean start() {
+                return true;
+            }
+
+            @Override
+            public boolean stop() {
+                return true;
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            public RequestMetricCollector getRequestMetricCollector() {
+                return HistogramRequestMetricCollector.this;
+            }
+
+            @Override
+            public ServiceMetricCollector getServiceMetricCollector() {
+                return ServiceMetricCollector.NONE;
+            }
+        };
+    }
+
+    /**
+     * The histograms of an operation.
+     */
+    private static final class Operation {
+        private final String serviceName;
+        private final String operationName;
+        private final Histogram clientExecuteTime = new Histogram();
+        private final Histogram httpRequestTime = new Histogram();
+        private final Histogram requestSigningTime = new Histogram();
+        private final Histogram retryCount = new Histogram();
+        private final Histogram bytesProcessed = new Histogram();
+        private final Histogram hedgeCount = new Histogram();
+        private final Histogram hedgeWinCount = new Histogram();
+
+        Operation(String serviceName, String operationName) {
+            this.serviceName = serviceName;
+            this.operationName = operationName;
+        }
+    }
+}
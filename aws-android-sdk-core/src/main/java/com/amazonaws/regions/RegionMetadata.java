@@ -18,18 +18,23 @@ package com.amazonaws.regions;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A collection of metadata about a set of regions and the services they
- * contain.
+ * contain. The regions are indexed by name and by the hosts of their service
+ * endpoints when it's created, so looking them up doesn't scan the regions.
  *
  * @see RegionUtils
  */
 public class RegionMetadata {
 
     private final List<Region> regions;
+    private final Map<String, Region> regionsByName;
+    private final Map<String, Region> regionsByHost;
 
     /**
      * Creates a new RegionMetadata object from the given list of regions.
@@ -43,6 +48,21 @@ public class RegionMetadata {
 
         this.regions =
                 Collections.unmodifiableList(new ArrayList<Region>(regions));
+
+        // The first region with a name or host wins, like a scan of the list
+        regionsByName = new HashMap<String, Region>();
+        regionsByHost = new HashMap<String, Region>();
+        for (final Region region : this.regions) {
+            if (!regionsByName.containsKey(region.getName())) {
+                regionsByName.put(region.getName(), region);
+            }
+            for (final String serviceEndpoint : region.getServiceEndpoints().values()) {
+                final String host = getHost(serviceEndpoint);
+                if (!regionsByHost.containsKey(host)) {
+                    regionsByHost.put(host, region);
+                }
+            }
+        }
     }
 
     /**
@@ -63,12 +83,7 @@ public class RegionMetadata {
      * @return the corresponding region, if it exists
      */
     public Region getRegion(final String name) {
-        for (Region region : regions) {
-            if (region.getName().equals(name)) {
-                return region;
-            }
-        }
-        return null;
+        return regionsByName.get(name);
     }
 
     /**
@@ -104,19 +119,20 @@ public class RegionMetadata {
      *             one of the service URLs on record is malformed.
      */
     public Region getRegionByEndpoint(final String endpoint) {
-        String host = getHost(endpoint);
-
-        for (Region region : regions) {
-            for (String serviceEndpoint : region.getServiceEndpoints().values()) {
-
-                if (host.equals(getHost(serviceEndpoint))) {
-                    return region;
-                }
-            }
+        final Region region = getRegionByHost(getHost(endpoint));
+        if (region == null) {
+            throw new IllegalArgumentException(
+                    "No region found with any service for endpoint " + endpoint);
         }
+        return region;
+    }
 
-        throw new IllegalArgumentException(
-                "No region found with any service for endpoint " + endpoint);
+    /**
+     * @param host the host of a service endpoint.
+     * @return the region with a service at the host, or null if there is none.
+     */
+    Region getRegionByHost(final String host) {
+        return regionsByHost.get(host);
     }
 
     /**
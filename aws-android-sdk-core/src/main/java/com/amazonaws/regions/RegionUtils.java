@@ -27,7 +27,6 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -35,7 +34,10 @@ import java.util.List;
  */
 public class RegionUtils {
 
-    private static List<Region> regions;
+    private static volatile List<Region> regions;
+
+    /** The regions indexed for lookups, built by {@link #init()}. */
+    private static volatile RegionMetadata regionMetadata;
 
     // Use the same logger as the http client
     private static final Log log = LogFactory.getLog("com.amazonaws.request");
@@ -43,29 +45,32 @@ public class RegionUtils {
     /**
      * @return a list of the available AWS regions.
      */
-    public static synchronized List<Region> getRegions() {
-        if (regions == null) {
-            init();
-        }
-
+    public static List<Region> getRegions() {
+        getRegionMetadata();
         return regions;
     }
 
+    private static RegionMetadata getRegionMetadata() {
+        RegionMetadata metadata = regionMetadata;
+        if (metadata == null) {
+            synchronized (RegionUtils.class) {
+                if (regionMetadata == null) {
+                    init();
+                }
+                metadata = regionMetadata;
+            }
+        }
+        return metadata;
+    }
+
     /**
      * @param serviceAbbreviation the service abbreviation.
      * @return a list of the regions that support the service given.
      *
      * @see ServiceAbbreviations
      */
-    @SuppressWarnings("checkstyle:hiddenfield")
-    public static synchronized List<Region> getRegionsForService(String serviceAbbreviation) {
-        List<Region> regions = new LinkedList<Region>();
-        for (Region r : getRegions()) {
-            if (r.isServiceSupported(serviceAbbreviation)) {
-                regions.add(r);
-            }
-        }
-        return regions;
+    public static List<Region> getRegionsForService(String serviceAbbreviation) {
+        return getRegionMetadata().getRegionsForService(serviceAbbreviation);
     }
 
     /**
@@ -74,13 +79,7 @@ public class RegionUtils {
      * null.
      */
     public static Region getRegion(String regionName) {
-        for (Region r : getRegions()) {
-            if (r.getName().equals(regionName)) {
-                return r;
-            }
-        }
-
-        return null;
+        return getRegionMetadata().getRegion(regionName);
     }
 
     /**
@@ -100,17 +99,12 @@ public class RegionUtils {
         URI targetEndpointUri = getUriByEndpoint(endpoint);
         String targetHost = targetEndpointUri.getHost();
 
-        for (Region region : getRegions()) {
-            for (String serviceEndpoint : region.getServiceEndpoints().values()) {
-                URI serviceEndpointUrl = getUriByEndpoint(serviceEndpoint);
-
-                if (serviceEndpointUrl.getHost().equals(targetHost))
-                    return region;
-            }
+        final Region region = getRegionMetadata().getRegionByHost(targetHost);
+        if (region == null) {
+            throw new IllegalArgumentException("No region found with any service for endpoint "
+                    + endpoint);
         }
-
-        throw new IllegalArgumentException("No region found with any service for endpoint "
-                + endpoint);
+        return region;
     }
 
     /**
@@ -119,7 +113,8 @@ public class RegionUtils {
      * been called. This method will load the regions (specified by the
      * developer if the system property
      * SDKGlobalConfiguraiton.REGIONS_FILE_OVERRIDE_SYSTEM_PROPERTY is set, or
-     * the defaults shipped with the SDK) into memory.
+     * the defaults shipped with the SDK) into memory, and indexes them so that
+     * regions are looked up by name or endpoint without scanning them.
      */
     public static synchronized void init() {
         if (System.getProperty(REGIONS_FILE_OVERRIDE_SYSTEM_PROPERTY) != null) {
@@ -138,6 +133,7 @@ public class RegionUtils {
         if (regions == null) {
             throw new RuntimeException("Failed to initialize the regions.");
         }
+        regionMetadata = new RegionMetadata(regions);
     }
 
     private static void loadRegionsFromOverrideFile() throws FileNotFoundException {
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate a client sends requests at once the service has throttled
+ * it, adapting the rate to the throttling it observes. The rate is a token
+ * bucket, filled at the rate the client may send at. When a request is
+ * throttled, the rate is cut to a fraction of the rate the client was
+ * sending at; while requests succeed it grows back along a cubic curve, as in
+ * CUBIC congestion control: quickly towards the rate that was throttled,
+ * slowly around it, then quickly again beyond it. Until the first throttling
+ * error the client isn't limited.
+ */
+public class ClientRateLimiter {
+
+    /** The fraction of the rate the rate is cut to when throttled. */
+    private static final double BETA = 0.7;
+    /** How quickly the rate grows back. */
+    private static final double SCALE_CONSTANT = 0.4;
+    /** The weight of the last measurement in the measured sending rate. */
+    private static final double SMOOTH = 0.8;
+    private static final double MIN_FILL_RATE = 0.5;
+    private static final double MIN_CAPACITY = 1;
+    /** The requests are counted in buckets of this many seconds. */
+    private static final double MEASUREMENT_BUCKET = 0.5;
+
+    private boolean enabled;
+    private double fillRate;
+    private double maxCapacity;
+    private double currentCapacity;
+    private double lastTimestamp = -1;
+
+    private double measuredTxRate;
+    private double lastTxRateBucket;
+    private long requestCount;
+    private double lastMaxRate;
+    private double lastThrottleTime;
+    private double timeWindow;
+
+    /**
+     * Constructs a limiter that doesn't limit the client until a request is
+     * throttled.
+     */
+    public ClientRateLimiter() {
+        final double now = now();
+        lastTxRateBucket = Math.floor(now);
+        lastThrottleTime = now;
+    }
+
+    /**
+     * Takes a token for sending a request.
+     *
+     * @return the milliseconds to wait before sending the request, 0 if it
+     *         may be sent now.
+     */
+    public synchronized long acquire() {
+        if (!enabled) {
+            return 0;
+        }
+        refill();
+        // The capacity can go negative, which makes the requests that follow
+        // wait for their turn
+        currentCapacity -= 1;
+        if (currentCapacity >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-currentCapacity / fillRate * TimeUnit.SECONDS.toMillis(1));
+    }
+
+    /**
+     * Adapts the sending rate to the response of a request.
+     *
+     * @param throttled whether the request was throttled.
+     */
+    public synchronized void updateSendingRate(boolean throttled) {
+        updateMeasuredRate();
+        final double calculatedRate;
+        if (throttled) {
+            final double rateToUse = enabled ? Math.min(measuredTxRate, fillRate)
+                    : measuredTxRate;
+            lastMaxRate = rateToUse;
+            calculateTimeWindow();
+            lastThrottleTime = now();
+            calculatedRate = rateToUse * BETA;
+            enabled = true;
+        } else {
+            calculateTimeWindow();
+            final double elapsed = now() - lastThrottleTime - timeWindow;
+            calculatedRate = SCALE_CONSTANT * elapsed * elapsed * elapsed + lastMaxRate;
+        }
+        updateRate(Math.min(calculatedRate, 2 * measuredTxRate));
+    }
+
+    /**
+     * @return true if the client is being limited, which it is from the first
+     *         throttled request.
+     */
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the rate in requests per second the client may send at.
+     */
+    public synchronized double getFillRate() {
+        return fillRate;
+    }
+
+    /**
+     * @return the rate in requests per second the client has been sending at.
+     */
+    public synchronized double getMeasuredTxRate() {
+        return measuredTxRate;
+    }
+
+    /**
+     * @return the current time in seconds.
+     */
+    double now() {
+        return System.nanoTime() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private void refill() {
+        final double timestamp = now();
+        if (lastTimestamp < 0) {
+            lastTimestamp = timestamp;
+            return;
+        }
+        final double fillAmount = (timestamp - lastTimestamp) * fillRate;
+        currentCapacity = Math.min(maxCapacity, currentCapacity + fillAmount);
+        lastTimestamp = timestamp;
+    }
+
+    private void updateRate(double newRate) {
+        refill();
+        fillRate = Math.max(newRate, MIN_FILL_RATE);
+        maxCapacity = Math.max(newRate, MIN_CAPACITY);
+        currentCapacity = Math.min(currentCapacity, maxCapacity);
+    }
+
+    /**
+     * The time after a throttling error the rate grows back to the rate that
+     * was throttled.
+     */
+    private void calculateTimeWindow() {
+        timeWindow = Math.cbrt(lastMaxRate * (1 - BETA) / SCALE_CONSTANT);
+    }
+
+    private void updateMeasuredRate() {
+        final double t = now();
+        final double timeBucket = Math.floor(t / MEASUREMENT_BUCKET) * MEASUREMENT_BUCKET;
+        requestCount++;
+        if (timeBucket > lastTxRateBucket) {
+            final double currentRate = requestCount / (timeBucket - lastTxRateBucket);
+            measuredTxRate = currentRate * SMOOTH + measuredTxRate * (1 - SMOOTH);
+            requestCount = 0;
+            lastTxRateBucket = timeBucket;
+        }
+    }
+}
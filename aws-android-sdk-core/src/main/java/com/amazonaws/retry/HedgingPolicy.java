@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.retry;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hedging policy that can be configured on a specific service client using
+ * {@link ClientConfiguration#setHedgingPolicy(HedgingPolicy)}. When an
+ * attempt of a request the policy applies to hasn't received a response after
+ * the latency percentile of its operation, the client sends the same signed
+ * request a second time and uses whichever response arrives first. The
+ * response of the other send is closed without being read.
+ * <p>
+ * Hedging doubles the requests sent for the slowest responses, so it should
+ * only apply to idempotent operations, such as reads:
+ *
+ * <pre>
+ * clientConfiguration.setHedgingPolicy(new HedgingPolicy(
+ *         HedgingPolicy.forOperations("GetItem", "Query")));
+ * </pre>
+ *
+ * Requests with content longer than {@link #MAX_CONTENT_LENGTH}, or content
+ * that can't be read again, aren't hedged. This class is immutable, therefore
+ * safe to be shared by multiple clients.
+ */
+public final class HedgingPolicy {
+
+    /** The default percentile of the latency of an operation to hedge after. */
+    public static final double DEFAULT_DELAY_PERCENTILE = 95.0;
+
+    /** The default longest time to wait before hedging, in milliseconds. */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 500;
+
+    /**
+     * The number of responses of an operation a client measures before it
+     * hedges after their latency percentile. Until then, it hedges after the
+     * max delay.
+     */
+    public static final int MIN_SAMPLES = 32;
+
+    /** The longest content, in bytes, of a request that can be hedged. */
+    public static final int MAX_CONTENT_LENGTH = 64 * 1024;
+
+    private static final String REQUEST_SUFFIX = "Request";
+
+    private final HedgeCondition hedgeCondition;
+    private final double delayPercentile;
+    private final long maxDelayMillis;
+
+    /**
+     * Constructs a new hedging policy, which hedges after the
+     * {@link #DEFAULT_DELAY_PERCENTILE} of the latency of an operation, and at
+     * most after {@link #DEFAULT_MAX_DELAY_MILLIS}.
+     *
+     * @param hedgeCondition Condition on whether a request should be hedged.
+     */
+    public HedgingPolicy(HedgeCondition hedgeCondition) {
+        this(hedgeCondition, DEFAULT_DELAY_PERCENTILE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructs a new hedging policy.
+     *
+     * @param hedgeCondition Condition on whether a request should be hedged.
+     * @param delayPercentile The percentile, between 0 and 100, of the latency
+     *            of an operation after which an attempt is hedged.
+     * @param maxDelayMillis The longest time to wait before hedging, also used
+     *            until {@link #MIN_SAMPLES} responses of an operation have been
+     *            measured.
+     */
+    public HedgingPolicy(HedgeCondition hedgeCondition, double delayPercentile,
+            long maxDelayMillis) {
+        if (hedgeCondition == null) {
+            throw new IllegalArgumentException("hedgeCondition cannot be null");
+        }
+        if (delayPercentile < 0 || delayPercentile > 100) {
+            throw new IllegalArgumentException("delayPercentile must be between 0 and 100");
+        }
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis cannot be negative");
+        }
+        this.hedgeCondition = hedgeCondition;
+        this.delayPercentile = delayPercentile;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @param operationNames the names of the operations, such as "GetItem"
+     *            for GetItemRequest.
+     * @return a condition that hedges the requests of the given operations.
+     */
+    public static HedgeCondition forOperations(String... operationNames) {
+        final Set<String> requestClassNames = new HashSet<String>();
+        for (final String operationName : operationNames) {
+            requestClassNames.add(operationName + REQUEST_SUFFIX);
+        }
+        return new OperationHedgeCondition(Collections.unmodifiableSet(requestClassNames));
+    }
+
+    /**
+     * Returns the condition on whether a request should be hedged.
+     *
+     * @return The condition on whether a request should be hedged.
+     */
+    public HedgeCondition getHedgeCondition() {
+        return hedgeCondition;
+    }
+
+    /**
+     * Returns the percentile of the latency of an operation after which an
+     * attempt is hedged.
+     *
+     * @return The percentile, between 0 and 100.
+     */
+    public double getDelayPercentile() {
+        return delayPercentile;
+    }
+
+    /**
+     * Returns the longest time to wait before hedging.
+     *
+     * @return The longest time to wait before hedging, in milliseconds.
+     */
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * The hook for providing custom condition on whether a request should be
+     * hedged.
+     */
+    public static interface HedgeCondition {
+
+        /**
+         * Returns whether the attempts of a request may be sent twice. Only
+         * idempotent requests should be hedged.
+         *
+         * @param originalRequest The original request object being executed.
+         * @return True if the request may be hedged.
+         */
+        boolean shouldHedge(AmazonWebServiceRequest originalRequest);
+    }
+
+    /**
+     * Hedges the requests of a set of operations, by the simple names of the
+     * classes of their requests.
+     */
+    private static final class OperationHedgeCondition implements HedgeCondition {
+        private final Set<String> requestClassNames;
+
+        OperationHedgeCondition(Set<String> requestClassNames) {
+            this.requestClassNames = requestClassNames;
+        }
+
+        @Override
+        public boolean shouldHedge(AmazonWebServiceRequest originalRequest) {
+            return originalRequest != null
+                    && requestClassNames.contains(originalRequest.getClass().getSimpleName());
+        }
+
+        @Override
+        public String toString() {
+            return "operations " + Arrays.toString(requestClassNames.toArray());
+        }
+    }
+}
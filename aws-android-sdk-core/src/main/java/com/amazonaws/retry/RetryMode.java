@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+/**
+ * How a client retries the failed requests that its {@link RetryPolicy}
+ * allows to be retried, set with
+ * {@link com.amazonaws.ClientConfiguration#setRetryMode(RetryMode)}.
+ */
+public enum RetryMode {
+
+    /**
+     * Every request is retried up to the max error retry of its policy,
+     * independently of the other requests of the client.
+     */
+    LEGACY,
+
+    /**
+     * Retries also take capacity from the {@link RetryQuota} of the client,
+     * and requests stop being retried while the quota is exhausted, so that a
+     * client doesn't amplify the load of a service that keeps failing.
+     */
+    STANDARD,
+
+    /**
+     * Retries take capacity from the {@link RetryQuota} of the client as in
+     * {@link #STANDARD}, and once the service throttles, the client also
+     * limits the rate it sends requests at with a {@link ClientRateLimiter},
+     * which adapts to the throttling it observes.
+     */
+    ADAPTIVE
+}
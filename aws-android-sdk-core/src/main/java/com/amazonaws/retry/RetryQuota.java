@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The capacity a client has for retrying requests, shared by all its
+ * requests. Each retry takes capacity and each successful request gives some
+ * back, so that when a service fails most requests the client quickly stops
+ * retrying them, and resumes once requests succeed again.
+ */
+public final class RetryQuota {
+
+    /** The capacity a retry takes. */
+    public static final int RETRY_COST = 5;
+
+    /** The capacity a retry after a timeout takes. */
+    public static final int TIMEOUT_RETRY_COST = 10;
+
+    /** The capacity a request that succeeds without a retry gives back. */
+    public static final int NO_RETRY_INCREMENT = 1;
+
+    private final int maxCapacity;
+    private final AtomicInteger capacity;
+
+    /**
+     * @param maxCapacity the capacity of a full quota, which it starts with.
+     */
+    public RetryQuota(int maxCapacity) {
+        if (maxCapacity < 0) {
+            throw new IllegalArgumentException("maxCapacity cannot be negative");
+        }
+        this.maxCapacity = maxCapacity;
+        this.capacity = new AtomicInteger(maxCapacity);
+    }
+
+    /**
+     * Takes capacity for a retry, if there is enough.
+     *
+     * @param amount the capacity the retry takes.
+     * @return true if the capacity was taken and the request may be retried.
+     */
+    public boolean acquire(int amount) {
+        while (true) {
+            final int current = capacity.get();
+            if (current < amount) {
+                return false;
+            }
+            if (capacity.compareAndSet(current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives capacity back, up to the max capacity.
+     *
+     * @param amount the capacity to give back.
+     */
+    public void release(int amount) {
+        while (true) {
+            final int current = capacity.get();
+            if (current >= maxCapacity) {
+                return;
+            }
+            if (capacity.compareAndSet(current, Math.min(maxCapacity, current + amount))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the capacity left.
+     */
+    public int getAvailableCapacity() {
+        return capacity.get();
+    }
+
+    /**
+     * @return the capacity of a full quota.
+     */
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+}
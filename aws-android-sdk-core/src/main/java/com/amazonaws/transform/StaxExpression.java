@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.transform;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A compiled psuedo-xpath expression of a {@link StaxUnmarshallerContext},
+ * such as {@code "instancesSet/item"}. The element names of the expression
+ * are interned to integer IDs, so testing it against the current position of
+ * a context compares the IDs of the elements on the stack instead of building
+ * path strings. Unmarshallers can compile their expressions once:
+ *
+ * <pre>
+ * private static final StaxExpression INSTANCES = StaxExpression.compile("instancesSet/item");
+ * ...
+ * if (context.testExpression(INSTANCES, targetDepth)) {
+ * </pre>
+ */
+public final class StaxExpression {
+
+    /** The ID of an element name that isn't interned. */
+    static final int UNKNOWN_NAME = -1;
+
+    /**
+     * Element names of responses are interned up to this number, and
+     * compared as strings beyond it.
+     */
+    private static final int MAX_NAMES = 16 * 1024;
+    private static final int MAX_CACHED_EXPRESSIONS = 4 * 1024;
+
+    private static final ConcurrentMap<String, Integer> NAME_IDS =
+            new ConcurrentHashMap<String, Integer>();
+    private static final AtomicInteger NEXT_NAME_ID = new AtomicInteger();
+    private static final ConcurrentMap<String, StaxExpression> EXPRESSIONS =
+            new ConcurrentHashMap<String, StaxExpression>();
+
+    private final String expression;
+    private final String[] names;
+    private final int[] ids;
+    private final boolean matchesAny;
+    private final boolean matchesNone;
+
+    private StaxExpression(String expression) {
+        this.expression = expression;
+        matchesAny = ".".equals(expression);
+        // Attributes aren't on the element stack
+        matchesNone = !matchesAny && expression.indexOf('@') >= 0;
+        names = matchesAny || matchesNone ? new String[0] : expression.split("/", -1);
+        ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = intern(names[i]);
+        }
+    }
+
+    /**
+     * Compiles an expression.
+     *
+     * @param expression the psuedo-xpath expression, relative to the depth it
+     *            will be tested at.
+     * @return the compiled expression.
+     */
+    public static StaxExpression compile(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("expression cannot be null");
+        }
+        return new StaxExpression(expression);
+    }
+
+    /**
+     * @return the compiled expression of a string expression, cached so that
+     *         unmarshallers testing string expressions compile them once.
+     */
+    static StaxExpression forString(String expression) {
+        StaxExpression compiled = EXPRESSIONS.get(expression);
+        if (compiled == null) {
+            compiled = compile(expression);
+            if (EXPRESSIONS.size() < MAX_CACHED_EXPRESSIONS) {
+                EXPRESSIONS.putIfAbsent(expression, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the ID of an element name of a response, or
+     *         {@link #UNKNOWN_NAME} if there are too many names to intern it.
+     */
+    static int idOf(String name) {
+        final Integer id = NAME_IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        return NAME_IDS.size() < MAX_NAMES ? intern(name) : UNKNOWN_NAME;
+    }
+
+    private static int intern(String name) {
+        Integer id = NAME_IDS.get(name);
+        if (id == null) {
+            final Integer newId = NEXT_NAME_ID.getAndIncrement();
+            id = NAME_IDS.putIfAbsent(name, newId);
+            if (id == null) {
+                id = newId;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Tests the expression against an element stack.
+     *
+     * @param stackIds the IDs of the elements on the stack.
+     * @param stackNames the names of the elements on the stack.
+     * @param depth the depth of the stack.
+     * @param startingDepth the depth where the expression must start matching.
+     * @return true if the expression matches the top of the stack.
+     */
+    boolean matches(int[] stackIds, String[] stackNames, int depth, int startingDepth) {
+        if (matchesAny) {
+            return true;
+        }
+        final int length = ids.length;
+        if (matchesNone || depth != startingDepth + length - 1 || depth < length) {
+            return false;
+        }
+        for (int i = 0, s = depth - length; i < length; i++, s++) {
+            final int id = stackIds[s];
+            if (id != ids[i] && (id != UNKNOWN_NAME || !names[i].equals(stackNames[s]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
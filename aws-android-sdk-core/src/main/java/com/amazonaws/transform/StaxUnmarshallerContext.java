@@ -19,12 +19,15 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * Contains the unmarshalling state for the parsing of an XML response. The
@@ -33,16 +36,31 @@ import java.util.Map;
  * response. It also tracks the current position and element depth of the
  * document being parsed and provides utilties for accessing the next XML event
  * from the parser, reading element text, handling attribute XML events, etc.
+ * <p>
+ * The element stack is kept as interned name IDs, so testing an expression
+ * doesn't build path strings, and the paths of {@link #stack} are only built
+ * when it's read. Expressions tested many times can be compiled
+ * once with {@link StaxExpression#compile(String)}.
  */
 public class StaxUnmarshallerContext {
 
     private int currentEventType;
     private final XmlPullParser xpp;
 
-    /** The deque stack. */
+    private static final int INITIAL_STACK_SIZE = 16;
+
+    /**
+     * The deque stack, the path of each enclosing element from the innermost
+     * one. It's a read-only view of the element stack.
+     */
     @SuppressWarnings("checkstyle:visibilitymodifier")
-    public final Deque<String> stack = new LinkedList<String>();
-    private String stackString = "";
+    public final Deque<String> stack = new PathStack();
+
+    private int[] stackIds = new int[INITIAL_STACK_SIZE];
+    private String[] stackNames = new String[INITIAL_STACK_SIZE];
+    /** The paths of the stack read so far, built from the bottom up. **/
+    private String[] stackPaths = new String[INITIAL_STACK_SIZE];
+    private int depth;
 
     private Map<String, String> metadata = new HashMap<String, String>();
     private List<MetadataExpression> metadataExpressions = new ArrayList<MetadataExpression>();
@@ -116,7 +134,7 @@ public class StaxUnmarshallerContext {
      *         document being parsed.
      */
     public int getCurrentDepth() {
-        return stack.size();
+        return depth;
     }
 
     /**
@@ -144,19 +162,35 @@ public class StaxUnmarshallerContext {
      *         the XML document, starting from the specified depth.
      */
     public boolean testExpression(String expression, int startingStackDepth) {
-        if (".".equals(expression))
-            return true;
-
-        int index = -1;
-        while ((index = expression.indexOf("/", index + 1)) > -1) {
-            // Don't consider attributes a new depth level
-            if (expression.charAt(index + 1) != '@') {
-                startingStackDepth++;
-            }
-        }
+        return testExpression(StaxExpression.forString(expression), startingStackDepth);
+    }
+
+    /**
+     * Tests the specified compiled expression against the current position in
+     * the XML document being parsed.
+     *
+     * @param expression The compiled psuedo-xpath expression to test.
+     * @return True if the expression matches the current document position,
+     *         otherwise false.
+     */
+    public boolean testExpression(StaxExpression expression) {
+        return testExpression(expression, depth);
+    }
 
-        return (getCurrentDepth() == startingStackDepth
-                && stackString.endsWith("/" + expression));
+    /**
+     * Tests the specified compiled expression against the current position in
+     * the XML document being parsed, and restricts the expression to matching
+     * at the specified stack depth.
+     *
+     * @param expression The compiled psuedo-xpath expression to test.
+     * @param startingStackDepth The depth in the stack representing where the
+     *            expression must start matching in order for this method to
+     *            return true.
+     * @return True if the specified expression matches the current position in
+     *         the XML document, starting from the specified depth.
+     */
+    public boolean testExpression(StaxExpression expression, int startingStackDepth) {
+        return expression.matches(stackIds, stackNames, depth, startingStackDepth);
     }
 
     /**
@@ -192,7 +226,7 @@ public class StaxUnmarshallerContext {
         // look for meta data
         if (currentEventType == XmlPullParser.START_TAG) {
             for (MetadataExpression metadataExpression : metadataExpressions) {
-                if (testExpression(metadataExpression.expression,
+                if (metadataExpression.expression.matches(stackIds, stackNames, depth,
                         metadataExpression.targetDepth)) {
                     metadata.put(metadataExpression.key, readText());
                     break;
@@ -227,7 +261,8 @@ public class StaxUnmarshallerContext {
      *            data.
      */
     public void registerMetadataExpression(String expression, int targetDepth, String storageKey) {
-        metadataExpressions.add(new MetadataExpression(expression, targetDepth, storageKey));
+        metadataExpressions.add(new MetadataExpression(StaxExpression.forString(expression),
+                targetDepth, storageKey));
     }
 
     /*
@@ -241,11 +276,11 @@ public class StaxUnmarshallerContext {
     @SuppressWarnings("checkstyle:visibilitymodifier")
     private static class MetadataExpression {
 
-        public String expression;
+        public StaxExpression expression;
         public int targetDepth;
         public String key;
 
-        public MetadataExpression(String expression, int targetDepth, String key) {
+        public MetadataExpression(StaxExpression expression, int targetDepth, String key) {
             this.expression = expression;
             this.targetDepth = targetDepth;
             this.key = key;
@@ -254,11 +289,199 @@ public class StaxUnmarshallerContext {
 
     private void updateContext() {
         if (currentEventType == XmlPullParser.START_TAG) {
-            stackString += "/" + xpp.getName();
-            stack.push(stackString);
+            if (depth == stackIds.length) {
+                stackIds = Arrays.copyOf(stackIds, depth * 2);
+                stackNames = Arrays.copyOf(stackNames, depth * 2);
+                stackPaths = Arrays.copyOf(stackPaths, depth * 2);
+            }
+            final String name = xpp.getName();
+            stackIds[depth] = StaxExpression.idOf(name);
+            stackNames[depth] = name;
+            stackPaths[depth] = null;
+            depth++;
         } else if (currentEventType == XmlPullParser.END_TAG) {
-            stack.pop();
-            stackString = stack.isEmpty() ? "" : stack.peek();
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            depth--;
+            stackNames[depth] = null;
+            stackPaths[depth] = null;
+        }
+    }
+
+    /**
+     * Returns the path of the element at the given index of the stack, from
+     * the bottom.
+     */
+    private String pathAt(int index) {
+        int built = index;
+        while (built >= 0 && stackPaths[built] == null) {
+            built--;
+        }
+        for (int i = built + 1; i <= index; i++) {
+            stackPaths[i] = (i == 0 ? "" : stackPaths[i - 1]) + "/" + stackNames[i];
+        }
+        return stackPaths[index];
+    }
+
+    /**
+     * The paths of the enclosing elements, the innermost first like a stack
+     * they were pushed on. The paths are built when they're read.
+     */
+    private final class PathStack extends AbstractCollection<String> implements Deque<String> {
+
+        @Override
+        public int size() {
+            return depth;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new PathIterator(true);
+        }
+
+        @Override
+        public Iterator<String> descendingIterator() {
+            return new PathIterator(false);
+        }
+
+        @Override
+        public String peekFirst() {
+            return depth == 0 ? null : pathAt(depth - 1);
+        }
+
+        @Override
+        public String peekLast() {
+            return depth == 0 ? null : pathAt(0);
+        }
+
+        @Override
+        public String getFirst() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            return peekFirst();
+        }
+
+        @Override
+        public String getLast() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            return peekLast();
+        }
+
+        @Override
+        public String peek() {
+            return peekFirst();
+        }
+
+        @Override
+        public String element() {
+            return getFirst();
+        }
+
+        @Override
+        public void addFirst(String e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addLast(String e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean offerFirst(String e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean offerLast(String e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String removeFirst() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String removeLast() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String pollFirst() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String pollLast() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean removeFirstOccurrence(Object o) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean removeLastOccurrence(Object o) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean offer(String e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String poll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void push(String e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String pop() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class PathIterator implements Iterator<String> {
+        private final boolean innermostFirst;
+        private int remaining = depth;
+
+        PathIterator(boolean innermostFirst) {
+            this.innermostFirst = innermostFirst;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public String next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return pathAt(innermostFirst ? remaining : depth - remaining - 1);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
     }
 }
@@ -115,6 +115,21 @@ public class AWSRequestMetrics {
 
         /** RetryPauseTime. */
         RetryPauseTime,
+        /**
+         * Time waited before sending a request for the client side rate limit
+         * of the adaptive retry mode.
+         */
+        RateLimitPauseTime,
+        /**
+         * Number of times an attempt of a request was sent a second time
+         * because it was slow, as set by the hedging policy.
+         */
+        HedgeCount,
+        /**
+         * Number of times the second send of a hedged attempt received the
+         * response first.
+         */
+        HedgeWinCount,
         // S3DownloadThroughput, // migrated to S3RequestMetric in the S3 clint
         // library
         // S3UploadThroughput, // migrated to S3RequestMetric in the S3 clint
@@ -22,6 +22,9 @@ import com.amazonaws.logging.LogFactory;
 
 import java.net.InetAddress;
 import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,6 +36,20 @@ public class AwsHostNameUtils {
     private static final Pattern S3_ENDPOINT_PATTERN =
             Pattern.compile("^(?:.+\\.)?s3[.-]([a-z0-9-]+)$");
 
+    /**
+     * Region names are cached for up to this number of hosts per service
+     * hint, and parsed beyond it.
+     */
+    private static final int MAX_CACHED_HOSTS = 1024;
+    private static final String NO_SERVICE_HINT = "";
+
+    /** The parsed region names by service hint and host. */
+    private static final ConcurrentMap<String, ConcurrentMap<String, String>> REGION_NAMES =
+            new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+    /** The host patterns of the internal config, compiled once. */
+    private static volatile CompiledMappings compiledMappings;
+
     /**
      * @deprecated in favor of {@link #parseRegionName(String, String)}.
      * @param endpoint the URI endpoint.
@@ -45,7 +62,8 @@ public class AwsHostNameUtils {
 
     /**
      * Attempts to parse the region name from an endpoint based on conventions
-     * about the endpoint format.
+     * about the endpoint format. The region names of hosts are cached, so
+     * parsing the host of a client's endpoint again is a lookup.
      *
      * @param host the hostname to parse
      * @param serviceHint an optional hint about the service for the endpoint
@@ -58,6 +76,29 @@ public class AwsHostNameUtils {
         if (host == null) {
             throw new IllegalArgumentException("hostname cannot be null");
         }
+
+        final String hint = serviceHint == null ? NO_SERVICE_HINT : serviceHint;
+        ConcurrentMap<String, String> regionNames = REGION_NAMES.get(hint);
+        if (regionNames == null) {
+            regionNames = new ConcurrentHashMap<String, String>();
+            final ConcurrentMap<String, String> existing =
+                    REGION_NAMES.putIfAbsent(hint, regionNames);
+            if (existing != null) {
+                regionNames = existing;
+            }
+        }
+        String regionName = regionNames.get(host);
+        if (regionName == null) {
+            regionName = parseUncachedRegionName(host, serviceHint);
+            if (regionNames.size() < MAX_CACHED_HOSTS) {
+                regionNames.putIfAbsent(host, regionName);
+            }
+        }
+        return regionName;
+    }
+
+    private static String parseUncachedRegionName(final String host,
+            final String serviceHint) {
         String regionNameInInternalConfig = parseRegionNameByInternalConfig(host);
         if (regionNameInInternalConfig != null) {
             return regionNameInInternalConfig;
@@ -137,16 +178,41 @@ public class AwsHostNameUtils {
     private static String parseRegionNameByInternalConfig(String host) {
         InternalConfig internConfig = InternalConfig.Factory.getInternalConfig();
 
-        for (HostRegexToRegionMapping mapping : internConfig.getHostRegexToRegionMappings()) {
-            String hostNameRegex = mapping.getHostNameRegex();
-            if (host.matches(hostNameRegex)) {
-                return mapping.getRegionName();
+        CompiledMappings mappings = compiledMappings;
+        if (mappings == null || mappings.config != internConfig) {
+            mappings = new CompiledMappings(internConfig);
+            compiledMappings = mappings;
+        }
+        for (int i = 0; i < mappings.hostNamePatterns.length; i++) {
+            if (mappings.hostNamePatterns[i].matcher(host).matches()) {
+                return mappings.regionNames[i];
             }
         }
 
         return null;
     }
 
+    /**
+     * The host-to-region mappings of an internal config, with their host name
+     * regexes compiled.
+     */
+    private static final class CompiledMappings {
+        private final InternalConfig config;
+        private final Pattern[] hostNamePatterns;
+        private final String[] regionNames;
+
+        CompiledMappings(InternalConfig config) {
+            this.config = config;
+            final List<HostRegexToRegionMapping> mappings = config.getHostRegexToRegionMappings();
+            hostNamePatterns = new Pattern[mappings.size()];
+            regionNames = new String[mappings.size()];
+            for (int i = 0; i < hostNamePatterns.length; i++) {
+                hostNamePatterns[i] = Pattern.compile(mappings.get(i).getHostNameRegex());
+                regionNames[i] = mappings.get(i).getRegionName();
+            }
+        }
+    }
+
     /**
      * Parses the service name from an endpoint. Can only handle endpoints of
      * the form 'service.[region.]amazonaws.com'.
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * An input stream over request content whose SHA-256 has been calculated
+ * while it was produced, see {@link Sha256HashingOutputStream}. Signers use
+ * the hash instead of reading the content again.
+ */
+public class Sha256HashedInputStream extends ByteArrayInputStream {
+
+    private final byte[] sha256;
+
+    /**
+     * @param buf the buffer of the content.
+     * @param length the length of the content in the buffer.
+     * @param sha256 the SHA-256 of the content.
+     */
+    Sha256HashedInputStream(byte[] buf, int length, byte[] sha256) {
+        super(buf, 0, length);
+        this.sha256 = sha256;
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 of the content, if the stream hasn't
+     * been read from. The hash doesn't describe the remaining content of a
+     * stream that has been read from, so it returns null then.
+     *
+     * @return the hex encoded SHA-256 of the content, or null if the stream
+     *         isn't at the beginning of the content.
+     */
+    public synchronized String getContentSha256() {
+        return pos == 0 ? BinaryUtils.toHex(sha256) : null;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import com.amazonaws.AmazonClientException;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A growable in-memory buffer of request content that calculates the SHA-256
+ * of the bytes as they are written, so that the content doesn't have to be
+ * read again to be signed. The buffer is handed to the request by
+ * {@link #toInputStream()} without being copied:
+ *
+ * <pre>
+ * Sha256HashingOutputStream content = new Sha256HashingOutputStream();
+ * AwsJsonWriter jsonWriter = JsonUtils.getJsonWriter(content);
+ * ...
+ * jsonWriter.close();
+ * request.setContent(content.toInputStream());
+ * request.addHeader("Content-Length", Integer.toString(content.size()));
+ * </pre>
+ */
+public class Sha256HashingOutputStream extends OutputStream {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /** The digests of the streams that have been turned into input streams. */
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>();
+
+    private byte[] buf;
+    private int count;
+    private MessageDigest digest;
+
+    /**
+     * Constructs a stream with the default initial capacity.
+     */
+    public Sha256HashingOutputStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity the initial capacity of the buffer, which grows
+     *            as needed.
+     */
+    public Sha256HashingOutputStream(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Negative initial capacity: " + initialCapacity);
+        }
+        buf = new byte[initialCapacity];
+        digest = acquireDigest();
+    }
+
+    @Override
+    public void write(int b) {
+        ensureOpen();
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+        digest.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureOpen();
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+        // Hashed while the bytes are still in the cache
+        digest.update(b, off, len);
+    }
+
+    /**
+     * @return the number of bytes written.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Completes the content and returns an input stream of it, which carries
+     * the SHA-256 of the content. Nothing can be written afterwards.
+     *
+     * @return an input stream over the buffer of the content.
+     */
+    public Sha256HashedInputStream toInputStream() {
+        ensureOpen();
+        final byte[] sha256 = digest.digest();
+        releaseDigest(digest);
+        digest = null;
+        return new Sha256HashedInputStream(buf, count, sha256);
+    }
+
+    private void ensureOpen() {
+        if (digest == null) {
+            throw new IllegalStateException("The content has already been completed");
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new OutOfMemoryError("Content is too large");
+        }
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, capacity));
+        }
+    }
+
+    private static MessageDigest acquireDigest() {
+        final MessageDigest digest = DIGESTS.get();
+        if (digest != null) {
+            DIGESTS.set(null);
+            return digest;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AmazonClientException("Unable to get SHA256 Function" + e.getMessage(), e);
+        }
+    }
+
+    private static void releaseDigest(MessageDigest digest) {
+        // digest() has reset it
+        DIGESTS.set(digest);
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * An {@link AwsJsonReader} that tokenizes UTF-8 encoded JSON from its bytes,
+ * without an {@link java.io.InputStreamReader} decoding the content to
+ * characters first. The bytes update an optional checksum as they are read.
+ * It behaves like the Gson reader of {@link GsonFactory}: numbers and booleans
+ * are read as strings, and {@link #peek()} returns null at the end of the
+ * document.
+ * <p>
+ * The buffers of the reader are taken from {@link JsonDecodingBuffers} and
+ * returned when it's closed.
+ */
+final class ByteJsonReader implements AwsJsonReader {
+
+    private static final int PEEKED_NONE = 0;
+    private static final int PEEKED_BEGIN_OBJECT = 1;
+    private static final int PEEKED_END_OBJECT = 2;
+    private static final int PEEKED_BEGIN_ARRAY = 3;
+    private static final int PEEKED_END_ARRAY = 4;
+    private static final int PEEKED_TRUE = 5;
+    private static final int PEEKED_FALSE = 6;
+    private static final int PEEKED_NULL = 7;
+    /** The opening quote is consumed */
+    private static final int PEEKED_STRING = 8;
+    /** The opening quote is consumed */
+    private static final int PEEKED_NAME = 9;
+    /** The number is in the char buffer */
+    private static final int PEEKED_NUMBER = 10;
+    private static final int PEEKED_END_DOCUMENT = 11;
+
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private static final int INITIAL_STACK_SIZE = 32;
+    private static final int HEX_DIGITS = 4;
+    private static final int HEX_RADIX = 16;
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+    private static final int CONTINUATION_MASK = 0xc0;
+    private static final int CONTINUATION = 0x80;
+    private static final int CONTINUATION_BITS = 6;
+    private static final int CONTINUATION_VALUE_MASK = 0x3f;
+    private static final int TWO_BYTES_MASK = 0xe0;
+    private static final int TWO_BYTES = 0xc0;
+    private static final int THREE_BYTES_MASK = 0xf0;
+    private static final int THREE_BYTES = 0xe0;
+    private static final int FOUR_BYTES_MASK = 0xf8;
+    private static final int FOUR_BYTES = 0xf0;
+    private static final int MIN_SUPPLEMENTARY_CODE_POINT = 0x10000;
+    private static final int MAX_CODE_POINT = 0x10ffff;
+
+    private final InputStream in;
+    private final Checksum checksum;
+    private JsonDecodingBuffers buffers;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[INITIAL_STACK_SIZE];
+    private int stackSize;
+    private int peeked = PEEKED_NONE;
+    private int numberLength;
+
+    /**
+     * @param in the UTF-8 encoded content.
+     * @param checksum updated with the bytes of {@code in} as they are read,
+     *            or null.
+     * @param buffers the buffers of the reader, released when it's closed.
+     */
+    ByteJsonReader(InputStream in, Checksum checksum, JsonDecodingBuffers buffers) {
+        this.in = in;
+        this.checksum = checksum;
+        this.buffers = buffers;
+        this.buffer = buffers.bytes;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(PEEKED_BEGIN_ARRAY, "BEGIN_ARRAY");
+        push(EMPTY_ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(PEEKED_END_ARRAY, "END_ARRAY");
+        stackSize--;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(PEEKED_BEGIN_OBJECT, "BEGIN_OBJECT");
+        push(EMPTY_OBJECT);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(PEEKED_END_OBJECT, "END_OBJECT");
+        stackSize--;
+    }
+
+    @Override
+    public boolean isContainer() throws IOException {
+        final int p = peekInternal();
+        return p == PEEKED_BEGIN_ARRAY || p == PEEKED_BEGIN_OBJECT;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        final int p = peekInternal();
+        return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        final int p = peekInternal();
+        if (p != PEEKED_NAME) {
+            throw new IllegalStateException("Expected a name but was " + convert(p));
+        }
+        final String name = readString();
+        peeked = PEEKED_NONE;
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        final String result;
+        switch (peekInternal()) {
+            case PEEKED_STRING:
+                result = readString();
+                break;
+            case PEEKED_NUMBER:
+                result = new String(buffers.chars(numberLength), 0, numberLength);
+                break;
+            case PEEKED_TRUE:
+                result = "true";
+                break;
+            case PEEKED_FALSE:
+                result = "false";
+                break;
+            case PEEKED_NULL:
+                result = null;
+                break;
+            default:
+                throw new IllegalStateException("Expected a string but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    @Override
+    public AwsJsonToken peek() throws IOException {
+        return convert(peekInternal());
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            switch (peekInternal()) {
+                case PEEKED_BEGIN_ARRAY:
+                    push(EMPTY_ARRAY);
+                    count++;
+                    break;
+                case PEEKED_BEGIN_OBJECT:
+                    push(EMPTY_OBJECT);
+                    count++;
+                    break;
+                case PEEKED_END_ARRAY:
+                case PEEKED_END_OBJECT:
+                    stackSize--;
+                    count--;
+                    break;
+                case PEEKED_STRING:
+                case PEEKED_NAME:
+                    skipString();
+                    break;
+                case PEEKED_END_DOCUMENT:
+                    return;
+                default:
+                    break;
+            }
+            peeked = PEEKED_NONE;
+        } while (count > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        stackSize = 0;
+        if (buffers != null) {
+            JsonDecodingBuffers.release(buffers);
+            buffers = null;
+            buffer = null;
+        }
+        in.close();
+    }
+
+    private void expect(int expected, String token) throws IOException {
+        final int p = peekInternal();
+        if (p != expected) {
+            throw new IllegalStateException("Expected " + token + " but was " + convert(p));
+        }
+        peeked = PEEKED_NONE;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private int peekInternal() throws IOException {
+        if (buffers == null) {
+            throw new IllegalStateException("JsonReader is closed");
+        }
+        return peeked != PEEKED_NONE ? peeked : doPeek();
+    }
+
+    private int doPeek() throws IOException {
+        final int scope = stack[stackSize - 1];
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == NONEMPTY_ARRAY) {
+            final int c = nextNonWhitespace();
+            if (c == ']') {
+                return peeked = PEEKED_END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Unterminated array");
+            }
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+            if (scope == NONEMPTY_OBJECT) {
+                final int c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = PEEKED_END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+            }
+            final int c = nextNonWhitespace();
+            if (c == '"') {
+                return peeked = PEEKED_NAME;
+            } else if (c == '}' && scope == EMPTY_OBJECT) {
+                return peeked = PEEKED_END_OBJECT;
+            }
+            throw syntaxError("Expected name");
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+            if (!skipWhitespace()) {
+                return peeked = PEEKED_END_DOCUMENT;
+            }
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (!skipWhitespace()) {
+                return peeked = PEEKED_END_DOCUMENT;
+            }
+            throw syntaxError("Expected end of document");
+        }
+
+        final int c = nextNonWhitespace();
+        switch (c) {
+            case '"':
+                return peeked = PEEKED_STRING;
+            case '{':
+                return peeked = PEEKED_BEGIN_OBJECT;
+            case '[':
+                return peeked = PEEKED_BEGIN_ARRAY;
+            case ']':
+                if (scope == EMPTY_ARRAY) {
+                    return peeked = PEEKED_END_ARRAY;
+                }
+                throw syntaxError("Unexpected value");
+            case 't':
+                readLiteral("rue");
+                return peeked = PEEKED_TRUE;
+            case 'f':
+                readLiteral("alse");
+                return peeked = PEEKED_FALSE;
+            case 'n':
+                readLiteral("ull");
+                return peeked = PEEKED_NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber((char) c);
+                    return peeked = PEEKED_NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        if (checksum != null) {
+            checksum.update(buffer, 0, n);
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * Skips whitespace up to the next byte without consuming it.
+     *
+     * @return false at the end of the content.
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                final byte b = buffer[pos];
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    return true;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        if (!skipWhitespace()) {
+            throw new EOFException("End of input");
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (pos == limit && !fill()) {
+                throw new EOFException("End of input");
+            }
+            if (buffer[pos++] != rest.charAt(i)) {
+                throw syntaxError("Unexpected literal");
+            }
+        }
+        if ((pos < limit || fill()) && isLiteralByte(buffer[pos])) {
+            throw syntaxError("Unexpected literal");
+        }
+    }
+
+    /**
+     * Reads the characters of a number to the char buffer. Like Gson, the
+     * number is kept as written, and it's parsed by the unmarshaller.
+     */
+    private void readNumber(char first) throws IOException {
+        char[] chars = buffers.chars(1);
+        chars[0] = first;
+        int length = 1;
+        while (pos < limit || fill()) {
+            final byte b = buffer[pos];
+            if ((b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+'
+                    || b == '-') {
+                if (length == chars.length) {
+                    chars = buffers.chars(length + 1);
+                }
+                chars[length++] = (char) b;
+                pos++;
+            } else if (isLiteralByte(b)) {
+                throw syntaxError("Malformed number");
+            } else {
+                break;
+            }
+        }
+        numberLength = length;
+    }
+
+    private static boolean isLiteralByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '_' || b == '.';
+    }
+
+    /**
+     * Reads a string whose opening quote is consumed. Runs of ASCII bytes are
+     * copied without checks, while escapes and multi-byte sequences take the
+     * slow path.
+     */
+    private String readString() throws IOException {
+        char[] chars = buffers.chars(1);
+        int length = 0;
+        fill:
+        while (true) {
+            int p = pos;
+            final int l = limit;
+            final byte[] buf = buffer;
+            // At most one char per byte, two for a surrogate pair
+            if (length + l - p + 2 > chars.length) {
+                chars = buffers.chars(length + l - p + 2);
+            }
+            while (p < l) {
+                final byte b = buf[p++];
+                if (b == '"') {
+                    pos = p;
+                    return new String(chars, 0, length);
+                }
+                if (b == '\\') {
+                    pos = p;
+                    chars[length++] = readEscape();
+                    continue fill;
+                }
+                if (b < 0) {
+                    pos = p;
+                    length = readMultiByte(b & 0xff, chars, length);
+                    continue fill;
+                }
+                chars[length++] = (char) b;
+            }
+            pos = p;
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (pos < limit || fill()) {
+            final byte b = buffer[pos++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                if (pos == limit && !fill()) {
+                    break;
+                }
+                pos++;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        final byte b = buffer[pos++];
+        switch (b) {
+            case 'u':
+                int c = 0;
+                for (int i = 0; i < HEX_DIGITS; i++) {
+                    if (pos == limit && !fill()) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    final int digit = Character.digit(buffer[pos++], HEX_RADIX);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+                    c = c * HEX_RADIX + digit;
+                }
+                return (char) c;
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case '"':
+            case '\\':
+            case '/':
+                return (char) b;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Decodes a multi-byte UTF-8 sequence. Malformed sequences are replaced
+     * with U+FFFD, like {@link java.io.InputStreamReader} does.
+     */
+    private int readMultiByte(int lead, char[] chars, int length) throws IOException {
+        final int continuations;
+        int codePoint;
+        if ((lead & TWO_BYTES_MASK) == TWO_BYTES) {
+            continuations = 1;
+            codePoint = lead & ~TWO_BYTES_MASK;
+        } else if ((lead & THREE_BYTES_MASK) == THREE_BYTES) {
+            continuations = 2;
+            codePoint = lead & ~THREE_BYTES_MASK;
+        } else if ((lead & FOUR_BYTES_MASK) == FOUR_BYTES) {
+            continuations = 3;
+            codePoint = lead & ~FOUR_BYTES_MASK;
+        } else {
+            chars[length] = REPLACEMENT_CHARACTER;
+            return length + 1;
+        }
+        for (int i = 0; i < continuations; i++) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            final int b = buffer[pos] & 0xff;
+            if ((b & CONTINUATION_MASK) != CONTINUATION) {
+                // Left to be read as the next character
+                chars[length] = REPLACEMENT_CHARACTER;
+                return length + 1;
+            }
+            pos++;
+            codePoint = codePoint << CONTINUATION_BITS | (b & CONTINUATION_VALUE_MASK);
+        }
+        if (codePoint < MIN_SUPPLEMENTARY_CODE_POINT) {
+            chars[length] = (char) codePoint;
+            return length + 1;
+        }
+        if (codePoint > MAX_CODE_POINT) {
+            chars[length] = REPLACEMENT_CHARACTER;
+            return length + 1;
+        }
+        return length + Character.toChars(codePoint, chars, length);
+    }
+
+    private IOException syntaxError(String message) {
+        return new MalformedJsonException(message + " at depth " + (stackSize - 1));
+    }
+
+    private static AwsJsonToken convert(int peeked) {
+        switch (peeked) {
+            case PEEKED_BEGIN_ARRAY:
+                return AwsJsonToken.BEGIN_ARRAY;
+            case PEEKED_END_ARRAY:
+                return AwsJsonToken.END_ARRAY;
+            case PEEKED_BEGIN_OBJECT:
+                return AwsJsonToken.BEGIN_OBJECT;
+            case PEEKED_END_OBJECT:
+                return AwsJsonToken.END_OBJECT;
+            case PEEKED_NAME:
+                return AwsJsonToken.FIELD_NAME;
+            case PEEKED_TRUE:
+            case PEEKED_FALSE:
+                return AwsJsonToken.VALUE_BOOLEAN;
+            case PEEKED_NUMBER:
+                return AwsJsonToken.VALUE_NUMBER;
+            case PEEKED_NULL:
+                return AwsJsonToken.VALUE_NULL;
+            case PEEKED_STRING:
+                return AwsJsonToken.VALUE_STRING;
+            case PEEKED_END_DOCUMENT:
+                return null;
+            default:
+                return AwsJsonToken.UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import com.amazonaws.util.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * An {@link AwsJsonWriter} that encodes the document as UTF-8 straight into
+ * bytes, without a {@link java.io.Writer} or an intermediate string. The
+ * output is the same as the Gson writer's. The bytes are collected in a
+ * buffer, kept per thread once the writer is closed, and written to the
+ * stream whenever it fills up.
+ */
+final class ByteJsonWriter implements AwsJsonWriter {
+
+    static final int BUFFER_SIZE = 8 * 1024;
+    /** The most bytes a char is encoded to, by a unicode escape. */
+    private static final int MAX_CHAR_BYTES = 6;
+    private static final int NEGATIVE_THREE = -3;
+    /** Escaped as they end lines in JavaScript, as the Gson writer does. */
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+    private static final byte[] BASE64 = ("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            + "0123456789+/").getBytes(StringUtils.UTF8);
+    /** The bytes three bytes are encoded to in base64. */
+    private static final int BASE64_QUANTUM = 4;
+    private static final byte[] TRUE = {
+            't', 'r', 'u', 'e'
+    };
+    private static final byte[] FALSE = {
+            'f', 'a', 'l', 's', 'e'
+    };
+    private static final byte[] NULL = {
+            'n', 'u', 'l', 'l'
+    };
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>();
+
+    private final OutputStream out;
+    private byte[] buf;
+    private int pos;
+    private int[] stack = new int[32];
+    private int stackSize;
+    private String deferredName;
+
+    ByteJsonWriter(OutputStream out) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        this.out = out;
+        buf = BUFFERS.get();
+        if (buf == null) {
+            buf = new byte[BUFFER_SIZE];
+        } else {
+            BUFFERS.set(null);
+        }
+        push(EMPTY_DOCUMENT);
+    }
+
+    @Override
+    public AwsJsonWriter beginArray() throws IOException {
+        return open(EMPTY_ARRAY, '[');
+    }
+
+    @Override
+    public AwsJsonWriter endArray() throws IOException {
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    @Override
+    public AwsJsonWriter beginObject() throws IOException {
+        return open(EMPTY_OBJECT, '{');
+    }
+
+    @Override
+    public AwsJsonWriter endObject() throws IOException {
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    @Override
+    public AwsJsonWriter name(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if (deferredName != null) {
+            throw new IllegalStateException();
+        }
+        ensureOpen();
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return value();
+        }
+        writeDeferredName();
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(boolean value) throws IOException {
+        writeDeferredName();
+        beforeValue();
+        raw(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        writeDeferredName();
+        beforeValue();
+        ascii(Double.toString(value));
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(long value) throws IOException {
+        writeDeferredName();
+        beforeValue();
+        ascii(Long.toString(value));
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return value();
+        }
+        final String string = value.toString();
+        if (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN")) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        writeDeferredName();
+        beforeValue();
+        ascii(string);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(Date value) throws IOException {
+        final BigDecimal dateValue = BigDecimal.valueOf(value.getTime());
+        return value(dateValue.scaleByPowerOfTen(NEGATIVE_THREE));
+    }
+
+    @Override
+    public AwsJsonWriter value(ByteBuffer value) throws IOException {
+        final byte[] bytes;
+        final int offset;
+        if (value.hasArray()) {
+            bytes = value.array();
+            offset = value.arrayOffset() + value.position();
+        } else {
+            bytes = new byte[value.remaining()];
+            value.duplicate().get(bytes);
+            offset = 0;
+        }
+        writeDeferredName();
+        beforeValue();
+        reserve(1);
+        buf[pos++] = '"';
+        base64(bytes, offset, value.remaining());
+        reserve(1);
+        buf[pos++] = '"';
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value() throws IOException {
+        // Names of null values are written, as the Gson writer does
+        writeDeferredName();
+        beforeValue();
+        raw(NULL);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buf == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+            out.close();
+        } finally {
+            if (BUFFERS.get() == null) {
+                BUFFERS.set(buf);
+            }
+            buf = null;
+        }
+        final int size = stackSize;
+        if (size > 1 || size == 1 && stack[size - 1] != NONEMPTY_DOCUMENT) {
+            throw new IOException("Incomplete document");
+        }
+        stackSize = 0;
+    }
+
+    private AwsJsonWriter open(int empty, char bracket) throws IOException {
+        writeDeferredName();
+        beforeValue();
+        push(empty);
+        reserve(1);
+        buf[pos++] = (byte) bracket;
+        return this;
+    }
+
+    private AwsJsonWriter close(int empty, int nonempty, char bracket) throws IOException {
+        ensureOpen();
+        final int context = peek();
+        if (context != nonempty && context != empty) {
+            throw new IllegalStateException("Nesting problem.");
+        }
+        if (deferredName != null) {
+            throw new IllegalStateException("Dangling name: " + deferredName);
+        }
+        stackSize--;
+        reserve(1);
+        buf[pos++] = (byte) bracket;
+        return this;
+    }
+
+    private void push(int context) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = context;
+    }
+
+    private int peek() {
+        if (stackSize == 0) {
+            throw new IllegalStateException("JsonWriter is closed.");
+        }
+        return stack[stackSize - 1];
+    }
+
+    private void ensureOpen() {
+        if (buf == null || stackSize == 0) {
+            throw new IllegalStateException("JsonWriter is closed.");
+        }
+    }
+
+    private void writeDeferredName() throws IOException {
+        if (deferredName != null) {
+            final int context = peek();
+            if (context == NONEMPTY_OBJECT) {
+                reserve(1);
+                buf[pos++] = ',';
+            } else if (context != EMPTY_OBJECT) {
+                throw new IllegalStateException("Nesting problem.");
+            }
+            stack[stackSize - 1] = DANGLING_NAME;
+            string(deferredName);
+            deferredName = null;
+        }
+    }
+
+    private void beforeValue() throws IOException {
+        ensureOpen();
+        switch (peek()) {
+            case NONEMPTY_DOCUMENT:
+                throw new IllegalStateException("JSON must have only one top-level value.");
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                reserve(1);
+                buf[pos++] = ',';
+                break;
+            case DANGLING_NAME:
+                reserve(1);
+                buf[pos++] = ':';
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                break;
+            default:
+                throw new IllegalStateException("Nesting problem.");
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped string, encoding it as UTF-8. Unpaired
+     * surrogates are replaced by '?', as {@link String#getBytes} does.
+     */
+    private void string(String value) throws IOException {
+        reserve(1);
+        buf[pos++] = '"';
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (buf.length - pos < MAX_CHAR_BYTES) {
+                flushBuffer();
+            }
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    buf[pos++] = (byte) c;
+                } else {
+                    escape(c);
+                }
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            } else if (c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+                escape(c);
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                final char low = i + 1 < length ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    final int codePoint = Character.toCodePoint(c, low);
+                    buf[pos++] = (byte) (0xf0 | codePoint >> 18);
+                    buf[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    buf[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    buf[pos++] = (byte) (0x80 | codePoint & 0x3f);
+                    i++;
+                } else {
+                    buf[pos++] = '?';
+                }
+            } else {
+                buf[pos++] = (byte) (0xe0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        reserve(1);
+        buf[pos++] = '"';
+    }
+
+    private void escape(char c) {
+        buf[pos++] = '\\';
+        switch (c) {
+            case '"':
+            case '\\':
+                buf[pos++] = (byte) c;
+                break;
+            case '\t':
+                buf[pos++] = 't';
+                break;
+            case '\b':
+                buf[pos++] = 'b';
+                break;
+            case '\n':
+                buf[pos++] = 'n';
+                break;
+            case '\r':
+                buf[pos++] = 'r';
+                break;
+            case '\f':
+                buf[pos++] = 'f';
+                break;
+            default:
+                buf[pos++] = 'u';
+                buf[pos++] = HEX[c >> 12 & 0xf];
+                buf[pos++] = HEX[c >> 8 & 0xf];
+                buf[pos++] = HEX[c >> 4 & 0xf];
+                buf[pos++] = HEX[c & 0xf];
+                break;
+        }
+    }
+
+    /**
+     * Writes bytes encoded as base64, as
+     * {@link com.amazonaws.util.BinaryUtils#toBase64} does.
+     */
+    private void base64(byte[] bytes, int offset, int length) throws IOException {
+        int i = offset;
+        final int end = offset + length;
+        while (end - i >= 3) {
+            reserve(BASE64_QUANTUM);
+            // Encodes as many whole groups as fit in the buffer
+            final int groupsEnd = i + 3 * Math.min((end - i) / 3, (buf.length - pos) / 4);
+            while (i < groupsEnd) {
+                final int bits = (bytes[i++] & 0xff) << 16 | (bytes[i++] & 0xff) << 8
+                        | bytes[i++] & 0xff;
+                buf[pos++] = BASE64[bits >>> 18];
+                buf[pos++] = BASE64[bits >>> 12 & 0x3f];
+                buf[pos++] = BASE64[bits >>> 6 & 0x3f];
+                buf[pos++] = BASE64[bits & 0x3f];
+            }
+        }
+        final int remaining = end - i;
+        if (remaining > 0) {
+            reserve(BASE64_QUANTUM);
+            final int bits = (bytes[i] & 0xff) << 16
+                    | (remaining == 2 ? (bytes[i + 1] & 0xff) << 8 : 0);
+            buf[pos++] = BASE64[bits >>> 18];
+            buf[pos++] = BASE64[bits >>> 12 & 0x3f];
+            buf[pos++] = remaining == 2 ? BASE64[bits >>> 6 & 0x3f] : (byte) '=';
+            buf[pos++] = '=';
+        }
+    }
+
+    private void ascii(String value) throws IOException {
+        final int length = value.length();
+        reserve(length);
+        if (length > buf.length) {
+            out.write(value.getBytes(StringUtils.UTF8));
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            buf[pos++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void raw(byte[] bytes) throws IOException {
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Makes room for a number of bytes in the buffer, if it can hold them.
+     */
+    private void reserve(int length) throws IOException {
+        if (buf.length - pos < length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates gzip content like {@link java.util.zip.GZIPInputStream}, but with
+ * the pooled {@link Inflater} and buffer of a {@link JsonDecodingBuffers}. The
+ * compressed bytes update an optional checksum as they are read, so that the
+ * checksum of a response is calculated in the same pass.
+ */
+final class GzipInflatingInputStream extends InputStream {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int DEFLATE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    /** mtime, xfl and os */
+    private static final int HEADER_SKIPPED_BYTES = 6;
+    private static final long UINT_MASK = 0xffffffffL;
+    private static final int BYTE_MASK = 0xff;
+    private static final int BYTE_BITS = 8;
+
+    private final InputStream in;
+    private final Checksum checksum;
+    private final Inflater inflater;
+    private final CRC32 crc32;
+    private final byte[] input;
+    private final byte[] single = new byte[1];
+    private int inputPos;
+    private int inputLimit;
+    private boolean started;
+    private boolean eof;
+
+    GzipInflatingInputStream(InputStream in, Checksum checksum, JsonDecodingBuffers buffers) {
+        this.in = in;
+        this.checksum = checksum;
+        this.inflater = buffers.inflater();
+        this.crc32 = buffers.inflatedCrc32();
+        this.input = buffers.compressed();
+        crc32.reset();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!started) {
+            readHeader();
+            started = true;
+        }
+        while (!eof) {
+            final int n;
+            try {
+                n = inflater.inflate(b, off, len);
+            } catch (final DataFormatException e) {
+                final String message = e.getMessage();
+                throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+            }
+            if (n > 0) {
+                crc32.update(b, off, n);
+                return n;
+            }
+            if (inflater.finished()) {
+                inputPos = inputLimit - inflater.getRemaining();
+                readTrailer();
+                eof = !nextMember();
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("ZLIB dictionary missing");
+            } else if (inflater.needsInput()) {
+                if (inputPos == inputLimit && !fillInput()) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+                inflater.setInput(input, inputPos, inputLimit - inputPos);
+                inputPos = inputLimit;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readHeader() throws IOException {
+        if (readUnsignedShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        readHeaderAfterMagic();
+    }
+
+    private void readHeaderAfterMagic() throws IOException {
+        if (readUnsignedByte() != DEFLATE) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readUnsignedByte();
+        skipBytes(HEADER_SKIPPED_BYTES);
+        if ((flags & FEXTRA) == FEXTRA) {
+            skipBytes(readUnsignedShort());
+        }
+        if ((flags & FNAME) == FNAME) {
+            while (readUnsignedByte() != 0) {
+                // skips the file name
+            }
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            while (readUnsignedByte() != 0) {
+                // skips the comment
+            }
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            skipBytes(2);
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        final long crc = readUnsignedInt();
+        final long size = readUnsignedInt();
+        if (crc != crc32.getValue() || size != (inflater.getBytesWritten() & UINT_MASK)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    /**
+     * Starts the next member of concatenated gzip content. Like
+     * {@link java.util.zip.GZIPInputStream}, bytes after the last member that
+     * aren't a gzip header are ignored.
+     */
+    private boolean nextMember() throws IOException {
+        if (inputPos == inputLimit && !fillInput()) {
+            return false;
+        }
+        if (inputLimit - inputPos >= 2) {
+            final int magic = (input[inputPos] & BYTE_MASK)
+                    | (input[inputPos + 1] & BYTE_MASK) << BYTE_BITS;
+            if (magic != GZIP_MAGIC) {
+                return false;
+            }
+            inputPos += 2;
+        } else if (readUnsignedShort() != GZIP_MAGIC) {
+            return false;
+        }
+        readHeaderAfterMagic();
+        inflater.reset();
+        crc32.reset();
+        return true;
+    }
+
+    private boolean fillInput() throws IOException {
+        int n;
+        do {
+            n = in.read(input, 0, input.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        if (checksum != null) {
+            checksum.update(input, 0, n);
+        }
+        inputPos = 0;
+        inputLimit = n;
+        return true;
+    }
+
+    private int readUnsignedByte() throws IOException {
+        if (inputPos == inputLimit && !fillInput()) {
+            throw new EOFException("Unexpected end of GZIP content");
+        }
+        return input[inputPos++] & BYTE_MASK;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return readUnsignedByte() | readUnsignedByte() << BYTE_BITS;
+    }
+
+    private long readUnsignedInt() throws IOException {
+        return (readUnsignedShort() | (long) readUnsignedShort() << (2 * BYTE_BITS)) & UINT_MASK;
+    }
+
+    private void skipBytes(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readUnsignedByte();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+
+/**
+ * The buffers and the {@link Inflater} of a {@link ByteJsonReader}. They are
+ * kept per thread once the reader is closed, so that the next response read
+ * on the thread doesn't allocate them again.
+ */
+final class JsonDecodingBuffers {
+
+    static final int BUFFER_SIZE = 8 * 1024;
+    private static final int INITIAL_CHARS = 256;
+    /** Char buffers grown by long strings above this size aren't kept. */
+    private static final int MAX_POOLED_CHARS = 64 * 1024;
+
+    private static final ThreadLocal<JsonDecodingBuffers> POOL =
+            new ThreadLocal<JsonDecodingBuffers>();
+
+    final byte[] bytes = new byte[BUFFER_SIZE];
+    private char[] chars = new char[INITIAL_CHARS];
+    private byte[] compressed;
+    private Inflater inflater;
+    private CRC32 inflatedCrc32;
+
+    private JsonDecodingBuffers() {
+    }
+
+    /**
+     * Takes the buffers of the current thread, or creates new ones if they are
+     * in use or haven't been created yet.
+     */
+    static JsonDecodingBuffers acquire() {
+        final JsonDecodingBuffers buffers = POOL.get();
+        if (buffers == null) {
+            return new JsonDecodingBuffers();
+        }
+        POOL.set(null);
+        return buffers;
+    }
+
+    /**
+     * Returns the buffers to the pool of the current thread. They must not be
+     * used afterwards.
+     */
+    static void release(JsonDecodingBuffers buffers) {
+        if (buffers.chars.length > MAX_POOLED_CHARS) {
+            buffers.chars = new char[INITIAL_CHARS];
+        }
+        if (buffers.inflater != null) {
+            buffers.inflater.reset();
+        }
+        if (POOL.get() != null) {
+            // The thread already has buffers
+            buffers.end();
+            return;
+        }
+        POOL.set(buffers);
+    }
+
+    /**
+     * @param capacity the minimum number of chars.
+     * @return a char buffer of at least the capacity, with the content of the
+     *         current one.
+     */
+    char[] chars(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, capacity));
+        }
+        return chars;
+    }
+
+    byte[] compressed() {
+        if (compressed == null) {
+            compressed = new byte[BUFFER_SIZE];
+        }
+        return compressed;
+    }
+
+    /**
+     * @return an inflater of raw deflate data, the gzip header and trailer
+     *         being parsed by the caller.
+     */
+    Inflater inflater() {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        return inflater;
+    }
+
+    CRC32 inflatedCrc32() {
+        if (inflatedCrc32 == null) {
+            inflatedCrc32 = new CRC32();
+        }
+        return inflatedCrc32;
+    }
+
+    private void end() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
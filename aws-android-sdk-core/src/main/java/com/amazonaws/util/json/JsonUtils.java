@@ -18,6 +18,8 @@ package com.amazonaws.util.json;
 import com.amazonaws.AmazonClientException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -25,6 +27,7 @@ import java.io.Writer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.Checksum;
 
 /**
  * A utility class to process JSON contents.
@@ -79,6 +82,41 @@ public class JsonUtils {
         return FACTORY.getJsonReader(in);
     }
 
+    /**
+     * Gets a JSON reader of UTF-8 encoded content. Unlike
+     * {@link #getJsonReader(Reader)}, the content is tokenized from its bytes
+     * without being decoded to characters first, and the buffers of the
+     * reader are reused on the same thread once it's closed.
+     *
+     * @param in UTF-8 encoded content
+     * @return a JSON reader
+     */
+    public static AwsJsonReader getJsonReader(InputStream in) {
+        return getJsonReader(in, false, null);
+    }
+
+    /**
+     * Gets a JSON reader of UTF-8 encoded content, such as the body of a
+     * service response, that's decoded and checksummed in a single pass.
+     * Gzip encoded content is inflated with a pooled
+     * {@link java.util.zip.Inflater}.
+     *
+     * @param in the content as received
+     * @param gzipEncoded whether the content is gzip encoded
+     * @param checksum updated with the bytes of {@code in}, before they are
+     *            inflated, as they are read, or null
+     * @return a JSON reader
+     */
+    public static AwsJsonReader getJsonReader(InputStream in, boolean gzipEncoded,
+            Checksum checksum) {
+        final JsonDecodingBuffers buffers = JsonDecodingBuffers.acquire();
+        if (gzipEncoded) {
+            return new ByteJsonReader(new GzipInflatingInputStream(in, checksum, buffers), null,
+                    buffers);
+        }
+        return new ByteJsonReader(in, checksum, buffers);
+    }
+
     /**
      * Gets a JSON writer. If no JSON engine is available, an
      * {@link AmazonClientException} will be thrown.
@@ -90,6 +128,20 @@ public class JsonUtils {
         return FACTORY.getJsonWriter(out);
     }
 
+    /**
+     * Gets a JSON writer that encodes the document as UTF-8 straight into the
+     * stream, without a {@link Writer}. Closing the JSON writer closes the
+     * stream. Write request content into a
+     * {@link com.amazonaws.util.Sha256HashingOutputStream} to have it hashed
+     * for signing as it is written.
+     *
+     * @param out output stream
+     * @return a JSON writer
+     */
+    public static AwsJsonWriter getJsonWriter(OutputStream out) {
+        return new ByteJsonWriter(out);
+    }
+
     /**
      * Convenient method to convert a JSON string to a map. Any object or array
      * will be discarded. Number and boolean are stored as string.
@@ -15,6 +15,7 @@
 
 package com.amazonaws.auth;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -22,6 +23,9 @@ import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.DefaultRequest;
 import com.amazonaws.Request;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Sha256HashedInputStream;
+import com.amazonaws.util.Sha256HashingOutputStream;
 import com.amazonaws.util.StringUtils;
 
 import org.junit.Assert;
@@ -189,6 +193,68 @@ public class AWS4SignerTest {
         assertNull(request.getHeaders().get("Authorization"));
     }
 
+    @Test
+    public void testHashCanonicalRequestMatchesCanonicalRequest() {
+        final Request<?> request = generateBasicRequest();
+        request.addHeader("X-Amz-Date", "19810216T063000Z");
+        request.addHeader("Content-Type", "application/x-amz-json-1.1");
+        request.addHeader("x-amz-meta-unicode", " caf\u00e9 \u65e5\u672c \ud83d\ude00\t\n end ");
+        request.addParameter("b", "2");
+        request.addParameter("a", "value with spaces");
+        request.setResourcePath("/path/with spaces/\u00fc");
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longValue.append("abc \u00e9 ");
+        }
+        request.addHeader("x-amz-long", longValue.toString());
+
+        final String contentSha256 = signer.calculateContentHash(request);
+        assertArrayEquals(signer.hash(signer.getCanonicalRequest(request, contentSha256)),
+                signer.hashCanonicalRequest(request, contentSha256));
+    }
+
+    @Test
+    public void testContentHashedWhileMarshalledIsUsed() throws Exception {
+        final Request<?> request = generateBasicRequest();
+        final String expected = signer.calculateContentHash(request);
+
+        final Sha256HashingOutputStream content = new Sha256HashingOutputStream();
+        content.write("{\"TableName\": \"foo\"}".getBytes(StringUtils.UTF8));
+        final Sha256HashedInputStream in = content.toInputStream();
+        request.setContent(in);
+        assertEquals(expected, signer.calculateContentHash(request));
+        assertEquals("The content isn't read", content.size(), in.available());
+
+        // The hash of content that has been read from is calculated again
+        in.read();
+        assertEquals(BinaryUtils.toHex(signer.hash("\"TableName\": \"foo\"}")),
+                signer.calculateContentHash(request));
+    }
+
+    @Test
+    public void testSignerOverridingCanonicalRequestIsHonored() {
+        final AWS4Signer overriding = new AWS4Signer() {
+            @Override
+            protected String getCanonicalRequest(Request<?> request, String contentSha256) {
+                return "constant";
+            }
+        };
+        final Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        overriding.overrideDate(c.getTime());
+        signer.overrideDate(c.getTime());
+
+        final AWSCredentials credentials = new BasicAWSCredentials("access", "secret");
+        final Request<?> request = generateBasicRequest();
+        overriding.sign(request, credentials);
+        final Request<?> other = generateBasicRequest();
+        signer.sign(other, credentials);
+
+        assertFalse(request.getHeaders().get("Authorization")
+                .equals(other.getHeaders().get("Authorization")));
+    }
+
     private Request<?> generateBasicRequest() {
         final Request<?> request = new DefaultRequest<Void>("Foo");
         request.setContent(new ByteArrayInputStream("{\"TableName\": \"foo\"}"
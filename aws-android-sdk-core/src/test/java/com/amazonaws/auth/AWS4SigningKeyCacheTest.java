@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+public class AWS4SigningKeyCacheTest {
+
+    private static final byte[] KEY = new byte[] {
+            1, 2, 3
+    };
+
+    @Before
+    public void setUp() {
+        AWS4Signer.SIGNING_KEY_CACHE.clear();
+    }
+
+    @Test
+    public void testGetReturnsKeyForSameScope() {
+        final AWS4SigningKeyCache cache = new AWS4SigningKeyCache(10);
+        cache.put("access", "secret", "20190101", "us-east-1", "kinesis", KEY);
+        assertArrayEquals(KEY, cache.get("access", "secret", "20190101", "us-east-1", "kinesis"));
+    }
+
+    @Test
+    public void testGetMissesOnDifferentDateRegionOrService() {
+        final AWS4SigningKeyCache cache = new AWS4SigningKeyCache(10);
+        cache.put("access", "secret", "20190101", "us-east-1", "kinesis", KEY);
+        assertNull(cache.get("access", "secret", "20190102", "us-east-1", "kinesis"));
+        assertNull(cache.get("access", "secret", "20190101", "us-west-2", "kinesis"));
+        assertNull(cache.get("access", "secret", "20190101", "us-east-1", "firehose"));
+    }
+
+    @Test
+    public void testRotatedSecretReplacesEntry() {
+        final AWS4SigningKeyCache cache = new AWS4SigningKeyCache(10);
+        cache.put("access", "secret", "20190101", "us-east-1", "kinesis", KEY);
+        assertNull(cache.get("access", "rotated", "20190101", "us-east-1", "kinesis"));
+
+        cache.put("access", "rotated", "20190101", "us-east-1", "kinesis", new byte[] {
+                4
+        });
+        assertEquals(1, cache.size());
+        assertNull(cache.get("access", "secret", "20190101", "us-east-1", "kinesis"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final AWS4SigningKeyCache cache = new AWS4SigningKeyCache(2);
+        cache.put("a", "secret", "20190101", "us-east-1", "kinesis", KEY);
+        cache.put("b", "secret", "20190101", "us-east-1", "kinesis", KEY);
+        // touch a so that b becomes the eldest entry
+        cache.get("a", "secret", "20190101", "us-east-1", "kinesis");
+        cache.put("c", "secret", "20190101", "us-east-1", "kinesis", KEY);
+
+        assertEquals(2, cache.size());
+        assertArrayEquals(KEY, cache.get("a", "secret", "20190101", "us-east-1", "kinesis"));
+        assertNull(cache.get("b", "secret", "20190101", "us-east-1", "kinesis"));
+    }
+
+    @Test
+    public void testSignerReusesCachedKey() {
+        final AWS4Signer signer = new AWS4Signer();
+        final Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        signer.overrideDate(c.getTime());
+        signer.setServiceName("demo");
+
+        final AWSCredentials credentials = new BasicAWSCredentials("access", "secret");
+        final Request<?> first = newRequest();
+        signer.sign(first, credentials);
+        assertEquals(1, AWS4Signer.SIGNING_KEY_CACHE.size());
+
+        final Request<?> second = newRequest();
+        signer.sign(second, credentials);
+        assertEquals(1, AWS4Signer.SIGNING_KEY_CACHE.size());
+        assertEquals(first.getHeaders().get("Authorization"),
+                second.getHeaders().get("Authorization"));
+
+        // A different secret for the same access key must not reuse the key
+        final Request<?> third = newRequest();
+        signer.sign(third, new BasicAWSCredentials("access", "other"));
+        assertEquals(1, AWS4Signer.SIGNING_KEY_CACHE.size());
+        assertEquals(false, first.getHeaders().get("Authorization")
+                .equals(third.getHeaders().get("Authorization")));
+    }
+
+    private Request<?> newRequest() {
+        final Request<?> request = new DefaultRequest<Void>("Foo");
+        request.setEndpoint(URI.create("http://demo.us-east-1.amazonaws.com"));
+        request.addHeader("x-amz-archive-description", "test  test");
+        return request;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonClientException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class CognitoCredentialsProviderTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    private TestProvider provider;
+    private Queue<Runnable> tasks;
+
+    @Before
+    public void setUp() {
+        provider = new TestProvider();
+        tasks = new LinkedList<Runnable>();
+        provider.setBackgroundRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+    }
+
+    @Test
+    public void testSessionWithinThresholdBlocksWhenDisabled() {
+        assertFalse(provider.isBackgroundRefreshEnabled());
+        provider.nextLifetime = 5 * MINUTE;
+        final AWSSessionCredentials first = provider.getCredentials();
+        assertEquals(1, provider.sessions);
+
+        final AWSSessionCredentials second = provider.getCredentials();
+        assertEquals(2, provider.sessions);
+        assertFalse(first.equals(second));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testFreshSessionIsReturned() {
+        provider.withBackgroundRefreshEnabled(true);
+        final AWSSessionCredentials first = provider.getCredentials();
+        assertSame(first, provider.getCredentials());
+        assertEquals(1, provider.sessions);
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testStaleSessionIsRefreshedInBackground() {
+        provider.withBackgroundRefreshEnabled(true);
+        provider.nextLifetime = 5 * MINUTE;
+        final AWSSessionCredentials stale = provider.getCredentials();
+
+        // Returned while a single refresh is scheduled
+        provider.nextLifetime = 60 * MINUTE;
+        assertSame(stale, provider.getCredentials());
+        assertSame(stale, provider.getCredentials());
+        assertEquals(1, tasks.size());
+        assertEquals(1, provider.sessions);
+
+        tasks.poll().run();
+        assertEquals(2, provider.sessions);
+        final AWSSessionCredentials fresh = provider.getCredentials();
+        assertFalse(stale.equals(fresh));
+        assertSame(fresh, provider.getCredentials());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testBackgroundRefreshSkippedWhenAlreadyRefreshed() {
+        provider.withBackgroundRefreshEnabled(true);
+        provider.nextLifetime = 5 * MINUTE;
+        provider.getCredentials();
+        provider.getCredentials();
+
+        provider.nextLifetime = 60 * MINUTE;
+        provider.refresh();
+        tasks.poll().run();
+        assertEquals(2, provider.sessions);
+    }
+
+    @Test
+    public void testExpiredSessionBlocks() {
+        provider.withBackgroundRefreshEnabled(true);
+        provider.nextLifetime = MINUTE / 2;
+        final AWSSessionCredentials expired = provider.getCredentials();
+
+        provider.nextLifetime = 60 * MINUTE;
+        final AWSSessionCredentials fresh = provider.getCredentials();
+        assertEquals(2, provider.sessions);
+        assertFalse(expired.equals(fresh));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testFailedBackgroundRefreshKeepsSession() {
+        provider.withBackgroundRefreshEnabled(true);
+        provider.nextLifetime = 5 * MINUTE;
+        final AWSSessionCredentials stale = provider.getCredentials();
+
+        provider.fail = true;
+        assertSame(stale, provider.getCredentials());
+        tasks.poll().run();
+        assertSame(stale, provider.getCredentials());
+
+        // The failed refresh doesn't prevent the next one
+        provider.fail = false;
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        assertFalse(stale.equals(provider.getCredentials()));
+    }
+
+    @Test
+    public void testClearedSessionBlocks() {
+        provider.withBackgroundRefreshEnabled(true);
+        provider.getCredentials();
+        provider.clearCredentials();
+        provider.getCredentials();
+        assertEquals(2, provider.sessions);
+
+        // An expiration set directly is seen by the readers
+        provider.setSessionCredentialsExpiration(new Date(System.currentTimeMillis()));
+        provider.getCredentials();
+        assertEquals(3, provider.sessions);
+    }
+
+    @Test
+    public void testBackgroundRefreshesShareOneThread() throws InterruptedException {
+        final TestProvider[] providers = {
+                new TestProvider(), new TestProvider()
+        };
+        for (final TestProvider p : providers) {
+            p.withBackgroundRefreshEnabled(true);
+            p.nextLifetime = 5 * MINUTE;
+            p.getCredentials();
+            p.nextLifetime = 60 * MINUTE;
+            p.refreshed = new CountDownLatch(1);
+            p.getCredentials();
+        }
+        for (final TestProvider p : providers) {
+            assertTrue(p.refreshed.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals("cognito-credentials-refresh", providers[0].sessionThread.getName());
+        assertTrue(providers[0].sessionThread.isDaemon());
+        assertSame(providers[0].sessionThread, providers[1].sessionThread);
+    }
+
+    /**
+     * Starts sessions with numbered credentials instead of calling Amazon
+     * Cognito.
+     */
+    private static class TestProvider extends CognitoCredentialsProvider {
+        private int sessions;
+        private long nextLifetime = 60 * MINUTE;
+        private boolean fail;
+        private volatile CountDownLatch refreshed;
+        private volatile Thread sessionThread;
+
+        TestProvider() {
+            super(null, "unauthArn", "authArn", null);
+        }
+
+        @Override
+        protected void startSession() {
+            if (fail) {
+                throw new AmazonClientException("Unable to reach Amazon Cognito");
+            }
+            sessions++;
+            sessionCredentials = new BasicSessionCredentials("accessKey" + sessions,
+                    "secretKey", "sessionToken");
+            setSessionCredentialsExpiration(new Date(System.currentTimeMillis()
+                    + nextLifetime));
+            sessionThread = Thread.currentThread();
+            if (refreshed != null) {
+                refreshed.countDown();
+            }
+        }
+    }
+}
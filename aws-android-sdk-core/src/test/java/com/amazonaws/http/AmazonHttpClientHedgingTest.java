@@ -0,0 +1,311 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.retry.HedgingPolicy;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AmazonHttpClientHedgingTest {
+
+    private static final long MAX_DELAY_MILLIS = 50;
+
+    private AmazonHttpClient client;
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testSlowSendIsHedged() throws Exception {
+        final ScriptedHttpClient httpClient = new ScriptedHttpClient();
+        httpClient.blockFirst = true;
+        client = newClient(httpClient, "GetThing");
+
+        final ExecutionContext context = new ExecutionContext(true);
+        assertEquals("2", client.execute(newRequest(new GetThingRequest(), "{\"Key\":1}"),
+                new BodyHandler(), null, context).getAwsResponse());
+        assertEquals(2, httpClient.sent.size());
+        assertEquals(1, context.getAwsRequestMetrics().getTimingInfo()
+                .getCounter(Field.HedgeCount.name()).intValue());
+        assertEquals(1, context.getAwsRequestMetrics().getTimingInfo()
+                .getCounter(Field.HedgeWinCount.name()).intValue());
+        for (final HttpRequest sent : httpClient.sent) {
+            assertEquals("{\"Key\":1}", IOUtils.toString(sent.getContent()));
+        }
+
+        // The response of the first send is closed without being read
+        httpClient.release.countDown();
+        assertTrue(httpClient.firstClosed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLosingSendIsAborted() throws Exception {
+        final ScriptedHttpClient httpClient = new ScriptedHttpClient();
+        httpClient.blockFirst = true;
+        httpClient.abortable = true;
+        client = newClient(httpClient, "GetThing");
+
+        final ExecutionContext context = new ExecutionContext(true);
+        assertEquals("2", client.execute(newRequest(new GetThingRequest(), null),
+                new BodyHandler(), null, context).getAwsResponse());
+        // The first send stops waiting without being released
+        assertTrue(httpClient.firstAborted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, httpClient.release.getCount());
+        assertEquals(1, context.getAwsRequestMetrics().getTimingInfo()
+                .getCounter(Field.HedgeWinCount.name()).intValue());
+        assertEquals(1, context.getAwsRequestMetrics().getTimingInfo()
+                .getCounter(Field.RequestCount.name()).intValue());
+    }
+
+    @Test
+    public void testFastSendIsNotHedged() throws Exception {
+        final ScriptedHttpClient httpClient = new ScriptedHttpClient();
+        client = newClient(httpClient, "GetThing");
+
+        final ExecutionContext context = new ExecutionContext(true);
+        assertEquals("1", client.execute(newRequest(new GetThingRequest(), null),
+                new BodyHandler(), null, context).getAwsResponse());
+        Thread.sleep(2 * MAX_DELAY_MILLIS);
+        assertEquals(1, httpClient.sent.size());
+        assertNull(context.getAwsRequestMetrics().getTimingInfo()
+                .getCounter(Field.HedgeCount.name()));
+    }
+
+    @Test
+    public void testFailedSendWaitsForHedge() throws Exception {
+        final ScriptedHttpClient httpClient = new ScriptedHttpClient();
+        httpClient.blockFirst = true;
+        httpClient.failFirst = true;
+        client = newClient(httpClient, "GetThing");
+
+        final ExecutionContext context = new ExecutionContext(true);
+        assertEquals("2", client.execute(newRequest(new GetThingRequest(), null),
+                new BodyHandler(), null, context).getAwsResponse());
+        httpClient.release.countDown();
+        // Neither send is retried
+        assertEquals(1, context.getAwsRequestMetrics().getTimingInfo()
+                .getCounter(Field.RequestCount.name()).intValue());
+    }
+
+    @Test
+    public void testOtherOperationsAreNotHedged() throws Exception {
+        final ScriptedHttpClient httpClient = new ScriptedHttpClient();
+        httpClient.blockFirst = true;
+        client = newClient(httpClient, "GetOtherThing");
+
+        final Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(4 * MAX_DELAY_MILLIS);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                httpClient.release.countDown();
+            }
+        });
+        releaser.start();
+        assertEquals("1", client.execute(newRequest(new GetThingRequest(), null),
+                new BodyHandler(), null, new ExecutionContext()).getAwsResponse());
+        assertEquals(1, httpClient.sent.size());
+        releaser.join();
+    }
+
+    @Test
+    public void testLongContentIsNotHedged() throws Exception {
+        final byte[] content = new byte[HedgingPolicy.MAX_CONTENT_LENGTH + 1];
+        assertNull(AmazonHttpClient.bufferContent(new HttpRequest("POST",
+                URI.create("http://testsvc.region.amazonaws.com"), null,
+                new ByteArrayInputStream(content))));
+
+        final InputStream stream = new ByteArrayInputStream("content".getBytes(StringUtils.UTF8));
+        final HttpRequest request = new HttpRequest("POST",
+                URI.create("http://testsvc.region.amazonaws.com"), null, stream);
+        final byte[] buffered = AmazonHttpClient.bufferContent(request);
+        assertArrayEquals("content".getBytes(StringUtils.UTF8), buffered);
+        // The content is reset for the first send
+        assertEquals("content", IOUtils.toString(stream));
+        assertEquals("content",
+                IOUtils.toString(AmazonHttpClient.copyOf(request, buffered).getContent()));
+    }
+
+    @Test
+    public void testHedgeDelayFollowsLatency() {
+        final HedgeDelays delays = new HedgeDelays(new HedgingPolicy(
+                HedgingPolicy.forOperations("GetThing"), 90, MAX_DELAY_MILLIS));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_DELAY_MILLIS),
+                delays.delayMicros(GetThingRequest.class));
+
+        for (int i = 1; i <= 10 * HedgeDelays.RECOMPUTE_INTERVAL; i++) {
+            delays.record(GetThingRequest.class, i % 10 == 0 ? 40000 : 1000);
+        }
+        final long delay = delays.delayMicros(GetThingRequest.class);
+        assertTrue(String.valueOf(delay), delay >= 1000 && delay < 1100);
+
+        for (int i = 0; i < 10 * HedgeDelays.RECOMPUTE_INTERVAL; i++) {
+            delays.record(GetThingRequest.class, 1000000);
+        }
+        // Capped at the max delay
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_DELAY_MILLIS),
+                delays.delayMicros(GetThingRequest.class));
+    }
+
+    @Test
+    public void testForOperations() {
+        final HedgingPolicy.HedgeCondition condition =
+                HedgingPolicy.forOperations("GetThing", "Query");
+        assertTrue(condition.shouldHedge(new GetThingRequest()));
+        assertFalse(condition.shouldHedge(new AmazonWebServiceRequest() {
+        }));
+        assertFalse(condition.shouldHedge(null));
+    }
+
+    private static AmazonHttpClient newClient(HttpClient httpClient, String operation) {
+        final ClientConfiguration config = new ClientConfiguration()
+                .withHedgingPolicy(new HedgingPolicy(HedgingPolicy.forOperations(operation),
+                        HedgingPolicy.DEFAULT_DELAY_PERCENTILE, MAX_DELAY_MILLIS));
+        return new AmazonHttpClient(config, httpClient);
+    }
+
+    private static Request<?> newRequest(AmazonWebServiceRequest originalRequest,
+            String content) {
+        final Request<?> request = new DefaultRequest<Object>(originalRequest, "testsvc");
+        request.setEndpoint(URI.create("http://testsvc.region.amazonaws.com"));
+        if (content != null) {
+            final byte[] bytes = content.getBytes(StringUtils.UTF8);
+            request.addHeader(HttpHeader.CONTENT_LENGTH, String.valueOf(bytes.length));
+            request.setContent(new ByteArrayInputStream(bytes));
+        }
+        return request;
+    }
+
+    private static final class GetThingRequest extends AmazonWebServiceRequest {
+    }
+
+    /**
+     * Responds to the nth send with n as the content, and holds the first
+     * send until released, or aborted if it's set to be abortable, if it's
+     * set to block.
+     */
+    private static final class ScriptedHttpClient implements AbortableHttpClient {
+        private final List<HttpRequest> sent = new ArrayList<HttpRequest>();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch abort = new CountDownLatch(1);
+        private final CountDownLatch firstClosed = new CountDownLatch(1);
+        private final CountDownLatch firstAborted = new CountDownLatch(1);
+        private volatile boolean blockFirst;
+        private volatile boolean failFirst;
+        private volatile boolean abortable;
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            final int n;
+            synchronized (sent) {
+                sent.add(request);
+                n = sent.size();
+            }
+            if (n == 1 && blockFirst) {
+                try {
+                    final long deadline = System.currentTimeMillis() + 10000;
+                    while (!release.await(10, TimeUnit.MILLISECONDS)
+                            && System.currentTimeMillis() < deadline) {
+                        if (abort.getCount() == 0) {
+                            firstAborted.countDown();
+                            throw new IOException("aborted");
+                        }
+                    }
+                } catch (final InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+                if (failFirst) {
+                    throw new IOException("BOOM");
+                }
+            }
+            final AtomicBoolean closed = new AtomicBoolean();
+            final InputStream content = new ByteArrayInputStream(
+                    String.valueOf(n).getBytes(StringUtils.UTF8)) {
+                @Override
+                public void close() {
+                    if (n == 1 && closed.compareAndSet(false, true)) {
+                        firstClosed.countDown();
+                    }
+                }
+            };
+            return HttpResponse.builder().statusCode(200).content(content).build();
+        }
+
+        @Override
+        public void abort(HttpRequest request) {
+            synchronized (sent) {
+                if (abortable && !sent.isEmpty() && sent.get(0) == request) {
+                    abort.countDown();
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Reads the content of the response as its result.
+     */
+    private static final class BodyHandler
+            implements HttpResponseHandler<AmazonWebServiceResponse<String>> {
+        @Override
+        public AmazonWebServiceResponse<String> handle(HttpResponse response)
+                throws IOException {
+            final AmazonWebServiceResponse<String> awsResponse =
+                    new AmazonWebServiceResponse<String>();
+            awsResponse.setResult(IOUtils.toString(response.getContent()));
+            return awsResponse;
+        }
+
+        @Override
+        public boolean needsConnectionLeftOpen() {
+            return false;
+        }
+    }
+}
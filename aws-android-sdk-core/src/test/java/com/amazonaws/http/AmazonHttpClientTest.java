@@ -51,6 +51,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class AmazonHttpClientTest {
     private HttpClient httpClient;
@@ -245,6 +249,167 @@ public class AmazonHttpClientTest {
         EasyMock.verify(httpClient);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExecuteAsync() throws Exception {
+        HttpResponseHandler<AmazonWebServiceResponse<String>> handler =
+                EasyMock.createMock(HttpResponseHandler.class);
+        EasyMock.expect(handler.needsConnectionLeftOpen()).andReturn(false).anyTimes();
+        AmazonWebServiceResponse<String> awsResponse = new AmazonWebServiceResponse<String>();
+        awsResponse.setResult("Result");
+        EasyMock.expect(handler.handle(EasyMock.<HttpResponse> anyObject()))
+                .andReturn(awsResponse);
+        EasyMock.expect(httpClient.execute(EasyMock.<HttpRequest> anyObject()))
+                .andReturn(HttpResponse.builder().statusCode(200).content(null).build());
+        EasyMock.replay(handler, httpClient);
+
+        final Response<?>[] called = new Response<?>[1];
+        final CountDownLatch callback = new CountDownLatch(1);
+        Future<Response<String>> future = client.executeAsync(newAsyncRequest(), handler, null,
+                new ExecutionContext(), new ResponseCallback<String>() {
+                    @Override
+                    public void onResponse(Response<String> response) {
+                        called[0] = response;
+                        callback.countDown();
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        callback.countDown();
+                    }
+                });
+
+        assertEquals("Result", future.get(5, TimeUnit.SECONDS).getAwsResponse());
+        assertTrue(callback.await(5, TimeUnit.SECONDS));
+        assertSame(future.get(), called[0]);
+        assertTrue(future.isDone());
+        EasyMock.verify(handler, httpClient);
+    }
+
+    @Test
+    public void testExecuteAsyncRetriesIOException() throws Exception {
+        IOException exception = new IOException("BOOM");
+        EasyMock.expect(httpClient.execute(EasyMock.<HttpRequest> anyObject()))
+                .andThrow(exception)
+                .times(4);
+        EasyMock.replay(httpClient);
+
+        Future<Response<Object>> future = client.executeAsync(newAsyncRequest(), null, null,
+                new ExecutionContext(), null);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("No exception when request repeatedly fails!");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AmazonClientException);
+            assertSame(exception, e.getCause().getCause());
+        }
+
+        // Verify that we called execute 4 times.
+        EasyMock.verify(httpClient);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExecuteAsyncWithAsyncHttpClient() throws Exception {
+        final List<HttpRequest> sent = new ArrayList<HttpRequest>();
+        AsyncHttpClient asyncHttpClient = new AsyncHttpClient() {
+            @Override
+            public void executeAsync(final HttpRequest request, final Callback callback) {
+                sent.add(request);
+                // Completes on another thread, like a network dispatcher
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (sent.size() == 1) {
+                            callback.onFailure(new IOException("BOOM"));
+                        } else {
+                            callback.onResponse(HttpResponse.builder().statusCode(200)
+                                    .content(new ByteArrayInputStream(new byte[0])).build());
+                        }
+                    }
+                }).start();
+            }
+
+            @Override
+            public HttpResponse execute(HttpRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        client = new AmazonHttpClient(new ClientConfiguration(), asyncHttpClient);
+
+        HttpResponseHandler<AmazonWebServiceResponse<String>> handler =
+                EasyMock.createMock(HttpResponseHandler.class);
+        EasyMock.expect(handler.needsConnectionLeftOpen()).andReturn(false).anyTimes();
+        EasyMock.expect(handler.handle(EasyMock.<HttpResponse> anyObject()))
+                .andReturn(new AmazonWebServiceResponse<String>());
+        EasyMock.replay(handler);
+
+        client.executeAsync(newAsyncRequest(), handler, null, new ExecutionContext(), null)
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(2, sent.size());
+        EasyMock.verify(handler);
+        client.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCancelledExecuteAsyncDiscardsResponseInFlight() throws Exception {
+        final AsyncHttpClient.Callback[] sent = new AsyncHttpClient.Callback[1];
+        final CountDownLatch sending = new CountDownLatch(1);
+        AsyncHttpClient asyncHttpClient = new AsyncHttpClient() {
+            @Override
+            public void executeAsync(HttpRequest request, Callback callback) {
+                sent[0] = callback;
+                sending.countDown();
+            }
+
+            @Override
+            public HttpResponse execute(HttpRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        client = new AmazonHttpClient(new ClientConfiguration(), asyncHttpClient);
+
+        HttpResponseHandler<AmazonWebServiceResponse<String>> handler =
+                EasyMock.createMock(HttpResponseHandler.class);
+        EasyMock.expect(handler.needsConnectionLeftOpen()).andReturn(false).anyTimes();
+        EasyMock.replay(handler);
+
+        Future<Response<String>> future = client.executeAsync(newAsyncRequest(), handler, null,
+                new ExecutionContext(), null);
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+
+        final boolean[] closed = new boolean[1];
+        sent[0].onResponse(HttpResponse.builder().statusCode(200)
+                .content(new ByteArrayInputStream(new byte[0]) {
+                    @Override
+                    public void close() {
+                        closed[0] = true;
+                    }
+                }).build());
+        assertTrue(closed[0]);
+        EasyMock.verify(handler);
+        client.shutdown();
+    }
+
+    private Request<?> newAsyncRequest() {
+        Request<?> request = new DefaultRequest<Object>("testsvc");
+        request.setEndpoint(URI.create("http://testsvc.region.amazonaws.com"));
+        request.addHeader(HttpHeader.CONTENT_LENGTH, "0");
+        request.setContent(new ByteArrayInputStream(new byte[0]));
+        return request;
+    }
+
     @Test
     public void testHandleResponse() throws IOException {
 
@@ -754,4 +919,28 @@ public class AmazonHttpClientTest {
         String userAgent = request.getHeaders().get("User-Agent");
         assertEquals("same user agent", targetUserAgent, userAgent);
     }
+
+    @Test
+    public void testHttpClientFactoryReplacesDefaultClient() {
+        final ClientConfiguration config = new ClientConfiguration()
+                .withHttpClientFactory(new HttpClientFactory() {
+                    @Override
+                    public HttpClient createHttpClient(ClientConfiguration config) {
+                        return httpClient;
+                    }
+                });
+        assertSame(httpClient, new AmazonHttpClient(config).httpClient);
+        assertSame(httpClient, AmazonHttpClient.createDefaultHttpClient(config));
+        assertTrue(AmazonHttpClient.createDefaultHttpClient(new ClientConfiguration())
+                instanceof UrlHttpClient);
+
+        // A client given explicitly is used as is
+        final UrlHttpClient urlHttpClient = new UrlHttpClient(config);
+        assertSame(urlHttpClient, new AmazonHttpClient(config, urlHttpClient).httpClient);
+        final HttpClient explicit = EasyMock.createMock(HttpClient.class);
+        EasyMock.replay(explicit);
+        assertSame(explicit, new AmazonHttpClient(config, explicit).httpClient);
+        // and isn't shut down
+        EasyMock.verify(explicit);
+    }
 }
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.internal.CRC32MismatchException;
 import com.amazonaws.transform.JsonUnmarshallerContext;
 import com.amazonaws.transform.Unmarshaller;
 import com.amazonaws.util.StringUtils;
@@ -28,10 +29,12 @@ import com.amazonaws.util.StringUtils;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 
 public class JsonResponseHandlerTest {
 
@@ -143,4 +146,47 @@ public class JsonResponseHandlerTest {
         assertEquals(awsResponse.getResult(), "OpenConnection");
         assertSame(capture.get(0), bais);
     }
+
+    @Test
+    public void testHandleGzipWithCRC32() throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+        gzip.write("{\"key\" :\"Content\"}\n".getBytes(StringUtils.UTF8));
+        gzip.close();
+
+        // The checksum is calculated on the gzipped bytes
+        CRC32 crc32 = new CRC32();
+        crc32.update(gzipped.toByteArray());
+        HttpResponse response = new HttpResponse.Builder().statusText("testResponse")
+                .statusCode(200).header("Content-Encoding", "gzip")
+                .header("x-amz-crc32", String.valueOf(crc32.getValue()))
+                .content(new ByteArrayInputStream(gzipped.toByteArray())).build();
+
+        AmazonWebServiceResponse<String> awsResponse =
+                new JsonResponseHandler<String>(new KeyUnmarshaller()).handle(response);
+        assertEquals("Content", awsResponse.getResult());
+    }
+
+    @Test(expected = CRC32MismatchException.class)
+    public void testHandleWithCRC32Mismatch() throws Exception {
+        HttpResponse response = new HttpResponse.Builder().statusText("testResponse")
+                .statusCode(200).header("x-amz-crc32", "12345")
+                .content(new ByteArrayInputStream(
+                        "{\"key\" :\"Content\"}".getBytes(StringUtils.UTF8)))
+                .build();
+
+        new JsonResponseHandler<String>(new KeyUnmarshaller()).handle(response);
+    }
+
+    private static final class KeyUnmarshaller
+            implements Unmarshaller<String, JsonUnmarshallerContext> {
+        @Override
+        public String unmarshall(JsonUnmarshallerContext in) throws Exception {
+            in.getReader().beginObject();
+            in.getReader().nextName();
+            String value = in.getReader().nextString();
+            in.getReader().endObject();
+            return value;
+        }
+    }
 }
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.SDKGlobalConfiguration;
@@ -36,6 +37,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
+import java.net.ServerSocket;
 import java.net.UnknownHostException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -281,6 +283,43 @@ public class UrlHttpClientTest {
         final ByteArrayOutputStream connOs = (ByteArrayOutputStream) connection.getOutputStream();
         assertEquals(new String(connOs.toByteArray(), StringUtils.UTF8), "Content");
     }
+
+    @Test
+    public void testAbortStopsWaitingForResponse() throws Exception {
+        // Accepts the connection and never responds
+        final ServerSocket server = new ServerSocket(0);
+        try {
+            final UrlHttpClient urlHttpClient = new UrlHttpClient(
+                    new ClientConfiguration().withSocketTimeout(10000));
+            final HttpRequest request = new HttpRequest("GET",
+                    new URI("http://localhost:" + server.getLocalPort()));
+            final Thread aborter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        server.accept();
+                        Thread.sleep(100);
+                    } catch (final Exception e) {
+                        return;
+                    }
+                    urlHttpClient.abort(request);
+                }
+            });
+            aborter.start();
+            final long start = System.currentTimeMillis();
+            try {
+                urlHttpClient.execute(request);
+                fail("Should throw IOException");
+            } catch (final IOException expected) {
+                assertTrue(System.currentTimeMillis() - start < 5000);
+            }
+            aborter.join();
+            // Not in flight anymore
+            urlHttpClient.abort(request);
+        } finally {
+            server.close();
+        }
+    }
 }
 
 class MockHttpURLConnection extends HttpsURLConnection {
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListenerCallbackExecutor;
+import com.amazonaws.event.ProgressReportingInputStream;
+import com.amazonaws.util.LengthCheckInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class FileRegionInputStreamTest {
+
+    private static final int FILE_SIZE = 300 * 1024;
+
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[FILE_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = File.createTempFile("FileRegionInputStreamTest", ".dat");
+        final FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testWriteToWritesRegion() throws IOException {
+        final FileRegionInputStream is = new FileRegionInputStream(file, 1000, 200 * 1024);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertEquals(200 * 1024, is.writeTo(os));
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 1000 + 200 * 1024), os.toByteArray());
+        assertEquals(-1, is.read());
+        is.close();
+    }
+
+    @Test
+    public void testReadReadsSingleBytes() throws IOException {
+        final FileRegionInputStream is = new FileRegionInputStream(file, 100, 300);
+        for (int i = 100; i < 400; i++) {
+            assertEquals(content[i] & 0xFF, is.read());
+        }
+        assertEquals(-1, is.read());
+        is.close();
+    }
+
+    @Test
+    public void testResetRewindsToMark() throws IOException {
+        final FileRegionInputStream is = new FileRegionInputStream(file, 10, 100);
+        is.mark(-1);
+        final byte[] first = new byte[50];
+        assertEquals(50, is.read(first));
+        is.reset();
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertEquals(100, is.writeTo(os));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 110), os.toByteArray());
+        is.close();
+    }
+
+    @Test
+    public void testShortFileFails() throws IOException {
+        final FileRegionInputStream is = new FileRegionInputStream(file, FILE_SIZE - 10, 20);
+        try {
+            is.writeTo(new ByteArrayOutputStream());
+            fail("Expected the region to be longer than the file");
+        } catch (final IOException expected) {
+            // expected
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testWriteToReadsThroughWrappers() throws IOException {
+        final long[] bytes = new long[1];
+        final int[] resets = new int[1];
+        final FileRegionInputStream is = new FileRegionInputStream(file);
+        // Records the events on the reading thread
+        final ProgressReportingInputStream content = new ProgressReportingInputStream(
+                new LengthCheckInputStream(is, FILE_SIZE,
+                        LengthCheckInputStream.EXCLUDE_SKIPPED_BYTES),
+                new ProgressListenerCallbackExecutor() {
+                    @Override
+                    public void progressChanged(ProgressEvent progressEvent) {
+                        if (progressEvent.getEventCode() == ProgressEvent.RESET_EVENT_CODE) {
+                            resets[0]++;
+                        } else {
+                            bytes[0] += progressEvent.getBytesTransferred();
+                        }
+                    }
+                });
+        assertSame(is, FileRegionInputStream.find(content));
+        assertNull(FileRegionInputStream.find(new ByteArrayInputStream(new byte[1])));
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        content.mark(-1);
+        assertEquals(FILE_SIZE, is.writeTo(content, os));
+        content.reset();
+        content.close();
+
+        assertArrayEquals(this.content, os.toByteArray());
+        assertEquals(FILE_SIZE, bytes[0]);
+        assertEquals(1, resets[0]);
+    }
+
+    @Test
+    public void testShorterRegionThanExpectedFails() throws IOException {
+        final FileRegionInputStream is = new FileRegionInputStream(file, 0, 10);
+        final LengthCheckInputStream content = new LengthCheckInputStream(is, 20,
+                LengthCheckInputStream.EXCLUDE_SKIPPED_BYTES);
+        try {
+            is.writeTo(content, new ByteArrayOutputStream());
+            fail("Expected the length check to fail");
+        } catch (final AmazonClientException expected) {
+            // expected
+        } finally {
+            content.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.AWSRequestMetricsFullSupport;
+import com.amazonaws.util.TimingInfo;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class HistogramRequestMetricCollectorTest {
+
+    private static class PutThingRequest extends AmazonWebServiceRequest {
+    }
+
+    private static class GetThingRequest extends AmazonWebServiceRequest {
+    }
+
+    @Test
+    public void testCollectsMetricsPerOperation() {
+        final HistogramRequestMetricCollector collector = new HistogramRequestMetricCollector();
+        collector.collectMetrics(request(new PutThingRequest(), 30, new long[] {
+                10, 12
+        }, 2, 1024L), null);
+        collector.collectMetrics(request(new PutThingRequest(), 20, new long[] {
+                15
+        }, 1, null), null);
+        collector.collectMetrics(request(new GetThingRequest(), 5, new long[] {
+                4
+        }, 1, null), null);
+
+        final Map<String, Map<Field, Histogram.Snapshot>> snapshot = collector.getSnapshot();
+        assertEquals(2, snapshot.size());
+
+        final Map<Field, Histogram.Snapshot> put = snapshot.get("AmazonThings.PutThing");
+        assertEquals(HistogramRequestMetricCollector.METRICS.size(), put.size());
+        final Histogram.Snapshot clientExecuteTime = put.get(Field.ClientExecuteTime);
+        assertEquals(2, clientExecuteTime.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(20), clientExecuteTime.getMin());
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(30), clientExecuteTime.getMax());
+        // Every attempt is recorded
+        final Histogram.Snapshot httpRequestTime = put.get(Field.HttpRequestTime);
+        assertEquals(3, httpRequestTime.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(37), httpRequestTime.getSum());
+        assertEquals(3, put.get(Field.RequestSigningTime).getCount());
+        final Histogram.Snapshot retryCount = put.get(Field.RetryCount);
+        assertEquals(2, retryCount.getCount());
+        assertEquals(1, retryCount.getSum());
+        assertEquals(1, put.get(Field.BytesProcessed).getCount());
+        assertEquals(1024, put.get(Field.BytesProcessed).getMax());
+
+        final Map<Field, Histogram.Snapshot> get = snapshot.get("AmazonThings.GetThing");
+        assertEquals(1, get.get(Field.ClientExecuteTime).getCount());
+        assertEquals(0, get.get(Field.BytesProcessed).getCount());
+    }
+
+    @Test
+    public void testExportAndReset() {
+        final HistogramRequestMetricCollector collector = new HistogramRequestMetricCollector();
+        collector.collectMetrics(request(new PutThingRequest(), 30, new long[] {
+                10
+        }, 1, null), null);
+
+        final String export = collector.export();
+        assertTrue(export, export.contains("AmazonThings.PutThing ClientExecuteTime count=1, "
+                + "min=30000, mean=30000, p50=30000, p90=30000, p99=30000, max=30000\n"));
+        assertTrue(export, export.contains("AmazonThings.PutThing RetryCount count=1"));
+        assertFalse(export, export.contains("BytesProcessed"));
+
+        collector.reset();
+        assertEquals("", collector.export());
+        assertEquals(0, collector.getSnapshot().get("AmazonThings.PutThing")
+                .get(Field.ClientExecuteTime).getCount());
+    }
+
+    @Test
+    public void testIgnoresDisabledMetrics() {
+        final HistogramRequestMetricCollector collector = new HistogramRequestMetricCollector();
+        final Request<?> request = new DefaultRequest<Object>(new PutThingRequest(),
+                "AmazonThings");
+        request.setAWSRequestMetrics(new AWSRequestMetrics());
+        collector.collectMetrics(request, null);
+        assertTrue(collector.getSnapshot().isEmpty());
+    }
+
+    @Test
+    public void testOperationNames() {
+        assertEquals("PutThing",
+                HistogramRequestMetricCollector.operationNameOf(PutThingRequest.class));
+        assertEquals("Unknown", HistogramRequestMetricCollector.operationNameOf(Object.class));
+    }
+
+    @Test
+    public void testAsMetricCollector() {
+        final HistogramRequestMetricCollector collector = new HistogramRequestMetricCollector();
+        final MetricCollector metricCollector = collector.asMetricCollector();
+        assertTrue(metricCollector.isEnabled());
+        assertSame(collector, metricCollector.getRequestMetricCollector());
+        assertSame(ServiceMetricCollector.NONE, metricCollector.getServiceMetricCollector());
+    }
+
+    private static Request<?> request(AmazonWebServiceRequest originalRequest,
+            long clientExecuteMillis, long[] httpRequestMillis, long requestCount,
+            Long bytesProcessed) {
+        final Request<?> request = new DefaultRequest<Object>(originalRequest, "AmazonThings");
+        final AWSRequestMetrics metrics = new AWSRequestMetricsFullSupport();
+        final TimingInfo timingInfo = metrics.getTimingInfo();
+        timingInfo.addSubMeasurement(Field.ClientExecuteTime.name(),
+                timing(clientExecuteMillis));
+        for (final long millis : httpRequestMillis) {
+            timingInfo.addSubMeasurement(Field.RequestSigningTime.name(), timing(1));
+            timingInfo.addSubMeasurement(Field.HttpRequestTime.name(), timing(millis));
+        }
+        metrics.setCounter(Field.RequestCount, requestCount);
+        if (bytesProcessed != null) {
+            metrics.setCounter(Field.BytesProcessed, bytesProcessed);
+        }
+        request.setAWSRequestMetrics(metrics);
+        return request;
+    }
+
+    private static TimingInfo timing(long millis) {
+        final long start = System.nanoTime();
+        return TimingInfo.newTimingInfoFullSupport(start,
+                start + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class HistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        for (int bucket = 0; bucket < Histogram.bucketOf(Histogram.MAX_TRACKABLE_VALUE); bucket++) {
+            final long lowest = Histogram.lowestValueOf(bucket);
+            final long highest = Histogram.highestValueOf(bucket);
+            assertEquals(bucket, Histogram.bucketOf(lowest));
+            assertEquals(bucket, Histogram.bucketOf(highest));
+            assertEquals(bucket + 1, Histogram.bucketOf(highest + 1));
+            // Within about 3% of every value in the bucket
+            assertTrue(highest - lowest <= Math.max(0, lowest / Histogram.SUB_BUCKETS));
+        }
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        final Histogram histogram = new Histogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(50, snapshot.getCount());
+        assertEquals(1275, snapshot.getSum());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(50, snapshot.getMax());
+        assertEquals(25.5, snapshot.getMean(), 0.0);
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(25, snapshot.getValueAtPercentile(50));
+        assertEquals(45, snapshot.getValueAtPercentile(90));
+        assertEquals(50, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        final Histogram histogram = new Histogram();
+        final Random random = new Random(42);
+        final long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        for (final double percentile : new double[] {
+                1, 25, 50, 75, 90, 99, 99.9
+        }) {
+            final long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            final long actual = snapshot.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + actual + " vs " + expected,
+                    actual >= expected && actual <= expected + expected / 16 + 1);
+        }
+        assertEquals(values[0], snapshot.getMin());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+    }
+
+    @Test
+    public void testOutOfRangeValues() {
+        final Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testEmptyAndReset() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+        assertEquals(0, histogram.snapshot().getMax());
+
+        histogram.record(1000);
+        histogram.reset();
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getSum());
+        assertEquals(0, snapshot.getMin());
+
+        try {
+            snapshot.getValueAtPercentile(101);
+            fail("Expected an invalid percentile");
+        } catch (final IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentRecords() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(offset * 10000 + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40000, snapshot.getCount());
+        assertEquals(39999L * 40000 / 2, snapshot.getSum());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(39999, snapshot.getMax());
+    }
+}
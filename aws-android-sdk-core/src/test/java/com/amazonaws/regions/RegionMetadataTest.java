@@ -89,4 +89,24 @@ public class RegionMetadataTest {
         } catch (IllegalArgumentException e) {
         }
     }
+
+    @Test
+    public void testGetRegionByEndpointFirstRegionWins() {
+        List<Region> regions = new LinkedList<Region>();
+
+        Region region = new Region("us-east-1", null);
+        region.getServiceEndpoints().put("iam", "iam.amazonaws.com");
+        regions.add(region);
+
+        region = new Region("us-west-2", null);
+        region.getServiceEndpoints().put("iam", "iam.amazonaws.com");
+        region.getServiceEndpoints().put("s3", "https://s3.us-west-2.amazonaws.com");
+        regions.add(region);
+
+        RegionMetadata shared = new RegionMetadata(regions);
+        Assert.assertEquals("us-east-1",
+                shared.getRegionByEndpoint("https://iam.amazonaws.com").getName());
+        Assert.assertEquals("us-west-2",
+                shared.getRegionByEndpoint("s3.us-west-2.amazonaws.com").getName());
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.http.AmazonHttpClient;
+import com.amazonaws.http.ExecutionContext;
+import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpRequest;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.util.AWSRequestMetrics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.SocketTimeoutException;
+
+/**
+ * Tests the retry quota and the client rate limit of the retry modes.
+ */
+public class AmazonHttpClientRetryModeTest extends RetryPolicyTestBase {
+
+    private static final int MAX_ERROR_RETRY = 5;
+
+    @Test
+    public void testLegacyRetriesEveryRequest() {
+        final CountingHttpClient httpClient = new CountingHttpClient(
+                new ReturnServiceErrorHttpClient(500, "InternalFailure"));
+        final AmazonHttpClient client = newClient(RetryMode.LEGACY, 12, httpClient);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(MAX_ERROR_RETRY + 1, executeAndFail(client));
+        }
+    }
+
+    @Test
+    public void testStandardStopsRetryingWhenQuotaExhausted() {
+        final CountingHttpClient httpClient = new CountingHttpClient(
+                new ReturnServiceErrorHttpClient(500, "InternalFailure"));
+        // Two retries
+        final AmazonHttpClient client = newClient(RetryMode.STANDARD,
+                2 * RetryQuota.RETRY_COST + 2, httpClient);
+        assertEquals(3, executeAndFail(client));
+        assertEquals(1, executeAndFail(client));
+    }
+
+    @Test
+    public void testTimeoutsTakeMoreQuota() {
+        final CountingHttpClient httpClient = new CountingHttpClient(
+                new ThrowingExceptionHttpClient(new SocketTimeoutException("timed out")));
+        final AmazonHttpClient client = newClient(RetryMode.STANDARD,
+                2 * RetryQuota.RETRY_COST + 2, httpClient);
+        assertEquals(2, executeAndFail(client));
+    }
+
+    @Test
+    public void testAdaptiveLimitsRateOnceThrottled() throws Exception {
+        final CountingHttpClient httpClient = new CountingHttpClient(
+                new ReturnServiceErrorHttpClient(400, "ThrottlingException"));
+        // The rate is cut to the minimum of one request every two seconds, as
+        // the client hadn't been sending before, so it retries once
+        final AmazonHttpClient client = newClient(RetryMode.ADAPTIVE,
+                ClientConfiguration.DEFAULT_RETRY_QUOTA_CAPACITY, httpClient, 1);
+        final ClientRateLimiter rateLimiter = getRateLimiter(client);
+        assertFalse(rateLimiter.isEnabled());
+
+        final ExecutionContext context = new ExecutionContext(true);
+        try {
+            client.execute(getSampleRequestWithRepeatableContent(originalRequest), null,
+                    errorResponseHandler, context);
+            fail("AmazonServiceException is expected.");
+        } catch (final AmazonServiceException expected) {
+            assertEquals("ThrottlingException", expected.getErrorCode());
+        }
+        assertTrue(rateLimiter.isEnabled());
+        // The retry after the throttling error waited for the limit
+        assertEquals(2, httpClient.count);
+        assertTrue(context.getAwsRequestMetrics().getTimingInfo()
+                .getAllSubMeasurements(AWSRequestMetrics.Field.RateLimitPauseTime.name())
+                .size() > 0);
+    }
+
+    private AmazonHttpClient newClient(RetryMode retryMode, int quotaCapacity,
+            HttpClient httpClient) {
+        return newClient(retryMode, quotaCapacity, httpClient, MAX_ERROR_RETRY);
+    }
+
+    private AmazonHttpClient newClient(RetryMode retryMode, int quotaCapacity,
+            HttpClient httpClient, int maxErrorRetry) {
+        final ClientConfiguration config = new ClientConfiguration()
+                .withRetryMode(retryMode)
+                .withRetryQuotaCapacity(quotaCapacity);
+        config.setRetryPolicy(new RetryPolicy(new ContextDataCollectionRetryCondition(),
+                new ContextDataCollectionBackoffStrategy(), maxErrorRetry, false));
+        final AmazonHttpClient client = new AmazonHttpClient(config);
+        injectMockHttpClient(client, httpClient);
+        return client;
+    }
+
+    /**
+     * @return the number of attempts of the request.
+     */
+    private static int executeAndFail(AmazonHttpClient client) {
+        final CountingHttpClient httpClient = getHttpClient(client);
+        final int before = httpClient.count;
+        try {
+            client.execute(getSampleRequestWithRepeatableContent(originalRequest), null,
+                    errorResponseHandler, new ExecutionContext(false));
+            fail("AmazonClientException is expected.");
+        } catch (final AmazonClientException expected) {
+            // expected
+        }
+        return httpClient.count - before;
+    }
+
+    private static CountingHttpClient getHttpClient(AmazonHttpClient client) {
+        try {
+            final Field f = AmazonHttpClient.class.getDeclaredField("httpClient");
+            f.setAccessible(true);
+            return (CountingHttpClient) f.get(client);
+        } catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static ClientRateLimiter getRateLimiter(AmazonHttpClient client) throws Exception {
+        final Field f = AmazonHttpClient.class.getDeclaredField("rateLimiter");
+        f.setAccessible(true);
+        return (ClientRateLimiter) f.get(client);
+    }
+
+    /**
+     * Counts the requests sent through another client.
+     */
+    private static final class CountingHttpClient implements HttpClient {
+        private final HttpClient delegate;
+        private int count;
+
+        CountingHttpClient(HttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            count++;
+            return delegate.execute(request);
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+    }
+}
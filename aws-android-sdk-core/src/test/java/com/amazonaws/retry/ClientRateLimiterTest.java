@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ClientRateLimiterTest {
+
+    /**
+     * A limiter whose clock is set by the test.
+     */
+    private static final class TestRateLimiter extends ClientRateLimiter {
+        private double time;
+
+        @Override
+        double now() {
+            return time;
+        }
+    }
+
+    @Test
+    public void testNotLimitedUntilThrottled() {
+        final TestRateLimiter limiter = new TestRateLimiter();
+        for (int i = 0; i < 100; i++) {
+            limiter.time = i * 0.1;
+            assertEquals(0, limiter.acquire());
+            limiter.updateSendingRate(false);
+        }
+        assertFalse(limiter.isEnabled());
+    }
+
+    @Test
+    public void testThrottlingCutsRate() {
+        final TestRateLimiter limiter = sendAtTenPerSecond();
+        final double measured = limiter.getMeasuredTxRate();
+        assertEquals(10, measured, 1);
+
+        limiter.updateSendingRate(true);
+        assertTrue(limiter.isEnabled());
+        assertEquals(measured * 0.7, limiter.getFillRate(), 0.5);
+
+        // The tokens the bucket holds are sent at once, then requests wait
+        // their turn
+        final double fillRate = limiter.getFillRate();
+        int sentAtOnce = 0;
+        while (limiter.acquire() == 0) {
+            sentAtOnce++;
+        }
+        assertTrue(sentAtOnce <= Math.ceil(fillRate));
+        assertEquals(2 / fillRate * 1000, limiter.acquire(), 1 / fillRate * 1000);
+    }
+
+    @Test
+    public void testRateGrowsBackAfterThrottling() {
+        final TestRateLimiter limiter = sendAtTenPerSecond();
+        limiter.updateSendingRate(true);
+        final double throttledAt = limiter.time;
+        final double cutRate = limiter.getFillRate();
+        // Succeeding at eight requests per second, the rate grows back along
+        // the cubic curve, flattening out around the rate that was throttled
+        // before growing beyond it
+        final double[] rates = new double[40];
+        for (int i = 0; i < rates.length; i++) {
+            limiter.time = throttledAt + (i + 1) * 0.125;
+            limiter.updateSendingRate(false);
+            rates[i] = limiter.getFillRate();
+            assertTrue(rates[i] >= (i == 0 ? cutRate : rates[i - 1]) - 0.001);
+        }
+        final double throttledRate = cutRate / 0.7;
+        // The time window of the curve is about 1.9 seconds
+        assertEquals(throttledRate, rates[14], 0.1);
+        assertTrue(rates[3] - cutRate > rates[18] - rates[14]);
+        // Up to twice the measured rate
+        assertEquals(2 * limiter.getMeasuredTxRate(), rates[rates.length - 1], 0.01);
+    }
+
+    @Test
+    public void testMinimumRate() {
+        final TestRateLimiter limiter = new TestRateLimiter();
+        // Throttled without having sent anything measurable
+        limiter.updateSendingRate(true);
+        assertEquals(0.5, limiter.getFillRate(), 0);
+    }
+
+    private static TestRateLimiter sendAtTenPerSecond() {
+        final TestRateLimiter limiter = new TestRateLimiter();
+        for (int i = 0; i < 50; i++) {
+            limiter.time = i * 0.1;
+            limiter.acquire();
+            limiter.updateSendingRate(false);
+        }
+        return limiter;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RetryQuotaTest {
+
+    @Test
+    public void testAcquireUntilExhausted() {
+        final RetryQuota quota = new RetryQuota(12);
+        assertTrue(quota.acquire(RetryQuota.RETRY_COST));
+        assertTrue(quota.acquire(RetryQuota.RETRY_COST));
+        assertEquals(2, quota.getAvailableCapacity());
+        assertFalse(quota.acquire(RetryQuota.RETRY_COST));
+        assertEquals(2, quota.getAvailableCapacity());
+    }
+
+    @Test
+    public void testReleaseUpToMaxCapacity() {
+        final RetryQuota quota = new RetryQuota(12);
+        assertTrue(quota.acquire(RetryQuota.TIMEOUT_RETRY_COST));
+        quota.release(RetryQuota.RETRY_COST);
+        assertEquals(7, quota.getAvailableCapacity());
+        quota.release(RetryQuota.TIMEOUT_RETRY_COST);
+        assertEquals(12, quota.getAvailableCapacity());
+        quota.release(RetryQuota.NO_RETRY_INCREMENT);
+        assertEquals(quota.getMaxCapacity(), quota.getAvailableCapacity());
+    }
+
+    @Test
+    public void testConcurrentAcquires() throws Exception {
+        final RetryQuota quota = new RetryQuota(1000 * RetryQuota.RETRY_COST);
+        final int[] acquired = new int[8];
+        final Thread[] threads = new Thread[acquired.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    while (quota.acquire(RetryQuota.RETRY_COST)) {
+                        acquired[index]++;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        int total = 0;
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            total += acquired[t];
+        }
+        assertEquals(1000, total);
+        assertEquals(0, quota.getAvailableCapacity());
+    }
+}
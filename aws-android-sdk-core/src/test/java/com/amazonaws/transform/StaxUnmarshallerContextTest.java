@@ -30,6 +30,8 @@ import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -108,6 +110,70 @@ public class StaxUnmarshallerContextTest {
         assertFalse("expression not match", context.testExpression("imageSet/item_id", 2));
     }
 
+    @Test
+    public void testCompiledExpression() throws Exception {
+        StaxExpression itemId = StaxExpression.compile("imageSet/item/id");
+        StaxExpression attribute = StaxExpression.compile("item/@id");
+        context = getContext(XML_STRING, null);
+        int matches = 0;
+        int event;
+        while ((event = context.nextEvent()) != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG) {
+                assertFalse("attributes aren't on the stack", context.testExpression(attribute));
+                if (context.testExpression(itemId, 2)) {
+                    assertEquals(4, context.getCurrentDepth());
+                    assertEquals("id", context.readText());
+                    matches++;
+                }
+            }
+        }
+        assertEquals(2, matches);
+        assertEquals(0, context.getCurrentDepth());
+        assertEquals("imageSet/item/id", itemId.toString());
+    }
+
+    @Test
+    public void testDeepDocument() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            xml.append("<e").append(i).append('>');
+        }
+        for (int i = 39; i >= 0; i--) {
+            xml.append("</e").append(i).append('>');
+        }
+        context = getContext(xml.toString(), null);
+        for (int i = 0; i < 40; i++) {
+            context.nextEvent();
+        }
+        assertEquals(40, context.getCurrentDepth());
+        assertTrue(context.testExpression("e38/e39", 39));
+        assertFalse(context.testExpression("e39/e38", 39));
+    }
+
+    @Test
+    public void testStack() throws Exception {
+        context = getContext(XML_STRING, null);
+        assertTrue(context.stack.isEmpty());
+        while (context.getCurrentDepth() < 4) {
+            context.nextEvent();
+        }
+        assertEquals(4, context.stack.size());
+        assertEquals("/DescribeImagesResponse/imageSet/item/id", context.stack.peek());
+        assertEquals("/DescribeImagesResponse", context.stack.peekLast());
+        assertEquals(Arrays.asList(
+                "/DescribeImagesResponse/imageSet/item/id",
+                "/DescribeImagesResponse/imageSet/item",
+                "/DescribeImagesResponse/imageSet",
+                "/DescribeImagesResponse"), new ArrayList<String>(context.stack));
+
+        // The paths follow the stack once it was read
+        assertEquals("id", context.readText());
+        context.nextEvent();
+        context.nextEvent();
+        assertEquals("/DescribeImagesResponse/imageSet/item", context.stack.peek());
+        assertEquals(3, context.stack.size());
+    }
+
     @Test
     public void testMetadata() throws Exception {
         String key = "AWS_REQUEST_ID";
@@ -121,4 +121,16 @@ public class AwsHostNameUtilsTest {
                 "bucket.name.with.periods.s3-fips-us-gov-west-1.amazonaws.com", null));
     }
 
+    @Test
+    public void testCachedRegionNamesDependOnServiceHint() {
+        // The same host parses differently with and without a hint, also
+        // when the region name of the host is already cached
+        for (int i = 0; i < 2; i++) {
+            assertEquals("us-east-1",
+                    AwsHostNameUtils.parseRegionName("cloudsearch-eu-west-1.example.com", null));
+            assertEquals("eu-west-1", AwsHostNameUtils.parseRegionName(
+                    "cloudsearch-eu-west-1.example.com", "cloudsearch"));
+        }
+    }
+
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+
+public class Sha256HashingOutputStreamTest {
+
+    @Test
+    public void testHashesWrittenContent() throws Exception {
+        final byte[] data = new byte[100 * 1024];
+        new Random(7).nextBytes(data);
+
+        // Grows from a small buffer
+        final Sha256HashingOutputStream out = new Sha256HashingOutputStream(16);
+        out.write(data[0]);
+        for (int off = 1; off < data.length; off += 1000) {
+            out.write(data, off, Math.min(1000, data.length - off));
+        }
+        assertEquals(data.length, out.size());
+
+        final Sha256HashedInputStream in = out.toInputStream();
+        assertEquals(BinaryUtils.toHex(MessageDigest.getInstance("SHA-256").digest(data)),
+                in.getContentSha256());
+        assertArrayEquals(data, IOUtils.toByteArray(in));
+    }
+
+    @Test
+    public void testHashOfEmptyContent() throws Exception {
+        final Sha256HashedInputStream in = new Sha256HashingOutputStream().toInputStream();
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                in.getContentSha256());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testNoHashOnceRead() throws IOException {
+        final Sha256HashingOutputStream out = new Sha256HashingOutputStream();
+        out.write("content".getBytes(StringUtils.UTF8));
+        final Sha256HashedInputStream in = out.toInputStream();
+        final String sha256 = in.getContentSha256();
+
+        in.mark(-1);
+        in.read();
+        assertNull(in.getContentSha256());
+        in.reset();
+        assertEquals(sha256, in.getContentSha256());
+    }
+
+    @Test
+    public void testNoWritesOnceCompleted() {
+        final Sha256HashingOutputStream out = new Sha256HashingOutputStream();
+        out.toInputStream();
+        try {
+            out.write(1);
+            fail("Expected the content to be completed");
+        } catch (final IllegalStateException expected) {
+            // expected
+        }
+    }
+}
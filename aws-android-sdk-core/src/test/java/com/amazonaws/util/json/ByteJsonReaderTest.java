@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+public class ByteJsonReaderTest {
+
+    static final String[] RESPONSES = {
+            "cognito-getcredentials.json",
+            "dynamodb-query.json",
+            "kinesis-getrecords.json",
+            "pinpoint-putevents.json"
+    };
+
+    @Test
+    public void testTokensMatchGson() throws IOException {
+        assertSameTokens("{\"string\":\"string\",\"long\":-123,\"double\":1.5e-3,\"null\":null,"
+                + "\"true\":true,\"false\":false,\"array\":[\"a\",1,[],{},[null]],\"object\":{}}");
+        assertSameTokens(" [ 1 , \"two\" , { \"three\" : 3 } ]\n");
+        assertSameTokens("{\"escapes\":\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\\u20ac\"}");
+        assertSameTokens("{\"unicode\":\"Chloë 李雷 € 😀\"}");
+        for (final String response : RESPONSES) {
+            assertSameTokens(load(response));
+        }
+    }
+
+    @Test
+    public void testStringsAcrossBuffers() throws IOException {
+        final StringBuilder sb = new StringBuilder("{\"long\":\"");
+        for (int i = 0; sb.length() < 3 * JsonDecodingBuffers.BUFFER_SIZE; i++) {
+            sb.append("ab\\n€😀é").append(i);
+        }
+        sb.append("\",\"next\":1}");
+        assertSameTokens(sb.toString());
+
+        // Shifts the multi-byte characters across the buffer boundaries
+        for (int i = 0; i < 4; i++) {
+            sb.insert(1, ' ');
+            assertSameTokens(sb.toString());
+        }
+    }
+
+    @Test
+    public void testSkipValue() throws IOException {
+        final AwsJsonReader reader = JsonUtils.getJsonReader(utf8(
+                "{\"skipped\":{\"a\":[1,{\"b\":\"}\"}],\"c\":\"\\\"\"},\"kept\":\"value\"}"));
+        reader.beginObject();
+        assertEquals("skipped", reader.nextName());
+        reader.skipValue();
+        assertEquals("kept", reader.nextName());
+        assertEquals("value", reader.nextString());
+        reader.endObject();
+        assertNull(reader.peek());
+        reader.close();
+    }
+
+    @Test
+    public void testEmptyContent() throws IOException {
+        final AwsJsonReader reader = JsonUtils.getJsonReader(utf8(" "));
+        assertNull(reader.peek());
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    @Test
+    public void testMalformedJson() throws IOException {
+        final String[] malformed = {
+                "{\"a\" 1}", "{\"a\":1,}x", "[1 2]", "{\"a\":tru}", "{\"a\":\"unterminated",
+                "{\"a\":1} {}"
+        };
+        for (final String json : malformed) {
+            final AwsJsonReader reader = JsonUtils.getJsonReader(utf8(json));
+            try {
+                trace(reader);
+                fail("Expected malformed JSON: " + json);
+            } catch (final IOException expected) {
+                // expected
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void testWrongTokenFails() throws IOException {
+        final AwsJsonReader reader = JsonUtils.getJsonReader(utf8("[1]"));
+        try {
+            reader.beginObject();
+            fail("Expected an array");
+        } catch (final IllegalStateException expected) {
+            // expected
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testGzipWithChecksum() throws IOException {
+        final String json = load("dynamodb-query.json");
+        final byte[] gzipped = gzip(json);
+
+        final CRC32 expected = new CRC32();
+        expected.update(gzipped);
+        final CRC32 crc32 = new CRC32();
+        final AwsJsonReader reader = JsonUtils.getJsonReader(
+                new ByteArrayInputStream(gzipped), true, crc32);
+        assertEquals(trace(JsonUtils.getJsonReader(new StringReader(json))), trace(reader));
+        reader.close();
+        assertEquals(expected.getValue(), crc32.getValue());
+    }
+
+    @Test
+    public void testConcatenatedGzipMembers() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(gzip("[\"first\","));
+        out.write(gzip("\"second\"]"));
+        final AwsJsonReader reader = JsonUtils.getJsonReader(
+                new ByteArrayInputStream(out.toByteArray()), true, null);
+        reader.beginArray();
+        assertEquals("first", reader.nextString());
+        assertEquals("second", reader.nextString());
+        reader.endArray();
+        assertNull(reader.peek());
+        reader.close();
+    }
+
+    @Test
+    public void testCorruptGzipFails() throws IOException {
+        final byte[] gzipped = gzip("{\"key\":\"value\"}");
+        // Corrupts the CRC32 of the trailer
+        gzipped[gzipped.length - 8] ^= 1;
+        final AwsJsonReader reader = JsonUtils.getJsonReader(
+                new ByteArrayInputStream(gzipped), true, null);
+        try {
+            trace(reader);
+            fail("Expected a corrupt trailer");
+        } catch (final IOException expected) {
+            // expected
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testClosedReaderFails() throws IOException {
+        final AwsJsonReader reader = JsonUtils.getJsonReader(utf8("{}"));
+        reader.close();
+        try {
+            reader.peek();
+            fail("Expected the reader to be closed");
+        } catch (final IllegalStateException expected) {
+            // expected
+        }
+        // The pooled buffers are reused by the next reader
+        final AwsJsonReader next = JsonUtils.getJsonReader(utf8("{\"key\":\"value\"}"));
+        next.beginObject();
+        assertTrue(next.hasNext());
+        assertEquals("key", next.nextName());
+        assertEquals("value", next.nextString());
+        next.close();
+    }
+
+    static String load(String response) throws IOException {
+        final InputStream in = ByteJsonReaderTest.class.getResourceAsStream("responses/"
+                + response);
+        try {
+            return IOUtils.toString(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    static byte[] gzip(String json) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(json.getBytes(StringUtils.UTF8));
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static InputStream utf8(String json) {
+        return new ByteArrayInputStream(json.getBytes(StringUtils.UTF8));
+    }
+
+    private static void assertSameTokens(String json) throws IOException {
+        final AwsJsonReader gson = JsonUtils.getJsonReader(new StringReader(json));
+        final AwsJsonReader bytes = JsonUtils.getJsonReader(utf8(json));
+        assertEquals(trace(gson), trace(bytes));
+        gson.close();
+        bytes.close();
+    }
+
+    /**
+     * Reads a whole document and records its tokens and values.
+     */
+    private static String trace(AwsJsonReader reader) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        AwsJsonToken token;
+        while ((token = reader.peek()) != null) {
+            sb.append(token);
+            switch (token) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    break;
+                case FIELD_NAME:
+                    sb.append('=').append(reader.nextName());
+                    break;
+                default:
+                    sb.append('=').append(reader.nextString());
+                    break;
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
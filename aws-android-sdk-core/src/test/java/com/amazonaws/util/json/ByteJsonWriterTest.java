@@ -0,0 +1,289 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Random;
+
+public class ByteJsonWriterTest {
+
+    /**
+     * Writes the same document to a writer.
+     */
+    private interface Document {
+        void write(AwsJsonWriter writer) throws IOException;
+    }
+
+    @Test
+    public void testValuesMatchGson() throws IOException {
+        assertSameOutput(new Document() {
+            @Override
+            public void write(AwsJsonWriter writer) throws IOException {
+                writer.beginObject();
+                writer.name("string").value("string");
+                writer.name("empty").value("");
+                writer.name("true").value(true);
+                writer.name("false").value(false);
+                writer.name("long").value(Long.MIN_VALUE);
+                writer.name("double").value(-1.5e-3);
+                writer.name("wholeDouble").value(3.0);
+                writer.name("int").value(Integer.valueOf(42));
+                writer.name("bigDecimal").value(new BigDecimal("12345678901234567890.123"));
+                writer.name("nullNumber").value((Number) null);
+                writer.name("nullString").value((String) null);
+                writer.name("null").value();
+                writer.name("date").value(new Date(1558549987412L));
+                writer.name("epoch").value(new Date(0));
+                writer.name("bytes").value(ByteBuffer.wrap(new byte[] {
+                        0, 1, 2, (byte) 0xff
+                }));
+                writer.name("array").beginArray();
+                writer.value("a").value(1).beginArray().endArray().beginObject().endObject();
+                writer.beginArray().value().endArray();
+                writer.endArray();
+                writer.name("object").beginObject().endObject();
+                writer.endObject();
+            }
+        });
+        assertSameOutput(new Document() {
+            @Override
+            public void write(AwsJsonWriter writer) throws IOException {
+                writer.beginArray().value("top").value(1L).endArray();
+            }
+        });
+    }
+
+    @Test
+    public void testEscapesMatchGson() throws IOException {
+        final StringBuilder controls = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            controls.append(c);
+        }
+        final String[] strings = {
+                controls.toString(), "\"quoted\" back\\slash /slash", "<html>&amp;='",
+                "Chloë 李雷 € 😀", "\u2028\u2029\u007f\u0080\u07ff\u0800\uffff",
+                "unpaired \ud83d high", "unpaired \ude00 low", "trailing \ud83d"
+        };
+        for (final String string : strings) {
+            assertSameOutput(new Document() {
+                @Override
+                public void write(AwsJsonWriter writer) throws IOException {
+                    writer.beginObject().name(string).value(string).endObject();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testBytesMatchGson() throws IOException {
+        final byte[] bytes = new byte[3 * ByteJsonWriter.BUFFER_SIZE];
+        new Random(3).nextBytes(bytes);
+        for (final int length : new int[] {
+                0, 1, 2, 3, 4, 5, 6, bytes.length - 1, bytes.length
+        }) {
+            final ByteBuffer heap = ByteBuffer.wrap(bytes, 1, length - 1 > 0 ? length - 1 : 0)
+                    .slice();
+            final ByteBuffer direct = ByteBuffer.allocateDirect(length);
+            direct.put(bytes, 0, length).flip();
+            assertSameOutput(new Document() {
+                @Override
+                public void write(AwsJsonWriter writer) throws IOException {
+                    writer.beginArray().value(heap).value(direct).endArray();
+                }
+            });
+            assertEquals(0, direct.position());
+        }
+    }
+
+    @Test
+    public void testStringsAcrossBuffers() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 3 * ByteJsonWriter.BUFFER_SIZE; i++) {
+            sb.append("ab\n€😀é\"").append(i);
+        }
+        for (int shift = 0; shift < 6; shift++) {
+            final String string = sb.toString();
+            assertSameOutput(new Document() {
+                @Override
+                public void write(AwsJsonWriter writer) throws IOException {
+                    writer.beginArray();
+                    for (int i = 0; i < 3; i++) {
+                        writer.value(string).value(i);
+                    }
+                    writer.endArray();
+                }
+            });
+            sb.insert(0, 'x');
+        }
+    }
+
+    @Test
+    public void testResponsesMatchGson() throws IOException {
+        for (final String response : ByteJsonReaderTest.RESPONSES) {
+            final String json = ByteJsonReaderTest.load(response);
+            assertSameOutput(new Document() {
+                @Override
+                public void write(AwsJsonWriter writer) throws IOException {
+                    copy(JsonUtils.getJsonReader(new StringReader(json)), writer);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testInvalidStructureFails() throws IOException {
+        final AwsJsonWriter writer = JsonUtils.getJsonWriter(new ByteArrayOutputStream());
+        writer.beginObject();
+        try {
+            writer.value("no name");
+            fail("Expected a name first");
+        } catch (final IllegalStateException expected) {
+            // expected
+        }
+        writer.name("name");
+        try {
+            writer.endObject();
+            fail("Expected a dangling name");
+        } catch (final IllegalStateException expected) {
+            // expected
+        }
+        try {
+            writer.value(Double.NaN);
+            fail("Expected a finite number");
+        } catch (final IllegalArgumentException expected) {
+            // expected
+        }
+        writer.value(1).endObject();
+        try {
+            writer.beginObject();
+            fail("Expected a single top-level value");
+        } catch (final IllegalStateException expected) {
+            // expected
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testIncompleteDocumentFailsOnClose() throws IOException {
+        final AwsJsonWriter writer = JsonUtils.getJsonWriter(new ByteArrayOutputStream());
+        writer.beginArray();
+        try {
+            writer.close();
+            fail("Expected an incomplete document");
+        } catch (final IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCloseClosesStream() throws IOException {
+        final boolean[] closed = new boolean[1];
+        final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        final AwsJsonWriter writer = JsonUtils.getJsonWriter(out);
+        writer.beginObject().name("key").value("value").endObject();
+        writer.close();
+        assertTrue(closed[0]);
+        assertEquals("{\"key\":\"value\"}", new String(out.toByteArray(), StringUtils.UTF8));
+        try {
+            writer.beginArray();
+            fail("Expected the writer to be closed");
+        } catch (final IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    private static void assertSameOutput(Document document) throws IOException {
+        final StringWriter stringWriter = new StringWriter();
+        final AwsJsonWriter gson = JsonUtils.getJsonWriter(stringWriter);
+        document.write(gson);
+        gson.close();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final AwsJsonWriter bytes = JsonUtils.getJsonWriter(out);
+        document.write(bytes);
+        bytes.close();
+
+        // Unpaired surrogates are replaced when the string is encoded
+        final byte[] expected = stringWriter.toString().getBytes(StringUtils.UTF8);
+        assertEquals(new String(expected, StringUtils.UTF8),
+                new String(out.toByteArray(), StringUtils.UTF8));
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    /**
+     * Writes the document of a reader.
+     */
+    static void copy(AwsJsonReader reader, AwsJsonWriter writer) throws IOException {
+        AwsJsonToken token;
+        while ((token = reader.peek()) != null) {
+            switch (token) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    writer.beginArray();
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    writer.endArray();
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    writer.beginObject();
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    writer.endObject();
+                    break;
+                case FIELD_NAME:
+                    writer.name(reader.nextName());
+                    break;
+                case VALUE_NULL:
+                    reader.skipValue();
+                    writer.value();
+                    break;
+                case VALUE_BOOLEAN:
+                    writer.value(Boolean.parseBoolean(reader.nextString()));
+                    break;
+                case VALUE_NUMBER:
+                    writer.value(new BigDecimal(reader.nextString()));
+                    break;
+                default:
+                    writer.value(reader.nextString());
+                    break;
+            }
+        }
+        reader.close();
+    }
+}
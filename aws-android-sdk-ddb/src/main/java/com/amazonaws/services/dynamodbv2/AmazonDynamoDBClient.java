@@ -264,7 +264,8 @@ public class AmazonDynamoDBClient extends AmazonWebServiceClient implements Amaz
      */
     public AmazonDynamoDBClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -169,7 +169,8 @@ public class AmazonEC2Client extends AmazonWebServiceClient implements AmazonEC2
      */
     public AmazonEC2Client(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -17,6 +17,8 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.Position;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.Record;
 import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
 import com.amazonaws.util.StringUtils;
 
@@ -24,8 +26,25 @@ import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * An abstract class for Amazon Kinesis recorders. It manages local file store
@@ -46,6 +65,14 @@ public abstract class AbstractKinesisRecorder {
      */
     private static final int MAX_BATCH_RECORDS_SIZE_BYTES = 512 * 1024;
 
+    /**
+     * The delay before the next batch of a stream after records of it failed
+     * to send. It doubles each time records are throttled, and halves after
+     * each batch that goes through.
+     */
+    private static final long BASE_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5 * 1000;
+
     /**
      * The configurable options for Kinesis Recorder, includes the
      * ClientConfiguration of the low level client.
@@ -53,6 +80,15 @@ public abstract class AbstractKinesisRecorder {
     protected KinesisRecorderConfig config;
     protected FileRecordStore recordStore;
 
+    private final Random random = new Random();
+
+    /**
+     * The threads concurrent submissions send batches on. It's created by the
+     * first of them and kept until the recorder is closed.
+     */
+    private ExecutorService submissionExecutor;
+    private int submissionThreads;
+
     /**
      * Gets the sender to send saved records.
      *
@@ -97,7 +133,7 @@ public abstract class AbstractKinesisRecorder {
      */
     public void saveRecord(byte[] data, String streamName) {
         try {
-            recordStore.put(FileRecordParser.asString(streamName, data));
+            recordStore.put(streamName, data);
         } catch (final IOException e) {
             throw new AmazonClientException("Error saving record", e);
         }
@@ -111,6 +147,18 @@ public abstract class AbstractKinesisRecorder {
      * invalid) will be deleted. Note: Since KinesisRecorder uses synchronous
      * methods to make calls to Amazon Kinesis, do not call submitAll() on the
      * main thread of your application.
+     * <p>
+     * Records of a batch that the service rejects are saved again on their
+     * own and sent after the rest, and later batches of their stream are
+     * delayed, more so while the stream is throttled. Records rejected more
+     * than {@link KinesisRecorderConfig#withMaxRecordRetries(int)} times are
+     * dropped and handed to the {@link DeadLetterListener}.
+     * <p>
+     * With {@link KinesisRecorderConfig#withMaxConcurrentBatches(int)} above
+     * one, batches are grouped by stream across all the saved records and
+     * sent concurrently. Records are removed as the batches before them
+     * complete, so a batch that fails keeps the records after it until a later
+     * submission. Saving records doesn't wait for a submission in either case.
      *
      * @throws AmazonClientException Thrown if there was an unrecoverable error
      *             during submission. Note: If the request appears to be
@@ -118,25 +166,38 @@ public abstract class AbstractKinesisRecorder {
      *             to be valid, it will be kept.
      */
     public synchronized void submitAllRecords() {
+        final int maxConcurrentBatches = config == null ? 1 : config.getMaxConcurrentBatches();
+        if (maxConcurrentBatches > 1) {
+            new ConcurrentSubmission(maxConcurrentBatches,
+                    getSubmissionExecutor(maxConcurrentBatches)).run();
+            return;
+        }
+
         final RecordSender sender = getRecordSender();
         final RecordIterator iterator = recordStore.iterator();
         final List<byte[]> data = new ArrayList<byte[]>(MAX_RECORDS_PER_BATCH);
+        final Map<byte[], Integer> attempts = new IdentityHashMap<byte[], Integer>();
+        final List<byte[]> throttled = new ArrayList<byte[]>();
+        final Retries retries = new Retries();
         int retry = 0;
         int count = 0;
         boolean unknownErrorRetried = false;
         try {
             while (iterator.hasNext() && retry < MAX_RETRY_COUNT) {
-                final String streamName = nextBatch(iterator, data, MAX_RECORDS_PER_BATCH,
-                        MAX_BATCH_RECORDS_SIZE_BYTES);
+                attempts.clear();
+                final String streamName = nextBatch(iterator, data, attempts,
+                        MAX_RECORDS_PER_BATCH, MAX_BATCH_RECORDS_SIZE_BYTES);
                 if (streamName == null || data.isEmpty()) {
                     break;
                 }
+                sleep(retries.delayOf(streamName));
 
                 try {
 
                     List<byte[]> failures = null;
+                    throttled.clear();
                     try {
-                        failures = sender.sendBatch(streamName, data);
+                        failures = sender.sendBatch(streamName, data, throttled);
                     } catch (AmazonClientException ace) {
                         if (!unknownErrorRetried
                                 && ace.getMessage() != null
@@ -170,11 +231,7 @@ public abstract class AbstractKinesisRecorder {
                         // no record went through, increase retry count.
                         retry++;
                     }
-                    if (!failures.isEmpty()) {
-                        for (final byte[] bytes : failures) {
-                            saveRecord(bytes, streamName);
-                        }
-                    }
+                    retries.onSent(streamName, failures, throttled, attempts);
 
                 } catch (final AmazonClientException ace) {
                     if (sender.isRecoverable(ace)) {
@@ -184,11 +241,7 @@ public abstract class AbstractKinesisRecorder {
                     } else {
 
                         // Data is dead and should be added to dead letter queue
-                        try {
-                            this.config.getDeadLetterListener().onRecordsDropped(streamName, data);
-                        } catch (Exception e) {
-                            LOGGER.error("DeadLetterListener onRecordsDropped has thrown an exception (user code)", e);
-                        }
+                        onRecordsDropped(streamName, data);
 
                         try {
                             iterator.removeReadRecords();
@@ -216,6 +269,394 @@ public abstract class AbstractKinesisRecorder {
         }
     }
 
+    private void onRecordsDropped(String streamName, List<byte[]> data) {
+        final DeadLetterListener listener = config == null ? null
+                : config.getDeadLetterListener();
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onRecordsDropped(streamName, data);
+        } catch (Exception e) {
+            LOGGER.error("DeadLetterListener onRecordsDropped has thrown an exception (user code)", e);
+        }
+    }
+
+    /**
+     * Waits before sending a batch.
+     *
+     * @param millis the time to wait, or zero to send it right away.
+     */
+    void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while submitting records", e);
+        }
+    }
+
+    /**
+     * The retries of a submission. Records that failed to send are saved again
+     * with the number of times they did, so that only they are sent again,
+     * and the ones over the retry limit, or over the storage limit, are handed
+     * to the dead letter listener. The batches of a stream that had records
+     * fail are delayed, more so while the stream is throttled.
+     */
+    private final class Retries {
+        private final int maxRecordRetries = config == null ? Integer.MAX_VALUE
+                : config.getMaxRecordRetries();
+        /** The delays of the streams that had records fail. **/
+        private final Map<String, Long> delays = new HashMap<String, Long>();
+
+        /**
+         * @return the time to wait before sending the next batch of a stream,
+         *         between half of its delay and its delay.
+         */
+        long delayOf(String streamName) {
+            final Long delay = delays.get(streamName);
+            if (delay == null) {
+                return 0;
+            }
+            return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        }
+
+        /**
+         * Updates the delay of a stream after a batch of it was sent, and
+         * saves the records that failed again.
+         *
+         * @param streamName the stream of the batch.
+         * @param failures the records that failed to send.
+         * @param throttled the failed records that were throttled.
+         * @param attempts the number of times records of the batch failed
+         *            before, if they did.
+         */
+        void onSent(String streamName, List<byte[]> failures, List<byte[]> throttled,
+                Map<byte[], Integer> attempts) {
+            final Long delay = delays.get(streamName);
+            if (!throttled.isEmpty()) {
+                delays.put(streamName, delay == null ? BASE_RETRY_DELAY_MILLIS
+                        : Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS));
+            } else if (!failures.isEmpty()) {
+                if (delay == null) {
+                    delays.put(streamName, BASE_RETRY_DELAY_MILLIS);
+                }
+            } else if (delay != null) {
+                if (delay / 2 < BASE_RETRY_DELAY_MILLIS) {
+                    delays.remove(streamName);
+                } else {
+                    delays.put(streamName, delay / 2);
+                }
+            }
+
+            if (failures.isEmpty()) {
+                return;
+            }
+            final List<byte[]> dropped = new ArrayList<byte[]>();
+            for (final byte[] bytes : failures) {
+                final Integer previous = attempts.get(bytes);
+                final int attempt = previous == null ? 1 : previous + 1;
+                try {
+                    if (attempt > maxRecordRetries
+                            || !recordStore.put(streamName, bytes, attempt)) {
+                        dropped.add(bytes);
+                    }
+                } catch (final IOException e) {
+                    throw new AmazonClientException("Error saving record", e);
+                }
+            }
+            if (!dropped.isEmpty()) {
+                LOGGER.warn(String.format(
+                        "Dropped %d records of %s that failed to send", dropped.size(),
+                        streamName));
+                onRecordsDropped(streamName, dropped);
+            }
+        }
+    }
+
+    /**
+     * Gets the executor of concurrent submissions, creating it again if the
+     * number of batches in flight was changed.
+     */
+    private ExecutorService getSubmissionExecutor(int threads) {
+        if (submissionExecutor != null && submissionThreads != threads) {
+            submissionExecutor.shutdown();
+            submissionExecutor = null;
+        }
+        if (submissionExecutor == null) {
+            submissionExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "kinesis-recorder-submission");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            submissionThreads = threads;
+        }
+        return submissionExecutor;
+    }
+
+    /**
+     * Closes the recorder, stopping the threads that batches of concurrent
+     * submissions are sent on. It waits for a submission in progress to
+     * return. Saved records are kept, and a later submission starts the
+     * threads again.
+     */
+    public synchronized void close() {
+        if (submissionExecutor != null) {
+            submissionExecutor.shutdown();
+            submissionExecutor = null;
+        }
+    }
+
+    /**
+     * A submission of all records that keeps up to a number of batches in
+     * flight. Batches are sent on a pool of threads, and completed on the
+     * thread of the submission, which reads records, groups them by stream
+     * and removes the records before the first one that isn't complete.
+     */
+    private final class ConcurrentSubmission {
+        private final RecordSender sender = getRecordSender();
+        private final RecordIterator iterator = recordStore.iterator();
+        private final int maxInFlight;
+        private final CompletionService<Batch> completions;
+        /** The batches sent that haven't been completed. **/
+        private final Set<Future<Batch>> pending = new HashSet<Future<Batch>>();
+        private final Retries retries = new Retries();
+
+        /** The batches records are added to, by stream. **/
+        private final Map<String, Batch> openBatches = new LinkedHashMap<String, Batch>();
+        /** The records read that haven't been removed, in the order of the store. **/
+        private final Deque<Entry> entries = new ArrayDeque<Entry>();
+        private int openSize;
+        private int inFlight;
+
+        private int retry = 0;
+        private int count = 0;
+        private boolean unknownErrorRetried = false;
+        private RuntimeException error;
+
+        ConcurrentSubmission(int maxInFlight, ExecutorService executor) {
+            this.maxInFlight = maxInFlight;
+            completions = new ExecutorCompletionService<Batch>(executor);
+        }
+
+        void run() {
+            try {
+                while (true) {
+                    final Record record = isStopped() ? null : iterator.next();
+                    if (record != null) {
+                        add(record);
+                        continue;
+                    }
+                    if (!isStopped()) {
+                        for (final Batch batch : new ArrayList<Batch>(openBatches.values())) {
+                            dispatch(batch);
+                        }
+                    }
+                    if (inFlight == 0) {
+                        break;
+                    }
+                    // Failed records saved again by it are read next
+                    complete();
+                }
+            } finally {
+                // Only left when completing a batch fails
+                for (final Future<Batch> future : pending) {
+                    future.cancel(true);
+                }
+                LOGGER.debug(String.format("submitAllRecords sent %d records", count));
+                try {
+                    iterator.close();
+                } catch (final IOException e) {
+                    throw new AmazonClientException("Failed to close record file", e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private boolean isStopped() {
+            return error != null || retry >= MAX_RETRY_COUNT;
+        }
+
+        private void add(Record record) {
+            final Entry entry = new Entry(iterator.position());
+            entries.addLast(entry);
+            Batch batch = openBatches.get(record.streamName);
+            if (batch == null) {
+                batch = new Batch(record.streamName);
+                openBatches.put(record.streamName, batch);
+            }
+            batch.data.add(record.data);
+            batch.entries.add(entry);
+            if (record.attempts > 0) {
+                batch.attempts.put(record.data, record.attempts);
+            }
+            batch.size += record.data.length;
+            openSize += record.data.length;
+
+            if (batch.data.size() >= MAX_RECORDS_PER_BATCH
+                    || batch.size >= MAX_BATCH_RECORDS_SIZE_BYTES) {
+                dispatch(batch);
+            } else if (openSize >= maxInFlight * MAX_BATCH_RECORDS_SIZE_BYTES) {
+                // Bounds the records held by the batches of many streams
+                Batch largest = batch;
+                for (final Batch open : openBatches.values()) {
+                    if (open.size > largest.size) {
+                        largest = open;
+                    }
+                }
+                dispatch(largest);
+            }
+        }
+
+        private void dispatch(final Batch batch) {
+            while (inFlight >= maxInFlight) {
+                complete();
+            }
+            if (isStopped()) {
+                return;
+            }
+            openBatches.remove(batch.streamName);
+            openSize -= batch.size;
+            inFlight++;
+            final long delay = retries.delayOf(batch.streamName);
+            pending.add(completions.submit(new Callable<Batch>() {
+                @Override
+                public Batch call() {
+                    try {
+                        sleep(delay);
+                        batch.failures = sender.sendBatch(batch.streamName, batch.data,
+                                batch.throttled);
+                    } catch (final RuntimeException e) {
+                        batch.exception = e;
+                    }
+                    return batch;
+                }
+            }));
+        }
+
+        /**
+         * Waits for a batch in flight to complete, and removes its records or
+         * saves the failed ones again like a sequential submission.
+         */
+        private void complete() {
+            final Batch batch;
+            try {
+                final Future<Batch> future = completions.take();
+                pending.remove(future);
+                batch = future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while submitting records", e);
+            } catch (final ExecutionException e) {
+                throw new AmazonClientException("Failed to submit records", e.getCause());
+            }
+            inFlight--;
+
+            List<byte[]> failures = batch.failures;
+            if (batch.exception instanceof AmazonClientException
+                    && !unknownErrorRetried
+                    && batch.exception.getMessage() != null
+                    && batch.exception.getMessage().contains(
+                            "Unable to unmarshall error response")) {
+                // Retry once for unforeseen error, possible kinesis error without shape
+                unknownErrorRetried = true;
+                failures = batch.data;
+            } else if (batch.exception instanceof AmazonClientException) {
+                final AmazonClientException ace = (AmazonClientException) batch.exception;
+                if (sender.isRecoverable(ace)) {
+                    LOGGER.error(
+                            "ServiceException in submit all, the values of the data inside the requests appears valid.  The request will be kept",
+                            ace);
+                } else {
+                    // Data is dead and should be added to dead letter queue
+                    onRecordsDropped(batch.streamName, batch.data);
+                    remove(batch, "Failed to drop bad records.");
+                    LOGGER.error(
+                            "ServiceException in submit all, the last request is presumed to be the cause and will be dropped",
+                            ace);
+                }
+                if (error == null) {
+                    error = ace;
+                }
+                return;
+            } else if (batch.exception != null) {
+                if (error == null) {
+                    error = batch.exception;
+                }
+                return;
+            }
+
+            final int successCount = batch.data.size() - failures.size();
+            count += successCount;
+            remove(batch, "Failed to remove read records");
+            if (successCount == 0) {
+                // no record went through, increase retry count.
+                retry++;
+            }
+            retries.onSent(batch.streamName, failures, batch.throttled, batch.attempts);
+        }
+
+        /**
+         * Marks the records of a batch as complete, and removes the records
+         * before the first one that isn't from the store.
+         */
+        private void remove(Batch batch, String errorMessage) {
+            for (final Entry entry : batch.entries) {
+                entry.complete = true;
+            }
+            Position position = null;
+            while (!entries.isEmpty() && entries.peekFirst().complete) {
+                position = entries.pollFirst().position;
+            }
+            if (position != null) {
+                try {
+                    iterator.removeRecordsBefore(position);
+                } catch (final IOException e) {
+                    throw new AmazonClientException(errorMessage, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The records of a stream sent in a request.
+     */
+    private static final class Batch {
+        final String streamName;
+        final List<byte[]> data = new ArrayList<byte[]>();
+        final List<Entry> entries = new ArrayList<Entry>();
+        /** The number of times records of the batch failed before, if they did. **/
+        final Map<byte[], Integer> attempts = new IdentityHashMap<byte[], Integer>();
+        final List<byte[]> throttled = new ArrayList<byte[]>();
+        int size;
+        List<byte[]> failures;
+        RuntimeException exception;
+
+        Batch(String streamName) {
+            this.streamName = streamName;
+        }
+    }
+
+    /**
+     * A record read by a concurrent submission.
+     */
+    private static final class Entry {
+        final Position position;
+        boolean complete;
+
+        Entry(Position position) {
+            this.position = position;
+        }
+    }
+
     /**
      * Reads a batch of records belong to the same stream into a list. If data
      * is read successfully, the stream name is returned.
@@ -229,34 +670,35 @@ public abstract class AbstractKinesisRecorder {
      */
     protected String nextBatch(RecordIterator iterator, List<byte[]> data, int maxCount,
             int maxSize) {
+        return nextBatch(iterator, data, null, maxCount, maxSize);
+    }
+
+    /**
+     * Reads a batch of records like
+     * {@link #nextBatch(RecordIterator, List, int, int)}, and the number of
+     * times the ones that failed to send before did.
+     */
+    private String nextBatch(RecordIterator iterator, List<byte[]> data,
+            Map<byte[], Integer> attempts, int maxCount, int maxSize) {
         data.clear();
 
         String lastStreamName = null;
         int size = 0;
         int count = 0;
-        final FileRecordParser frp = new FileRecordParser();
+        // corrupted records are skipped by the iterator
         while (iterator.hasNext() && count < maxCount && size < maxSize) {
-            final String line = iterator.peek();
-            if (line == null || line.isEmpty()) {
-                iterator.next();
-                continue;
-            }
-            // parse a line. Skip in case of corrupted data
-            try {
-                frp.parse(line);
-            } catch (final Exception e) {
-                LOGGER.warn("Failed to read line. Skip.", e);
-                iterator.next();
-                continue;
-            }
+            final Record record = iterator.peek();
 
             // check whether it belongs to previous batch
-            if (lastStreamName == null || lastStreamName.equals(frp.streamName)) {
-                data.add(frp.bytes);
+            if (lastStreamName == null || lastStreamName.equals(record.streamName)) {
+                data.add(record.data);
+                if (attempts != null && record.attempts > 0) {
+                    attempts.put(record.data, record.attempts);
+                }
                 // update counter
                 count++;
-                size += frp.bytes.length;
-                lastStreamName = frp.streamName;
+                size += record.data.length;
+                lastStreamName = record.streamName;
                 iterator.next();
             } else {
                 break;
@@ -20,7 +20,8 @@ import com.amazonaws.util.Base64;
 /**
  * A parser for Kinesis records. It has a helper method to serialize a Kinesis
  * record. The serialized data can be read via {@link #parse(String)}. It's not
- * thread safe.
+ * thread safe. Previous versions stored a line of it per record, which
+ * {@link FileRecordStore} converts to its binary frames.
  */
 class FileRecordParser {
     /**
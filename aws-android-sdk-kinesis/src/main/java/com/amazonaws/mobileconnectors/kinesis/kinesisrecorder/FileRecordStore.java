@@ -15,43 +15,101 @@
 
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
-
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.util.StringUtils;
 
 import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
- * The FileRecordStore is responsible for recording Kinesis PutRecordRequests to
- * the Android disk. Currently it stores each request as a JSON object
- * representing it's properties. One request per line.
+ * The FileRecordStore is responsible for recording Kinesis records to the
+ * Android disk. The records are appended to a log of segment files named
+ * {@code <recordFileName>.<sequence>.log}, and a cursor file,
+ * {@code <recordFileName>.cursor}, holds the segment and byte offset of the
+ * first record that hasn't been removed. Removing read records moves the
+ * cursor and deletes the segments before it, so it doesn't rewrite the
+ * records that are left.
+ * <p>
+ * A segment starts with a {@link #MAGIC} header followed by frames, each a
+ * varint length, a body and the big-endian CRC32 of the body. A body is
+ * either a stream definition, giving a stream name an ID within the segment
+ * the first time a record of the stream is appended to it, or a record, the
+ * ID of its stream followed by its data. A record saved again after failing
+ * to send also holds the number of attempts before its data. Segments of
+ * previous versions, which held a line of {@link FileRecordParser} text per
+ * record, and their single record file, are converted to frames when the
+ * store is opened.
  */
 class FileRecordStore {
     private static final Log LOGGER = LogFactory.getLog(FileRecordStore.class);
-    private final ReentrantLock accessLock = new ReentrantLock(true);
 
-    /** The file the requests are stored in. **/
-    private File recordFile;
+    /** The size a segment grows to before records are appended to a new one. **/
+    static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+    /** The header of a segment of frames, version 1. **/
+    static final byte[] MAGIC = {
+            'K', 'R', 'B', 1
+    };
+    static final int HEADER_SIZE = MAGIC.length;
+
+    /** The largest frame body, well over the limit of a Kinesis record. **/
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    static final byte STREAM_FRAME = 1;
+    static final byte RECORD_FRAME = 2;
+    static final byte RETRY_FRAME = 3;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_SUFFIX = ".cursor";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int CRC_SIZE = 4;
+
+    private final ReentrantLock accessLock = new ReentrantLock();
 
     /** The FileManager used for interacting with the FS. **/
     private final FileManager fileManager;
 
     private final String recordFileName;
     private final long maxStorageSize;
+    private final int segmentSize;
+
+    /** The directory the segments are stored in. **/
+    private File recordsDirectory;
+
+    /** The segments, oldest first. Records are appended to the last one. **/
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    /** The total size of the segments. **/
+    private long totalSize;
+
+    /** The position of the first record that hasn't been removed. **/
+    private long cursorSequence;
+    private long cursorOffset;
+
+    /** The stream appending to the last segment, opened by the first put. **/
+    private OutputStream writer;
+
+    /** The IDs of the streams defined in the last segment. **/
+    private final Map<String, Integer> streamIds = new HashMap<String, Integer>();
+
+    private final CRC32 crc32 = new CRC32();
 
     /**
      * Creates the FileRecordStore.
@@ -62,137 +120,529 @@ class FileRecordStore {
      * @param maxStorageSize Maximum storage size in bytes
      */
     public FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize) {
+        this(workDirectory, recordFileName, maxStorageSize, DEFAULT_SEGMENT_SIZE);
+    }
+
+    FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize,
+            int segmentSize) {
         this.fileManager = new FileManager(workDirectory);
         this.recordFileName = recordFileName;
         this.maxStorageSize = maxStorageSize;
+        this.segmentSize = segmentSize;
         try {
-            tryCreateRecordsFile();
+            open();
         } catch (final IOException ioe) {
             throw new AmazonClientException("Failed to create file store", ioe);
         }
     }
 
-    public boolean put(final String record) throws IOException {
-        boolean success = false;
-        BufferedWriter writer = null;
+    /**
+     * Appends a record.
+     *
+     * @param streamName the stream the record belongs to.
+     * @param data the data of the record.
+     * @return false if the record would take the records that haven't been
+     *         removed over the maximum storage size.
+     */
+    public boolean put(final String streamName, final byte[] data) throws IOException {
+        return put(streamName, data, 0);
+    }
+
+    /**
+     * Appends a record that failed to send a number of times.
+     *
+     * @param streamName the stream the record belongs to.
+     * @param data the data of the record.
+     * @param attempts the number of times the record failed to send.
+     * @return false if the record would take the records that haven't been
+     *         removed over the maximum storage size.
+     */
+    public boolean put(final String streamName, final byte[] data, final int attempts)
+            throws IOException {
         accessLock.lock();
         try {
-            writer = tryInitializeWriter();
-            if (recordFile.length() + record.getBytes(StringUtils.UTF8).length <= maxStorageSize) {
-                writer.write(record);
-                writer.newLine();
-                writer.flush();
-                success = true;
+            Segment segment = segments.get(segments.size() - 1);
+            if (segment.size >= segmentSize) {
+                segment = roll();
             }
-        } finally {
-            if (writer != null) {
-                writer.close();
+
+            // A stream seen for the first time in the segment is defined in
+            // the same write as the record
+            Integer id = streamIds.get(streamName);
+            final boolean define = id == null;
+            if (define) {
+                id = streamIds.size();
+            }
+            final byte[] name = define ? streamName.getBytes(StringUtils.UTF8) : null;
+            final int definitionSize = define ? 1 + varintSize(id) + name.length : 0;
+            final long recordSize = 1L + varintSize(id)
+                    + (attempts > 0 ? varintSize(attempts) : 0) + data.length;
+            if (recordSize > MAX_FRAME_SIZE) {
+                return false;
+            }
+            final int size = (define ? frameSize(definitionSize) : 0)
+                    + frameSize((int) recordSize);
+            if (totalSize - cursorOffset + size > maxStorageSize) {
+                return false;
+            }
+
+            final byte[] frames = new byte[size];
+            int position = 0;
+            if (define) {
+                position = writeFrameHeader(frames, position, definitionSize, STREAM_FRAME, id);
+                System.arraycopy(name, 0, frames, position, name.length);
+                position = writeCrc(frames, position + name.length, definitionSize);
             }
+            if (attempts > 0) {
+                position = writeFrameHeader(frames, position, (int) recordSize, RETRY_FRAME, id);
+                position = writeVarint(frames, position, attempts);
+            } else {
+                position = writeFrameHeader(frames, position, (int) recordSize, RECORD_FRAME, id);
+            }
+            System.arraycopy(data, 0, frames, position, data.length);
+            writeCrc(frames, position + data.length, (int) recordSize);
+
+            if (writer == null) {
+                writer = fileManager.newOutputStream(segment.file, true);
+            }
+            try {
+                writer.write(frames);
+            } catch (final IOException ioe) {
+                closeWriter();
+                throw ioe;
+            }
+            if (define) {
+                streamIds.put(streamName, id);
+            }
+            segment.size += size;
+            totalSize += size;
+            return true;
+        } finally {
             accessLock.unlock();
         }
-
-        return success;
     }
 
+    /**
+     * @return the number of bytes of the records that haven't been removed.
+     *         The segment holding the cursor may hold up to a segment of
+     *         removed records on disk besides them, until it's deleted.
+     */
     public long getFileSize() {
-        return recordFile == null ? 0 : recordFile.length();
+        accessLock.lock();
+        try {
+            return totalSize - cursorOffset;
+        } finally {
+            accessLock.unlock();
+        }
     }
 
-    private void tryCreateRecordsFile() throws IOException {
-        if (recordFile != null && recordFile.exists()) {
-            return;
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int frameSize(int bodySize) {
+        return varintSize(bodySize) + bodySize + CRC_SIZE;
+    }
+
+    private static int writeVarint(byte[] b, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            b[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
         }
+        b[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Writes the length of a frame and the start of its body, the type and
+     * the stream ID.
+     *
+     * @return the position after the stream ID.
+     */
+    private static int writeFrameHeader(byte[] b, int position, int bodySize, byte type,
+            int id) {
+        position = writeVarint(b, position, bodySize);
+        b[position++] = type;
+        return writeVarint(b, position, id);
+    }
 
-        synchronized (this) {
-            if (recordFile != null && recordFile.exists()) {
-                return;
+    /**
+     * Writes the CRC32 of the body that ends at a position.
+     *
+     * @return the position after the CRC32.
+     */
+    private int writeCrc(byte[] b, int position, int bodySize) {
+        crc32.reset();
+        crc32.update(b, position - bodySize, bodySize);
+        final long crc = crc32.getValue();
+        b[position++] = (byte) (crc >>> 24);
+        b[position++] = (byte) (crc >>> 16);
+        b[position++] = (byte) (crc >>> 8);
+        b[position++] = (byte) crc;
+        return position;
+    }
+
+    private void open() throws IOException {
+        recordsDirectory = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        if (recordsDirectory == null) {
+            throw new IOException("Failed to create records directory");
+        }
+
+        final TreeMap<Long, File> files = new TreeMap<Long, File>();
+        for (final File file : fileManager.listFilesInDirectory(recordsDirectory)) {
+            final long sequence = parseSequence(file.getName());
+            if (sequence >= 0) {
+                files.put(sequence, file);
             }
+        }
+
+        // The record file of previous versions holds the oldest records when
+        // there are no segments, which is the case unless the app was
+        // downgraded and upgraded again
+        final File legacyFile = new File(recordsDirectory, recordFileName);
+        if (legacyFile.isFile()) {
+            final long sequence = files.isEmpty() ? 0 : files.lastKey() + 1;
+            final File file = segmentFile(sequence);
+            if (!legacyFile.renameTo(file)) {
+                throw new IOException("Failed to migrate records file");
+            }
+            files.put(sequence, file);
+        }
+        fileManager.deleteFile(tempFile());
+
+        final long[] cursor = readCursor();
+        for (final Map.Entry<Long, File> entry : files.entrySet()) {
+            final File file = entry.getValue();
+            if (cursor != null && entry.getKey() < cursor[0]) {
+                // Removed before the store was closed
+                deleteSegmentFile(file);
+            } else {
+                segments.add(new Segment(entry.getKey(), file, file.length()));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            final long sequence = cursor != null ? cursor[0] : 0;
+            segments.add(new Segment(sequence, createSegmentFile(sequence), HEADER_SIZE));
+        }
+        final Segment first = segments.get(0);
+        cursorSequence = first.sequence;
+        cursorOffset = cursor != null && cursor[0] == first.sequence
+                ? Math.min(cursor[1], first.size) : 0;
+
+        for (final Segment segment : segments) {
+            if (!hasHeader(segment.file)) {
+                convertTextSegment(segment, segment == first ? cursorOffset : 0);
+                if (segment == first) {
+                    cursorOffset = HEADER_SIZE;
+                }
+            }
+            totalSize += segment.size;
+        }
+        cursorOffset = Math.max(cursorOffset, HEADER_SIZE);
 
-            final File recordDir = fileManager.createDirectory(
-                    Constants.RECORDS_DIRECTORY);
-            recordFile = fileManager.createFile(new File(
-                    recordDir, recordFileName));
+        // Records are appended to a new segment, so the streams defined in
+        // it are the ones defined since
+        if (segments.get(segments.size() - 1).size > HEADER_SIZE) {
+            roll();
         }
     }
 
-    private BufferedWriter tryInitializeWriter() throws IOException {
-        BufferedWriter writer = null;
-        tryCreateRecordsFile();
-        final OutputStream stream = fileManager.newOutputStream(recordFile, true);
-        writer = new BufferedWriter(new OutputStreamWriter(stream, StringUtils.UTF8));
+    private long parseSequence(String fileName) {
+        final String prefix = recordFileName + ".";
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        final String sequence = fileName.substring(prefix.length(),
+                fileName.length() - SEGMENT_SUFFIX.length());
+        if (sequence.length() == 0) {
+            return -1;
+        }
+        for (int i = 0; i < sequence.length(); i++) {
+            if (sequence.charAt(i) < '0' || sequence.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(sequence);
+        } catch (final NumberFormatException nfe) {
+            return -1;
+        }
+    }
 
-        return writer;
+    private File segmentFile(long sequence) {
+        return new File(recordsDirectory, recordFileName + "." + sequence + SEGMENT_SUFFIX);
     }
 
-    private File deleteAllRecords() throws IOException {
-        final File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
+    private File cursorFile() {
+        return new File(recordsDirectory, recordFileName + CURSOR_SUFFIX);
+    }
 
-        recordFile.delete();
+    private File tempFile() {
+        return new File(recordsDirectory, recordFileName + TEMP_SUFFIX);
+    }
 
-        recordFile = fileManager.createFile(new File(
-                recordsDir, recordFileName));
-        return recordFile;
+    private File createSegmentFile(long sequence) throws IOException {
+        final File file = segmentFile(sequence);
+        final OutputStream stream = fileManager.newOutputStream(file, false);
+        try {
+            stream.write(MAGIC);
+        } finally {
+            stream.close();
+        }
+        return file;
     }
 
-    private File deleteReadRecords(final int lineNumber) throws IOException {
-        // Write all records after line number to a temporary file
-        final File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
+    private void deleteSegmentFile(File file) {
+        if (!file.delete() && file.exists()) {
+            LOGGER.error("Failed to delete segment file " + file.getName());
+        }
+    }
 
-        File tempRecordsFile = null;
-        final File tempFile = new File(
-                recordsDir, recordFileName + ".tmp");
-        if (tempFile.exists()) {
-            if (!tempFile.delete()) {
-                throw new IOException("Failed to delete previous temp file");
+    private boolean hasHeader(File file) throws IOException {
+        final InputStream stream = fileManager.newInputStream(file);
+        try {
+            for (final byte b : MAGIC) {
+                if (stream.read() != (b & 0xff)) {
+                    return false;
+                }
             }
+            return true;
+        } finally {
+            stream.close();
         }
-        tempRecordsFile = fileManager.createFile(tempFile);
+    }
 
-        if (tempRecordsFile != null && recordFile.exists() && tempRecordsFile.exists()) {
-            BufferedReader reader = null;
-            PrintWriter writer = null;
-            try {
-                reader = new BufferedReader(new InputStreamReader(new FileInputStream(recordFile),
-                        StringUtils.UTF8));
-                writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(
-                        tempRecordsFile, true), StringUtils.UTF8));
-
-                String line = null;
-                int currentLineNumber = 0;
-                while ((line = reader.readLine()) != null) {
-                    currentLineNumber++;
-                    if (currentLineNumber > lineNumber) {
-                        writer.println(line);
-                        writer.flush();
-                    }
+    /**
+     * Rewrites the records of a segment of previous versions, from an
+     * offset, as frames. The cursor file is deleted first when the segment
+     * holds it, so a crash before the converted segment replaces it sends
+     * removed records again instead of reading the converted one from the
+     * offset of the old one.
+     */
+    private void convertTextSegment(Segment segment, long offset) throws IOException {
+        final File tempFile = tempFile();
+        final OutputStream out = new BufferedOutputStream(fileManager.newOutputStream(tempFile,
+                false));
+        BufferedReader reader = null;
+        int converted = 0;
+        try {
+            out.write(MAGIC);
+            final InputStream in = fileManager.newInputStream(segment.file);
+            reader = new BufferedReader(new InputStreamReader(in, StringUtils.UTF8));
+            long skipped = 0;
+            while (skipped < offset) {
+                final long n = in.skip(offset - skipped);
+                if (n <= 0) {
+                    break;
                 }
-            } finally {
-                if (writer != null) {
-                    writer.close();
+                skipped += n;
+            }
+
+            final Map<String, Integer> ids = new HashMap<String, Integer>();
+            final FileRecordParser frp = new FileRecordParser();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
                 }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (final IOException e) {
-                        LOGGER.error("failed to close reader", e);
-                    }
+                try {
+                    frp.parse(line);
+                } catch (final Exception e) {
+                    LOGGER.warn("Failed to read line. Skip.", e);
+                    continue;
                 }
-
-                if (!recordFile.delete() || !tempRecordsFile.renameTo(recordFile)) {
-                    throw new IOException(
-                            "Failed to delete read records and persist unread records");
+                Integer id = ids.get(frp.streamName);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(frp.streamName, id);
+                    final byte[] name = frp.streamName.getBytes(StringUtils.UTF8);
+                    out.write(frame(STREAM_FRAME, id, name));
                 }
+                out.write(frame(RECORD_FRAME, id, frp.bytes));
+                converted++;
             }
+        } finally {
+            out.close();
+            if (reader != null) {
+                reader.close();
+            }
+        }
 
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    LOGGER.error("Failed to delete temp file");
+        if (offset > 0) {
+            fileManager.deleteFile(cursorFile());
+        }
+        if (!tempFile.renameTo(segment.file)
+                && !(segment.file.delete() && tempFile.renameTo(segment.file))) {
+            throw new IOException("Failed to convert records file");
+        }
+        segment.size = segment.file.length();
+        LOGGER.info("Converted " + converted + " records of " + segment.file.getName());
+    }
+
+    private byte[] frame(byte type, int id, byte[] bytes) {
+        final int bodySize = 1 + varintSize(id) + bytes.length;
+        final byte[] frame = new byte[frameSize(bodySize)];
+        final int position = writeFrameHeader(frame, 0, bodySize, type, id);
+        System.arraycopy(bytes, 0, frame, position, bytes.length);
+        writeCrc(frame, position + bytes.length, bodySize);
+        return frame;
+    }
+
+    /**
+     * @return the sequence and offset of the cursor file, or null if there
+     *         isn't one or it can't be read.
+     */
+    private long[] readCursor() {
+        final File file = cursorFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(fileManager.newInputStream(file),
+                    StringUtils.UTF8));
+            final String line = reader.readLine();
+            final String[] values = line == null ? new String[0] : line.trim().split(" ");
+            if (values.length == 2) {
+                final long[] cursor = new long[] {
+                        Long.parseLong(values[0]), Long.parseLong(values[1])
+                };
+                if (cursor[0] >= 0 && cursor[1] >= 0) {
+                    return cursor;
                 }
             }
+        } catch (final IOException ioe) {
+            LOGGER.error("Failed to read cursor file", ioe);
+        } catch (final NumberFormatException nfe) {
+            LOGGER.error("Failed to read cursor file", nfe);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    LOGGER.error("failed to close reader", e);
+                }
+            }
+        }
+        LOGGER.error("Invalid cursor file, reading records from the oldest segment");
+        return null;
+    }
+
+    private void writeCursor() throws IOException {
+        final File tempFile = new File(recordsDirectory, recordFileName + CURSOR_SUFFIX
+                + TEMP_SUFFIX);
+        final OutputStream stream = fileManager.newOutputStream(tempFile, false);
+        try {
+            stream.write((cursorSequence + " " + cursorOffset).getBytes(StringUtils.UTF8));
+        } finally {
+            stream.close();
+        }
+        if (!tempFile.renameTo(cursorFile())) {
+            throw new IOException("Failed to persist the position of unread records");
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (final IOException e) {
+                LOGGER.error("failed to close writer", e);
+            }
+            writer = null;
         }
-        return recordFile;
+    }
+
+    /**
+     * Starts appending records to a new segment.
+     */
+    private Segment roll() throws IOException {
+        closeWriter();
+        streamIds.clear();
+        final long sequence = segments.get(segments.size() - 1).sequence + 1;
+        final Segment segment = new Segment(sequence, createSegmentFile(sequence), HEADER_SIZE);
+        segments.add(segment);
+        totalSize += segment.size;
+        return segment;
+    }
+
+    private Segment segment(long sequence) {
+        for (final Segment segment : segments) {
+            if (segment.sequence == sequence) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private Segment segmentAfter(long sequence) {
+        for (final Segment segment : segments) {
+            if (segment.sequence > sequence) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private boolean isLast(Segment segment) {
+        return segments.get(segments.size() - 1) == segment;
+    }
+
+    /**
+     * Removes the records before a position. The cursor is persisted before
+     * the segments before it are deleted, so a crash in between leaves
+     * segments that are deleted when the store is opened again.
+     */
+    private void removeRecordsBefore(long sequence, long offset) throws IOException {
+        Segment segment = segment(sequence);
+        if (segment == null) {
+            // Removed already
+            return;
+        }
+        Segment next;
+        while (offset >= segment.size && (next = segmentAfter(segment.sequence)) != null) {
+            segment = next;
+            offset = HEADER_SIZE;
+        }
+        if (offset >= segment.size && segment.size > HEADER_SIZE) {
+            // Every record is removed, so they're all deleted by appending
+            // to a new segment
+            segment = roll();
+            offset = HEADER_SIZE;
+        }
+        if (segment.sequence == cursorSequence && offset <= cursorOffset) {
+            return;
+        }
+
+        cursorSequence = segment.sequence;
+        cursorOffset = offset;
+        writeCursor();
+        while (segments.get(0) != segment) {
+            final Segment removed = segments.remove(0);
+            totalSize -= removed.size;
+            deleteSegmentFile(removed.file);
+        }
+    }
+
+    private void deleteAllRecords() throws IOException {
+        closeWriter();
+        streamIds.clear();
+        final long sequence = segments.get(segments.size() - 1).sequence + 1;
+        for (final Segment segment : segments) {
+            deleteSegmentFile(segment.file);
+        }
+        segments.clear();
+        fileManager.deleteFile(cursorFile());
+
+        segments.add(new Segment(sequence, createSegmentFile(sequence), HEADER_SIZE));
+        totalSize = HEADER_SIZE;
+        cursorSequence = sequence;
+        cursorOffset = HEADER_SIZE;
     }
 
     public RecordIterator iterator() {
@@ -200,124 +650,378 @@ class FileRecordStore {
 
     }
 
-    public class RecordIterator implements java.util.Iterator<String> {
-        int linesRead = 0;
-        String nextBuffer = null;
-        BufferedReader reader = null;
-        boolean isEndOfFile = false;
+    /**
+     * A segment file of the log.
+     */
+    private static final class Segment {
+        final long sequence;
+        final File file;
+        long size;
 
-        private boolean tryOpenReader() throws FileNotFoundException {
-            if (reader != null) {
-                return true;
+        Segment(long sequence, File file, long size) {
+            this.sequence = sequence;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A record read from the store.
+     */
+    static final class Record {
+        final String streamName;
+        final byte[] data;
+        /** The number of times the record failed to send. **/
+        final int attempts;
+
+        Record(String streamName, byte[] data) {
+            this(streamName, data, 0);
+        }
+
+        Record(String streamName, byte[] data, int attempts) {
+            this.streamName = streamName;
+            this.data = data;
+            this.attempts = attempts;
+        }
+    }
+
+    /**
+     * The position in the store after a record.
+     */
+    static final class Position {
+        final long sequence;
+        final long offset;
+
+        Position(long sequence, long offset) {
+            this.sequence = sequence;
+            this.offset = offset;
+        }
+    }
+
+    public class RecordIterator implements java.util.Iterator<Record> {
+        private static final int END = -1;
+        private static final int CORRUPT = -2;
+
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private InputStream reader;
+
+        /** The body and CRC32 of the last frame read. **/
+        private byte[] frame = new byte[1024];
+        /** The size of the last frame read, including its length. **/
+        private int frameSize;
+        private final CRC32 frameCrc32 = new CRC32();
+
+        /** The streams defined in the segment being read. **/
+        private final Map<Integer, String> streams = new HashMap<Integer, String>();
+        private long streamsSequence = -1;
+
+        /** The position after the last frame read from the segments. **/
+        private long readSequence;
+        private long readOffset;
+
+        /** The position after the last record returned by next(). **/
+        private long nextSequence;
+        private long nextOffset;
+
+        private Record nextBuffer;
+
+        RecordIterator() {
+            accessLock.lock();
+            try {
+                resetReader();
+            } finally {
+                accessLock.unlock();
             }
+        }
 
-            if (!isEndOfFile) {
-                InputStreamReader streamReader = null;
-                streamReader = new InputStreamReader(fileManager.newInputStream(recordFile),
-                        StringUtils.UTF8);
+        private boolean tryOpenReader() throws FileNotFoundException, IOException {
+            Segment segment = segment(readSequence);
+            if (segment == null) {
+                // Removed by another iterator
+                readSequence = cursorSequence;
+                readOffset = cursorOffset;
+                segment = segment(readSequence);
+            }
+            if (readOffset >= segment.size) {
+                return false;
+            }
 
-                if (streamReader != null) {
-                    reader = new BufferedReader(streamReader);
+            final long offset = readOffset;
+            if (streamsSequence != segment.sequence) {
+                // The streams of the records from the offset are defined by
+                // the frames before it
+                streams.clear();
+                streamsSequence = segment.sequence;
+                openAt(segment, HEADER_SIZE);
+                while (readOffset < offset) {
+                    final int length = readFrame();
+                    if (length < 0) {
+                        break;
+                    }
+                    readOffset += frameSize;
+                    if (frame[0] == STREAM_FRAME && checksumMatches(length)) {
+                        defineStream(length);
+                    }
+                }
+                if (readOffset == offset) {
                     return true;
                 }
+                tryCloseReader();
+            }
+            openAt(segment, offset);
+            return true;
+        }
+
+        private void openAt(Segment segment, long offset) throws IOException {
+            reader = fileManager.newInputStream(segment.file);
+            position = 0;
+            limit = 0;
+            long skipped = 0;
+            while (skipped < offset) {
+                final long n = reader.skip(offset - skipped);
+                if (n <= 0) {
+                    tryCloseReader();
+                    throw new IOException("Failed to skip read records");
+                }
+                skipped += n;
             }
-            return false;
+            readOffset = offset;
         }
 
         private void tryCloseReader() throws IOException {
             if (reader != null) {
-                reader.close();
+                final InputStream stream = reader;
                 reader = null;
+                stream.close();
             }
         }
 
-        @Override
-        public boolean hasNext() {
-            boolean hasNext = false;
-            accessLock.lock();
-            try {
-                // If there is something already buffered then there is a
-                // next
-                if (nextBuffer != null) {
-                    hasNext = true;
-                } else {
-                    if (!tryOpenReader()) {
-                        return hasNext;
+        /**
+         * Reads the next record of the segments, moving past the ends of all
+         * but the last segment.
+         */
+        private Record readRecord() throws IOException {
+            while (true) {
+                if (reader == null && !tryOpenReader()) {
+                    if (!moveToNextSegment()) {
+                        return null;
                     }
-                    // Nothing was previously buffered so try to read one
-                    // more line
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            nextBuffer = reader.readLine();
-                            found = true;
-                        } catch (final IOException e) {
-                            nextBuffer = null;
-                            found = true;
-                        }
+                    continue;
+                }
+
+                final Record record = readRecordFromSegment();
+                if (record != null) {
+                    return record;
+                }
+                tryCloseReader();
+                if (!moveToNextSegment()) {
+                    return null;
+                }
+            }
+        }
+
+        private boolean moveToNextSegment() {
+            final Segment next = segmentAfter(readSequence);
+            if (next == null) {
+                return false;
+            }
+            readSequence = next.sequence;
+            readOffset = HEADER_SIZE;
+            return true;
+        }
+
+        /**
+         * @return the next record of the segment being read, or null at its
+         *         end. A frame cut short by a crash ends a segment.
+         */
+        private Record readRecordFromSegment() throws IOException {
+            while (true) {
+                final int length = readFrame();
+                if (length == END) {
+                    return null;
+                }
+                if (length == CORRUPT) {
+                    skipSegment();
+                    return null;
+                }
+                readOffset += frameSize;
+                if (!checksumMatches(length)) {
+                    LOGGER.warn("Failed to read record. Skip.");
+                    continue;
+                }
+
+                if (frame[0] == STREAM_FRAME) {
+                    defineStream(length);
+                } else if (frame[0] == RECORD_FRAME || frame[0] == RETRY_FRAME) {
+                    final int[] varint = new int[1];
+                    int start = readVarint(frame, 1, length, varint);
+                    final String streamName = start < 0 ? null : streams.get(varint[0]);
+                    if (streamName == null) {
+                        LOGGER.warn("Failed to read record of an undefined stream. Skip.");
+                        continue;
                     }
-                    if (nextBuffer != null) {
-                        // There was at least one more line so there is a
-                        // next
-                        hasNext = true;
-                    } else {
-                        // The next line was null so it should be the end of
-                        // the file. Try to close the reader
-                        isEndOfFile = true;
-                        tryCloseReader();
+                    varint[0] = 0;
+                    if (frame[0] == RETRY_FRAME) {
+                        start = readVarint(frame, start, length, varint);
+                        if (start < 0) {
+                            LOGGER.warn("Failed to read record. Skip.");
+                            continue;
+                        }
                     }
+                    final byte[] data = new byte[length - start];
+                    System.arraycopy(frame, start, data, 0, data.length);
+                    return new Record(streamName, data, varint[0]);
+                } else {
+                    LOGGER.warn("Failed to read frame of unknown type. Skip.");
+                }
+            }
+        }
+
+        /**
+         * Moves past the rest of a segment that can't be read anymore. Records
+         * aren't appended after it either.
+         */
+        private void skipSegment() throws IOException {
+            LOGGER.error("Corrupted records file, skipping the rest of it");
+            final Segment segment = segment(readSequence);
+            if (segment != null) {
+                readOffset = segment.size;
+                if (isLast(segment)) {
+                    roll();
+                }
+            }
+        }
+
+        private void defineStream(int length) {
+            final int[] id = new int[1];
+            final int start = readVarint(frame, 1, length, id);
+            if (start >= 0) {
+                streams.put(id[0], new String(frame, start, length - start, StringUtils.UTF8));
+            }
+        }
+
+        private boolean checksumMatches(int length) {
+            frameCrc32.reset();
+            frameCrc32.update(frame, 0, length);
+            final long crc = ((frame[length] & 0xffL) << 24) | ((frame[length + 1] & 0xffL) << 16)
+                    | ((frame[length + 2] & 0xffL) << 8) | (frame[length + 3] & 0xffL);
+            return crc == frameCrc32.getValue();
+        }
+
+        /**
+         * Reads the next frame into {@link #frame}.
+         *
+         * @return the length of its body, {@link #END} if the segment ends
+         *         before it does, or {@link #CORRUPT} if its length is
+         *         invalid.
+         */
+        private int readFrame() throws IOException {
+            int length = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = read();
+                if (b < 0) {
+                    return END;
+                }
+                if (shift > 28) {
+                    return CORRUPT;
                 }
-                return hasNext;
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (length <= 0 || length > MAX_FRAME_SIZE) {
+                return CORRUPT;
+            }
+
+            final int size = length + CRC_SIZE;
+            if (frame.length < size) {
+                frame = new byte[Math.max(frame.length * 2, size)];
+            }
+            int read = 0;
+            while (read < size) {
+                if (position == limit && !fill()) {
+                    return END;
+                }
+                final int count = Math.min(size - read, limit - position);
+                System.arraycopy(buffer, position, frame, read, count);
+                position += count;
+                read += count;
+            }
+            frameSize = shift / 7 + size;
+            return length;
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        private boolean fill() throws IOException {
+            final int n = reader.read(buffer);
+            if (n <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = n;
+            return true;
+        }
+
+        private Record readNext() {
+            try {
+                return readRecord();
             } catch (final FileNotFoundException fnfe) {
                 throw new AmazonClientException("Cannot find records file", fnfe);
             } catch (final IOException ioe) {
-                throw new AmazonClientException("IO Error", ioe);
+                // Treated as the end of the records, like a frame that isn't
+                // complete
+                LOGGER.error("Failed to read records", ioe);
+                try {
+                    tryCloseReader();
+                } catch (final IOException e) {
+                    LOGGER.error("failed to close reader", e);
+                }
+                return null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            accessLock.lock();
+            try {
+                if (nextBuffer == null) {
+                    nextBuffer = readNext();
+                }
+                return nextBuffer != null;
             } finally {
                 accessLock.unlock();
             }
         }
 
         @Override
-        public String next() {
-            String next = null;
+        public Record next() {
             accessLock.lock();
             try {
-                if (nextBuffer != null) {
-                    next = nextBuffer;
-                    linesRead++;
-                    nextBuffer = null;
-                } else {
-                    if (!tryOpenReader()) {
-                        return next;
-                    }
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            next = reader.readLine();
-                            found = true;
-                        } catch (final IOException e) {
-                            next = null;
-                            found = true;
-                        }
-                    }
-                    if (next != null) {
-                        linesRead++;
-                    } else {
-                        isEndOfFile = true;
-                        tryCloseReader();
-                    }
+                Record next = nextBuffer;
+                nextBuffer = null;
+                if (next == null) {
+                    next = readNext();
+                }
+                if (next != null) {
+                    nextSequence = readSequence;
+                    nextOffset = readOffset;
                 }
                 return next;
-            } catch (final FileNotFoundException e) {
-                throw new AmazonClientException("Cannot find records file", e);
-            } catch (final IOException ioe) {
-                throw new AmazonClientException("IO Error", ioe);
             } finally {
                 accessLock.unlock();
             }
         }
 
-        public String peek() {
+        public Record peek() {
             accessLock.lock();
             try {
                 hasNext();
@@ -333,11 +1037,42 @@ class FileRecordStore {
                     "The remove() operation is not supported for this iterator");
         }
 
+        /**
+         * Removes the records returned by {@link #next()}. A record that was
+         * only peeked at stays in the store and is still returned next.
+         */
         public void removeReadRecords() throws IOException {
             accessLock.lock();
             try {
-                deleteReadRecords(linesRead);
-                resetReader();
+                FileRecordStore.this.removeRecordsBefore(nextSequence, nextOffset);
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * @return the position after the last record returned by
+         *         {@link #next()}.
+         */
+        Position position() {
+            accessLock.lock();
+            try {
+                return new Position(nextSequence, nextOffset);
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * Removes the records before a position, which can be before the
+         * position of the last record returned by {@link #next()}, so that
+         * records can be removed as they are sent rather than as they are
+         * read.
+         */
+        void removeRecordsBefore(Position position) throws IOException {
+            accessLock.lock();
+            try {
+                FileRecordStore.this.removeRecordsBefore(position.sequence, position.offset);
             } finally {
                 accessLock.unlock();
             }
@@ -353,15 +1088,48 @@ class FileRecordStore {
             }
         }
 
-        private void resetReader() throws IOException {
-            tryCloseReader();
-            linesRead = 0;
+        private void resetReader() {
+            try {
+                tryCloseReader();
+            } catch (final IOException e) {
+                LOGGER.error("failed to close reader", e);
+            }
             nextBuffer = null;
-            isEndOfFile = false;
+            streams.clear();
+            streamsSequence = -1;
+            readSequence = cursorSequence;
+            readOffset = cursorOffset;
+            nextSequence = cursorSequence;
+            nextOffset = cursorOffset;
         }
 
         public void close() throws IOException {
-            tryCloseReader();
+            accessLock.lock();
+            try {
+                tryCloseReader();
+            } finally {
+                accessLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads a varint of a frame body.
+     *
+     * @param value holds the value read.
+     * @return the position after the varint, or -1 if it doesn't end before
+     *         the end of the body.
+     */
+    private static int readVarint(byte[] b, int position, int end, int[] value) {
+        int result = 0;
+        for (int shift = 0; shift < 32 && position < end; shift += 7) {
+            final int next = b[position++];
+            result |= (next & 0x7f) << shift;
+            if ((next & 0x80) == 0) {
+                value[0] = result;
+                return position;
+            }
         }
+        return -1;
     }
 }
@@ -49,7 +49,8 @@ class FirehoseRecordSender implements RecordSender {
     }
 
     @Override
-    public List<byte[]> sendBatch(String streamName, List<byte[]> data) {
+    public List<byte[]> sendBatch(String streamName, List<byte[]> data,
+            List<byte[]> throttled) {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
         }
@@ -71,8 +72,13 @@ class FirehoseRecordSender implements RecordSender {
         final List<byte[]> failures = new ArrayList<byte[]>(result.getFailedPutCount());
         for (int i = 0; i < size; i++) {
             // Error code is either ServiceUnavailable or InternalFailure
-            if (result.getRequestResponses().get(i).getErrorCode() != null) {
+            final String errorCode = result.getRequestResponses().get(i).getErrorCode();
+            if (errorCode != null) {
                 failures.add(data.get(i));
+                // The delivery stream is over its throughput limits
+                if (errorCode.startsWith("ServiceUnavailable")) {
+                    throttled.add(data.get(i));
+                }
             }
         }
         return failures;
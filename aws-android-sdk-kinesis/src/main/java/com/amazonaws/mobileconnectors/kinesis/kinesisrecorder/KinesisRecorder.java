@@ -16,11 +16,11 @@
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.kinesis.AmazonKinesis;
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.util.StringUtils;
 import com.amazonaws.util.VersionInfoUtils;
 
 import com.amazonaws.logging.Log;
@@ -28,8 +28,11 @@ import com.amazonaws.logging.LogFactory;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.regex.Pattern;
 
 /**
@@ -154,7 +157,8 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
         final AmazonKinesis client = new AmazonKinesisClient(credentialsProvider,
                 config.getClientConfiguration());
         client.setRegion(Region.getRegion(region));
-        sender = new KinesisStreamRecordSender(client, USER_AGENT, config.getPartitionKey());
+        sender = new KinesisStreamRecordSender(client, USER_AGENT, config.getPartitionKey(),
+                config.isRecordAggregationEnabled());
 
         checkUpgrade(directory);
     }
@@ -201,24 +205,34 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
                 return;
             }
 
-            // iterate through all records in the old records file
-            final FileRecordStore frs = new FileRecordStore(directory, Constants.RECORDS_FILE_NAME,
-                    Long.MAX_VALUE);
-            final RecordIterator iterator = frs.iterator();
-            while (iterator.hasNext()) {
-                try {
-                    final JSONObject json = new JSONObject(iterator.next());
-                    saveRecord(JSONRecordAdapter.getData(json).array(),
-                            JSONRecordAdapter.getStreamName(json));
-                } catch (final JSONException e) {
-                    LOGGER.debug("caught exception", e);
-                    continue;
-                }
-            }
+            // iterate through all records in the old records file, which has
+            // a JSON object per line. It's read directly since a
+            // FileRecordStore would migrate it to its segments.
+            BufferedReader reader = null;
             try {
-                iterator.close();
+                reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(oldRecordsFile), StringUtils.UTF8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        final JSONObject json = new JSONObject(line);
+                        saveRecord(JSONRecordAdapter.getData(json).array(),
+                                JSONRecordAdapter.getStreamName(json));
+                    } catch (final JSONException e) {
+                        LOGGER.debug("caught exception", e);
+                        continue;
+                    }
+                }
             } catch (final IOException e) {
                 LOGGER.debug("caught exception", e);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (final IOException e) {
+                        LOGGER.debug("caught exception", e);
+                    }
+                }
             }
             oldRecordsFile.delete();
         }
@@ -28,6 +28,9 @@ public class KinesisRecorderConfig {
     private final ClientConfiguration clientConfiguration;
     private String partitionKey;
     private DeadLetterListener mDeadLetterListener;
+    private int maxConcurrentBatches = 1;
+    private int maxRecordRetries = Integer.MAX_VALUE;
+    private boolean recordAggregation;
 
     /**
      * Construct an instance of KinesisRecorderConfig which has default values
@@ -61,6 +64,9 @@ public class KinesisRecorderConfig {
         this.maxStorageSize = other.getMaxStorageSize();
         this.clientConfiguration = new ClientConfiguration(other.getClientConfiguration());
         this.partitionKey = other.partitionKey;
+        this.maxConcurrentBatches = other.maxConcurrentBatches;
+        this.maxRecordRetries = other.maxRecordRetries;
+        this.recordAggregation = other.recordAggregation;
     }
 
     /**
@@ -94,6 +100,80 @@ public class KinesisRecorderConfig {
         return this.maxStorageSize;
     }
 
+    /**
+     * Sets the maximum number of batches submitAllRecords() keeps in flight.
+     * With more than one, the saved records are grouped into batches by
+     * stream across all of them, rather than only consecutive records of a
+     * stream, and records of a stream may be delivered out of the order they
+     * were saved in. The default of 1 sends one batch at a time.
+     *
+     * @param maxConcurrentBatches the maximum number of batches in flight.
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxConcurrentBatches(int maxConcurrentBatches) {
+        if (maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("maxConcurrentBatches must be at least 1");
+        }
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of batches submitAllRecords() keeps in
+     *         flight.
+     */
+    public int getMaxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
+    /**
+     * Sets the maximum number of times a record rejected by the service is
+     * sent again. A record that is rejected once more is dropped and handed to
+     * the {@link DeadLetterListener}. By default records are sent again until
+     * they're accepted.
+     *
+     * @param maxRecordRetries the maximum number of retries of a record.
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxRecordRetries(int maxRecordRetries) {
+        if (maxRecordRetries < 0) {
+            throw new IllegalArgumentException("maxRecordRetries can't be negative");
+        }
+        this.maxRecordRetries = maxRecordRetries;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of times a record rejected by the service is
+     *         sent again.
+     */
+    public int getMaxRecordRetries() {
+        return maxRecordRetries;
+    }
+
+    /**
+     * Sets whether KinesisRecorder packs the records of a batch into
+     * aggregated records of the Kinesis Producer Library format, up to 50 KB
+     * each, which the Kinesis Client Library de-aggregates. It sends far
+     * fewer Kinesis records when records are small. Consumers that don't
+     * de-aggregate records must not be used with it. KinesisFirehoseRecorder
+     * doesn't aggregate records.
+     *
+     * @param recordAggregation whether to aggregate records.
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withRecordAggregation(boolean recordAggregation) {
+        this.recordAggregation = recordAggregation;
+        return this;
+    }
+
+    /**
+     * @return Whether KinesisRecorder aggregates records.
+     */
+    public boolean isRecordAggregationEnabled() {
+        return recordAggregation;
+    }
+
     /**
      * Returns the {@link DeadLetterListener} that will respond to records being dropped.
      * @return the {@link DeadLetterListener} that will respond to records being dropped.
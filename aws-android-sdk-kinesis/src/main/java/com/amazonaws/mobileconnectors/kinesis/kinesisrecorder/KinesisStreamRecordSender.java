@@ -38,6 +38,7 @@ class KinesisStreamRecordSender implements RecordSender {
     private final AmazonKinesis client;
     private final String userAgent;
     private final String partitionKey;
+    private final boolean aggregate;
 
     /**
      * Constructs a {@link KinesisStreamRecordSender}.
@@ -58,13 +59,29 @@ class KinesisStreamRecordSender implements RecordSender {
      */
     public KinesisStreamRecordSender(AmazonKinesis client, String userAgent,
             String partitionKey) {
+        this(client, userAgent, partitionKey, false);
+    }
+
+    /**
+     * Constructs a {@link KinesisStreamRecordSender}.
+     *
+     * @param client an {@link AmazonKinesis} client
+     * @param userAgent user agent string to be set in each request
+     * @param partitionKey the partition key, or null for a random one per
+     *            Kinesis record
+     * @param aggregate whether to pack records into aggregated records
+     */
+    public KinesisStreamRecordSender(AmazonKinesis client, String userAgent,
+            String partitionKey, boolean aggregate) {
         this.client = client;
         this.userAgent = userAgent;
         this.partitionKey = partitionKey;
+        this.aggregate = aggregate;
     }
 
     @Override
-    public List<byte[]> sendBatch(String streamName, List<byte[]> data) {
+    public List<byte[]> sendBatch(String streamName, List<byte[]> data,
+            List<byte[]> throttled) {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
         }
@@ -72,13 +89,22 @@ class KinesisStreamRecordSender implements RecordSender {
         final PutRecordsRequest request = new PutRecordsRequest();
         request.setStreamName(streamName);
         final List<PutRecordsRequestEntry> records = new ArrayList<PutRecordsRequestEntry>(data.size());
-        for (final byte[] d : data) {
+        // The index after the last of the data in each Kinesis record
+        final List<Integer> ends = new ArrayList<Integer>(data.size());
+        int start = 0;
+        while (start < data.size()) {
             final String partKey = StringUtils.isBlank(this.partitionKey)
                     ? UUID.randomUUID().toString() : this.partitionKey;
+            final int end = aggregate ? RecordAggregator.end(data, start, partKey,
+                    RecordAggregator.DEFAULT_MAX_AGGREGATED_SIZE) : start + 1;
             final PutRecordsRequestEntry r = new PutRecordsRequestEntry();
-            r.setData(ByteBuffer.wrap(d));
+            // A single record is sent as is
+            r.setData(ByteBuffer.wrap(end - start == 1 ? data.get(start)
+                    : RecordAggregator.aggregate(partKey, data.subList(start, end))));
             r.setPartitionKey(partKey);
             records.add(r);
+            ends.add(end);
+            start = end;
         }
         request.setRecords(records);
         request.getRequestClientOptions().appendUserAgent(userAgent);
@@ -88,9 +114,15 @@ class KinesisStreamRecordSender implements RecordSender {
         final int size = result.getRecords().size();
         final List<byte[]> failures = new ArrayList<byte[]>(result.getFailedRecordCount());
         for (int i = 0; i < size; i++) {
-            if (result.getRecords().get(i).getErrorCode() != null) {
-                // always retry failed record
-                failures.add(data.get(i));
+            final String errorCode = result.getRecords().get(i).getErrorCode();
+            if (errorCode != null) {
+                // always retry failed record, and the ones aggregated with it
+                final List<byte[]> failed = data.subList(i == 0 ? 0 : ends.get(i - 1),
+                        ends.get(i));
+                failures.addAll(failed);
+                if ("ProvisionedThroughputExceededException".equals(errorCode)) {
+                    throttled.addAll(failed);
+                }
             }
         }
 
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import com.amazonaws.util.StringUtils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Packs records into a single Kinesis record in the aggregated record format
+ * of the Kinesis Producer Library, which the Kinesis Client Library
+ * de-aggregates: the {@link #MAGIC} bytes, an {@code AggregatedRecord}
+ * protobuf message and the MD5 digest of the message.
+ *
+ * <pre>
+ * message AggregatedRecord {
+ *   repeated string partition_key_table = 1;
+ *   repeated string explicit_hash_key_table = 2;
+ *   repeated Record records = 3;
+ * }
+ * message Record {
+ *   required uint64 partition_key_index = 1;
+ *   optional uint64 explicit_hash_key_index = 2;
+ *   required bytes data = 3;
+ *   repeated Tag tags = 4;
+ * }
+ * </pre>
+ *
+ * All the records of an aggregated record have its partition key, so they
+ * hash to the shard it's put to, which is where the Kinesis Client Library
+ * expects them when it de-aggregates it.
+ */
+final class RecordAggregator {
+
+    static final byte[] MAGIC = {
+            (byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2
+    };
+
+    /**
+     * The size the aggregated records are kept under, the default of the
+     * Kinesis Producer Library. A record that fails to send fails the
+     * records aggregated with it, so they're kept well under the 1 MB limit.
+     */
+    static final int DEFAULT_MAX_AGGREGATED_SIZE = 50 * 1024;
+
+    private static final int DIGEST_SIZE = 16;
+
+    /** The tags of the fields, with the length-delimited or varint wire type. **/
+    private static final byte PARTITION_KEY_TABLE_TAG = (1 << 3) | 2;
+    private static final byte RECORDS_TAG = (3 << 3) | 2;
+    private static final byte PARTITION_KEY_INDEX_TAG = 1 << 3;
+    private static final byte DATA_TAG = (3 << 3) | 2;
+
+    private RecordAggregator() {
+    }
+
+    /**
+     * Finds the records that fit in an aggregated record.
+     *
+     * @param data the records.
+     * @param start the index of the first record to aggregate.
+     * @param partitionKey the partition key of the aggregated record.
+     * @param maxSize the maximum size of the aggregated record.
+     * @return the index after the last record that fits, at least the one
+     *         after the first record.
+     */
+    static int end(List<byte[]> data, int start, String partitionKey, int maxSize) {
+        long size = MAGIC.length + fieldSize(utf8Length(partitionKey)) + DIGEST_SIZE;
+        int end = start;
+        while (end < data.size()) {
+            size += fieldSize(recordSize(data.get(end)));
+            if (size > maxSize && end > start) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Aggregates records.
+     *
+     * @param partitionKey the partition key of the aggregated record.
+     * @param data the records.
+     * @return the data of the aggregated record.
+     */
+    static byte[] aggregate(String partitionKey, List<byte[]> data) {
+        final byte[] key = partitionKey.getBytes(StringUtils.UTF8);
+        int messageSize = fieldSize(key.length);
+        for (final byte[] d : data) {
+            messageSize += fieldSize(recordSize(d));
+        }
+
+        final byte[] b = new byte[MAGIC.length + messageSize + DIGEST_SIZE];
+        System.arraycopy(MAGIC, 0, b, 0, MAGIC.length);
+        int position = MAGIC.length;
+        b[position++] = PARTITION_KEY_TABLE_TAG;
+        position = writeVarint(b, position, key.length);
+        System.arraycopy(key, 0, b, position, key.length);
+        position += key.length;
+        for (final byte[] d : data) {
+            b[position++] = RECORDS_TAG;
+            position = writeVarint(b, position, recordSize(d));
+            b[position++] = PARTITION_KEY_INDEX_TAG;
+            b[position++] = 0;
+            b[position++] = DATA_TAG;
+            position = writeVarint(b, position, d.length);
+            System.arraycopy(d, 0, b, position, d.length);
+            position += d.length;
+        }
+
+        final MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            // should never get here
+            throw new IllegalStateException(e);
+        }
+        md5.update(b, MAGIC.length, messageSize);
+        System.arraycopy(md5.digest(), 0, b, position, DIGEST_SIZE);
+        return b;
+    }
+
+    /**
+     * @return the size of a Record message with the first partition key.
+     */
+    private static int recordSize(byte[] data) {
+        return 2 + fieldSize(data.length);
+    }
+
+    /**
+     * @return the size of a length-delimited field.
+     */
+    private static int fieldSize(int length) {
+        return 1 + varintSize(length) + length;
+    }
+
+    private static int utf8Length(String s) {
+        return s.getBytes(StringUtils.UTF8).length;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] b, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            b[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        b[position++] = (byte) value;
+        return position;
+    }
+}
@@ -26,12 +26,16 @@ interface RecordSender {
     /**
      * Sends a batch of data to the given stream. If some data is rejected by
      * the server and is retryable, it should be added to the return list.
+     * Data rejected because the stream is over its provisioned throughput is
+     * also added to the list of throttled data, so that the recorder backs
+     * off before sending more to the stream.
      *
      * @param streamName stream name
      * @param data a list of data to be sent
+     * @param throttled a list to hold the failed data that was throttled
      * @return a list to data that is failed to send
      */
-    List<byte[]> sendBatch(String streamName, List<byte[]> data);
+    List<byte[]> sendBatch(String streamName, List<byte[]> data, List<byte[]> throttled);
 
     /**
      * Tests whether an exception is recoverable. If true, the list of data
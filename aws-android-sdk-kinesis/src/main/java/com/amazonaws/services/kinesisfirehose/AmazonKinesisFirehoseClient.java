@@ -257,7 +257,8 @@ public class AmazonKinesisFirehoseClient extends AmazonWebServiceClient implemen
      */
     public AmazonKinesisFirehoseClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -16,6 +16,7 @@
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
@@ -33,15 +34,24 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
@@ -58,6 +68,7 @@ public class AbstractKinesisRecorderTest {
 
     static class MockAbstractKinesisRecorder extends AbstractKinesisRecorder {
         private RecordSender sender;
+        private final List<Long> delays = new ArrayList<Long>();
 
         protected MockAbstractKinesisRecorder(FileRecordStore recordStore,
                 KinesisRecorderConfig config) {
@@ -72,6 +83,13 @@ public class AbstractKinesisRecorderTest {
         protected RecordSender getRecordSender() {
             return sender;
         }
+
+        @Override
+        void sleep(long millis) {
+            synchronized (delays) {
+                delays.add(millis);
+            }
+        }
     }
 
     @Before
@@ -213,7 +231,8 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), anotherStream);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
                 .thenReturn(new ArrayList<byte[]>());
         recorder.submitAllRecords();
         assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
@@ -226,7 +245,8 @@ public class AbstractKinesisRecorderTest {
         }
         long size = recorder.getDiskBytesUsed();
         AmazonServiceException ase = new AmazonServiceException("some failures");
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
                 .thenThrow(ase);
         Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
         try {
@@ -248,7 +268,8 @@ public class AbstractKinesisRecorderTest {
         }
         long size = recorder.getDiskBytesUsed();
         AmazonServiceException ase = new AmazonServiceException("Unable to unmarshall error response");
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
                 .thenThrow(ase);
         Mockito.when(sender.isRecoverable(ase)).thenReturn(false);
         try {
@@ -258,7 +279,7 @@ public class AbstractKinesisRecorderTest {
             assertSame("same exception", ase, ace);
         }
         Mockito.verify(sender, Mockito.times(2))
-                .sendBatch(Mockito.anyString(), Mockito.anyList());
+                .sendBatch(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
 
         ArgumentCaptor<String> streamNameCaptor = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<List> dataCaptor = ArgumentCaptor.forClass(List.class);
@@ -280,7 +301,8 @@ public class AbstractKinesisRecorderTest {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
         AmazonServiceException ase = new AmazonServiceException("some failures");
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
                 .thenThrow(ase);
         Mockito.when(sender.isRecoverable(ase)).thenReturn(false);
         try {
@@ -297,7 +319,8 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
                 // one of the records fails, but succeeds the next time
                 .thenReturn(Arrays.asList(randomBytes(1024)))
                 .thenReturn(new ArrayList<byte[]>());
@@ -310,13 +333,280 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
                 // one of the records always failes
                 .thenReturn(Arrays.asList(randomBytes(1024)));
         recorder.submitAllRecords();
         assertTrue("records not removed", recorder.getDiskBytesUsed() > 0);
     }
 
+    @Test
+    public void testSubmitAllRecordsSendsOnlyFailedRecordsAgain() {
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        final List<Integer> sizes = new ArrayList<Integer>();
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
+                .thenAnswer(new Answer<List<byte[]>>() {
+                    @Override
+                    public List<byte[]> answer(InvocationOnMock invocation) {
+                        List<byte[]> data = (List<byte[]>) invocation.getArguments()[1];
+                        sizes.add(data.size());
+                        // the first 3 records fail the first time
+                        return sizes.size() == 1 ? new ArrayList<byte[]>(data.subList(0, 3))
+                                : new ArrayList<byte[]>();
+                    }
+                });
+        recorder.submitAllRecords();
+        assertEquals(Arrays.asList(10, 3), sizes);
+        assertEquals("records removed", 0, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSubmitAllRecordsDropsRecordsOverMaxRetries() throws IOException {
+        MockAbstractKinesisRecorder recorder = new MockAbstractKinesisRecorder(
+                new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME, 1024 * 1024),
+                new KinesisRecorderConfig().withDeadLetterListener(deadLetterListener)
+                        .withMaxRecordRetries(1));
+        recorder.setRecordSender(sender);
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < 10; i++) {
+            data.add(randomBytes(1024));
+            recorder.saveRecord(data.get(i), STREAM_NAME);
+        }
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
+                // the records always fail
+                .thenAnswer(new Answer<List<byte[]>>() {
+                    @Override
+                    public List<byte[]> answer(InvocationOnMock invocation) {
+                        return new ArrayList<byte[]>(
+                                (List<byte[]>) invocation.getArguments()[1]);
+                    }
+                });
+        recorder.submitAllRecords();
+        Mockito.verify(sender, Mockito.times(2))
+                .sendBatch(Mockito.anyString(), Mockito.anyList(), Mockito.anyList());
+
+        ArgumentCaptor<List> dataCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(deadLetterListener, Mockito.times(1))
+                .onRecordsDropped(Mockito.eq(STREAM_NAME), dataCaptor.capture());
+        List<byte[]> deadData = dataCaptor.getValue();
+        assertEquals("same data dropped", data.size(), deadData.size());
+        for (int i = 0; i < data.size(); ++i) {
+            assertTrue("same data dropped", Arrays.equals(data.get(i), deadData.get(i)));
+        }
+        assertEquals("records removed", 0, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSubmitAllRecordsBacksOffWhileThrottled() throws IOException {
+        MockAbstractKinesisRecorder recorder = new MockAbstractKinesisRecorder(
+                new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME, 1024 * 1024),
+                new KinesisRecorderConfig());
+        recorder.setRecordSender(sender);
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.anyListOf(byte[].class)))
+                .thenAnswer(new Answer<List<byte[]>>() {
+                    private int calls;
+
+                    @Override
+                    public List<byte[]> answer(InvocationOnMock invocation) {
+                        if (++calls > 2) {
+                            return new ArrayList<byte[]>();
+                        }
+                        // the records are throttled twice
+                        List<byte[]> data = (List<byte[]>) invocation.getArguments()[1];
+                        ((List<byte[]>) invocation.getArguments()[2]).addAll(data);
+                        return new ArrayList<byte[]>(data);
+                    }
+                });
+        recorder.submitAllRecords();
+        assertEquals("records removed", 0, recorder.getDiskBytesUsed());
+
+        List<Long> delays = recorder.delays;
+        assertEquals(3, delays.size());
+        assertEquals("first batch isn't delayed", 0L, (long) delays.get(0));
+        assertTrue("delayed once throttled", delays.get(1) >= 50 && delays.get(1) <= 100);
+        assertTrue("delay doubles", delays.get(2) >= 100 && delays.get(2) <= 200);
+    }
+
+    @Test
+    public void testConcurrentSubmitGroupsRecordsByStream() throws IOException {
+        MockAbstractKinesisRecorder recorder = concurrentRecorder(2);
+        String anotherStream = "another_stream";
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+            recorder.saveRecord(randomBytes(1024), anotherStream);
+        }
+        final Map<String, Integer> sent = new HashMap<String, Integer>();
+        recorder.setRecordSender(new TestRecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data,
+                    List<byte[]> throttled) {
+                synchronized (sent) {
+                    assertNull("one batch per stream", sent.put(streamName, data.size()));
+                }
+                return new ArrayList<byte[]>();
+            }
+        });
+        recorder.submitAllRecords();
+        assertEquals("all records of the stream", Integer.valueOf(10), sent.get(STREAM_NAME));
+        assertEquals("all records of the stream", Integer.valueOf(10), sent.get(anotherStream));
+        assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testConcurrentSubmitRemovesRecordsOutOfOrder() throws IOException {
+        MockAbstractKinesisRecorder recorder = concurrentRecorder(2);
+        final String anotherStream = "another_stream";
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), anotherStream);
+        }
+        // The batch of the first records completes after the batch of the
+        // others
+        final CountDownLatch latch = new CountDownLatch(1);
+        recorder.setRecordSender(new TestRecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data,
+                    List<byte[]> throttled) {
+                if (anotherStream.equals(streamName)) {
+                    latch.countDown();
+                } else {
+                    try {
+                        assertTrue(latch.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new AmazonClientException("interrupted", e);
+                    }
+                }
+                return new ArrayList<byte[]>();
+            }
+        });
+        recorder.submitAllRecords();
+        assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testConcurrentSubmitKeepsRecordsAfterRecoverableFailure() throws IOException {
+        MockAbstractKinesisRecorder recorder = concurrentRecorder(2);
+        String anotherStream = "another_stream";
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), anotherStream);
+        }
+        long size = recorder.getDiskBytesUsed();
+        final AmazonServiceException ase = new AmazonServiceException("some failures");
+        recorder.setRecordSender(new TestRecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data,
+                    List<byte[]> throttled) {
+                if (STREAM_NAME.equals(streamName)) {
+                    throw ase;
+                }
+                return new ArrayList<byte[]>();
+            }
+
+            @Override
+            public boolean isRecoverable(AmazonClientException ace) {
+                return true;
+            }
+        });
+        try {
+            recorder.submitAllRecords();
+            fail("Should throw exception");
+        } catch (AmazonClientException ace) {
+            assertSame("same exception", ase, ace);
+        }
+        // The records after the failed batch are sent again next time
+        assertEquals("no records removed", size, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSaveRecordDuringConcurrentSubmit() throws IOException {
+        final MockAbstractKinesisRecorder recorder = concurrentRecorder(2);
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        final AtomicInteger sent = new AtomicInteger();
+        recorder.setRecordSender(new TestRecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data,
+                    List<byte[]> throttled) {
+                if (sent.getAndAdd(data.size()) == 0) {
+                    // Doesn't wait for the submission
+                    recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+                }
+                return new ArrayList<byte[]>();
+            }
+        });
+        recorder.submitAllRecords();
+        assertEquals("records saved during the submission are sent", 11, sent.get());
+        assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testConcurrentSubmissionsShareThreadsUntilClosed() throws Exception {
+        MockAbstractKinesisRecorder recorder = concurrentRecorder(2);
+        final Set<Thread> threads = new HashSet<Thread>();
+        recorder.setRecordSender(new TestRecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data,
+                    List<byte[]> throttled) {
+                synchronized (threads) {
+                    threads.add(Thread.currentThread());
+                }
+                return new ArrayList<byte[]>();
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+            recorder.submitAllRecords();
+        }
+        assertTrue("no more threads than batches in flight", threads.size() <= 2);
+        for (Thread thread : threads) {
+            assertTrue("threads kept between submissions", thread.isAlive());
+            assertTrue(thread.isDaemon());
+        }
+
+        recorder.close();
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse("threads stopped once closed", thread.isAlive());
+        }
+        // A later submission starts them again
+        recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        recorder.submitAllRecords();
+        assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
+        recorder.close();
+    }
+
+    private MockAbstractKinesisRecorder concurrentRecorder(int maxConcurrentBatches)
+            throws IOException {
+        KinesisRecorderConfig config = new KinesisRecorderConfig()
+                .withDeadLetterListener(deadLetterListener)
+                .withMaxConcurrentBatches(maxConcurrentBatches);
+        FileRecordStore recordStore = new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME,
+                config.getMaxStorageSize());
+        return new MockAbstractKinesisRecorder(recordStore, config);
+    }
+
+    private abstract static class TestRecordSender implements RecordSender {
+        @Override
+        public boolean isRecoverable(AmazonClientException ace) {
+            return false;
+        }
+    }
+
     private byte[] randomBytes(int length) {
         byte[] data = new byte[length];
         new Random().nextBytes(data);
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.Record;
 import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
 import com.amazonaws.util.StringUtils;
 
@@ -29,11 +30,11 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.Collections;
@@ -47,6 +48,7 @@ public class FileRecordStoreTest {
 
     private static final File TEST_DIRECTORY = new File("FileRecordStoreTest");
     private static final String RECORDER_FILE_NAME = Constants.RECORDS_FILE_NAME;
+    private static final String STREAM_NAME = "stream";
     private static final long MAX_STORAGE_SIZE = 1024 * 1024 * 5L;
 
     @Before
@@ -71,21 +73,20 @@ public class FileRecordStoreTest {
     @Test
     public void testFileRecordStore_putIterateAndRemove() throws IOException {
 
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
         // Put some events into the store
-        recordStore.put("1");
-        recordStore.put("2");
-        recordStore.put("3");
-        recordStore.put("4");
-        recordStore.put("5");
-        recordStore.put("6");
-        recordStore.put("7");
-        recordStore.put("8");
-        recordStore.put("9");
-        recordStore.put("10");
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+        put(recordStore, "4");
+        put(recordStore, "5");
+        put(recordStore, "6");
+        put(recordStore, "7");
+        put(recordStore, "8");
+        put(recordStore, "9");
+        put(recordStore, "10");
 
         // Use the iterator to read through the events in the store
         int counter = 0;
@@ -93,35 +94,35 @@ public class FileRecordStoreTest {
 
         while (iter.hasNext()) {
             counter++;
-            String record = iter.next();
+            String record = text(iter.next());
             assertSame(Integer.valueOf(record), counter);
             // If we read 5 events remove the 5 last read events
             if (counter % 5 == 0) {
                 iter.removeReadRecords();
-                assertSame(getNumberOfLinesInFile(fileManager), (10 - counter));
+                assertSame(getNumberOfRecords(recordStore), (10 - counter));
             }
         }
 
         // Put some events into the store
-        recordStore.put("1");
-        recordStore.put("2");
-        recordStore.put("3");
-        recordStore.put("4");
-        recordStore.put("5");
-        recordStore.put("6");
-        recordStore.put("7");
-        recordStore.put("8");
-        recordStore.put("9");
-        recordStore.put("10");
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+        put(recordStore, "4");
+        put(recordStore, "5");
+        put(recordStore, "6");
+        put(recordStore, "7");
+        put(recordStore, "8");
+        put(recordStore, "9");
+        put(recordStore, "10");
         String nextRecord = null;
         counter = 0;
         iter = recordStore.iterator();
-        while ((nextRecord = iter.next()) != null) {
+        while ((nextRecord = text(iter.next())) != null) {
             counter++;
             assertSame(Integer.valueOf(nextRecord), counter);
         }
         iter.removeReadRecords();
-        assertSame(getNumberOfLinesInFile(fileManager), 0);
+        assertSame(getNumberOfRecords(recordStore), 0);
 
         // Try getting a new iterator while the store is empty and verify
         // that hasNext is false
@@ -131,13 +132,13 @@ public class FileRecordStoreTest {
 
         // Put another record in the store and try to read it back out with a
         // new iterator.
-        recordStore.put("11");
+        put(recordStore, "11");
         iter = recordStore.iterator();
 
         // Try peeking and the next record more than once and verify it will
         // only show the next record each time
-        assertTrue(iter.peek().equalsIgnoreCase("11"));
-        assertTrue(iter.peek().equalsIgnoreCase("11"));
+        assertTrue(text(iter.peek()).equalsIgnoreCase("11"));
+        assertTrue(text(iter.peek()).equalsIgnoreCase("11"));
 
         // Try calling remove and get an UnsupportedOperationException
         boolean unsupportedCaught = false;
@@ -149,7 +150,7 @@ public class FileRecordStoreTest {
         assertTrue(unsupportedCaught);
 
         while (iter.hasNext()) {
-            String record = iter.next();
+            String record = text(iter.next());
             assertSame(Integer.valueOf(record), 11);
         }
 
@@ -172,7 +173,7 @@ public class FileRecordStoreTest {
 
             fileManager.deleteFile(recordsFile);
             kinesisDirectory.setReadOnly();
-            recordStore.put("2");
+            put(recordStore, "2");
         } finally {
             if (kinesisDirectory != null && kinesisDirectory.exists()) {
 
@@ -185,24 +186,30 @@ public class FileRecordStoreTest {
 
     @Test
     public void testWhenWritingExceedsMaxStorageSize_noMoreRecordsWritten() throws IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
-                RECORDER_FILE_NAME, 100L);
-
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
+                RECORDER_FILE_NAME, 93L);
 
+        // The first record defines the stream, then takes 16 bytes
+        int stored = 0;
         for (int i = 0; i < 10; i++) {
-            recordStore.put("ten bytes");
+            if (put(recordStore, "ten bytes")) {
+                stored++;
+            }
         }
-        assertSame(recordsFile.length(), 100L);
+        assertEquals(5, stored);
+        assertSame(recordStore.getFileSize(), 93L);
 
-        recordStore.put("0123456789");
-        assertSame(recordsFile.length(), 100L);
+        assertFalse(put(recordStore, "9 bytes"));
+        assertSame(recordStore.getFileSize(), 93L);
 
+        // Removed records free their space even though their segment is
+        // still on disk
+        RecordIterator iter = recordStore.iterator();
+        iter.next();
+        iter.removeReadRecords();
+        assertSame(recordStore.getFileSize(), 64L);
+        assertTrue(put(recordStore, "ten bytes"));
+        assertFalse(put(recordStore, "ten bytes"));
     }
 
     //The test fails with Out of memory error on circleci.
@@ -210,15 +217,9 @@ public class FileRecordStoreTest {
     @Test
     public void testWhenWritingTooManyConcurrentRecords() throws
             InterruptedException, IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         final FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
-
         SecureRandom random = new SecureRandom();
 
         // first fill the disk
@@ -230,11 +231,11 @@ public class FileRecordStoreTest {
         final String recordStr = tempRecordStr;
 
         for (int i = 0; i < 30; i++) {
-            recordStore.put(recordStr);
+            put(recordStore, recordStr);
         }
 
-        long initialSize = recordsFile.length();
-        assertTrue(recordsFile.length() <= MAX_STORAGE_SIZE);
+        long initialSize = recordStore.getFileSize();
+        assertTrue(recordStore.getFileSize() <= MAX_STORAGE_SIZE);
 
         final CountDownLatch latch = new CountDownLatch(1);
         ExecutorService threadPool = Executors.newFixedThreadPool(1);
@@ -245,7 +246,7 @@ public class FileRecordStoreTest {
                     for (int i = 0; i < 100; i++) {
                         RecordIterator itr = recordStore.iterator();
                         if (itr.hasNext()) {
-                            String next = itr.next();
+                            String next = text(itr.next());
                             assertEquals(next.length(), recordStr.length());
                             itr.removeReadRecords();
                         }
@@ -262,18 +263,18 @@ public class FileRecordStoreTest {
         });
 
         for (int i = 0; i < 10000; i++) {
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
             Thread.sleep(1);
         }
 
         latch.await();
-        assertEquals(recordsFile.length(), initialSize);
-        assertTrue(recordsFile.length() < MAX_STORAGE_SIZE);
+        assertEquals(recordStore.getFileSize(), initialSize);
+        assertTrue(recordStore.getFileSize() < MAX_STORAGE_SIZE);
 
     }
 
@@ -293,7 +294,7 @@ public class FileRecordStoreTest {
                 @Override
                 public void run() {
                     try {
-                        recordStore.put(recordStr);
+                        put(recordStore, recordStr);
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     } finally {
@@ -314,7 +315,7 @@ public class FileRecordStoreTest {
         final List<Long> recordList = new LinkedList<Long>();
         RecordIterator iter = recordStore.iterator();
         while (iter.hasNext()) {
-            String next = iter.next();
+            String next = text(iter.next());
             recordList.add(Long.valueOf(next));
         }
 
@@ -324,28 +325,235 @@ public class FileRecordStoreTest {
         }
     }
 
-    private int getNumberOfLinesInFile(final FileManager fileManager) throws NumberFormatException,
-            IOException {
-        BufferedReader reader = getRecordsFileReader(fileManager);
-        int counter = 0;
-        while (reader.readLine() != null) {
-            counter++;
+    @Test
+    public void testRecordsAreAppendedToSegments() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 100);
+
+        // A segment takes the definition of the stream and 5 records of 17
+        // bytes
+        for (int i = 0; i < 35; i++) {
+            assertTrue(put(recordStore, String.format("record %03d", i)));
         }
-        return counter;
+        assertEquals(7, getSegmentFiles().size());
+
+        RecordIterator iter = recordStore.iterator();
+        for (int i = 0; i < 25; i++) {
+            assertEquals(String.format("record %03d", i), text(iter.next()));
+        }
+        iter.removeReadRecords();
+        // The segments of the first 25 records are deleted
+        assertEquals(2, getSegmentFiles().size());
+        assertEquals(10 * 17 + 2 * 13 + FileRecordStore.HEADER_SIZE,
+                recordStore.getFileSize());
+
+        iter = recordStore.iterator();
+        for (int i = 25; i < 35; i++) {
+            assertEquals(String.format("record %03d", i), text(iter.next()));
+        }
+        assertFalse(iter.hasNext());
+        iter.removeReadRecords();
+        assertEquals(1, getSegmentFiles().size());
+        assertEquals(0L, recordStore.getFileSize());
+        assertFalse(recordStore.iterator().hasNext());
     }
 
-    private BufferedReader getRecordsFileReader(final FileManager fileManager) {
-        InputStreamReader streamReader = null;
-        try {
-            streamReader = new InputStreamReader(
-                    fileManager.newInputStream(Constants.RECORDS_DIRECTORY + File.separator
-                            + Constants.RECORDS_FILE_NAME), StringUtils.UTF8);
-        } catch (FileNotFoundException e) {
+    @Test
+    public void testRemovedRecordsStayRemovedWhenReopened() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 100);
+        for (int i = 0; i < 15; i++) {
+            put(recordStore, String.valueOf(i));
+        }
+        RecordIterator iter = recordStore.iterator();
+        for (int i = 0; i < 7; i++) {
+            iter.next();
+        }
+        iter.removeReadRecords();
+        iter.close();
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE, 100);
+        iter = recordStore.iterator();
+        for (int i = 7; i < 15; i++) {
+            assertEquals(String.valueOf(i), text(iter.next()));
+        }
+        assertNull(iter.next());
+
+        // Records put after reopening follow the others
+        put(recordStore, "15");
+        assertEquals("15", text(iter.next()));
+    }
+
+    @Test
+    public void testPeekedRecordIsNotRemoved() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("1", text(iter.next()));
+        assertEquals("2", text(iter.peek()));
+        iter.removeReadRecords();
+        assertEquals("2", text(iter.next()));
+        assertEquals(2, getNumberOfRecords(recordStore));
+    }
+
+    @Test
+    public void testAttemptsOfRecordsAreKept() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        put(recordStore, "first");
+        recordStore.put(STREAM_NAME, "retried".getBytes(StringUtils.UTF8), 300);
+
+        // Read by a store opened again
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        RecordIterator iter = recordStore.iterator();
+        Record record = iter.next();
+        assertEquals("first", text(record));
+        assertEquals(0, record.attempts);
+        record = iter.next();
+        assertEquals("retried", text(record));
+        assertEquals(STREAM_NAME, record.streamName);
+        assertEquals(300, record.attempts);
+        assertFalse(iter.hasNext());
+        iter.close();
+    }
+
+    @Test
+    public void testRecordsFileOfPreviousVersionIsConverted() throws IOException {
+        FileManager fileManager = new FileManager(TEST_DIRECTORY);
+        File recordsDirectory = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        writeText(new File(recordsDirectory, RECORDER_FILE_NAME),
+                line(STREAM_NAME, "1") + "\r\n" + "corrupted\n" + line("another", "2") + "\n");
+
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        assertFalse(new File(recordsDirectory, RECORDER_FILE_NAME).exists());
+        put(recordStore, "3");
+
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("1", text(iter.next()));
+        Record record = iter.next();
+        assertEquals("another", record.streamName);
+        assertEquals("2", text(record));
+        assertEquals("3", text(iter.next()));
+        assertNull(iter.next());
+    }
+
+    @Test
+    public void testTextSegmentsOfPreviousVersionAreConverted() throws IOException {
+        FileManager fileManager = new FileManager(TEST_DIRECTORY);
+        File recordsDirectory = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        String first = line(STREAM_NAME, "1") + "\n";
+        writeText(new File(recordsDirectory, RECORDER_FILE_NAME + ".4.log"),
+                first + line(STREAM_NAME, "2") + "\n");
+        writeText(new File(recordsDirectory, RECORDER_FILE_NAME + ".5.log"),
+                line(STREAM_NAME, "3") + "\n");
+        // The first record was removed
+        writeText(new File(recordsDirectory, RECORDER_FILE_NAME + ".cursor"),
+                "4 " + first.length());
+
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        // Records are appended to a new segment
+        assertEquals(2 * 8 + 2 * 13 + 2 * FileRecordStore.HEADER_SIZE,
+                recordStore.getFileSize());
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("2", text(iter.next()));
+        assertEquals("3", text(iter.next()));
+        assertNull(iter.next());
+        iter.removeReadRecords();
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        assertFalse(recordStore.iterator().hasNext());
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+
+        // Flips a bit of the data of the second record, after the header,
+        // the definition of the stream and the first record
+        File segment = getSegmentFiles().get(0);
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        long offset = FileRecordStore.HEADER_SIZE + 13 + 8 + 3;
+        raf.seek(offset);
+        int b = raf.read();
+        raf.seek(offset);
+        raf.write(b ^ 1);
+        raf.close();
+
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("1", text(iter.next()));
+        assertEquals("3", text(iter.next()));
+        assertNull(iter.next());
+    }
+
+    @Test
+    public void testRemoveAllRecords() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 100);
+        for (int i = 0; i < 30; i++) {
+            put(recordStore, String.valueOf(i));
+        }
+        RecordIterator iter = recordStore.iterator();
+        iter.next();
+        iter.removeAllRecords();
+        assertEquals(0L, recordStore.getFileSize());
+        assertEquals(1, getSegmentFiles().size());
+        assertFalse(iter.hasNext());
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE, 100);
+        assertFalse(recordStore.iterator().hasNext());
+    }
+
+    private List<File> getSegmentFiles() {
+        final File recordsDirectory = new FileManager(TEST_DIRECTORY)
+                .getDirectory(Constants.RECORDS_DIRECTORY);
+        final List<File> segments = new LinkedList<File>();
+        for (File file : recordsDirectory.listFiles()) {
+            if (file.getName().endsWith(".log")) {
+                segments.add(file);
+            }
         }
+        return segments;
+    }
+
+    private static boolean put(FileRecordStore recordStore, String record) throws IOException {
+        return recordStore.put(STREAM_NAME, record.getBytes(StringUtils.UTF8));
+    }
+
+    private static String text(Record record) {
+        return record == null ? null : new String(record.data, StringUtils.UTF8);
+    }
+
+    private static String line(String streamName, String record) {
+        return FileRecordParser.asString(streamName, record.getBytes(StringUtils.UTF8));
+    }
 
-        if (streamReader != null) {
-            return new BufferedReader(streamReader);
+    private static void writeText(File file, String text) throws IOException {
+        OutputStream stream = new FileOutputStream(file);
+        stream.write(text.getBytes(StringUtils.UTF8));
+        stream.close();
+    }
+
+    private int getNumberOfRecords(final FileRecordStore recordStore) throws IOException {
+        RecordIterator iter = recordStore.iterator();
+        int counter = 0;
+        while (iter.next() != null) {
+            counter++;
         }
-        return null;
+        iter.close();
+        return counter;
     }
 }
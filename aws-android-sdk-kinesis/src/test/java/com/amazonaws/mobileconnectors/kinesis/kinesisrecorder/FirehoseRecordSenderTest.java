@@ -74,7 +74,7 @@ public class FirehoseRecordSenderTest {
             data.add(("record" + i).getBytes(StringUtils.UTF8));
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<byte[]> failures = sender.sendBatch(streamName, data, new ArrayList<byte[]>());
 
         ArgumentCaptor<PutRecordBatchRequest> argument = ArgumentCaptor
                 .forClass(PutRecordBatchRequest.class);
@@ -114,13 +114,15 @@ public class FirehoseRecordSenderTest {
             data.add(("record" + i).getBytes(StringUtils.UTF8));
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<byte[]> throttled = new ArrayList<byte[]>();
+        List<byte[]> failures = sender.sendBatch(streamName, data, throttled);
 
         assertTrue("has 5 failures", failures.size() == 5);
         for (int i = 0; i < 5; i++) {
             String failedRecordString = "record" + (i * 2 + 1);
             assertEquals(failedRecordString, new String(failures.get(i), StringUtils.UTF8));
         }
+        assertEquals("failures are throttled", failures, throttled);
     }
 
     @Test(expected = AmazonClientException.class)
@@ -146,7 +148,7 @@ public class FirehoseRecordSenderTest {
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenThrow(
                 new InvalidArgumentException("invalid argument"));
-        sender.sendBatch(streamName, data);
+        sender.sendBatch(streamName, data, new ArrayList<byte[]>());
     }
 
     @Test
@@ -16,6 +16,8 @@
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.ClientConfiguration;
 
@@ -66,6 +68,46 @@ public class KinesisRecorderConfigTest {
 
     }
 
+    @Test
+    public void maxConcurrentBatches() {
+        KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
+        assertEquals(1, kConfig.getMaxConcurrentBatches());
+        kConfig.withMaxConcurrentBatches(4);
+
+        KinesisRecorderConfig copiedConfig = new KinesisRecorderConfig(kConfig);
+        assertEquals(4, copiedConfig.getMaxConcurrentBatches());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxConcurrentBatchesMustBePositive() {
+        new KinesisRecorderConfig().withMaxConcurrentBatches(0);
+    }
+
+    @Test
+    public void maxRecordRetries() {
+        KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
+        assertEquals(Integer.MAX_VALUE, kConfig.getMaxRecordRetries());
+        kConfig.withMaxRecordRetries(0);
+
+        KinesisRecorderConfig copiedConfig = new KinesisRecorderConfig(kConfig);
+        assertEquals(0, copiedConfig.getMaxRecordRetries());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxRecordRetriesCantBeNegative() {
+        new KinesisRecorderConfig().withMaxRecordRetries(-1);
+    }
+
+    @Test
+    public void recordAggregation() {
+        KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
+        assertFalse(kConfig.isRecordAggregationEnabled());
+        kConfig.withRecordAggregation(true);
+
+        KinesisRecorderConfig copiedConfig = new KinesisRecorderConfig(kConfig);
+        assertTrue(copiedConfig.isRecordAggregationEnabled());
+    }
+
     @Test
     public void testSetters() {
 
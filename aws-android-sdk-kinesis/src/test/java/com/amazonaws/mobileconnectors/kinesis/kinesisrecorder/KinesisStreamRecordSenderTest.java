@@ -17,6 +17,7 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 
@@ -39,6 +40,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashSet;
@@ -79,7 +81,7 @@ public class KinesisStreamRecordSenderTest {
             data.add(("record" + i).getBytes(StringUtils.UTF8));
         }
         Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<byte[]> failures = sender.sendBatch(streamName, data, new ArrayList<byte[]>());
 
         ArgumentCaptor<PutRecordsRequest> argument = ArgumentCaptor
                 .forClass(PutRecordsRequest.class);
@@ -131,13 +133,107 @@ public class KinesisStreamRecordSenderTest {
             data.add(("record" + i).getBytes(StringUtils.UTF8));
         }
         Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<byte[]> throttled = new ArrayList<byte[]>();
+        List<byte[]> failures = sender.sendBatch(streamName, data, throttled);
 
         assertTrue("has 5 failures", failures.size() == 5);
         for (int i = 0; i < 5; i++) {
             String failedRecordString = "record" + (i * 2 + 1);
             assertEquals(failedRecordString, new String(failures.get(i), StringUtils.UTF8));
         }
+        assertTrue("not throttled", throttled.isEmpty());
+    }
+
+    @Test
+    public void testSendBatchWithThrottling() {
+        String streamName = "stream";
+        int count = 10;
+
+        // create a result with throttled records
+        PutRecordsResult result = new PutRecordsResult();
+        List<PutRecordsResultEntry> entries = new ArrayList<PutRecordsResultEntry>();
+        result.setFailedRecordCount(5);
+        for (int i = 0; i < count; i++) {
+            PutRecordsResultEntry entry = new PutRecordsResultEntry();
+            if (i % 2 == 0) {
+                entry.setSequenceNumber("record_id_" + i);
+            } else if (i % 4 == 1) {
+                entry.setErrorCode("ProvisionedThroughputExceededException");
+            } else {
+                entry.setErrorCode("InternalFailure");
+            }
+            entries.add(entry);
+        }
+        result.setRecords(entries);
+
+        // create data
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < count; i++) {
+            data.add(("record" + i).getBytes(StringUtils.UTF8));
+        }
+        Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(result);
+        List<byte[]> throttled = new ArrayList<byte[]>();
+        List<byte[]> failures = sender.sendBatch(streamName, data, throttled);
+
+        assertEquals("has 5 failures", 5, failures.size());
+        assertEquals("has 3 throttled records", 3, throttled.size());
+        for (int i = 0; i < 3; i++) {
+            String throttledRecordString = "record" + (i * 4 + 1);
+            assertEquals(throttledRecordString, new String(throttled.get(i), StringUtils.UTF8));
+        }
+    }
+
+    @Test
+    public void testSendBatchWithAggregation() {
+        sender = new KinesisStreamRecordSender(client, USER_AGENT, null, true);
+        String streamName = "stream";
+
+        // 3 aggregated records of 4 10 KB records, and one record on its own
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < 12; i++) {
+            data.add(new byte[10 * 1024]);
+        }
+        data.add(new byte[100 * 1024]);
+
+        // the second aggregated record fails
+        PutRecordsResult result = new PutRecordsResult();
+        List<PutRecordsResultEntry> entries = new ArrayList<PutRecordsResultEntry>();
+        result.setFailedRecordCount(1);
+        for (int i = 0; i < 4; i++) {
+            PutRecordsResultEntry entry = new PutRecordsResultEntry();
+            if (i == 1) {
+                entry.setErrorCode("ProvisionedThroughputExceededException");
+            } else {
+                entry.setSequenceNumber("record_id_" + i);
+            }
+            entries.add(entry);
+        }
+        result.setRecords(entries);
+        Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(result);
+        List<byte[]> throttled = new ArrayList<byte[]>();
+        List<byte[]> failures = sender.sendBatch(streamName, data, throttled);
+
+        ArgumentCaptor<PutRecordsRequest> argument = ArgumentCaptor
+                .forClass(PutRecordsRequest.class);
+        Mockito.verify(client).putRecords(argument.capture());
+        List<PutRecordsRequestEntry> records = argument.getValue().getRecords();
+        assertEquals("records aggregated", 4, records.size());
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer aggregated = records.get(i).getData();
+            assertTrue("under the aggregated size",
+                    aggregated.remaining() <= RecordAggregator.DEFAULT_MAX_AGGREGATED_SIZE);
+            for (int j = 0; j < RecordAggregator.MAGIC.length; j++) {
+                assertEquals(RecordAggregator.MAGIC[j], aggregated.get(j));
+            }
+        }
+        assertSame("sent as is", data.get(12), records.get(3).getData().array());
+
+        // the records of the failed aggregated record
+        assertEquals(4, failures.size());
+        for (int i = 0; i < 4; i++) {
+            assertSame(data.get(4 + i), failures.get(i));
+        }
+        assertEquals(failures, throttled);
     }
 
     @Test(expected = AmazonClientException.class)
@@ -163,7 +259,7 @@ public class KinesisStreamRecordSenderTest {
         }
         Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenThrow(
                 new InvalidArgumentException("invalid argument"));
-        sender.sendBatch(streamName, data);
+        sender.sendBatch(streamName, data, new ArrayList<byte[]>());
     }
 
     @Test
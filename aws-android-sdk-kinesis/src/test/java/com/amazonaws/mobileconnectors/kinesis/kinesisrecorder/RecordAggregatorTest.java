@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RecordAggregatorTest {
+
+    @Test
+    public void testAggregate() throws Exception {
+        byte[] aggregated = RecordAggregator.aggregate("a", Arrays.asList(
+                "x".getBytes(StringUtils.UTF8), "yz".getBytes(StringUtils.UTF8)));
+
+        // partition_key_table "a", then the records with partition key index
+        // 0 and their data
+        byte[] message = {
+                0x0A, 0x01, 'a',
+                0x1A, 0x05, 0x08, 0x00, 0x1A, 0x01, 'x',
+                0x1A, 0x06, 0x08, 0x00, 0x1A, 0x02, 'y', 'z'
+        };
+        byte[] digest = MessageDigest.getInstance("MD5").digest(message);
+        byte[] expected = new byte[4 + message.length + digest.length];
+        System.arraycopy(RecordAggregator.MAGIC, 0, expected, 0, 4);
+        System.arraycopy(message, 0, expected, 4, message.length);
+        System.arraycopy(digest, 0, expected, 4 + message.length, digest.length);
+        assertArrayEquals(expected, aggregated);
+    }
+
+    @Test
+    public void testAggregateLargeRecord() {
+        byte[] data = new byte[300];
+        Arrays.fill(data, (byte) 1);
+        byte[] aggregated = RecordAggregator.aggregate("a", Arrays.asList(data, data));
+
+        // The lengths of the records and of their data take two bytes
+        assertEquals(4 + 3 + 2 * (3 + 2 + 3 + 300) + 16, aggregated.length);
+        assertEquals(0x1A, aggregated[7]);
+        assertEquals((byte) 0xB1, aggregated[8]);
+        assertEquals(0x02, aggregated[9]);
+    }
+
+    @Test
+    public void testEndKeepsAggregatedRecordsUnderMaxSize() {
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < 10; i++) {
+            data.add(new byte[100]);
+        }
+        String partitionKey = "key";
+        // magic, partition key table and digest, then 106 bytes per record
+        int overhead = 4 + 5 + 16;
+        assertEquals(10, RecordAggregator.end(data, 0, partitionKey, overhead + 10 * 106));
+        assertEquals(4, RecordAggregator.end(data, 0, partitionKey, overhead + 4 * 106 + 105));
+        assertEquals(7, RecordAggregator.end(data, 4, partitionKey, overhead + 3 * 106));
+        int end = RecordAggregator.end(data, 0, partitionKey, overhead + 4 * 106);
+        assertEquals(overhead + 4 * 106,
+                RecordAggregator.aggregate(partitionKey, data.subList(0, end)).length);
+    }
+
+    @Test
+    public void testEndIncludesRecordOverMaxSize() {
+        List<byte[]> data = Arrays.asList(new byte[1000], new byte[10]);
+        assertEquals(1, RecordAggregator.end(data, 0, "key", 100));
+        assertEquals(2, RecordAggregator.end(data, 1, "key", 100));
+    }
+}
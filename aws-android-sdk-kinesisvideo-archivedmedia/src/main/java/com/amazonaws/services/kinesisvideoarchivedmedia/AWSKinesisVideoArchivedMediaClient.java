@@ -251,7 +251,8 @@ public class AWSKinesisVideoArchivedMediaClient extends AmazonWebServiceClient i
      */
     public AWSKinesisVideoArchivedMediaClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -256,7 +256,8 @@ public class AWSKinesisVideoSignalingClient extends AmazonWebServiceClient imple
      */
     public AWSKinesisVideoSignalingClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
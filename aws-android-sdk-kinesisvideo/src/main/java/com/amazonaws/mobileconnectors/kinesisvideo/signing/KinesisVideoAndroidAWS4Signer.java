@@ -76,12 +76,6 @@ public class KinesisVideoAndroidAWS4Signer extends AWS4Signer implements Kinesis
         mConfiguration = config;
     }
 
-    @Override
-    protected String getCanonicalRequest(final Request<?> request, final String contentSha256) {
-        final String canonicalRequest = super.getCanonicalRequest(request, contentSha256);
-        return canonicalRequest;
-    }
-
     @Override
     protected String calculateContentHash(final Request<?> request) {
         request.addHeader("x-amz-content-sha256", "required");
@@ -245,7 +245,8 @@ public class AWSKinesisVideoClient extends AmazonWebServiceClient implements AWS
      */
     public AWSKinesisVideoClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http.okhttp;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpClientFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates {@link OkHttpHttpClient} instances for service clients. Set it on
+ * the {@link ClientConfiguration} of a client to use it instead of
+ * {@link com.amazonaws.http.UrlHttpClient}:
+ *
+ * <pre>
+ * ClientConfiguration config = new ClientConfiguration()
+ *         .withHttpClientFactory(new OkHttpClientFactory());
+ * AmazonKinesisClient kinesis = new AmazonKinesisClient(credentialsProvider, config);
+ * </pre>
+ *
+ * The number of asynchronous requests in flight to one host is limited by
+ * {@link ClientConfiguration#getMaxConnections()}.
+ */
+public class OkHttpClientFactory implements HttpClientFactory {
+
+    /** The default maximum number of idle connections kept in the pool. */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+
+    /** The default time an idle connection is kept in the pool. */
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+    private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+    private boolean http2Enabled = true;
+
+    @Override
+    public HttpClient createHttpClient(ClientConfiguration config) {
+        return new OkHttpHttpClient(config, maxIdleConnections, keepAliveMillis, http2Enabled);
+    }
+
+    /**
+     * @return the maximum number of idle connections kept in the pool of each
+     *         client.
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Sets the maximum number of idle connections kept in the pool of each
+     * client. Defaults to {@link #DEFAULT_MAX_IDLE_CONNECTIONS}.
+     *
+     * @param maxIdleConnections the maximum number of idle connections.
+     */
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("Invalid max idle connections: "
+                    + maxIdleConnections);
+        }
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    /**
+     * Sets the maximum number of idle connections kept in the pool of each
+     * client, and returns this factory so that additional calls may be
+     * chained together.
+     *
+     * @param maxIdleConnections the maximum number of idle connections.
+     * @return this factory.
+     */
+    public OkHttpClientFactory withMaxIdleConnections(int maxIdleConnections) {
+        setMaxIdleConnections(maxIdleConnections);
+        return this;
+    }
+
+    /**
+     * @return the time in milliseconds an idle connection is kept in the pool.
+     */
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle connection is kept in the pool
+     * before it's closed. Defaults to {@link #DEFAULT_KEEP_ALIVE_MILLIS}.
+     *
+     * @param keepAliveMillis the keep-alive time in milliseconds.
+     */
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        if (keepAliveMillis <= 0) {
+            throw new IllegalArgumentException("Invalid keep-alive time: " + keepAliveMillis);
+        }
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle connection is kept in the pool,
+     * and returns this factory so that additional calls may be chained
+     * together.
+     *
+     * @param keepAliveMillis the keep-alive time in milliseconds.
+     * @return this factory.
+     */
+    public OkHttpClientFactory withKeepAliveMillis(long keepAliveMillis) {
+        setKeepAliveMillis(keepAliveMillis);
+        return this;
+    }
+
+    /**
+     * @return whether HTTP/2 is negotiated with the endpoints that support it.
+     */
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * Sets whether HTTP/2 is negotiated with the endpoints that support it.
+     * Requests to the same host then share a single connection. Defaults to
+     * true.
+     *
+     * @param http2Enabled whether HTTP/2 is enabled.
+     */
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    /**
+     * Sets whether HTTP/2 is negotiated with the endpoints that support it,
+     * and returns this factory so that additional calls may be chained
+     * together.
+     *
+     * @param http2Enabled whether HTTP/2 is enabled.
+     * @return this factory.
+     */
+    public OkHttpClientFactory withHttp2Enabled(boolean http2Enabled) {
+        setHttp2Enabled(http2Enabled);
+        return this;
+    }
+}
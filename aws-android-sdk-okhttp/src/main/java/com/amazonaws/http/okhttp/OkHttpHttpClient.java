@@ -0,0 +1,442 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http.okhttp;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.http.AbortableHttpClient;
+import com.amazonaws.http.AsyncHttpClient;
+import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpHeader;
+import com.amazonaws.http.HttpRequest;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.internal.FileRegionInputStream;
+
+import okhttp3.Authenticator;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Credentials;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.Route;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * An implementation of {@link HttpClient} by OkHttp. Unlike
+ * {@link com.amazonaws.http.UrlHttpClient}, connections are kept in an
+ * explicit pool and reused across requests, HTTP/2 is negotiated with the
+ * endpoints that support it so that concurrent requests to a host are
+ * multiplexed over one connection.
+ * <p>
+ * Requests executed with {@link #executeAsync(HttpRequest, Callback)} are
+ * sent by the dispatcher of OkHttp, which runs up to
+ * {@link ClientConfiguration#getMaxConnections()} of them at a time per host
+ * and queues the rest instead of holding a thread. A request counts until its
+ * response is handed to the callback, so a response whose content is never
+ * closed doesn't hold up the requests after it; its connection just isn't
+ * returned to the pool. Requests executed with {@link #execute(HttpRequest)}
+ * are limited to the same number per host on their own: a blocking request
+ * waits for a permit of its host, which is released when the content of its
+ * response is closed. Retries and redirects are left to the service client.
+ * Curl logging isn't supported. A request is aborted by canceling its call.
+ */
+public class OkHttpHttpClient implements AsyncHttpClient, AbortableHttpClient {
+
+    private final ClientConfiguration config;
+    private final OkHttpClient okHttpClient;
+
+    /** The calls of the requests waiting for their response. **/
+    private final Map<HttpRequest, Call> calls = new ConcurrentHashMap<HttpRequest, Call>();
+
+    /** The permits of the blocking requests, by host. **/
+    private final ConcurrentMap<String, Semaphore> hostPermits =
+            new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * Creates a client with the default pool settings of
+     * {@link OkHttpClientFactory}.
+     *
+     * @param config the client configuration.
+     */
+    public OkHttpHttpClient(ClientConfiguration config) {
+        this(config, OkHttpClientFactory.DEFAULT_MAX_IDLE_CONNECTIONS,
+                OkHttpClientFactory.DEFAULT_KEEP_ALIVE_MILLIS, true);
+    }
+
+    OkHttpHttpClient(ClientConfiguration config, int maxIdleConnections,
+            long keepAliveMillis, boolean http2Enabled) {
+        this.config = config;
+        // Only the requests per host are limited
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        dispatcher.setMaxRequestsPerHost(Math.max(1, config.getMaxConnections()));
+        final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(config.getConnectionTimeout(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getSocketTimeout(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getSocketTimeout(), TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis,
+                        TimeUnit.MILLISECONDS))
+                .protocols(http2Enabled
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                // handled by AmazonHttpClient
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .retryOnConnectionFailure(false);
+        configureProxy(builder);
+        configureTrustManager(builder);
+        okHttpClient = builder.build();
+    }
+
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+        final Request okHttpRequest = createRequest(request);
+        final HostPermit permit = acquireHostPermit(okHttpRequest.url().host());
+        boolean created = false;
+        try {
+            final Call call = okHttpClient.newCall(okHttpRequest);
+            calls.put(request, call);
+            final Response response;
+            try {
+                response = call.execute();
+            } finally {
+                calls.remove(request);
+            }
+            try {
+                final HttpResponse httpResponse = createHttpResponse(request, response, permit);
+                created = true;
+                return httpResponse;
+            } finally {
+                if (!created) {
+                    response.close();
+                }
+            }
+        } finally {
+            if (!created) {
+                permit.release();
+            }
+        }
+    }
+
+    @Override
+    public void executeAsync(final HttpRequest request, final Callback callback) {
+        final Request okHttpRequest;
+        try {
+            okHttpRequest = createRequest(request);
+        } catch (final IOException e) {
+            callback.onFailure(e);
+            return;
+        }
+
+        final Call newCall = okHttpClient.newCall(okHttpRequest);
+        calls.put(request, newCall);
+        newCall.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                calls.remove(request);
+                callback.onFailure(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                calls.remove(request);
+                final HttpResponse httpResponse;
+                try {
+                    httpResponse = createHttpResponse(request, response, null);
+                } catch (final IOException e) {
+                    response.close();
+                    callback.onFailure(e);
+                    return;
+                } catch (final RuntimeException e) {
+                    response.close();
+                    throw e;
+                }
+                callback.onResponse(httpResponse);
+            }
+        });
+    }
+
+    @Override
+    public void abort(final HttpRequest request) {
+        final Call call = calls.remove(request);
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Evicts all the connections of the pool.
+     */
+    @Override
+    public void shutdown() {
+        okHttpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * @return the number of pooled connections, in use or idle.
+     */
+    int getConnectionCount() {
+        return okHttpClient.connectionPool().connectionCount();
+    }
+
+    /**
+     * @return the dispatcher of the asynchronous requests.
+     */
+    Dispatcher getDispatcher() {
+        return okHttpClient.dispatcher();
+    }
+
+    /**
+     * @return the protocols negotiated with the endpoints.
+     */
+    List<Protocol> getProtocols() {
+        return okHttpClient.protocols();
+    }
+
+    /**
+     * @return the number of blocking requests that can still be sent to the
+     *         host without waiting.
+     */
+    int getAvailableHostPermits(String host) {
+        return getHostPermits(host).availablePermits();
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            final Semaphore created = new Semaphore(Math.max(1, config.getMaxConnections()));
+            permits = hostPermits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+
+    private HostPermit acquireHostPermit(String host) throws IOException {
+        final Semaphore permits = getHostPermits(host);
+        try {
+            permits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to "
+                    + host);
+        }
+        return new HostPermit(permits);
+    }
+
+    Request createRequest(final HttpRequest request) throws IOException {
+        final Request.Builder builder = new Request.Builder()
+                .url(request.getUri().toURL());
+        if (request.getHeaders() != null) {
+            for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                final String key = header.getKey();
+                // Set by OkHttp from the url and the body
+                if (key.equals(HttpHeader.CONTENT_LENGTH) || key.equals(HttpHeader.HOST)) {
+                    continue;
+                }
+                builder.header(key, header.getValue());
+            }
+        }
+
+        final String method = request.getMethod();
+        RequestBody body = null;
+        final boolean permitsBody = !"GET".equals(method) && !"HEAD".equals(method);
+        if (request.getContent() != null && request.getContentLength() >= 0 && permitsBody) {
+            body = new ContentRequestBody(request);
+        } else if ("POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)) {
+            // OkHttp requires a body for these methods
+            body = RequestBody.create(null, new byte[0]);
+        }
+        return builder.method(method, body).build();
+    }
+
+    /**
+     * Creates the response of a request. The permit, if any, is released when
+     * the content of the response is closed, or right away if there is none.
+     */
+    private HttpResponse createHttpResponse(final HttpRequest request, final Response response,
+            final HostPermit permit) throws IOException {
+        final HttpResponse.Builder builder = HttpResponse.builder()
+                .statusCode(response.code())
+                .statusText(response.message());
+        for (final String name : response.headers().names()) {
+            // No AWS service return a list of header values, so it's safe to
+            // take the first one.
+            builder.header(name, response.headers().values(name).get(0));
+        }
+
+        final ResponseBody body = response.body();
+        if (body == null || "HEAD".equals(request.getMethod())) {
+            // HEAD method doesn't have a body
+            response.close();
+            if (permit != null) {
+                permit.release();
+            }
+        } else if (permit != null) {
+            builder.content(new PermitInputStream(body.byteStream(), permit));
+        } else {
+            builder.content(body.byteStream());
+        }
+        return builder.build();
+    }
+
+    private void configureProxy(OkHttpClient.Builder builder) {
+        final String proxyHost = config.getProxyHost();
+        final int proxyPort = config.getProxyPort();
+        if (proxyHost == null || proxyPort < 0) {
+            return;
+        }
+        builder.proxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)));
+        final String proxyUsername = config.getProxyUsername();
+        final String proxyPassword = config.getProxyPassword();
+        if (proxyUsername != null && proxyPassword != null) {
+            builder.proxyAuthenticator(new Authenticator() {
+                @Override
+                public Request authenticate(Route route, Response response) {
+                    if (response.request().header("Proxy-Authorization") != null) {
+                        // The credentials were rejected
+                        return null;
+                    }
+                    return response.request().newBuilder()
+                            .header("Proxy-Authorization",
+                                    Credentials.basic(proxyUsername, proxyPassword))
+                            .build();
+                }
+            });
+        }
+    }
+
+    private void configureTrustManager(OkHttpClient.Builder builder) {
+        final TrustManager trustManager = config.getTrustManager();
+        if (!(trustManager instanceof X509TrustManager)) {
+            return;
+        }
+        try {
+            final SSLContext sc = SSLContext.getInstance("TLS");
+            sc.init(null, new TrustManager[] {
+                    trustManager
+            }, null);
+            builder.sslSocketFactory(sc.getSocketFactory(), (X509TrustManager) trustManager);
+        } catch (final GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A permit of a host, released at most once.
+     */
+    private static final class HostPermit {
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        HostPermit(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * The content of a response that releases the permit of its request once
+     * closed.
+     */
+    private static final class PermitInputStream extends FilterInputStream {
+        private final HostPermit permit;
+
+        PermitInputStream(InputStream in, HostPermit permit) {
+            super(in);
+            this.permit = permit;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Streams the content of an {@link HttpRequest}. The service client
+     * resets the content before a retry, so it's written as is.
+     */
+    private static final class ContentRequestBody extends RequestBody {
+        private final HttpRequest request;
+
+        ContentRequestBody(HttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public MediaType contentType() {
+            // The Content-Type header of the request is sent as is
+            return null;
+        }
+
+        @Override
+        public long contentLength() {
+            return request.isStreaming() ? -1 : request.getContentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            final InputStream content = request.getContent();
+            final FileRegionInputStream fileRegion = FileRegionInputStream.find(content);
+            if (fileRegion != null) {
+                fileRegion.writeTo(content, sink.outputStream());
+                return;
+            }
+            final Source source = Okio.source(content);
+            sink.writeAll(source);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http.okhttp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.http.AsyncHttpClient;
+import com.amazonaws.http.HttpRequest;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OkHttpHttpClientTest {
+
+    private MockWebServer server;
+    private OkHttpHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpHttpClient(new ClientConfiguration());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void testExecuteSendsHeadersAndBody() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("x-amzn-RequestId", "request-id")
+                .setBody("response"));
+
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/x-amz-json-1.1");
+        headers.put("Content-Length", "7");
+        headers.put("X-Amz-Target", "Kinesis_20131202.PutRecord");
+        final HttpRequest request = new HttpRequest("POST", server.url("/").uri(), headers,
+                new ByteArrayInputStream("request".getBytes(StringUtils.UTF8)));
+
+        final HttpResponse response = client.execute(request);
+        assertEquals(200, response.getStatusCode());
+        assertEquals("request-id", response.getHeaders().get("X-Amzn-RequestId"));
+        assertEquals("response", IOUtils.toString(response.getContent()));
+
+        final RecordedRequest recorded = server.takeRequest();
+        assertEquals("POST", recorded.getMethod());
+        assertEquals("Kinesis_20131202.PutRecord", recorded.getHeader("X-Amz-Target"));
+        assertEquals("application/x-amz-json-1.1", recorded.getHeader("Content-Type"));
+        assertEquals("7", recorded.getHeader("Content-Length"));
+        assertEquals("request", recorded.getBody().readUtf8());
+    }
+
+    @Test
+    public void testErrorResponseHasContent() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("error"));
+
+        final HttpResponse response = client.execute(
+                new HttpRequest("GET", server.url("/").uri()));
+        assertEquals(400, response.getStatusCode());
+        assertEquals("error", IOUtils.toString(response.getContent()));
+    }
+
+    @Test
+    public void testHeadResponseHasNoContent() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setHeader("ETag", "abc"));
+
+        final HttpResponse response = client.execute(
+                new HttpRequest("HEAD", server.url("/").uri()));
+        assertEquals(200, response.getStatusCode());
+        assertEquals("abc", response.getHeaders().get("ETag"));
+        assertNull(response.getContent());
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+            final HttpResponse response = client.execute(
+                    new HttpRequest("GET", server.url("/").uri()));
+            response.getContent().close();
+        }
+        assertEquals(1, client.getConnectionCount());
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+        assertEquals(2, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void testAsyncRequestsPerHostAreLimited() throws Exception {
+        client = new OkHttpHttpClient(new ClientConfiguration().withMaxConnections(2));
+        final int requests = 6;
+        for (int i = 0; i < requests; i++) {
+            server.enqueue(new MockResponse().setBody("ok").setHeadersDelay(200,
+                    TimeUnit.MILLISECONDS));
+        }
+
+        final CountDownLatch done = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            client.executeAsync(new HttpRequest("GET", server.url("/").uri()),
+                    new AsyncHttpClient.Callback() {
+                        @Override
+                        public void onResponse(HttpResponse response) {
+                            try {
+                                response.getContent().close();
+                            } catch (final IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(IOException e) {
+                            done.countDown();
+                        }
+                    });
+        }
+
+        Thread.sleep(100);
+        assertEquals(2, client.getDispatcher().runningCallsCount());
+        assertEquals(4, client.getDispatcher().queuedCallsCount());
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    public void testUnclosedContentDoesNotBlockHost() throws Exception {
+        client = new OkHttpHttpClient(new ClientConfiguration().withMaxConnections(1));
+        final int requests = 3;
+        for (int i = 0; i < 2 * requests; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+
+        // Like streaming responses that are never closed
+        final List<HttpResponse> responses = new ArrayList<HttpResponse>();
+        final CountDownLatch done = new CountDownLatch(2 * requests);
+        for (int i = 0; i < 2 * requests; i++) {
+            client.executeAsync(new HttpRequest("GET", server.url("/").uri()),
+                    new AsyncHttpClient.Callback() {
+                        @Override
+                        public void onResponse(HttpResponse response) {
+                            synchronized (responses) {
+                                responses.add(response);
+                            }
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(IOException e) {
+                        }
+                    });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2 * requests, server.getRequestCount());
+        for (final HttpResponse response : responses) {
+            assertEquals("ok", IOUtils.toString(response.getContent()));
+            response.getContent().close();
+        }
+    }
+
+    @Test
+    public void testBlockingRequestsPerHostAreLimited() throws Exception {
+        client = new OkHttpHttpClient(new ClientConfiguration().withMaxConnections(1));
+        final String host = server.url("/").host();
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+
+        final HttpResponse first = client.execute(new HttpRequest("GET", server.url("/").uri()));
+        assertEquals(0, client.getAvailableHostPermits(host));
+
+        final HttpResponse[] second = new HttpResponse[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    second[0] = client.execute(new HttpRequest("GET", server.url("/").uri()));
+                } catch (final IOException e) {
+                    // asserted below
+                }
+                done.countDown();
+            }
+        }).start();
+
+        // Waits for the content of the first response to be closed
+        assertFalse(done.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, server.getRequestCount());
+        assertEquals("first", IOUtils.toString(first.getContent()));
+        first.getContent().close();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("second", IOUtils.toString(second[0].getContent()));
+        second[0].getContent().close();
+        second[0].getContent().close();
+        assertEquals(1, client.getAvailableHostPermits(host));
+    }
+
+    @Test
+    public void testHeadRequestReleasesHostPermit() throws Exception {
+        client = new OkHttpHttpClient(new ClientConfiguration().withMaxConnections(1));
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200));
+            client.execute(new HttpRequest("HEAD", server.url("/").uri()));
+        }
+        assertEquals(1, client.getAvailableHostPermits(server.url("/").host()));
+    }
+
+    @Test
+    public void testExecuteAsyncReportsFailure() throws Exception {
+        server.shutdown();
+        final IOException[] failure = new IOException[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        client.executeAsync(new HttpRequest("GET", server.url("/").uri()),
+                new AsyncHttpClient.Callback() {
+                    @Override
+                    public void onResponse(HttpResponse response) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(IOException e) {
+                        failure[0] = e;
+                        done.countDown();
+                    }
+                });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(failure[0]);
+    }
+
+    @Test
+    public void testAbortCancelsAsyncRequest() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        final HttpRequest request = new HttpRequest("GET", server.url("/").uri());
+        final IOException[] failure = new IOException[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        client.executeAsync(request, new AsyncHttpClient.Callback() {
+            @Override
+            public void onResponse(HttpResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                failure[0] = e;
+                done.countDown();
+            }
+        });
+        server.takeRequest();
+        client.abort(request);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNotNull(failure[0]);
+    }
+
+    @Test
+    public void testFactoryAppliesSettings() {
+        final OkHttpHttpClient http1 = (OkHttpHttpClient) new OkHttpClientFactory()
+                .withHttp2Enabled(false)
+                .createHttpClient(new ClientConfiguration());
+        assertEquals(1, http1.getProtocols().size());
+        assertSame(Protocol.HTTP_1_1, http1.getProtocols().get(0));
+        assertTrue(client.getProtocols().contains(Protocol.HTTP_2));
+    }
+
+    @Test
+    public void testClientConfigurationSelectsHttpClient() {
+        final ClientConfiguration config = new ClientConfiguration()
+                .withHttpClientFactory(new OkHttpClientFactory());
+        assertTrue(config.getHttpClientFactory() instanceof OkHttpClientFactory);
+        assertTrue(new ClientConfiguration(config).getHttpClientFactory()
+                instanceof OkHttpClientFactory);
+        assertTrue(config.getHttpClientFactory().createHttpClient(config)
+                instanceof OkHttpHttpClient);
+    }
+}
@@ -248,7 +248,8 @@ public class AmazonPinpointAnalyticsClient extends AmazonWebServiceClient implem
      */
     public AmazonPinpointAnalyticsClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -23,13 +23,10 @@ import com.amazonaws.services.pinpointanalytics.model.Event;
 import com.amazonaws.services.pinpointanalytics.model.PutEventsRequest;
 import com.amazonaws.transform.Marshaller;
 import com.amazonaws.util.StringUtils;
+import com.amazonaws.util.Sha256HashingOutputStream;
 import com.amazonaws.util.json.AwsJsonWriter;
 import com.amazonaws.util.json.JsonUtils;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -59,10 +56,9 @@ public class PutEventsRequestMarshaller implements
         final String uriResourcePath = "/2014-06-05/events";
         request.setResourcePath(uriResourcePath);
         try {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            final GZIPOutputStream gos = new GZIPOutputStream(baos, 8192);
-            final Writer writer = new OutputStreamWriter(gos, StringUtils.UTF8);
-            final AwsJsonWriter jsonWriter = JsonUtils.getJsonWriter(writer);
+            final Sha256HashingOutputStream content = new Sha256HashingOutputStream();
+            final GZIPOutputStream gos = new GZIPOutputStream(content, 8192);
+            final AwsJsonWriter jsonWriter = JsonUtils.getJsonWriter(gos);
             jsonWriter.beginObject();
 
             if (putEventsRequest.getEvents() != null) {
@@ -78,13 +74,10 @@ public class PutEventsRequestMarshaller implements
             }
 
             jsonWriter.endObject();
-            jsonWriter.flush();
-            gos.finish();
-            writer.close();
+            jsonWriter.close();
 
-            final byte[] content = baos.toByteArray();
-            request.setContent(new ByteArrayInputStream(content));
-            request.addHeader("Content-Length", Integer.toString(content.length));
+            request.setContent(content.toInputStream());
+            request.addHeader("Content-Length", Integer.toString(content.size()));
             request.addHeader("Content-Encoding", "gzip");
         } catch (final Throwable t) {
             throw new AmazonClientException(
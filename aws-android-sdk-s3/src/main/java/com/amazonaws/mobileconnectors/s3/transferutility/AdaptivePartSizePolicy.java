@@ -0,0 +1,121 @@
+/**
+ * Copyright 2015-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+/**
+ * Chooses the size of the remaining parts of a multipart upload from what
+ * was observed on the parts uploaded so far.
+ * <p>
+ * A part should take about {@link #TARGET_PART_MILLIS} at the measured
+ * throughput, which keeps the per request overhead small on fast connections.
+ * Every retry of a part sends the part again from its first byte, so the
+ * target is scaled down by the fraction of part attempts that were retried.
+ * The size is kept between the minimum part size of S3 and
+ * {@link #MAXIMUM_PART_SIZE}.
+ * <p>
+ * This class is thread safe, parts report to it from the threads uploading
+ * them.
+ */
+class AdaptivePartSizePolicy {
+
+    /**
+     * The time a part should take to upload.
+     */
+    static final long TARGET_PART_MILLIS = 10 * 1000;
+
+    /**
+     * The largest part size this policy chooses.
+     */
+    static final long MAXIMUM_PART_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Parts within this ratio of the chosen size aren't worth resizing.
+     */
+    private static final double RESIZE_THRESHOLD = 0.25;
+
+    /**
+     * Weight of the newest sample in the throughput average.
+     */
+    private static final double SAMPLE_WEIGHT = 0.3;
+
+    private final long minimumPartSize;
+
+    /** Bytes per millisecond, zero until the first part is uploaded. */
+    private double throughput;
+    private int partsUploaded;
+    private int partsRetried;
+
+    /**
+     * @param minimumPartSize the smallest part size to choose
+     */
+    AdaptivePartSizePolicy(long minimumPartSize) {
+        this.minimumPartSize = minimumPartSize;
+    }
+
+    /**
+     * Records a part that was uploaded.
+     *
+     * @param bytes the size of the part
+     * @param millis the time it took to send the part
+     */
+    synchronized void onPartUploaded(long bytes, long millis) {
+        final double sample = (double) bytes / Math.max(millis, 1);
+        throughput = throughput == 0
+                ? sample
+                : SAMPLE_WEIGHT * sample + (1 - SAMPLE_WEIGHT) * throughput;
+        partsUploaded++;
+    }
+
+    /**
+     * Records a part that had to be sent again.
+     */
+    synchronized void onPartRetried() {
+        partsRetried++;
+    }
+
+    /**
+     * @return the number of parts uploaded or retried so far, it changes
+     *         whenever the chosen part size may change.
+     */
+    synchronized int getSampleCount() {
+        return partsUploaded + partsRetried;
+    }
+
+    /**
+     * Returns the part size for the remaining bytes of an upload.
+     *
+     * @param currentPartSize the size the remaining parts have now
+     * @param bytesRemaining the bytes left to upload
+     * @param partsAvailable the number of part numbers left for them
+     * @return the new part size, or currentPartSize if the parts shouldn't be
+     *         resized
+     */
+    synchronized long getPartSize(long currentPartSize, long bytesRemaining, int partsAvailable) {
+        if (partsUploaded == 0 || partsAvailable <= 0) {
+            return currentPartSize;
+        }
+        final double retryRate = (double) partsRetried / (partsUploaded + partsRetried);
+        long partSize = (long) (throughput * TARGET_PART_MILLIS * (1 - retryRate));
+        partSize = Math.min(Math.max(partSize, minimumPartSize), MAXIMUM_PART_SIZE);
+        // the remaining bytes have to fit in the remaining part numbers
+        partSize = Math.max(partSize, (bytesRemaining + partsAvailable - 1) / partsAvailable);
+
+        if (Math.abs(partSize - currentPartSize) <= currentPartSize * RESIZE_THRESHOLD) {
+            return currentPartSize;
+        }
+        return partSize;
+    }
+}
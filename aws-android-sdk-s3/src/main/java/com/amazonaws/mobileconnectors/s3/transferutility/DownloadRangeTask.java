@@ -0,0 +1,184 @@
+/**
+ * Copyright 2015-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+import com.amazonaws.logging.Log;
+import com.amazonaws.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads one byte range of a ranged download and writes it straight to
+ * its region of the preallocated file. The number of bytes written is saved
+ * to the range record as the download goes, so a resumed download continues
+ * the range where it stopped.
+ */
+class DownloadRangeTask implements Callable<Boolean> {
+    private static final Log LOGGER = LogFactory.getLog(DownloadRangeTask.class);
+    private static final int SIXTEEN_KB = 1024 * 16;
+
+    /**
+     * The progress of the range is saved whenever this many bytes have been
+     * written since it was last saved.
+     */
+    private static final long PROGRESS_SAVE_INTERVAL = 1024 * 1024;
+
+    private final TransferRecord range;
+    private final DownloadTask.DownloadRangeListener downloadRangeListener;
+    private final AmazonS3 s3;
+    private final TransferDBUtil dbUtil;
+    private final Semaphore rangePermits;
+
+    public DownloadRangeTask(TransferRecord range,
+                             DownloadTask.DownloadRangeListener downloadRangeListener,
+                             AmazonS3 s3,
+                             TransferDBUtil dbUtil,
+                             Semaphore rangePermits) {
+        this.range = range;
+        this.downloadRangeListener = downloadRangeListener;
+        this.s3 = s3;
+        this.dbUtil = dbUtil;
+        this.rangePermits = rangePermits;
+    }
+
+    /*
+     * Runs range download task and returns whether successfully downloaded.
+     * Returns false when the network is lost.
+     */
+    @Override
+    public Boolean call() throws Exception {
+        try {
+            return downloadRange();
+        } finally {
+            // Let the download task submit its next range
+            rangePermits.release();
+        }
+    }
+
+    private Boolean downloadRange() throws Exception {
+        long position = range.rangeStart + range.bytesCurrent;
+        RandomAccessFile raf = null;
+        InputStream is = null;
+        try {
+            if (position <= range.rangeLast) {
+                final GetObjectRequest getObjectRequest =
+                        new GetObjectRequest(range.bucketName, range.key);
+                TransferUtility.appendMultipartTransferServiceUserAgentString(getObjectRequest);
+                getObjectRequest.setRange(position, range.rangeLast);
+                if (range.eTag != null) {
+                    // All the ranges have to come from the same object
+                    getObjectRequest.withMatchingETagConstraint(range.eTag);
+                }
+
+                final S3Object object = s3.getObject(getObjectRequest);
+                if (object == null) {
+                    // The ETag didn't match, the ranges saved so far are stale
+                    downloadRangeListener.onObjectModified();
+                    throw new AmazonClientException("The object " + range.key
+                            + " was modified while it was being downloaded");
+                }
+                is = object.getObjectContent();
+
+                // Each range has its own channel, so interrupting one range
+                // doesn't close the file under the others.
+                raf = new RandomAccessFile(new File(range.file), "rw");
+                final FileChannel channel = raf.getChannel();
+                final byte[] buffer = new byte[SIXTEEN_KB];
+                long bytesUnsaved = 0;
+                int bytesRead;
+                while ((bytesRead = is.read(buffer)) != -1) {
+                    final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, bytesRead);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                    range.bytesCurrent += bytesRead;
+                    downloadRangeListener.onProgressChanged(bytesRead);
+                    bytesUnsaved += bytesRead;
+                    if (bytesUnsaved >= PROGRESS_SAVE_INTERVAL) {
+                        dbUtil.updateBytesTransferred(range.id, range.bytesCurrent);
+                        bytesUnsaved = 0;
+                    }
+                }
+                if (position <= range.rangeLast) {
+                    throw new AmazonClientException("Range " + range.partNumber + " of "
+                            + range.key + " ended before its last byte");
+                }
+            }
+            dbUtil.updateBytesTransferred(range.id, range.bytesCurrent);
+            dbUtil.updateState(range.id, TransferState.PART_COMPLETED);
+            range.state = TransferState.PART_COMPLETED;
+            return true;
+        } catch (final Exception e) {
+            LOGGER.error("Download range interrupted: " + e);
+            // Everything written so far is kept, save it before giving up
+            dbUtil.updateBytesTransferred(range.id, range.bytesCurrent);
+
+            // Check if network is not connected, set the state to WAITING_FOR_NETWORK.
+            try {
+                if (TransferNetworkLossHandler.getInstance() != null &&
+                    !TransferNetworkLossHandler.getInstance().isNetworkConnected()) {
+                    LOGGER.info("Thread: [" + Thread.currentThread().getId() + "]: Network wasn't available.");
+                    range.state = TransferState.WAITING_FOR_NETWORK;
+                    downloadRangeListener.onRangeUnsuccessful();
+                    return false;
+                }
+            } catch (TransferUtilityException transferUtilityException) {
+                LOGGER.error("TransferUtilityException: [" + transferUtilityException + "]");
+            }
+
+            range.state = TransferState.FAILED;
+            downloadRangeListener.onRangeUnsuccessful();
+            if (e instanceof SocketTimeoutException) {
+                throw new AmazonClientException(
+                        "SocketTimeoutException: Unable to retrieve contents over network: "
+                                + e.getMessage(), e);
+            }
+            if (e instanceof IOException) {
+                throw new AmazonClientException(
+                        "Unable to store object contents to disk: " + e.getMessage(), e);
+            }
+            throw e;
+        } finally {
+            try {
+                if (raf != null) {
+                    raf.close();
+                }
+            } catch (final IOException ioe) {
+                LOGGER.warn("got exception", ioe);
+            }
+            try {
+                if (is != null) {
+                    is.close();
+                }
+            } catch (final IOException ioe) {
+                LOGGER.warn("got exception", ioe);
+            }
+        }
+    }
+}
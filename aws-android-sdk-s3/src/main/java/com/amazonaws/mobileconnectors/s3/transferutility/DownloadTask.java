@@ -20,7 +20,9 @@ import com.amazonaws.event.ProgressEvent;
 import com.amazonaws.event.ProgressListener;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 
 import com.amazonaws.logging.Log;
@@ -32,12 +34,28 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * Performs download operation and returns a Boolean value indicating whether
  * the file has been downloaded successfully.
+ *
+ * When {@link TransferUtilityOptions#getDownloadRangeSize()} is set and the
+ * object is larger than it, the object is split into ranges that are saved
+ * as part records of the download. The file is preallocated and a
+ * {@link DownloadRangeTask} per range writes its bytes at the range's offset.
+ * At most {@link TransferUtilityOptions#getDownloadRangeConcurrency()} ranges
+ * of a download are submitted at once. A resumed download only submits the
+ * ranges that aren't complete, each from the last byte it saved. If the
+ * object is modified in the meantime, the ranges and the file are discarded
+ * and the download fails, so the next attempt starts over.
  */
 class DownloadTask implements Callable<Boolean> {
 
@@ -46,6 +64,7 @@ class DownloadTask implements Callable<Boolean> {
 
     private final AmazonS3 s3;
     private final TransferRecord download;
+    private final TransferDBUtil dbUtil;
     private final TransferStatusUpdater updater;
 
     /**
@@ -54,11 +73,14 @@ class DownloadTask implements Callable<Boolean> {
      * @param download A TransferRecord object storing all the information of the
      *                 download
      * @param s3       Low-level S3 client
+     * @param dbUtil   database util
      * @param updater  status updater
      */
-    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferStatusUpdater updater) {
+    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferDBUtil dbUtil,
+                        TransferStatusUpdater updater) {
         this.download = download;
         this.s3 = s3;
+        this.dbUtil = dbUtil;
         this.updater = updater;
     }
 
@@ -80,6 +102,18 @@ class DownloadTask implements Callable<Boolean> {
 
         updater.updateState(download.id, TransferState.IN_PROGRESS);
 
+        final long rangeSize = getDownloadRangeSize();
+        if (rangeSize > 0) {
+            try {
+                final List<TransferRecord> ranges = prepareRanges(rangeSize);
+                if (ranges != null) {
+                    return downloadRanges(ranges);
+                }
+            } catch (final Exception e) {
+                return handleException(e, null);
+            }
+        }
+
         GetObjectRequest getObjectRequest;
         ProgressListener progressListener = updater.newProgressListener(download.id);
 
@@ -113,60 +147,296 @@ class DownloadTask implements Callable<Boolean> {
             updater.updateState(download.id, TransferState.COMPLETED);
             return true;
         } catch (final Exception e) {
-            // No need to update the progress listener.
-            if (TransferState.PENDING_CANCEL.equals(download.state)) {
-                updater.updateState(download.id, TransferState.CANCELED);
-                LOGGER.info("Transfer is " + TransferState.CANCELED);
-                return false;
-            }
+            return handleException(e, progressListener);
+        }
+    }
+
+    /**
+     * Sets the state of a download that was stopped by the given exception.
+     *
+     * @param e the exception that stopped the download
+     * @param progressListener the listener to reset, or null if the bytes
+     *            downloaded so far are kept
+     * @return false, the download didn't complete
+     */
+    private boolean handleException(Exception e, ProgressListener progressListener) {
+        // No need to update the progress listener.
+        if (TransferState.PENDING_CANCEL.equals(download.state)) {
+            // The partially downloaded file is deleted, so are its ranges
+            dbUtil.deletePartRecords(download.id);
+            updater.updateState(download.id, TransferState.CANCELED);
+            LOGGER.info("Transfer is " + TransferState.CANCELED);
+            return false;
+        }
 
-            // Reset the progress when the transfer is paused.
-            if (TransferState.PENDING_PAUSE.equals(download.state)) {
-                updater.updateState(download.id, TransferState.PAUSED);
-                LOGGER.info("Transfer is " + TransferState.PAUSED);
+        // Reset the progress when the transfer is paused.
+        if (TransferState.PENDING_PAUSE.equals(download.state)) {
+            updater.updateState(download.id, TransferState.PAUSED);
+            LOGGER.info("Transfer is " + TransferState.PAUSED);
+            if (progressListener != null) {
                 ProgressEvent resetEvent = new ProgressEvent(0);
                 resetEvent.setEventCode(ProgressEvent.RESET_EVENT_CODE);
                 progressListener.progressChanged(new ProgressEvent(0));
-                return false;
             }
+            return false;
+        }
 
-            // If the thread that is executing the transfer is interrupted
-            // because of a race condition in the network or OS.
-            // interrupted and if its due to network drop, reset progress and
-            // update state to WAITING_FOR_NETWORK.
+        // If the thread that is executing the transfer is interrupted
+        // because of a race condition in the network or OS.
+        // interrupted and if its due to network drop, reset progress and
+        // update state to WAITING_FOR_NETWORK.
 
-            // Check if network is not connected, set the state to WAITING_FOR_NETWORK.
-            try {
-                if (TransferNetworkLossHandler.getInstance() != null &&
-                    !TransferNetworkLossHandler.getInstance().isNetworkConnected()) {
-                    LOGGER.info("Thread:[" + Thread.currentThread().getId() + "]: Network wasn't available.");
-                    /*
-                     * Network connection is being interrupted. Moving the TransferState to
-                     * WAITING_FOR_NETWORK till the network availability resumes.
-                     */
-                    updater.updateState(download.id, TransferState.WAITING_FOR_NETWORK);
-                    LOGGER.debug("Network Connection Interrupted: " + "Moving the TransferState to WAITING_FOR_NETWORK");
+        // Check if network is not connected, set the state to WAITING_FOR_NETWORK.
+        try {
+            if (TransferNetworkLossHandler.getInstance() != null &&
+                !TransferNetworkLossHandler.getInstance().isNetworkConnected()) {
+                LOGGER.info("Thread:[" + Thread.currentThread().getId() + "]: Network wasn't available.");
+                /*
+                 * Network connection is being interrupted. Moving the TransferState to
+                 * WAITING_FOR_NETWORK till the network availability resumes.
+                 */
+                updater.updateState(download.id, TransferState.WAITING_FOR_NETWORK);
+                LOGGER.debug("Network Connection Interrupted: " + "Moving the TransferState to WAITING_FOR_NETWORK");
+                if (progressListener != null) {
                     ProgressEvent resetEvent = new ProgressEvent(0);
                     resetEvent.setEventCode(ProgressEvent.RESET_EVENT_CODE);
                     progressListener.progressChanged(new ProgressEvent(0));
-                    return false;
                 }
-            } catch (TransferUtilityException transferUtilityException) {
-                LOGGER.error("TransferUtilityException: [" + transferUtilityException + "]");
-            }
-
-            if (RetryUtils.isInterrupted(e)) {
-                LOGGER.info("Transfer is interrupted. " + e);
-                updater.updateState(download.id, TransferState.FAILED);
                 return false;
             }
+        } catch (TransferUtilityException transferUtilityException) {
+            LOGGER.error("TransferUtilityException: [" + transferUtilityException + "]");
+        }
 
-            // In other cases, set the transfer state to FAILED.
-            LOGGER.debug("Failed to download: " + download.id + " due to " + e.getMessage());
-            updater.throwError(download.id, e);
+        if (RetryUtils.isInterrupted(e)) {
+            LOGGER.info("Transfer is interrupted. " + e);
             updater.updateState(download.id, TransferState.FAILED);
             return false;
         }
+
+        // In other cases, set the transfer state to FAILED.
+        LOGGER.debug("Failed to download: " + download.id + " due to " + e.getMessage());
+        updater.throwError(download.id, e);
+        updater.updateState(download.id, TransferState.FAILED);
+        return false;
+    }
+
+    /**
+     * Returns the ranges of this download. They're loaded from the database
+     * when the download is resumed and the preallocated file is still there,
+     * otherwise the object is split into new ranges and the file is
+     * preallocated to the size of the object.
+     *
+     * @param rangeSize the size of each range
+     * @return the ranges, or null if the object is small enough to be
+     *         downloaded with a single request
+     */
+    private List<TransferRecord> prepareRanges(long rangeSize) throws IOException {
+        final File file = new File(download.file);
+        List<TransferRecord> ranges = dbUtil.queryDownloadRanges(download.id);
+        if (!ranges.isEmpty()) {
+            long bytesTotal = 0;
+            for (final TransferRecord range : ranges) {
+                bytesTotal += range.bytesTotal;
+            }
+            if (file.length() == bytesTotal) {
+                return ranges;
+            }
+            // The file was deleted or replaced, start over
+            LOGGER.info("Discarding the ranges of transfer " + download.id
+                    + ", the file doesn't match them.");
+            discardRanges();
+        }
+
+        final GetObjectMetadataRequest getObjectMetadataRequest =
+                new GetObjectMetadataRequest(download.bucketName, download.key);
+        TransferUtility.appendTransferServiceUserAgentString(getObjectMetadataRequest);
+        final ObjectMetadata metadata = s3.getObjectMetadata(getObjectMetadataRequest);
+        final long bytesTotal = metadata.getContentLength();
+        if (bytesTotal <= rangeSize) {
+            return null;
+        }
+
+        // attempt to create the parent if it doesn't exist
+        final File parentDirectory = file.getParentFile();
+        if (parentDirectory != null && !parentDirectory.exists()) {
+            parentDirectory.mkdirs();
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(bytesTotal);
+        } finally {
+            raf.close();
+        }
+
+        if (dbUtil.insertDownloadRangeRecords(download, bytesTotal, rangeSize,
+                metadata.getETag()) == 0) {
+            throw new AmazonClientException("Unable to save the ranges of transfer " + download.id);
+        }
+        dbUtil.updateBytesTotalForDownload(download.id, bytesTotal);
+        ranges = dbUtil.queryDownloadRanges(download.id);
+        LOGGER.info("Download " + download.id + " split into " + ranges.size() + " ranges.");
+        return ranges;
+    }
+
+    /**
+     * Downloads the ranges that aren't complete and waits for all of them.
+     *
+     * @param ranges all the ranges of this download
+     * @return whether the download completed
+     */
+    private boolean downloadRanges(List<TransferRecord> ranges) {
+        long bytesTotal = 0;
+        long bytesCurrent = 0;
+        for (final TransferRecord range : ranges) {
+            bytesTotal += range.bytesTotal;
+            bytesCurrent += TransferState.PART_COMPLETED.equals(range.state)
+                    ? range.bytesTotal
+                    : Math.min(range.bytesCurrent, range.bytesTotal);
+        }
+        if (bytesCurrent > 0) {
+            LOGGER.debug(String.format("Resume transfer %d from %d bytes", download.id, bytesCurrent));
+        }
+        updater.updateProgress(download.id, bytesCurrent, bytesTotal, true);
+
+        final DownloadRangeListener downloadRangeListener =
+                new DownloadRangeListener(bytesCurrent, bytesTotal);
+        final List<Future<Boolean>> rangeTasks = new ArrayList<Future<Boolean>>();
+        try {
+            /*
+             * Each range holds a permit until it finishes, which bounds the
+             * number of ranges this download has queued or running in the
+             * part thread pool.
+             */
+            final Semaphore rangePermits = new Semaphore(getDownloadRangeConcurrency());
+            boolean isSuccess = true;
+            for (final TransferRecord range : ranges) {
+                if (TransferState.PART_COMPLETED.equals(range.state)) {
+                    continue;
+                }
+                rangePermits.acquire();
+                if (downloadRangeListener.hasUnsuccessfulRange()) {
+                    // Don't start more ranges, the failure is handled below
+                    rangePermits.release();
+                    isSuccess = false;
+                    break;
+                }
+                rangeTasks.add(TransferThreadPool.submitTask(new DownloadRangeTask(range,
+                        downloadRangeListener, s3, dbUtil, rangePermits)));
+            }
+
+            // DownloadRangeTask returns false when it lost the network
+            for (final Future<Boolean> rangeTask : rangeTasks) {
+                isSuccess &= rangeTask.get();
+            }
+            if (!isSuccess) {
+                LOGGER.info("Network not connected. Setting the state to WAITING_FOR_NETWORK.");
+                updater.updateState(download.id, TransferState.WAITING_FOR_NETWORK);
+                return false;
+            }
+        } catch (final Exception e) {
+            // Paused, canceled or a range failed, stop the other ranges.
+            for (final Future<Boolean> rangeTask : rangeTasks) {
+                rangeTask.cancel(true);
+            }
+            if (downloadRangeListener.isObjectModified()) {
+                // The ranges can't be resumed from another object, the next
+                // attempt splits the object again.
+                LOGGER.info("Discarding the ranges of transfer " + download.id
+                        + ", the object was modified.");
+                discardRanges();
+            }
+            if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+                return handleException((Exception) e.getCause(), null);
+            }
+            return handleException(e, null);
+        }
+
+        dbUtil.deletePartRecords(download.id);
+        updater.updateProgress(download.id, bytesTotal, bytesTotal, true);
+        updater.updateState(download.id, TransferState.COMPLETED);
+        return true;
+    }
+
+    /**
+     * Deletes the ranges of this download and the file they're written to,
+     * so the download starts over.
+     */
+    private void discardRanges() {
+        dbUtil.deletePartRecords(download.id);
+        new File(download.file).delete();
+    }
+
+    /**
+     * Returns the size of the ranges this download is split into, from the
+     * options saved with the transfer.
+     */
+    private long getDownloadRangeSize() {
+        if (download.transferUtilityOptions == null) {
+            return 0;
+        }
+        return download.transferUtilityOptions.getDownloadRangeSize();
+    }
+
+    /**
+     * Returns the number of ranges of this download that may be in flight at
+     * once, from the options saved with the transfer or else half of the
+     * upload part thread pool.
+     */
+    private int getDownloadRangeConcurrency() {
+        int rangeConcurrency = 0;
+        if (download.transferUtilityOptions != null) {
+            rangeConcurrency = download.transferUtilityOptions.getDownloadRangeConcurrency();
+        }
+        if (rangeConcurrency <= 0) {
+            rangeConcurrency = (int) Math.ceil(TransferThreadPool.getUploadPartThreadPoolSize() / 2.0);
+        }
+        return Math.max(rangeConcurrency, 1);
+    }
+
+    /**
+     * Adds up the progress of the ranges of a download.
+     */
+    class DownloadRangeListener {
+        private final long bytesTotal;
+        private long bytesCurrent;
+        private volatile boolean unsuccessfulRange;
+        private volatile boolean objectModified;
+
+        DownloadRangeListener(long bytesCurrent, long bytesTotal) {
+            this.bytesCurrent = bytesCurrent;
+            this.bytesTotal = bytesTotal;
+        }
+
+        /**
+         * @param bytesTransferred the bytes a range has just written
+         */
+        synchronized void onProgressChanged(long bytesTransferred) {
+            bytesCurrent += bytesTransferred;
+            updater.updateProgress(download.id, bytesCurrent, bytesTotal, true);
+        }
+
+        /**
+         * Called when a range has failed or is waiting for network.
+         */
+        void onRangeUnsuccessful() {
+            unsuccessfulRange = true;
+        }
+
+        boolean hasUnsuccessfulRange() {
+            return unsuccessfulRange;
+        }
+
+        /**
+         * Called when the object no longer matches the ETag of the ranges.
+         */
+        void onObjectModified() {
+            objectModified = true;
+        }
+
+        boolean isObjectModified() {
+            return objectModified;
+        }
     }
 
     /**
@@ -27,9 +27,24 @@ import android.text.TextUtils;
 import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Provides methods to access database through which applications can interact
  * with transfer tasks.
+ * <p>
+ * Updates made with {@link #updateLater(int, ContentValues)} are kept in
+ * memory and written in a single transaction, either after
+ * {@link #PENDING_UPDATES_FLUSH_INTERVAL} or along with the next synchronous
+ * write. Every other access writes the pending updates first, so reads always
+ * see them. Only values that can be lost in a crash without harm, like the
+ * bytes transferred so far, should be written later.
  */
 class TransferDBBase {
     private static final Log LOGGER = LogFactory.getLog(TransferDBBase.class);
@@ -46,6 +61,31 @@ class TransferDBBase {
     private SQLiteDatabase database;
     private static final Object LOCK = new Object();
 
+    /**
+     * Time in milliseconds pending updates are kept before they're written.
+     */
+    static final long PENDING_UPDATES_FLUSH_INTERVAL = 1000;
+
+    /**
+     * Values to write later by record id, guarded by this object.
+     */
+    private final Map<Integer, ContentValues> pendingUpdates =
+            new LinkedHashMap<Integer, ContentValues>();
+    private ScheduledExecutorService pendingUpdatesFlusher;
+    private boolean flushScheduled;
+    private final AtomicLong transactionCount = new AtomicLong();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flushPendingUpdates();
+            } catch (final RuntimeException e) {
+                LOGGER.error("Failed to write the pending updates", e);
+            }
+        }
+    };
+
     /**
      * Constructs TransferDatabaseBase with the given Context.
      *
@@ -89,6 +129,7 @@ class TransferDBBase {
      * Closes the database helper.
      */
     public void closeDBHelper() {
+        flushPendingUpdates();
         databaseHelper.close();
     }
 
@@ -112,6 +153,8 @@ class TransferDBBase {
         final int uriType = uriMatcher.match(uri);
         long id;
         ensureDatabaseOpen();
+        flushPendingUpdates();
+        transactionCount.incrementAndGet();
 
         switch (uriType) {
             case TRANSFERS:
@@ -154,13 +197,17 @@ class TransferDBBase {
                         + uri.getLastPathSegment());
                 break;
             case TRANSFER_STATE:
-                queryBuilder.appendWhere(TransferTable.COLUMN_STATE + "=");
+                // Parts share the states of their transfer, only the
+                // transfers themselves are queried
+                queryBuilder.appendWhere(TransferTable.COLUMN_PART_NUM + "=" + 0 + " and "
+                        + TransferTable.COLUMN_STATE + "=");
                 queryBuilder.appendWhereEscapeString(uri.getLastPathSegment());
                 break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
         ensureDatabaseOpen();
+        flushPendingUpdates();
         final Cursor cursor = queryBuilder.query(database, projection, selection, selectionArgs,
                 null, null,
                 sortOrder);
@@ -178,9 +225,95 @@ class TransferDBBase {
      */
     public synchronized int update(Uri uri, ContentValues values, String whereClause,
             String[] whereArgs) {
+        ensureDatabaseOpen();
+        transactionCount.incrementAndGet();
+        if (pendingUpdates.isEmpty()) {
+            return updateRecords(uri, values, whereClause, whereArgs);
+        }
+        // Write the pending updates in the same transaction
+        try {
+            database.beginTransaction();
+            writePendingUpdates();
+            final int rowsUpdated = updateRecords(uri, values, whereClause, whereArgs);
+            database.setTransactionSuccessful();
+            pendingUpdates.clear();
+            return rowsUpdated;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Updates a record later, the values are merged with the other pending
+     * values of the record and written in a single transaction with all the
+     * pending updates. If the process dies before then, the values are lost.
+     *
+     * @param id The id of the record.
+     * @param values The values to update.
+     */
+    public synchronized void updateLater(int id, ContentValues values) {
+        final ContentValues pending = pendingUpdates.get(id);
+        if (pending == null) {
+            pendingUpdates.put(id, new ContentValues(values));
+        } else {
+            pending.putAll(values);
+        }
+        if (!flushScheduled) {
+            if (pendingUpdatesFlusher == null) {
+                pendingUpdatesFlusher = Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                final Thread thread = new Thread(r, "TransferDBFlusher");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+            }
+            pendingUpdatesFlusher.schedule(flushTask, PENDING_UPDATES_FLUSH_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+            flushScheduled = true;
+        }
+    }
+
+    /**
+     * Writes the pending updates in a single transaction.
+     */
+    public synchronized void flushPendingUpdates() {
+        flushScheduled = false;
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+        ensureDatabaseOpen();
+        transactionCount.incrementAndGet();
+        try {
+            database.beginTransaction();
+            writePendingUpdates();
+            database.setTransactionSuccessful();
+            pendingUpdates.clear();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * @return the number of write transactions made so far.
+     */
+    long getTransactionCount() {
+        return transactionCount.get();
+    }
+
+    private void writePendingUpdates() {
+        for (final Map.Entry<Integer, ContentValues> entry : pendingUpdates.entrySet()) {
+            database.update(TransferTable.TABLE_TRANSFER, entry.getValue(),
+                    TransferTable.COLUMN_ID + "=" + entry.getKey(), null);
+        }
+    }
+
+    private int updateRecords(Uri uri, ContentValues values, String whereClause,
+            String[] whereArgs) {
         final int uriType = uriMatcher.match(uri);
         int rowsUpdated = 0;
-        ensureDatabaseOpen();
         switch (uriType) {
             case TRANSFERS:
                 rowsUpdated = database.update(TransferTable.TABLE_TRANSFER, values, whereClause,
@@ -215,6 +348,8 @@ class TransferDBBase {
         final int uriType = uriMatcher.match(uri);
         int rowsDeleted = 0;
         ensureDatabaseOpen();
+        flushPendingUpdates();
+        transactionCount.incrementAndGet();
         switch (uriType) {
             case TRANSFERS:
                 rowsDeleted = database.delete(TransferTable.TABLE_TRANSFER, selection,
@@ -237,6 +372,89 @@ class TransferDBBase {
         return rowsDeleted;
     }
 
+    /**
+     * Inserts the part records of an existing transfer in a single
+     * transaction, so either all of them or none are stored.
+     *
+     * @param uri The Uri of a table.
+     * @param mainUploadId The id of the transfer the parts belong to.
+     * @param valuesArray A array of values to insert.
+     * @return The number of records inserted.
+     */
+    public int bulkInsertParts(Uri uri, int mainUploadId, ContentValues[] valuesArray) {
+        final int uriType = uriMatcher.match(uri);
+        int rowsInserted = 0;
+        ensureDatabaseOpen();
+        flushPendingUpdates();
+        transactionCount.incrementAndGet();
+        switch (uriType) {
+            case TRANSFERS:
+                try {
+                    database.beginTransaction();
+                    for (final ContentValues values : valuesArray) {
+                        values.put(TransferTable.COLUMN_MAIN_UPLOAD_ID, mainUploadId);
+                        database.insertOrThrow(TransferTable.TABLE_TRANSFER, null, values);
+                    }
+                    database.setTransactionSuccessful();
+                    rowsInserted = valuesArray.length;
+                } catch (final Exception e) {
+                    LOGGER.error("bulkInsertParts error : ", e);
+                } finally {
+                    database.endTransaction();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Replaces the part records of a transfer from the given part number
+     * onwards with new ones in a single transaction, so the parts either
+     * keep covering the file the old way or the new way.
+     *
+     * @param uri The Uri of a table.
+     * @param mainUploadId The id of the transfer the parts belong to.
+     * @param fromPartNumber The first part number to replace.
+     * @param valuesArray A array of values to insert.
+     * @return The number of records inserted, 0 if nothing was replaced.
+     */
+    public int replaceParts(Uri uri, int mainUploadId, int fromPartNumber,
+            ContentValues[] valuesArray) {
+        final int uriType = uriMatcher.match(uri);
+        int rowsInserted = 0;
+        ensureDatabaseOpen();
+        flushPendingUpdates();
+        transactionCount.incrementAndGet();
+        switch (uriType) {
+            case TRANSFERS:
+                try {
+                    database.beginTransaction();
+                    database.delete(TransferTable.TABLE_TRANSFER,
+                            TransferTable.COLUMN_MAIN_UPLOAD_ID + "=? and "
+                                    + TransferTable.COLUMN_PART_NUM + ">=?",
+                            new String[] {
+                                    String.valueOf(mainUploadId), String.valueOf(fromPartNumber)
+                            });
+                    for (final ContentValues values : valuesArray) {
+                        values.put(TransferTable.COLUMN_MAIN_UPLOAD_ID, mainUploadId);
+                        database.insertOrThrow(TransferTable.TABLE_TRANSFER, null, values);
+                    }
+                    database.setTransactionSuccessful();
+                    rowsInserted = valuesArray.length;
+                } catch (final Exception e) {
+                    LOGGER.error("replaceParts error : ", e);
+                } finally {
+                    database.endTransaction();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+        return rowsInserted;
+    }
+
     /**
      * @param uri The Uri of a table.
      * @param valuesArray A array of values to insert.
@@ -246,6 +464,8 @@ class TransferDBBase {
         final int uriType = uriMatcher.match(uri);
         int mainUploadId = 0;
         ensureDatabaseOpen();
+        flushPendingUpdates();
+        transactionCount.incrementAndGet();
         switch (uriType) {
             case TRANSFERS:
                 try {
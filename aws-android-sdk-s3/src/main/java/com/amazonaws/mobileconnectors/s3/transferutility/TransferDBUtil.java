@@ -19,6 +19,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.text.TextUtils;
 
 import com.amazonaws.services.s3.model.CannedAccessControlList;
 import com.amazonaws.services.s3.model.ObjectMetadata;
@@ -80,6 +81,13 @@ class TransferDBUtil {
         }
     }
 
+    /**
+     * @return the database access shared by all the instances.
+     */
+    /* package private */ TransferDBBase getTransferDBBase() {
+        return transferDBBase;
+    }
+
     /**
      * Inserts a part upload record into database with the given values.
      *
@@ -104,6 +112,73 @@ class TransferDBUtil {
         return transferDBBase.insert(transferDBBase.getContentUri(), values);
     }
 
+    /**
+     * Replaces the parts of a multipart upload that cover the end of the
+     * file, from the given part number onwards, with parts of a new size.
+     *
+     * @param upload The multipart upload.
+     * @param firstPartNumber The part number of the first part to replace.
+     * @param fileOffset The offset in the file of the first part to replace.
+     * @param partSize The new part size, the last part may be smaller.
+     * @return The number of part records inserted, 0 if the parts weren't
+     *         replaced.
+     */
+    public int replaceUploadParts(TransferRecord upload, int firstPartNumber, long fileOffset,
+            long partSize) {
+        final File file = new File(upload.file);
+        final long bytesRemaining = file.length() - fileOffset;
+        final int partCount = (int) ((bytesRemaining + partSize - 1) / partSize);
+        final ContentValues[] valuesArray = new ContentValues[partCount];
+        for (int i = 0; i < partCount; i++) {
+            final long partOffset = fileOffset + i * partSize;
+            final long bytesForPart = Math.min(partSize, file.length() - partOffset);
+            valuesArray[i] = generateContentValuesForMultiPartUpload(upload.bucketName,
+                    upload.key, file, partOffset, firstPartNumber + i, upload.multipartId,
+                    bytesForPart, i == partCount - 1 ? 1 : 0, new ObjectMetadata(), null,
+                    upload.transferUtilityOptions);
+        }
+        return transferDBBase.replaceParts(transferDBBase.getContentUri(), upload.id,
+                firstPartNumber, valuesArray);
+    }
+
+    /**
+     * Splits a download into byte ranges and inserts a part record for each
+     * of them. All the records are inserted in a single transaction.
+     *
+     * @param download The download the ranges belong to.
+     * @param bytesTotal The size of the object being downloaded.
+     * @param rangeSize The size of each range, the last one may be smaller.
+     * @param eTag The Etag of the object, every range must match it.
+     * @return The number of range records inserted.
+     */
+    public int insertDownloadRangeRecords(TransferRecord download, long bytesTotal,
+            long rangeSize, String eTag) {
+        final int rangeCount = (int) ((bytesTotal + rangeSize - 1) / rangeSize);
+        final ContentValues[] valuesArray = new ContentValues[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            final long rangeStart = i * rangeSize;
+            final long rangeLast = Math.min(rangeStart + rangeSize, bytesTotal) - 1;
+            final ContentValues values = new ContentValues();
+            values.put(TransferTable.COLUMN_TYPE, TransferType.DOWNLOAD.toString());
+            values.put(TransferTable.COLUMN_STATE, TransferState.WAITING.toString());
+            values.put(TransferTable.COLUMN_BUCKET_NAME, download.bucketName);
+            values.put(TransferTable.COLUMN_KEY, download.key);
+            values.put(TransferTable.COLUMN_FILE, download.file);
+            values.put(TransferTable.COLUMN_BYTES_CURRENT, 0L);
+            values.put(TransferTable.COLUMN_BYTES_TOTAL, rangeLast - rangeStart + 1);
+            values.put(TransferTable.COLUMN_IS_MULTIPART, 1);
+            values.put(TransferTable.COLUMN_PART_NUM, i + 1);
+            values.put(TransferTable.COLUMN_IS_LAST_PART, i == rangeCount - 1 ? 1 : 0);
+            values.put(TransferTable.COLUMN_IS_ENCRYPTED, 0);
+            values.put(TransferTable.COLUMN_DATA_RANGE_START, rangeStart);
+            values.put(TransferTable.COLUMN_DATA_RANGE_LAST, rangeLast);
+            values.put(TransferTable.COLUMN_ETAG, eTag);
+            valuesArray[i] = values;
+        }
+        return transferDBBase.bulkInsertParts(transferDBBase.getContentUri(), download.id,
+                valuesArray);
+    }
+
     /**
      * Inserts a transfer record into database with the given values.
      *
@@ -185,16 +260,21 @@ class TransferDBUtil {
     }
 
     /**
-     * Updates the current bytes of a transfer record.
+     * Updates the current bytes of a transfer record. The update is written
+     * later, in a single transaction with the other pending updates and the
+     * next synchronous write such as a state change, so frequent progress
+     * updates don't cost a transaction each. If the process dies before
+     * then, the transfer resumes from the progress saved before.
      *
      * @param id The id of the transfer
      * @param bytes The bytes currently transferred
-     * @return Number of rows updated.
+     * @return 1, the number of records to update.
      */
     public int updateBytesTransferred(int id, long bytes) {
         final ContentValues values = new ContentValues();
         values.put(TransferTable.COLUMN_BYTES_CURRENT, bytes);
-        return transferDBBase.update(getRecordUri(id), values, null, null);
+        transferDBBase.updateLater(id, values);
+        return 1;
     }
 
     /**
@@ -282,6 +362,22 @@ class TransferDBUtil {
         return transferDBBase.update(getRecordUri(id), values, null, null);
     }
 
+    /**
+     * Marks a part of a multipart upload as completed along with its Etag.
+     * Both columns are written in a single update, so parts that complete
+     * concurrently can never be left completed without an Etag.
+     *
+     * @param id The id of the part record.
+     * @param etag The Etag returned for the part.
+     * @return Number of rows updated.
+     */
+    public int updatePartCompleted(int id, String etag) {
+        final ContentValues values = new ContentValues();
+        values.put(TransferTable.COLUMN_STATE, TransferState.PART_COMPLETED.toString());
+        values.put(TransferTable.COLUMN_ETAG, etag);
+        return transferDBBase.update(getRecordUri(id), values, null, null);
+    }
+
     /**
      * Updates states of all transfer records which are "running" and "waiting"
      * to "network disconnect"
@@ -550,13 +646,58 @@ class TransferDBUtil {
     }
 
     /**
-     * Deletes the record with the given id.
+     * Deletes the record with the given id, along with the part records of
+     * the transfer.
      *
      * @param id The id of the transfer to be deleted.
      * @return Number of rows deleted.
      */
     public int deleteTransferRecords(int id) {
-        return transferDBBase.delete(getRecordUri(id), null, null);
+        return transferDBBase.delete(transferDBBase.getContentUri(),
+                TransferTable.COLUMN_ID + "=? or " + TransferTable.COLUMN_MAIN_UPLOAD_ID + "=?",
+                new String[] {
+                        String.valueOf(id), String.valueOf(id)
+                });
+    }
+
+    /**
+     * Deletes the part records of the transfer with the given id.
+     *
+     * @param mainUploadId The id of the transfer the parts belong to.
+     * @return Number of rows deleted.
+     */
+    public int deletePartRecords(int mainUploadId) {
+        return transferDBBase.delete(transferDBBase.getContentUri(),
+                TransferTable.COLUMN_MAIN_UPLOAD_ID + "=?", new String[] {
+                    String.valueOf(mainUploadId)
+                });
+    }
+
+    /**
+     * Queries the byte ranges of a download, ordered by part number.
+     *
+     * @param mainUploadId The id of the download.
+     * @return The range records, empty if the download isn't split into
+     *         ranges.
+     */
+    public List<TransferRecord> queryDownloadRanges(int mainUploadId) {
+        final List<TransferRecord> ranges = new ArrayList<TransferRecord>();
+        Cursor c = null;
+        try {
+            c = transferDBBase.query(getPartUri(mainUploadId), null, null, null,
+                    TransferTable.COLUMN_PART_NUM);
+            while (c.moveToNext()) {
+                final TransferRecord range = new TransferRecord(
+                        c.getInt(c.getColumnIndexOrThrow(TransferTable.COLUMN_ID)));
+                range.updateFromDB(c);
+                ranges.add(range);
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return ranges;
     }
 
     /**
@@ -604,8 +745,12 @@ class TransferDBUtil {
         try {
             c = transferDBBase.query(getPartUri(mainUploadId), null, null, null, null);
             while (c.moveToNext()) {
+                // A part is only done once its Etag is saved, otherwise it
+                // can't be included when completing the multipart upload.
                 if (TransferState.PART_COMPLETED.equals(TransferState.getState(c.getString(c
-                        .getColumnIndexOrThrow(TransferTable.COLUMN_STATE))))) {
+                        .getColumnIndexOrThrow(TransferTable.COLUMN_STATE))))
+                        && !TextUtils.isEmpty(c.getString(c
+                                .getColumnIndexOrThrow(TransferTable.COLUMN_ETAG)))) {
                     continue;
                 }
                 final UploadPartRequest putPartRequest = new UploadPartRequest()
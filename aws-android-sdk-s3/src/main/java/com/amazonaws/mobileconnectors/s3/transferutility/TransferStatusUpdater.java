@@ -26,6 +26,7 @@ import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -33,10 +34,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A class that tracks active transfers. It has a static map that holds weak
  * references of {@link TransferListener}.
+ * <p>
+ * Progress updates don't go to the database or the listeners right away.
+ * The latest progress of each transfer is kept and a single dispatcher thread
+ * saves and delivers it at most once per progress update interval, so
+ * threads reporting progress only contend on the lock of their own stripe
+ * of transfers and the main thread gets one callback per transfer per
+ * interval. The pending progress of a transfer is delivered before any
+ * change of its state.
  */
 class TransferStatusUpdater {
     private static final Log LOGGER = LogFactory.getLog(TransferStatusUpdater.class);
@@ -83,6 +97,57 @@ class TransferStatusUpdater {
      */
     static final String TEMP_FILE_PREFIX = "aws-s3-d861b25a-1edf-11eb-adc1-0242ac120002";
 
+    /**
+     * Number of locks the progress of the transfers is spread over.
+     */
+    private static final int PROGRESS_LOCK_STRIPES = 16;
+
+    /**
+     * Locks guarding the progress of the transfers, a transfer uses the lock
+     * at its id modulo the number of stripes.
+     */
+    private final Object[] progressLocks;
+
+    /**
+     * Serializes the dispatches, so an older progress is never saved after a
+     * newer one.
+     */
+    private final Object dispatchLock = new Object();
+
+    /**
+     * The latest progress of the transfers, by id.
+     */
+    private final Map<Integer, TransferProgress> progress;
+
+    /**
+     * The thread that saves and delivers the progress of the transfers.
+     */
+    private final ScheduledExecutorService progressDispatcher;
+
+    /**
+     * Whether a dispatch of the pending progress is scheduled.
+     */
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+    /**
+     * Minimum time in milliseconds between two progress updates of a
+     * transfer.
+     */
+    private volatile long progressUpdateInterval =
+            TransferUtilityOptions.getDefaultProgressUpdateInterval();
+
+    private final Runnable dispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            dispatchScheduled.set(false);
+            try {
+                dispatchProgress();
+            } catch (final RuntimeException e) {
+                LOGGER.error("Failed to dispatch the progress of transfers", e);
+            }
+        }
+    };
+
     /**
      * This class is instantiated by TransferService and TransferUtility.
      * The updater is made a singleton. Use #getInstance for getting
@@ -92,6 +157,19 @@ class TransferStatusUpdater {
         dbUtil = dbUtilInstance;
         mainHandler = new Handler(Looper.getMainLooper());
         transfers = new ConcurrentHashMap<Integer, TransferRecord>();
+        progress = new ConcurrentHashMap<Integer, TransferProgress>();
+        progressLocks = new Object[PROGRESS_LOCK_STRIPES];
+        for (int i = 0; i < PROGRESS_LOCK_STRIPES; i++) {
+            progressLocks[i] = new Object();
+        }
+        progressDispatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "TransferProgressDispatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     /**
@@ -146,6 +224,17 @@ class TransferStatusUpdater {
             LISTENERS.remove(id);
         }
         transfers.remove(id);
+        progress.remove(id);
+    }
+
+    /**
+     * Sets the minimum time between two progress updates of a transfer. It
+     * applies to the listeners of all the transfers.
+     *
+     * @param progressUpdateInterval the interval in milliseconds
+     */
+    void setProgressUpdateInterval(long progressUpdateInterval) {
+        this.progressUpdateInterval = Math.max(progressUpdateInterval, 0);
     }
     
     /**
@@ -184,6 +273,9 @@ class TransferStatusUpdater {
      * @param newState new state
      */
     synchronized void updateState(final int id, final TransferState newState) {
+        // Listeners get the latest progress before the new state
+        dispatchProgress(id);
+
         boolean shouldNotNotify = STATES_NOT_TO_NOTIFY.contains(newState);
         final TransferRecord transfer = transfers.get(id);
         if (transfer == null) {
@@ -232,6 +324,7 @@ class TransferStatusUpdater {
                 TransferState.FAILED.equals(newState) ||
                 TransferState.CANCELED.equals(newState)) {
                 list.clear();
+                progress.remove(id);
             }
         }
     }
@@ -239,21 +332,88 @@ class TransferStatusUpdater {
     /**
      * Updates the transfer progress of a transfer. It will trigger
      * {@link TransferListener#onProgressChanged(int, long, long)} of associated
-     * LISTENERS if the update exceeds either time threshold.
+     * LISTENERS once the progress update interval has passed since the last
+     * update of the transfer. Updates within the interval are coalesced, only
+     * the latest progress is saved and delivered.
      *
      * @param id id of the transfer
      * @param bytesCurrent current transferred bytes
      * @param bytesTotal total bytes
+     * @param notifyListener whether the listeners should be notified
      */
-    synchronized void updateProgress(final int id, 
-        final long bytesCurrent, 
-        final long bytesTotal, 
+    void updateProgress(final int id,
+        final long bytesCurrent,
+        final long bytesTotal,
         final boolean notifyListener) {
 
-        final TransferRecord transfer = transfers.get(id);
-        if (transfer != null) {
-            transfer.bytesCurrent = bytesCurrent;
-            transfer.bytesTotal = bytesTotal;
+        synchronized (progressLock(id)) {
+            final TransferRecord transfer = transfers.get(id);
+            if (transfer != null) {
+                transfer.bytesCurrent = bytesCurrent;
+                transfer.bytesTotal = bytesTotal;
+            }
+
+            TransferProgress transferProgress = progress.get(id);
+            if (transferProgress == null) {
+                transferProgress = new TransferProgress();
+                progress.put(id, transferProgress);
+            }
+            transferProgress.bytesCurrent = bytesCurrent;
+            transferProgress.bytesTotal = bytesTotal;
+            transferProgress.notifyListener |= notifyListener;
+            transferProgress.pending = true;
+        }
+
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            progressDispatcher.schedule(dispatchTask, progressUpdateInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Saves and delivers the pending progress of all the transfers.
+     */
+    private void dispatchProgress() {
+        final List<Runnable> callbacks = new ArrayList<Runnable>();
+        synchronized (dispatchLock) {
+            for (final Integer id : progress.keySet()) {
+                collectProgress(id, callbacks);
+            }
+            postCallbacks(callbacks);
+        }
+    }
+
+    /**
+     * Saves and delivers the pending progress of a transfer, if any.
+     *
+     * @param id id of the transfer
+     */
+    private void dispatchProgress(final int id) {
+        final List<Runnable> callbacks = new ArrayList<Runnable>();
+        synchronized (dispatchLock) {
+            collectProgress(id, callbacks);
+            postCallbacks(callbacks);
+        }
+    }
+
+    /**
+     * Saves the pending progress of a transfer and adds the callbacks of its
+     * listeners to the given list.
+     */
+    private void collectProgress(final int id, final List<Runnable> callbacks) {
+        final long bytesCurrent;
+        final long bytesTotal;
+        final boolean notifyListener;
+        synchronized (progressLock(id)) {
+            final TransferProgress transferProgress = progress.get(id);
+            if (transferProgress == null || !transferProgress.pending) {
+                return;
+            }
+            bytesCurrent = transferProgress.bytesCurrent;
+            bytesTotal = transferProgress.bytesTotal;
+            notifyListener = transferProgress.notifyListener;
+            transferProgress.pending = false;
+            transferProgress.notifyListener = false;
         }
 
         // update bytes transferred so that the transfer observer may pick it
@@ -263,24 +423,39 @@ class TransferStatusUpdater {
         if (!notifyListener) {
             return;
         }
+        final List<TransferListener> list = LISTENERS.get(id);
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        for (final TransferListener l : list) {
+            callbacks.add(new Runnable() {
+                @Override
+                public void run() {
+                    l.onProgressChanged(id, bytesCurrent, bytesTotal);
+                }
+            });
+        }
+    }
 
-        // invoke LISTENERS
-        synchronized (LISTENERS) {
-            final List<TransferListener> list = LISTENERS.get(id);
-            if (list == null || list.isEmpty()) {
-                return;
+    /**
+     * Invokes the given callbacks on the main thread with a single message.
+     */
+    private void postCallbacks(final List<Runnable> callbacks) {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (final Runnable callback : callbacks) {
+                    callback.run();
+                }
             }
+        });
+    }
 
-            for (final TransferListener l : list) {
-                // invoke on main thread
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        l.onProgressChanged(id, bytesCurrent, bytesTotal);
-                    }
-                });
-            }
-        }
+    private Object progressLock(int id) {
+        return progressLocks[(id & Integer.MAX_VALUE) % PROGRESS_LOCK_STRIPES];
     }
 
     /**
@@ -318,6 +493,7 @@ class TransferStatusUpdater {
             LISTENERS.clear();
         }
         transfers.clear();
+        progress.clear();
     }
 
     /**
@@ -364,6 +540,19 @@ class TransferStatusUpdater {
         }
     }
 
+    /**
+     * The latest progress of a transfer, guarded by the progress lock of the
+     * transfer.
+     */
+    private static final class TransferProgress {
+        private long bytesCurrent;
+        private long bytesTotal;
+        // whether the listeners should get the progress
+        private boolean notifyListener;
+        // whether the progress hasn't been saved and delivered yet
+        private boolean pending;
+    }
+
     /**
      * A helper class that updates transfer progress.
      */
@@ -382,7 +571,13 @@ class TransferStatusUpdater {
         }
 
         @Override
-        public synchronized void progressChanged(ProgressEvent progressEvent) {
+        public void progressChanged(ProgressEvent progressEvent) {
+            synchronized (progressLock(transfer.id)) {
+                onProgressChanged(progressEvent);
+            }
+        }
+
+        private void onProgressChanged(ProgressEvent progressEvent) {
             if (ProgressEvent.RESET_EVENT_CODE == progressEvent.getEventCode()) {
                 // Reset will discard what's been transferred
                 LOGGER.info("Reset Event triggered. Resetting the bytesCurrent to 0.");
@@ -394,8 +589,7 @@ class TransferStatusUpdater {
                 // when the accumulated bytesCurrent exceeds the previously
                 // reported transfer.bytesCurrent.
                 if (bytesTransferredSoFar > transfer.bytesCurrent) {
-                    transfer.bytesCurrent = bytesTransferredSoFar;
-                    updateProgress(transfer.id, transfer.bytesCurrent, transfer.bytesTotal, true);
+                    updateProgress(transfer.id, bytesTransferredSoFar, transfer.bytesTotal, true);
                 }
             }
         }
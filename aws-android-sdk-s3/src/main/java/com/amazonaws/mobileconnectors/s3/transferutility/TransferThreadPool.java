@@ -15,9 +15,12 @@
 
 package com.amazonaws.mobileconnectors.s3.transferutility;
 
+import java.util.LinkedList;
+import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -31,31 +34,122 @@ class TransferThreadPool {
 
     private static ExecutorService executorMainTask;
     private static ExecutorService executorPartTask;
+    private static int partPoolSize;
+    private static int mainPoolSize;
+
+    // Multipart uploads waiting for a thread of the main pool, and the number
+    // of them running on it
+    private static final Queue<FutureTask<?>> pendingMultipartUploads =
+            new LinkedList<FutureTask<?>>();
+    private static int runningMultipartUploads;
 
     static synchronized void init(final int transferThreadPoolSize) {
-        LOGGER.debug("Initializing the thread pool of size: " + transferThreadPoolSize);
+        init(transferThreadPoolSize, TransferUtilityOptions.getDefaultUploadPartThreadPoolSize());
+    }
+
+    static synchronized void init(final int transferThreadPoolSize,
+                                  final int uploadPartThreadPoolSize) {
+        LOGGER.debug("Initializing the thread pool of size: " + transferThreadPoolSize
+                + ", upload part thread pool of size: " + uploadPartThreadPoolSize);
         
         final int poolSize = Math.max((int) (Math.ceil((double) transferThreadPoolSize / 2)), 1);
         
         if (executorMainTask == null) {
+            mainPoolSize = poolSize;
+            runningMultipartUploads = 0;
             executorMainTask = buildExecutor(poolSize);
         }
         if (executorPartTask == null) {
-            // Upload individual parts serially
-            executorPartTask = buildExecutor(1);
+            // Parts of all the multipart uploads and ranges of all the ranged
+            // downloads share this pool. Each transfer limits how many of its
+            // parts are queued at once, so the parts of one large transfer
+            // can't hold up the parts of the others.
+            partPoolSize = Math.max(uploadPartThreadPoolSize, 1);
+            executorPartTask = buildExecutor(partPoolSize);
         }
     }
 
+    /**
+     * @return the number of threads uploading parts, or the default if the
+     *         pool hasn't been initialized.
+     */
+    static synchronized int getUploadPartThreadPoolSize() {
+        return executorPartTask == null
+                ? TransferUtilityOptions.getDefaultUploadPartThreadPoolSize()
+                : partPoolSize;
+    }
+
     public static <T> Future<T> submitTask(Callable<T> c) {
         init(TransferUtilityOptions.getDefaultThreadPoolSize());
-        if (c instanceof UploadPartTask) {
+        if (c instanceof UploadPartTask || c instanceof DownloadRangeTask) {
             return executorPartTask.submit(c);
+        } else if (c instanceof UploadTask && ((UploadTask) c).isMultipart()) {
+            return submitMultipartUpload(c);
         } else {
             return executorMainTask.submit(c);
         }
     }
 
+    /**
+     * A multipart upload holds its thread of the main pool until all its parts
+     * are uploaded. So that single-part uploads and downloads aren't queued
+     * behind large uploads, multipart uploads run on all but one of the main
+     * threads, when there's more than one, and the others wait in order.
+     */
+    private static synchronized <T> Future<T> submitMultipartUpload(Callable<T> c) {
+        final FutureTask<T> task = new FutureTask<T>(c);
+        pendingMultipartUploads.add(task);
+        runPendingMultipartUploads();
+        return task;
+    }
+
+    private static synchronized void runPendingMultipartUploads() {
+        final int maxMultipartUploads = Math.max(mainPoolSize - 1, 1);
+        while (executorMainTask != null && runningMultipartUploads < maxMultipartUploads) {
+            final FutureTask<?> task = pendingMultipartUploads.poll();
+            if (task == null) {
+                return;
+            }
+            if (task.isDone()) {
+                // Canceled while waiting
+                continue;
+            }
+            runningMultipartUploads++;
+            final ExecutorService executor = executorMainTask;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        multipartUploadFinished(executor);
+                    }
+                }
+            });
+        }
+    }
+
+    private static synchronized void multipartUploadFinished(ExecutorService executor) {
+        // Uploads that outlive a closed pool don't count in the new one
+        if (executor == executorMainTask) {
+            runningMultipartUploads--;
+            runPendingMultipartUploads();
+        }
+    }
+
+    /**
+     * Cancels the multipart uploads waiting for a thread. They are saved in
+     * the database and will be recovered on the next database scan.
+     */
+    private static synchronized void clearMultipartUploads() {
+        for (final FutureTask<?> task : pendingMultipartUploads) {
+            task.cancel(false);
+        }
+        pendingMultipartUploads.clear();
+    }
+
     public static void closeThreadPool() {
+        clearMultipartUploads();
         if (executorPartTask != null) {
             shutdown(executorPartTask);
             executorPartTask = null;
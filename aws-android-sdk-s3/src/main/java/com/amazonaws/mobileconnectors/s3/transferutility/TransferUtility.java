@@ -326,7 +326,9 @@ public class TransferUtility {
         this.transferUtilityOptions = tuOptions;
         this.dbUtil = new TransferDBUtil(context.getApplicationContext());
         this.updater = TransferStatusUpdater.getInstance(context.getApplicationContext());
-        TransferThreadPool.init(this.transferUtilityOptions.getTransferThreadPoolSize());
+        this.updater.setProgressUpdateInterval(this.transferUtilityOptions.getProgressUpdateInterval());
+        TransferThreadPool.init(this.transferUtilityOptions.getTransferThreadPoolSize(),
+                this.transferUtilityOptions.getUploadPartThreadPoolSize());
         this.connManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
     }
 
@@ -347,7 +349,9 @@ public class TransferUtility {
         this.transferUtilityOptions = new TransferUtilityOptions();
         this.dbUtil = new TransferDBUtil(context.getApplicationContext());
         this.updater = TransferStatusUpdater.getInstance(context.getApplicationContext());
-        TransferThreadPool.init(this.transferUtilityOptions.getTransferThreadPoolSize());
+        this.updater.setProgressUpdateInterval(this.transferUtilityOptions.getProgressUpdateInterval());
+        TransferThreadPool.init(this.transferUtilityOptions.getTransferThreadPoolSize(),
+                this.transferUtilityOptions.getUploadPartThreadPoolSize());
         this.connManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
     }
 
@@ -564,16 +568,21 @@ public class TransferUtility {
      */
     public TransferObserver upload(String bucket, String key, File file, ObjectMetadata metadata,
             CannedAccessControlList cannedAcl, TransferListener listener) {
+        return upload(bucket, key, file, metadata, cannedAcl, listener, transferUtilityOptions);
+    }
+
+    private TransferObserver upload(String bucket, String key, File file, ObjectMetadata metadata,
+            CannedAccessControlList cannedAcl, TransferListener listener, TransferUtilityOptions tuOptions) {
         if (file == null || file.isDirectory() || !file.exists()) {
             throw new IllegalArgumentException("Invalid file: " + file);
         }
         int recordId;
         if (shouldUploadInMultipart(file)) {
-            recordId = createMultipartUploadRecords(bucket, key, file, metadata, cannedAcl);
+            recordId = createMultipartUploadRecords(bucket, key, file, metadata, cannedAcl, tuOptions);
         } else {
 
             final Uri uri = dbUtil.insertSingleTransferRecord(TransferType.UPLOAD, bucket, key, file, metadata,
-                    cannedAcl, transferUtilityOptions);
+                    cannedAcl, tuOptions);
             recordId = Integer.parseInt(uri.getLastPathSegment());
         }
 
@@ -623,14 +632,31 @@ public class TransferUtility {
      */
     public TransferObserver upload(String key, InputStream inputStream, UploadOptions options) throws IOException {
         File file = writeInputStreamToFile(inputStream);
-        return upload(
-                options.getBucket() != null ? options.getBucket() : getDefaultBucketOrThrow(),
-                key,
-                file,
-                options.getMetadata() != null ? options.getMetadata() : new ObjectMetadata(),
-                options.getCannedAcl(),
-                options.getTransferListener()
-        );
+        return upload(key, file, options);
+    }
+
+    /**
+     * Starts uploading the file to the given bucket, using the given key. The
+     * file must be a valid file. Directory isn't supported.
+     *
+     * @param key           The key in the specified bucket by which to store the new object.
+     * @param file          The file to upload.
+     * @param options       An UploadOptions which hold all of the optional parameters
+     *                      i.e. bucket, metadata, cannedAcl, transferListener and
+     *                      uploadPartConcurrency.
+     * @return A TransferObserver used to track upload progress and state
+     */
+    public TransferObserver upload(String key, File file, UploadOptions options) {
+        final String bucket = options.getBucket() != null ? options.getBucket() : getDefaultBucketOrThrow();
+        final ObjectMetadata metadata = options.getMetadata() != null ? options.getMetadata() : new ObjectMetadata();
+        if (options.getUploadPartConcurrency() <= 0) {
+            return upload(bucket, key, file, metadata, options.getCannedAcl(), options.getTransferListener());
+        }
+        // The part concurrency is saved with the transfer record, so it
+        // still applies when the upload is resumed.
+        final TransferUtilityOptions tuOptions = new TransferUtilityOptions(transferUtilityOptions);
+        tuOptions.setUploadPartConcurrency(options.getUploadPartConcurrency());
+        return upload(bucket, key, file, metadata, options.getCannedAcl(), options.getTransferListener(), tuOptions);
     }
 
     /**
@@ -766,10 +792,11 @@ public class TransferUtility {
      * @param key    The key in the specified bucket by which to store the new
      *               object.
      * @param file   The file to upload.
+     * @param tuOptions The options saved with the records.
      * @return Number of records created in database
      */
     private int createMultipartUploadRecords(String bucket, String key, File file, ObjectMetadata metadata,
-            CannedAccessControlList cannedAcl) {
+            CannedAccessControlList cannedAcl, TransferUtilityOptions tuOptions) {
         long remainingLenth = file.length();
         double partSize = (double) remainingLenth / (double) MAXIMUM_UPLOAD_PARTS;
         partSize = Math.ceil(partSize);
@@ -786,11 +813,11 @@ public class TransferUtility {
          */
         final ContentValues[] valuesArray = new ContentValues[partCount + 1];
         valuesArray[0] = dbUtil.generateContentValuesForMultiPartUpload(bucket, key, file, fileOffset, 0, "",
-                file.length(), 0, metadata, cannedAcl, transferUtilityOptions);
+                file.length(), 0, metadata, cannedAcl, tuOptions);
         for (int i = 1; i < partCount + 1; i++) {
             final long bytesForPart = Math.min(optimalPartSize, remainingLenth);
             valuesArray[i] = dbUtil.generateContentValuesForMultiPartUpload(bucket, key, file, fileOffset, partNumber,
-                    "", bytesForPart, remainingLenth - optimalPartSize <= 0 ? 1 : 0, metadata, cannedAcl, transferUtilityOptions);
+                    "", bytesForPart, remainingLenth - optimalPartSize <= 0 ? 1 : 0, metadata, cannedAcl, tuOptions);
             fileOffset += optimalPartSize;
             remainingLenth -= optimalPartSize;
             partNumber++;
@@ -979,7 +1006,10 @@ public class TransferUtility {
         } else if (TRANSFER_PAUSE.equals(action)) {
             transfer.pause(s3, updater);
         } else if (TRANSFER_CANCEL.equals(action)) {
-            transfer.cancel(s3, updater);
+            if (transfer.cancel(s3, updater) && TransferType.DOWNLOAD.equals(transfer.type)) {
+                // The partially downloaded file is deleted, so are its ranges
+                dbUtil.deletePartRecords(id);
+            }
         } else {
             LOGGER.error("Unknown action: " + action);
         }
@@ -26,6 +26,10 @@ import java.io.Serializable;
  * 
  * TransferUtilityOptions tuOptions = new TransferUtilityOptions();
  * tuOptions.setTransferThreadPoolSize(10); // 10 threads for upload and download operations.
+ * tuOptions.setUploadPartThreadPoolSize(4); // up to 4 parts in flight across all uploads.
+ * tuOptions.setUploadPartConcurrency(2); // up to 2 parts in flight for a single upload.
+ * tuOptions.setDownloadRangeSize(8 * 1024 * 1024); // download large objects in 8 MB ranges.
+ * tuOptions.setUploadPartSizeStrategy(UploadPartSizeStrategy.ADAPTIVE); // size parts to the network.
  *
  * // Initializes TransferUtility
  * TransferUtility transferUtility = TransferUtility
@@ -68,6 +72,42 @@ public class TransferUtilityOptions implements Serializable {
      * Type of connection to use for transfers.
      */
     private TransferNetworkConnectionType transferNetworkConnectionType;
+
+    /**
+     * Number of threads in the pool shared by the parts of all the
+     * multipart uploads.
+     */
+    private int uploadPartThreadPoolSize;
+
+    /**
+     * Maximum number of parts of a single multipart upload that are
+     * uploaded at the same time. Zero means half of the upload part
+     * thread pool.
+     */
+    private int uploadPartConcurrency;
+
+    /**
+     * How the part size of multipart uploads is chosen.
+     */
+    private UploadPartSizeStrategy uploadPartSizeStrategy;
+
+    /**
+     * Size in bytes of the ranges a download is split into. Zero means
+     * objects are downloaded with a single request.
+     */
+    private long downloadRangeSize;
+
+    /**
+     * Maximum number of ranges of a single download that are downloaded at
+     * the same time. Zero means half of the upload part thread pool.
+     */
+    private int downloadRangeConcurrency;
+
+    /**
+     * Minimum time in milliseconds between two progress updates of a
+     * transfer.
+     */
+    private long progressUpdateInterval;
     
     /**
      * Constructor that sets the options to the
@@ -78,6 +118,12 @@ public class TransferUtilityOptions implements Serializable {
         this.transferServiceCheckTimeInterval = getDefaultCheckTimeInterval();
         this.transferThreadPoolSize = getDefaultThreadPoolSize();
         this.transferNetworkConnectionType = getDefaultTransferNetworkConnectionType();
+        this.uploadPartThreadPoolSize = getDefaultUploadPartThreadPoolSize();
+        this.uploadPartConcurrency = 0;
+        this.uploadPartSizeStrategy = getDefaultUploadPartSizeStrategy();
+        this.downloadRangeSize = 0;
+        this.downloadRangeConcurrency = 0;
+        this.progressUpdateInterval = getDefaultProgressUpdateInterval();
     }
 
     /**
@@ -93,6 +139,30 @@ public class TransferUtilityOptions implements Serializable {
         this.transferServiceCheckTimeInterval = getDefaultCheckTimeInterval();
         this.transferThreadPoolSize = transferThreadPoolSize;
         this.transferNetworkConnectionType = transferNetworkConnectionType;
+        this.uploadPartThreadPoolSize = getDefaultUploadPartThreadPoolSize();
+        this.uploadPartConcurrency = 0;
+        this.uploadPartSizeStrategy = getDefaultUploadPartSizeStrategy();
+        this.downloadRangeSize = 0;
+        this.downloadRangeConcurrency = 0;
+        this.progressUpdateInterval = getDefaultProgressUpdateInterval();
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other the options to copy
+     */
+    TransferUtilityOptions(TransferUtilityOptions other) {
+        super();
+        this.transferServiceCheckTimeInterval = other.transferServiceCheckTimeInterval;
+        this.transferThreadPoolSize = other.transferThreadPoolSize;
+        this.transferNetworkConnectionType = other.transferNetworkConnectionType;
+        this.uploadPartThreadPoolSize = other.uploadPartThreadPoolSize;
+        this.uploadPartConcurrency = other.uploadPartConcurrency;
+        this.uploadPartSizeStrategy = other.uploadPartSizeStrategy;
+        this.downloadRangeSize = other.downloadRangeSize;
+        this.downloadRangeConcurrency = other.downloadRangeConcurrency;
+        this.progressUpdateInterval = other.progressUpdateInterval;
     }
 
     /**
@@ -153,6 +223,161 @@ public class TransferUtilityOptions implements Serializable {
         return transferNetworkConnectionType;
     }
 
+    /**
+     * Retrieve the number of threads that upload the parts of all the
+     * multipart uploads.
+     *
+     * @return the uploadPartThreadPoolSize
+     */
+    public int getUploadPartThreadPoolSize() {
+        return uploadPartThreadPoolSize;
+    }
+
+    /**
+     * Set the number of threads that upload the parts of all the multipart
+     * uploads. This bounds the number of parts in flight across all the
+     * transfers. If it's not positive, then set the default value. Like the
+     * transfer thread pool size, this only takes effect when it's set before
+     * the first {@link TransferUtility} is created.
+     *
+     * @param uploadPartThreadPoolSize the uploadPartThreadPoolSize to set
+     */
+    public void setUploadPartThreadPoolSize(final int uploadPartThreadPoolSize) {
+        if (uploadPartThreadPoolSize <= 0) {
+            this.uploadPartThreadPoolSize = getDefaultUploadPartThreadPoolSize();
+        } else {
+            this.uploadPartThreadPoolSize = uploadPartThreadPoolSize;
+        }
+    }
+
+    /**
+     * Retrieve the maximum number of parts of a single multipart upload that
+     * are uploaded at the same time.
+     *
+     * @return the uploadPartConcurrency, zero if it's derived from the upload
+     *         part thread pool size
+     */
+    public int getUploadPartConcurrency() {
+        return uploadPartConcurrency;
+    }
+
+    /**
+     * Set the maximum number of parts of a single multipart upload that are
+     * uploaded at the same time. Keeping it below the upload part thread
+     * pool size lets the parts of other uploads run while a large upload is
+     * in progress. If it's not positive, half of the upload part thread pool
+     * is used. It can be overridden for a single upload with
+     * {@link UploadOptions.Builder#uploadPartConcurrency(int)}.
+     *
+     * @param uploadPartConcurrency the uploadPartConcurrency to set
+     */
+    public void setUploadPartConcurrency(final int uploadPartConcurrency) {
+        this.uploadPartConcurrency = Math.max(uploadPartConcurrency, 0);
+    }
+
+    /**
+     * Retrieve how the part size of multipart uploads is chosen.
+     *
+     * @return the UploadPartSizeStrategy
+     */
+    public UploadPartSizeStrategy getUploadPartSizeStrategy() {
+        // Options saved before the strategy existed don't have it
+        return uploadPartSizeStrategy == null
+                ? getDefaultUploadPartSizeStrategy()
+                : uploadPartSizeStrategy;
+    }
+
+    /**
+     * Set how the part size of multipart uploads is chosen. With
+     * {@link UploadPartSizeStrategy#ADAPTIVE}, the parts of an upload that
+     * haven't been started are resized from the throughput and the retries
+     * of the parts uploaded so far. If it's null, then set the default
+     * value, {@link UploadPartSizeStrategy#FIXED}.
+     *
+     * @param uploadPartSizeStrategy the uploadPartSizeStrategy to set
+     */
+    public void setUploadPartSizeStrategy(final UploadPartSizeStrategy uploadPartSizeStrategy) {
+        if (uploadPartSizeStrategy == null) {
+            this.uploadPartSizeStrategy = getDefaultUploadPartSizeStrategy();
+        } else {
+            this.uploadPartSizeStrategy = uploadPartSizeStrategy;
+        }
+    }
+
+    /**
+     * Retrieve the size of the ranges a download is split into.
+     *
+     * @return the downloadRangeSize, zero if downloads aren't split
+     */
+    public long getDownloadRangeSize() {
+        return downloadRangeSize;
+    }
+
+    /**
+     * Set the size in bytes of the ranges a download is split into. Objects
+     * larger than this are downloaded with several ranged requests at the
+     * same time, each writing straight to its own region of the file, and
+     * the progress of every range is saved so a resumed download only
+     * fetches the bytes it's missing. The ranges share the upload part
+     * thread pool with the parts of multipart uploads. If it's not positive,
+     * objects are downloaded with a single request.
+     *
+     * @param downloadRangeSize the downloadRangeSize to set
+     */
+    public void setDownloadRangeSize(final long downloadRangeSize) {
+        this.downloadRangeSize = Math.max(downloadRangeSize, 0);
+    }
+
+    /**
+     * Retrieve the maximum number of ranges of a single download that are
+     * downloaded at the same time.
+     *
+     * @return the downloadRangeConcurrency, zero if it's derived from the
+     *         upload part thread pool size
+     */
+    public int getDownloadRangeConcurrency() {
+        return downloadRangeConcurrency;
+    }
+
+    /**
+     * Set the maximum number of ranges of a single download that are
+     * downloaded at the same time. If it's not positive, half of the upload
+     * part thread pool is used.
+     *
+     * @param downloadRangeConcurrency the downloadRangeConcurrency to set
+     */
+    public void setDownloadRangeConcurrency(final int downloadRangeConcurrency) {
+        this.downloadRangeConcurrency = Math.max(downloadRangeConcurrency, 0);
+    }
+
+    /**
+     * Retrieve the minimum time between two progress updates of a transfer.
+     *
+     * @return the progressUpdateInterval in milliseconds
+     */
+    public long getProgressUpdateInterval() {
+        return progressUpdateInterval;
+    }
+
+    /**
+     * Set the minimum time in milliseconds between two progress updates of
+     * a transfer. The progress reported within the interval is coalesced,
+     * {@link TransferListener#onProgressChanged(int, long, long)} gets the
+     * latest progress once per interval and the progress is saved to the
+     * database at the same rate. The interval is shared by all the
+     * transfers, it's set when a {@link TransferUtility} is created. If it's
+     * negative, then set the default value.
+     *
+     * @param progressUpdateInterval the progressUpdateInterval to set
+     */
+    public void setProgressUpdateInterval(final long progressUpdateInterval) {
+        if (progressUpdateInterval < 0) {
+            this.progressUpdateInterval = getDefaultProgressUpdateInterval();
+        } else {
+            this.progressUpdateInterval = progressUpdateInterval;
+        }
+    }
+
     /**
      * Return the default thread pool size.
      * 
@@ -162,6 +387,33 @@ public class TransferUtilityOptions implements Serializable {
         return 2 * (Runtime.getRuntime().availableProcessors() + 1);
     }
 
+    /**
+     * Return the default upload part thread pool size.
+     *
+     * @return 1, parts are uploaded serially by default
+     */
+    static int getDefaultUploadPartThreadPoolSize() {
+        return 1;
+    }
+
+    /**
+     * Return the default upload part size strategy.
+     *
+     * @return {@link UploadPartSizeStrategy#FIXED}
+     */
+    static UploadPartSizeStrategy getDefaultUploadPartSizeStrategy() {
+        return UploadPartSizeStrategy.FIXED;
+    }
+
+    /**
+     * Return the default progress update interval.
+     *
+     * @return 100 milliseconds
+     */
+    static long getDefaultProgressUpdateInterval() {
+        return 100;
+    }
+
     /**
      * Return the default check time interval.
      * 
@@ -29,6 +29,7 @@ public final class UploadOptions {
     private final ObjectMetadata metadata;
     private final CannedAccessControlList cannedAcl;
     private final TransferListener listener;
+    private final int uploadPartConcurrency;
 
     /**
      * Constructor.
@@ -38,6 +39,7 @@ public final class UploadOptions {
         this.metadata = builder.metadata;
         this.cannedAcl = builder.cannedAcl;
         this.listener = builder.listener;
+        this.uploadPartConcurrency = builder.uploadPartConcurrency;
     }
 
     public String getBucket() {
@@ -56,6 +58,15 @@ public final class UploadOptions {
         return this.listener;
     }
 
+    /**
+     * @return the maximum number of parts of this upload that are uploaded
+     *         at the same time, zero if the {@link TransferUtilityOptions}
+     *         value is used.
+     */
+    public int getUploadPartConcurrency() {
+        return this.uploadPartConcurrency;
+    }
+
     /**
      * Builder class for UploadOptions
      */
@@ -64,6 +75,7 @@ public final class UploadOptions {
         private ObjectMetadata metadata;
         private CannedAccessControlList cannedAcl;
         private TransferListener listener;
+        private int uploadPartConcurrency;
 
         private Builder() {
         }
@@ -112,6 +124,21 @@ public final class UploadOptions {
             return this;
         }
 
+        /**
+         * Sets the maximum number of parts of this upload that are uploaded
+         * at the same time, overriding
+         * {@link TransferUtilityOptions#getUploadPartConcurrency()}. The
+         * number of parts in flight across all uploads is still bounded by
+         * {@link TransferUtilityOptions#getUploadPartThreadPoolSize()}.
+         *
+         * @param uploadPartConcurrency The maximum number of parts in flight
+         * @return builder
+         */
+        public Builder uploadPartConcurrency(final int uploadPartConcurrency) {
+            this.uploadPartConcurrency = Math.max(uploadPartConcurrency, 0);
+            return this;
+        }
+
         /**
          * Return the finally constructed UploadOptions.
          * @return UploadOptions
@@ -135,6 +162,7 @@ public final class UploadOptions {
                 ", metadata=" + metadata +
                 ", cannedAcl=" + cannedAcl +
                 ", listener=" + listener +
+                ", uploadPartConcurrency=" + uploadPartConcurrency +
                 '}';
     }
 
@@ -150,11 +178,12 @@ public final class UploadOptions {
         return ObjectsCompat.equals(bucket, that.bucket) &&
                 ObjectsCompat.equals(metadata, that.metadata) &&
                 cannedAcl == that.cannedAcl &&
-                ObjectsCompat.equals(listener, that.listener);
+                ObjectsCompat.equals(listener, that.listener) &&
+                uploadPartConcurrency == that.uploadPartConcurrency;
     }
 
     @Override
     public int hashCode() {
-        return ObjectsCompat.hash(bucket, metadata, cannedAcl, listener);
+        return ObjectsCompat.hash(bucket, metadata, cannedAcl, listener, uploadPartConcurrency);
     }
 }
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2019-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Represents how the part size of a multipart upload is chosen.
+ */
+public enum UploadPartSizeStrategy {
+    /**
+     * The part size only depends on the size of the file: the minimum part
+     * size, or larger if the file wouldn't fit in the maximum number of
+     * parts.
+     */
+    @SerializedName("FIXED")
+    FIXED,
+
+    /**
+     * The upload starts with the fixed part size, then the parts that
+     * haven't been started yet are resized from the throughput and the
+     * retries observed on the parts uploaded so far. Fast connections get
+     * larger parts, so fewer requests are made; connections on which parts
+     * are retried get smaller parts, so less data is sent again.
+     */
+    @SerializedName("ADAPTIVE")
+    ADAPTIVE
+}
@@ -25,6 +25,7 @@ import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 
 class UploadPartTask implements Callable<Boolean> {
     private static final Log LOGGER = LogFactory.getLog(UploadPartTask.class);
@@ -35,17 +36,20 @@ class UploadPartTask implements Callable<Boolean> {
     private final UploadPartRequest uploadPartRequest;
     private final AmazonS3 s3;
     private final TransferDBUtil dbUtil;
+    private final Semaphore partPermits;
 
     public UploadPartTask(UploadTask.UploadPartTaskMetadata uploadPartTaskMetadata,
                           UploadTask.UploadTaskProgressListener uploadTaskProgressListener,
                           UploadPartRequest uploadPartRequest,
                           AmazonS3 s3,
-                          TransferDBUtil dbUtil) {
+                          TransferDBUtil dbUtil,
+                          Semaphore partPermits) {
         this.uploadPartTaskMetadata = uploadPartTaskMetadata;
         this.uploadTaskProgressListener = uploadTaskProgressListener;
         this.uploadPartRequest = uploadPartRequest;
         this.s3 = s3;
         this.dbUtil = dbUtil;
+        this.partPermits = partPermits;
     }
 
     /*
@@ -53,13 +57,21 @@ class UploadPartTask implements Callable<Boolean> {
      */
     @Override
     public Boolean call() throws Exception {
+        try {
+            return uploadPart();
+        } finally {
+            // Let the upload task submit its next part
+            partPermits.release();
+        }
+    }
+
+    private Boolean uploadPart() throws Exception {
         try {
             uploadPartTaskMetadata.state = TransferState.IN_PROGRESS;
             uploadPartRequest.setGeneralProgressListener(new UploadPartTaskProgressListener(uploadTaskProgressListener));
             final UploadPartResult putPartResult = s3.uploadPart(uploadPartRequest);
+            dbUtil.updatePartCompleted(uploadPartRequest.getId(), putPartResult.getETag());
             uploadPartTaskMetadata.state = TransferState.PART_COMPLETED;
-            dbUtil.updateState(uploadPartRequest.getId(), TransferState.PART_COMPLETED);
-            dbUtil.updateETag(uploadPartRequest.getId(), putPartResult.getETag());
             return true;
         } catch (final Exception e) {
             LOGGER.error("Upload part interrupted: " + e);
@@ -38,6 +38,8 @@ import com.amazonaws.services.s3.util.Mimetypes;
 import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 
+import static com.amazonaws.services.s3.internal.Constants.MAXIMUM_UPLOAD_PARTS;
+
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
@@ -47,6 +49,7 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * When an upload transfer is requested through TransferUtility,
@@ -54,7 +57,12 @@ import java.util.concurrent.Future;
  * single-part uploads (<= 5MB) and multi-part uploads (> 5MB).
  *
  * For multi-part uploads, a thread is created per part (5MB)
- * and submitted to the thread pool.
+ * and submitted to the thread pool. At most
+ * {@link TransferUtilityOptions#getUploadPartConcurrency()} parts of an
+ * upload are submitted at once; the next part is submitted when one of them
+ * finishes. With {@link UploadPartSizeStrategy#ADAPTIVE}, the parts that
+ * haven't been submitted are resized by an {@link AdaptivePartSizePolicy}
+ * before the next part is submitted.
  */
 class UploadTask implements Callable<Boolean> {
 
@@ -71,6 +79,9 @@ class UploadTask implements Callable<Boolean> {
     Map<Integer, UploadPartTaskMetadata> uploadPartTasks;
     private List<UploadPartRequest> requestList;
 
+    // null unless the parts are sized adaptively
+    private AdaptivePartSizePolicy partSizePolicy;
+
     public UploadTask(TransferRecord uploadInfo,
                       AmazonS3 s3,
                       TransferDBUtil dbUtil,
@@ -82,6 +93,14 @@ class UploadTask implements Callable<Boolean> {
         this.uploadPartTasks = new HashMap<Integer, UploadPartTaskMetadata>();
     }
 
+    /**
+     * @return true if this task uploads the parts of a multipart upload, and
+     *         so waits for them on its thread.
+     */
+    boolean isMultipart() {
+        return upload.isMultipart == 1 && upload.partNumber == 0;
+    }
+
     /*
      * Runs upload task and returns whether successfully uploaded.
      */
@@ -152,7 +171,18 @@ class UploadTask implements Callable<Boolean> {
 
         requestList = dbUtil.getNonCompletedPartRequestsFromDB(upload.id,
                 upload.multipartId);
-        LOGGER.info("Multipart upload " + upload.id + " in " + requestList.size() + " parts.");
+        final int partConcurrency = getUploadPartConcurrency();
+        if (upload.transferUtilityOptions != null
+                && UploadPartSizeStrategy.ADAPTIVE.equals(
+                        upload.transferUtilityOptions.getUploadPartSizeStrategy())) {
+            partSizePolicy = new AdaptivePartSizePolicy(TransferUtility.MINIMUM_UPLOAD_PART_SIZE);
+        }
+        LOGGER.info("Multipart upload " + upload.id + " in " + requestList.size() + " parts, "
+                + partConcurrency + " at a time.");
+        /*
+         * All the parts are registered before any of them is submitted, so
+         * the map isn't modified while running parts report their progress.
+         */
         for (final UploadPartRequest request : requestList) {
             TransferUtility.appendMultipartTransferServiceUserAgentString(request);
 
@@ -161,33 +191,64 @@ class UploadTask implements Callable<Boolean> {
             uploadPartTaskMetadata.bytesTransferredSoFar = 0;
             uploadPartTaskMetadata.state = TransferState.WAITING;
             uploadPartTasks.put(request.getPartNumber(), uploadPartTaskMetadata);
-            uploadPartTaskMetadata.uploadPartTask = TransferThreadPool.submitTask(
-                    new UploadPartTask(uploadPartTaskMetadata, uploadTaskProgressListener, request, s3, dbUtil));
         }
 
         try {
+            /*
+             * Each part holds a permit until it finishes, which bounds the
+             * number of parts this upload has queued or running in the part
+             * thread pool. The parts of other uploads are interleaved with
+             * ours instead of waiting for all of them. The thread of this
+             * task waits meanwhile, which is why TransferThreadPool keeps a
+             * thread of the main pool free of multipart uploads.
+             */
+            final Semaphore partPermits = new Semaphore(partConcurrency);
+            int samplesAtLastResize = 0;
+            for (int i = 0; i < requestList.size(); i++) {
+                partPermits.acquire();
+                if (hasUnsuccessfulPart()) {
+                    // Don't start more parts, the failure is handled below
+                    partPermits.release();
+                    break;
+                }
+                if (partSizePolicy != null
+                        && partSizePolicy.getSampleCount() != samplesAtLastResize) {
+                    samplesAtLastResize = partSizePolicy.getSampleCount();
+                    resizeRemainingParts(i, uploadTaskProgressListener);
+                }
+                final UploadPartRequest request = requestList.get(i);
+                final UploadPartTaskMetadata uploadPartTaskMetadata =
+                        uploadPartTasks.get(request.getPartNumber());
+                uploadPartTaskMetadata.uploadPartTask = TransferThreadPool.submitTask(
+                        new UploadPartTask(uploadPartTaskMetadata, uploadTaskProgressListener, request, s3,
+                                dbUtil, partPermits));
+            }
+
             boolean isSuccess = true;
             /*
              * Future.get() will block the current thread until the method
              * returns.
              */
             for (final UploadPartTaskMetadata task : uploadPartTasks.values()) {
+                if (task.uploadPartTask == null) {
+                    // Not submitted because another part didn't succeed
+                    isSuccess = false;
+                    continue;
+                }
                 // UploadPartTask returns false when it's interrupted by user
                 // and the state is set by caller
                 final boolean b = task.uploadPartTask.get();
                 isSuccess &= b;
             }
             if (!isSuccess) {
-                try {
-                    if (TransferNetworkLossHandler.getInstance() != null &&
-                        !TransferNetworkLossHandler.getInstance().isNetworkConnected()) {
-                        LOGGER.info("Network not connected. Setting the state to WAITING_FOR_NETWORK.");
-                        updater.updateState(upload.id, TransferState.WAITING_FOR_NETWORK);	
-                        return false;	
-                    }	
-                } catch (TransferUtilityException transferUtilityException) {	
-                    LOGGER.error("TransferUtilityException: [" + transferUtilityException + "]");	
-                }
+                /*
+                 * A part only returns false when it lost the network, and the
+                 * remaining parts haven't been uploaded, so the upload can't
+                 * be completed yet.
+                 */
+                LOGGER.info("Network not connected. Setting the state to WAITING_FOR_NETWORK.");
+                updater.updateState(upload.id, TransferState.WAITING_FOR_NETWORK);
+                return false;
             }
         } catch (final Exception e) {
             LOGGER.error("Upload resulted in an exception. " + e);
@@ -198,7 +259,9 @@ class UploadTask implements Callable<Boolean> {
              * Cancel all the on-going part tasks.
              */
             for (final UploadPartTaskMetadata task : uploadPartTasks.values()) {
-                task.uploadPartTask.cancel(true);
+                if (task.uploadPartTask != null) {
+                    task.uploadPartTask.cancel(true);
+                }
             }
 
             // If the thread that is executing the transfer is interrupted
@@ -270,6 +333,97 @@ class UploadTask implements Callable<Boolean> {
         }
     }
 
+    /**
+     * Resizes the parts from the given index of the request list onwards to
+     * the size chosen by the part size policy. None of them has been
+     * submitted yet. The parts are only resized when they cover the end of
+     * the file without gaps, which is always the case unless parts in the
+     * middle of a resumed upload failed.
+     *
+     * @param index the index of the first part that can be resized
+     * @param uploadTaskProgressListener the listener reading the part map
+     */
+    private void resizeRemainingParts(int index,
+                                      UploadTaskProgressListener uploadTaskProgressListener) {
+        final UploadPartRequest first = requestList.get(index);
+        long fileOffset = first.getFileOffset();
+        for (int i = index; i < requestList.size(); i++) {
+            final UploadPartRequest request = requestList.get(i);
+            if (request.getFileOffset() != fileOffset) {
+                return;
+            }
+            fileOffset += request.getPartSize();
+        }
+        if (!requestList.get(requestList.size() - 1).isLastPart()) {
+            return;
+        }
+
+        final long bytesRemaining = fileOffset - first.getFileOffset();
+        final long partSize = partSizePolicy.getPartSize(first.getPartSize(), bytesRemaining,
+                MAXIMUM_UPLOAD_PARTS - first.getPartNumber() + 1);
+        if (partSize == first.getPartSize()
+                || dbUtil.replaceUploadParts(upload, first.getPartNumber(),
+                        first.getFileOffset(), partSize) == 0) {
+            return;
+        }
+
+        final List<UploadPartRequest> resizedRequests = new ArrayList<UploadPartRequest>();
+        for (final UploadPartRequest request : dbUtil.getNonCompletedPartRequestsFromDB(upload.id,
+                upload.multipartId)) {
+            if (request.getPartNumber() >= first.getPartNumber()) {
+                TransferUtility.appendMultipartTransferServiceUserAgentString(request);
+                resizedRequests.add(request);
+            }
+        }
+        synchronized (uploadTaskProgressListener) {
+            for (int i = index; i < requestList.size(); i++) {
+                uploadPartTasks.remove(requestList.get(i).getPartNumber());
+            }
+            for (final UploadPartRequest request : resizedRequests) {
+                final UploadPartTaskMetadata uploadPartTaskMetadata = new UploadPartTaskMetadata();
+                uploadPartTaskMetadata.uploadPartRequest = request;
+                uploadPartTaskMetadata.bytesTransferredSoFar = 0;
+                uploadPartTaskMetadata.state = TransferState.WAITING;
+                uploadPartTasks.put(request.getPartNumber(), uploadPartTaskMetadata);
+            }
+        }
+        final List<UploadPartRequest> requests =
+                new ArrayList<UploadPartRequest>(requestList.subList(0, index));
+        requests.addAll(resizedRequests);
+        requestList = requests;
+        LOGGER.info("Resized the remaining " + resizedRequests.size() + " parts of upload "
+                + upload.id + " to " + partSize + " bytes.");
+    }
+
+    /**
+     * Returns the number of parts of this upload that may be in flight at
+     * once, from the options saved with the transfer or else half of the
+     * upload part thread pool.
+     */
+    private int getUploadPartConcurrency() {
+        int partConcurrency = 0;
+        if (upload.transferUtilityOptions != null) {
+            partConcurrency = upload.transferUtilityOptions.getUploadPartConcurrency();
+        }
+        if (partConcurrency <= 0) {
+            partConcurrency = (int) Math.ceil(TransferThreadPool.getUploadPartThreadPoolSize() / 2.0);
+        }
+        return Math.max(partConcurrency, 1);
+    }
+
+    /**
+     * @return true if a submitted part has failed or is waiting for network.
+     */
+    private boolean hasUnsuccessfulPart() {
+        for (final UploadPartTaskMetadata task : uploadPartTasks.values()) {
+            if (TransferState.FAILED.equals(task.state)
+                    || TransferState.WAITING_FOR_NETWORK.equals(task.state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Boolean uploadSinglePartAndWaitForCompletion() {
         final PutObjectRequest putObjectRequest = createPutObjectRequest(upload);
         final ProgressListener progressListener = updater.newProgressListener(upload.id);
@@ -515,6 +669,9 @@ class UploadTask implements Callable<Boolean> {
                 return;
             }
 
+            if (partSizePolicy != null) {
+                samplePart(partNumTask, bytesTransferredSoFarForPartNum);
+            }
             partNumTask.bytesTransferredSoFar = bytesTransferredSoFarForPartNum;
 
             // Compute the sum of bytesTransferredSoFar for all parts
@@ -535,6 +692,27 @@ class UploadTask implements Callable<Boolean> {
                 prevTotalBytesTransferredOfAllParts = totalBytesTransferredOfAllParts;
             }
         }
+
+        /**
+         * Reports the time a part took once all its bytes are sent, and the
+         * retries of a part, which start over from its first byte.
+         */
+        private void samplePart(UploadPartTaskMetadata partNumTask, long bytesTransferredSoFar) {
+            final long now = System.currentTimeMillis();
+            if (bytesTransferredSoFar < partNumTask.bytesTransferredSoFar) {
+                partSizePolicy.onPartRetried();
+                partNumTask.startTime = now;
+                return;
+            }
+            if (partNumTask.startTime == 0) {
+                partNumTask.startTime = now;
+            }
+            final long partSize = partNumTask.uploadPartRequest.getPartSize();
+            if (bytesTransferredSoFar >= partSize && !partNumTask.sampled) {
+                partNumTask.sampled = true;
+                partSizePolicy.onPartUploaded(partSize, now - partNumTask.startTime);
+            }
+        }
     }
 
     // This class represents the state being tracked per part
@@ -542,13 +720,19 @@ class UploadTask implements Callable<Boolean> {
         // Reference to the request object for a part
         UploadPartRequest uploadPartRequest;
 
-        // The future task that runs UploadPartTask to upload a part
+        // The future task that runs UploadPartTask to upload a part, null
+        // until the part is submitted
         Future<Boolean> uploadPartTask;
 
         // number of bytes transferred so far for this part
         long bytesTransferredSoFar;
 
-        // state of the transfer
-        TransferState state;
+        // state of the transfer, updated by the thread uploading the part
+        volatile TransferState state;
+
+        // when the part started sending, and whether its time was reported
+        // to the part size policy
+        long startTime;
+        boolean sampled;
     }
 }
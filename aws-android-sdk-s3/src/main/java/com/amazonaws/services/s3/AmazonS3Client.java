@@ -45,11 +45,12 @@ import com.amazonaws.event.ProgressListenerCallbackExecutor;
 import com.amazonaws.event.ProgressReportingInputStream;
 import com.amazonaws.handlers.HandlerChainFactory;
 import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.http.AmazonHttpClient;
 import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpClient;
 import com.amazonaws.http.HttpMethodName;
 import com.amazonaws.http.HttpResponseHandler;
-import com.amazonaws.http.UrlHttpClient;
+import com.amazonaws.internal.FileRegionInputStream;
 import com.amazonaws.internal.StaticCredentialsProvider;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
@@ -63,9 +64,7 @@ import com.amazonaws.services.s3.internal.Constants;
 import com.amazonaws.services.s3.internal.DeleteObjectTaggingHeaderHandler;
 import com.amazonaws.services.s3.internal.DeleteObjectsResponse;
 import com.amazonaws.services.s3.internal.GetObjectTaggingResponseHeaderHandler;
-import com.amazonaws.services.s3.internal.InputSubstream;
 import com.amazonaws.services.s3.internal.ObjectExpirationHeaderHandler;
-import com.amazonaws.services.s3.internal.RepeatableFileInputStream;
 import com.amazonaws.services.s3.internal.ResponseHeaderHandlerChain;
 import com.amazonaws.services.s3.internal.S3ErrorResponseHandler;
 import com.amazonaws.services.s3.internal.S3ExecutionContext;
@@ -352,7 +351,8 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
     @Deprecated
     public AmazonS3Client(AWSCredentialsProvider credentialsProvider,
                           ClientConfiguration clientConfiguration) {
-        this(credentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(credentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -371,7 +371,7 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
     public AmazonS3Client(AWSCredentialsProvider credentialsProvider,
                           ClientConfiguration clientConfiguration,
                           RequestMetricCollector requestMetricCollector) {
-        super(clientConfiguration, new UrlHttpClient(clientConfiguration),
+        super(clientConfiguration, AmazonHttpClient.createDefaultHttpClient(clientConfiguration),
                 requestMetricCollector);
         this.awsCredentialsProvider = credentialsProvider;
         init();
@@ -476,7 +476,8 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
     public AmazonS3Client(AWSCredentials awsCredentials,
                           com.amazonaws.regions.Region region,
                           ClientConfiguration clientConfiguration) {
-        this(awsCredentials, region, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentials, region, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -521,7 +522,8 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
     public AmazonS3Client(AWSCredentialsProvider awsCredentialsProvider,
                           com.amazonaws.regions.Region region,
                           ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, region, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, region, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**
@@ -1802,9 +1804,11 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             }
 
             try {
-                input = new RepeatableFileInputStream(file);
+                input = new FileRegionInputStream(file);
             } catch (final FileNotFoundException fnfe) {
                 throw new AmazonClientException("Unable to find file to upload", fnfe);
+            } catch (final IOException ioe) {
+                throw new AmazonClientException("Unable to open file to upload", ioe);
             }
         }
 
@@ -3774,11 +3778,12 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             inputStream = uploadPartRequest.getInputStream();
         } else if (uploadPartRequest.getFile() != null) {
             try {
-                inputStream = new InputSubstream(new RepeatableFileInputStream(
-                        uploadPartRequest.getFile()),
-                        uploadPartRequest.getFileOffset(), partSize, true);
+                inputStream = new FileRegionInputStream(uploadPartRequest.getFile(),
+                        uploadPartRequest.getFileOffset(), partSize);
             } catch (final FileNotFoundException e) {
                 throw new IllegalArgumentException("The specified file doesn't exist", e);
+            } catch (final IOException e) {
+                throw new AmazonClientException("Unable to open file to upload", e);
             }
         } else {
             throw new IllegalArgumentException(
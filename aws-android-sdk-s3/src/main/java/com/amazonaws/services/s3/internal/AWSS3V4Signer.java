@@ -19,6 +19,7 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.Request;
 import com.amazonaws.auth.AWS4Signer;
 import com.amazonaws.auth.AwsChunkedEncodingInputStream;
+import com.amazonaws.internal.FileRegionInputStream;
 import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.UploadPartRequest;
@@ -32,6 +33,7 @@ import java.io.InputStream;
  */
 public class AWSS3V4Signer extends AWS4Signer {
     private static final String CONTENT_SHA_256 = "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
     private static final int DEFAULT_BYTE_LENGTH = 4096;
 
     /**
@@ -63,7 +65,7 @@ public class AWSS3V4Signer extends AWS4Signer {
 
     @Override
     protected String calculateContentHashPresign(Request<?> request) {
-        return "UNSIGNED-PAYLOAD";
+        return UNSIGNED_PAYLOAD;
     }
 
     /**
@@ -111,17 +113,47 @@ public class AWSS3V4Signer extends AWS4Signer {
                             .calculateStreamContentLength(originalContentLength)));
             return CONTENT_SHA_256;
         }
+        final FileRegionInputStream fileRegion =
+                FileRegionInputStream.find(request.getContent());
+        if (fileRegion != null) {
+            return calculateFileRegionHash(request, fileRegion);
+        }
         return super.calculateContentHash(request);
     }
 
     /**
-     * Determine whether to use aws-chunked for signing
+     * Returns the payload hash of a request whose content reads from a file.
+     * Over HTTPS the payload is left unsigned, it's protected by TLS and the
+     * Content-MD5 checked by S3. Otherwise the file region is hashed, without
+     * going through the streams wrapping it so that reading it doesn't count
+     * as progress.
+     */
+    private String calculateFileRegionHash(Request<?> request,
+            FileRegionInputStream fileRegion) {
+        if ("https".equalsIgnoreCase(request.getEndpoint().getScheme())) {
+            return UNSIGNED_PAYLOAD;
+        }
+        fileRegion.mark(-1);
+        final String contentSha256 = BinaryUtils.toHex(hash(fileRegion));
+        try {
+            fileRegion.reset();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to reset the file to upload", e);
+        }
+        return contentSha256;
+    }
+
+    /**
+     * Determine whether to use aws-chunked for signing. Content read from a
+     * file isn't chunk-encoded, so the HTTP client can send it in large blocks
+     * straight from the file.
      */
     private static boolean useChunkEncoding(Request<?> request) {
         // Whether to use chunked encoding for signing the request
         boolean chunkedEncodingEnabled = false;
-        if (request.getOriginalRequest() instanceof PutObjectRequest
-                || request.getOriginalRequest() instanceof UploadPartRequest) {
+        if ((request.getOriginalRequest() instanceof PutObjectRequest
+                || request.getOriginalRequest() instanceof UploadPartRequest)
+                && FileRegionInputStream.find(request.getContent()) == null) {
             chunkedEncodingEnabled = true;
         }
         return chunkedEncodingEnabled;
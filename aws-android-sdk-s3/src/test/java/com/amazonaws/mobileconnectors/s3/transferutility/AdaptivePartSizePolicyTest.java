@@ -0,0 +1,81 @@
+/**
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptivePartSizePolicyTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long MINIMUM_PART_SIZE = 5 * MB;
+
+    @Test
+    public void testKeepsPartSizeUntilAPartIsUploaded() {
+        final AdaptivePartSizePolicy policy = new AdaptivePartSizePolicy(MINIMUM_PART_SIZE);
+        policy.onPartRetried();
+        assertEquals(MINIMUM_PART_SIZE, policy.getPartSize(MINIMUM_PART_SIZE, 100 * MB, 100));
+    }
+
+    @Test
+    public void testFastConnectionGetsLargerParts() {
+        final AdaptivePartSizePolicy policy = new AdaptivePartSizePolicy(MINIMUM_PART_SIZE);
+        // 5 MB in 1 second
+        policy.onPartUploaded(5 * MB, 1000);
+        assertEquals(50 * MB, policy.getPartSize(MINIMUM_PART_SIZE, 1000 * MB, 1000));
+    }
+
+    @Test
+    public void testPartSizeIsCapped() {
+        final AdaptivePartSizePolicy policy = new AdaptivePartSizePolicy(MINIMUM_PART_SIZE);
+        policy.onPartUploaded(50 * MB, 1000);
+        assertEquals(AdaptivePartSizePolicy.MAXIMUM_PART_SIZE,
+                policy.getPartSize(MINIMUM_PART_SIZE, 1000 * MB, 1000));
+    }
+
+    @Test
+    public void testRetriesShrinkParts() {
+        final AdaptivePartSizePolicy policy = new AdaptivePartSizePolicy(MINIMUM_PART_SIZE);
+        policy.onPartUploaded(5 * MB, 1000);
+        policy.onPartRetried();
+        // half of the attempts were retried
+        assertEquals(25 * MB, policy.getPartSize(50 * MB, 1000 * MB, 1000));
+    }
+
+    @Test
+    public void testSlowConnectionKeepsMinimumPartSize() {
+        final AdaptivePartSizePolicy policy = new AdaptivePartSizePolicy(MINIMUM_PART_SIZE);
+        // 5 MB in 100 seconds
+        policy.onPartUploaded(5 * MB, 100 * 1000);
+        assertEquals(MINIMUM_PART_SIZE, policy.getPartSize(MINIMUM_PART_SIZE, 100 * MB, 100));
+    }
+
+    @Test
+    public void testRemainingBytesFitInRemainingPartNumbers() {
+        final AdaptivePartSizePolicy policy = new AdaptivePartSizePolicy(MINIMUM_PART_SIZE);
+        policy.onPartUploaded(5 * MB, 100 * 1000);
+        assertEquals(20 * MB, policy.getPartSize(MINIMUM_PART_SIZE, 200 * MB, 10));
+    }
+
+    @Test
+    public void testSmallChangeKeepsPartSize() {
+        final AdaptivePartSizePolicy policy = new AdaptivePartSizePolicy(MINIMUM_PART_SIZE);
+        // about 11 MB per 10 seconds, close enough to 10 MB
+        policy.onPartUploaded(11 * MB, 10 * 1000);
+        assertEquals(10 * MB, policy.getPartSize(10 * MB, 1000 * MB, 1000));
+    }
+}
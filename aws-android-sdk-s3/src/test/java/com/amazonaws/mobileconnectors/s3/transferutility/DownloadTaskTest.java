@@ -0,0 +1,210 @@
+/**
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests ranged downloads against an object that is modified between
+ * attempts.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DownloadTaskTest {
+    private static final int TRANSFER_ID = 3;
+    private static final long RANGE_SIZE = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<TransferRecord> ranges = new ArrayList<TransferRecord>();
+    private TransferDBUtil dbUtil;
+    private TransferStatusUpdater updater;
+    private AmazonS3 s3;
+    private TransferRecord download;
+    private File file;
+
+    // The object in the bucket, replaced by the second one after the first
+    // range is downloaded
+    private volatile byte[] content;
+    private volatile String eTag;
+    private volatile int getObjectCount;
+
+    @Before
+    public void setup() throws IOException {
+        file = new File(folder.getRoot(), "object");
+        download = new TransferRecord(TRANSFER_ID);
+        download.bucketName = "bucket";
+        download.key = "key";
+        download.file = file.getAbsolutePath();
+        download.transferUtilityOptions = new TransferUtilityOptions();
+        download.transferUtilityOptions.setDownloadRangeSize(RANGE_SIZE);
+        download.transferUtilityOptions.setDownloadRangeConcurrency(1);
+
+        updater = mock(TransferStatusUpdater.class);
+        dbUtil = mock(TransferDBUtil.class);
+        when(dbUtil.queryDownloadRanges(TRANSFER_ID)).thenAnswer(new Answer<List<TransferRecord>>() {
+            @Override
+            public List<TransferRecord> answer(InvocationOnMock invocation) {
+                synchronized (ranges) {
+                    return new ArrayList<TransferRecord>(ranges);
+                }
+            }
+        });
+        when(dbUtil.insertDownloadRangeRecords(any(TransferRecord.class), anyLong(), anyLong(),
+                anyString())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                final long bytesTotal = (Long) invocation.getArguments()[1];
+                final long rangeSize = (Long) invocation.getArguments()[2];
+                final String rangeETag = (String) invocation.getArguments()[3];
+                synchronized (ranges) {
+                    for (long start = 0; start < bytesTotal; start += rangeSize) {
+                        final TransferRecord range = new TransferRecord(100 + ranges.size());
+                        range.mainUploadId = TRANSFER_ID;
+                        range.partNumber = ranges.size() + 1;
+                        range.bucketName = download.bucketName;
+                        range.key = download.key;
+                        range.file = download.file;
+                        range.rangeStart = start;
+                        range.rangeLast = Math.min(start + rangeSize, bytesTotal) - 1;
+                        range.bytesTotal = range.rangeLast - start + 1;
+                        range.state = TransferState.WAITING;
+                        range.eTag = rangeETag;
+                        ranges.add(range);
+                    }
+                    return ranges.size();
+                }
+            }
+        });
+        when(dbUtil.deletePartRecords(TRANSFER_ID)).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                synchronized (ranges) {
+                    final int count = ranges.size();
+                    ranges.clear();
+                    return count;
+                }
+            }
+        });
+
+        s3 = mock(AmazonS3.class);
+        when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenAnswer(
+                new Answer<ObjectMetadata>() {
+                    @Override
+                    public ObjectMetadata answer(InvocationOnMock invocation) {
+                        final ObjectMetadata metadata = new ObjectMetadata();
+                        metadata.setContentLength(content.length);
+                        metadata.setHeader(Headers.ETAG, eTag);
+                        return metadata;
+                    }
+                });
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                final GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+                final List<String> eTags = request.getMatchingETagConstraints();
+                if (!eTags.isEmpty() && !eTags.contains(eTag)) {
+                    // The precondition failed
+                    return null;
+                }
+                final long[] range = request.getRange();
+                final S3Object object = new S3Object();
+                object.setObjectContent(new ByteArrayInputStream(content, (int) range[0],
+                        (int) (range[1] - range[0] + 1)));
+                if (++getObjectCount == 1) {
+                    modifyObject();
+                }
+                return object;
+            }
+        });
+    }
+
+    @Test
+    public void testRangesAreDiscardedWhenETagChangesBetweenAttempts() throws IOException {
+        content = bytes(30, 'a');
+        eTag = "etag-1";
+
+        // The second range no longer matches the ETag of the first one
+        assertFalse(new DownloadTask(download, s3, dbUtil, updater).call());
+        verify(dbUtil).deletePartRecords(TRANSFER_ID);
+        verify(updater).updateState(TRANSFER_ID, TransferState.FAILED);
+        assertTrue(ranges.isEmpty());
+        assertFalse(file.exists());
+
+        // The next attempt splits the modified object again
+        assertTrue(new DownloadTask(download, s3, dbUtil, updater).call());
+        verify(updater).updateState(TRANSFER_ID, TransferState.COMPLETED);
+        verify(dbUtil).insertDownloadRangeRecords(download, 30, RANGE_SIZE, "etag-2");
+        assertArrayEquals(content, read(file));
+    }
+
+    private void modifyObject() {
+        content = bytes(30, 'b');
+        eTag = "etag-2";
+    }
+
+    private static byte[] bytes(int length, char c) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) c);
+        return bytes;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += in.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
@@ -59,6 +59,12 @@ public class GsonSerializationTest {
                 TransferUtilityOptions.getDefaultThreadPoolSize()));
         assertThat(jsonOptions, containsString("\"transferNetworkConnectionType\":" +
                 "\"" + TransferUtilityOptions.getDefaultTransferNetworkConnectionType() + "\""));
+        assertThat(jsonOptions, containsString("\"uploadPartThreadPoolSize\":" +
+                TransferUtilityOptions.getDefaultUploadPartThreadPoolSize()));
+        assertThat(jsonOptions, containsString("\"uploadPartConcurrency\":0"));
+        assertThat(jsonOptions, containsString("\"uploadPartSizeStrategy\":\"FIXED\""));
+        assertThat(jsonOptions, containsString("\"downloadRangeSize\":0"));
+        assertThat(jsonOptions, containsString("\"downloadRangeConcurrency\":0"));
     }
 
     @Test
@@ -77,5 +83,42 @@ public class GsonSerializationTest {
                 tuOptions.getTransferThreadPoolSize());
         assertEquals(TransferNetworkConnectionType.ANY,
                 tuOptions.getTransferNetworkConnectionType());
+        // Options saved before the upload part settings existed get the defaults
+        assertEquals(TransferUtilityOptions.getDefaultUploadPartThreadPoolSize(),
+                tuOptions.getUploadPartThreadPoolSize());
+        assertEquals(0, tuOptions.getUploadPartConcurrency());
+        assertEquals(UploadPartSizeStrategy.FIXED, tuOptions.getUploadPartSizeStrategy());
+        // and downloads aren't split into ranges
+        assertEquals(0, tuOptions.getDownloadRangeSize());
+        assertEquals(0, tuOptions.getDownloadRangeConcurrency());
+    }
+
+    @Test
+    public void testTransferUtilityOptionsUploadPartSettingsRoundTrip() {
+        final TransferUtilityOptions options = new TransferUtilityOptions();
+        options.setUploadPartThreadPoolSize(6);
+        options.setUploadPartConcurrency(2);
+        options.setUploadPartSizeStrategy(UploadPartSizeStrategy.ADAPTIVE);
+
+        final TransferUtilityOptions copy = gson.fromJson(gson.toJson(options),
+                TransferUtilityOptions.class);
+
+        assertEquals(6, copy.getUploadPartThreadPoolSize());
+        assertEquals(2, copy.getUploadPartConcurrency());
+        assertEquals(UploadPartSizeStrategy.ADAPTIVE, copy.getUploadPartSizeStrategy());
+    }
+
+    @Test
+    public void testTransferUtilityOptionsDownloadRangeSettingsRoundTrip() {
+        final TransferUtilityOptions options = new TransferUtilityOptions();
+        options.setDownloadRangeSize(8 * 1024 * 1024);
+        options.setDownloadRangeConcurrency(3);
+
+        final TransferUtilityOptions copy = gson.fromJson(gson.toJson(options),
+                TransferUtilityOptions.class);
+
+        assertEquals(8 * 1024 * 1024, copy.getDownloadRangeSize());
+        assertEquals(3, copy.getDownloadRangeConcurrency());
+        assertEquals(8 * 1024 * 1024, new TransferUtilityOptions(options).getDownloadRangeSize());
     }
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that progress updates are written behind and grouped into few
+ * transactions.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TransferDBBaseTest {
+    private static final long MB = 1024 * 1024;
+    private static final long GB = 1024 * MB;
+    private static final int PROGRESS_UPDATES_PER_PART = 64;
+
+    private TransferDBUtil dbUtil;
+    private TransferDBBase dbBase;
+
+    @Before
+    public void setup() {
+        Context context = InstrumentationRegistry.getInstrumentation().getContext();
+        dbUtil = new TransferDBUtil(context);
+        dbBase = dbUtil.getTransferDBBase();
+    }
+
+    @After
+    public void teardown() {
+        dbUtil.closeDB();
+    }
+
+    @Test
+    public void testPendingProgressIsVisibleToQueries() {
+        final int id = insertUpload(10 * MB, 5 * MB);
+        dbUtil.updateBytesTransferred(id, 1234);
+        assertEquals(1234, dbUtil.getTransferById(id).bytesCurrent);
+    }
+
+    @Test
+    public void testPendingProgressIsWrittenWithStateChange() {
+        final int id = insertUpload(10 * MB, 5 * MB);
+        final long transactions = dbBase.getTransactionCount();
+        dbUtil.updateBytesTransferred(id, 1234);
+        dbUtil.updateState(id, TransferState.PAUSED);
+        assertEquals(transactions + 1, dbBase.getTransactionCount());
+
+        final TransferRecord transfer = dbUtil.getTransferById(id);
+        assertEquals(1234, transfer.bytesCurrent);
+        assertEquals(TransferState.PAUSED, transfer.state);
+    }
+
+    /**
+     * Uploads 1 GB in 5 MB parts: the progress of the upload only adds a
+     * transaction per part, which is written with the Etag of the part.
+     */
+    @Test
+    public void testTransactionsPerGigabyteUploaded() {
+        final int id = insertUpload(GB, TransferUtility.MINIMUM_UPLOAD_PART_SIZE);
+        final List<UploadPartRequest> parts = dbUtil.getNonCompletedPartRequestsFromDB(id, "id");
+        final long transactions = dbBase.getTransactionCount();
+
+        long bytesCurrent = 0;
+        for (final UploadPartRequest part : parts) {
+            for (int i = 0; i < PROGRESS_UPDATES_PER_PART; i++) {
+                bytesCurrent += part.getPartSize() / PROGRESS_UPDATES_PER_PART;
+                dbUtil.updateBytesTransferred(id, bytesCurrent);
+            }
+            dbUtil.updatePartCompleted(part.getId(), "etag" + part.getPartNumber());
+        }
+        dbUtil.updateState(id, TransferState.COMPLETED);
+
+        final long transactionsPerGigabyte = dbBase.getTransactionCount() - transactions;
+        // One per part and one for the final state instead of one per
+        // update, plus at most one per second from the background flush.
+        assertTrue(transactionsPerGigabyte >= parts.size() + 1);
+        assertTrue(transactionsPerGigabyte <= 2 * (parts.size() + 1));
+        assertEquals(bytesCurrent, dbUtil.getTransferById(id).bytesCurrent);
+        assertEquals(parts.size(), dbUtil.queryPartETagsOfUpload(id).size());
+    }
+
+    @Test
+    public void testStateQueriesDontReturnDownloadRanges() {
+        final int id = insertDownload(10 * MB);
+        assertEquals(10, dbUtil.insertDownloadRangeRecords(dbUtil.getTransferById(id), 10 * MB,
+                MB, "etag"));
+
+        final Cursor c = dbUtil.queryTransfersWithTypeAndState(TransferType.DOWNLOAD,
+                TransferState.WAITING);
+        try {
+            assertEquals(1, c.getCount());
+            assertTrue(c.moveToNext());
+            assertEquals(id, c.getInt(c.getColumnIndexOrThrow(TransferTable.COLUMN_ID)));
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void testDeleteTransferRecordsDeletesDownloadRanges() {
+        final int id = insertDownload(10 * MB);
+        dbUtil.insertDownloadRangeRecords(dbUtil.getTransferById(id), 10 * MB, MB, "etag");
+        dbUtil.updateState(id, TransferState.FAILED);
+
+        assertEquals(11, dbUtil.deleteTransferRecords(id));
+        assertNull(dbUtil.getTransferById(id));
+        assertTrue(dbUtil.queryDownloadRanges(id).isEmpty());
+    }
+
+    private int insertDownload(long bytesTotal) {
+        final Uri uri = dbUtil.insertSingleTransferRecord(TransferType.DOWNLOAD, "bucket", "key",
+                new File("download-" + bytesTotal), new ObjectMetadata(), null);
+        return Integer.parseInt(uri.getLastPathSegment());
+    }
+
+    private int insertUpload(long bytesTotal, long partSize) {
+        final File file = new File("upload-" + bytesTotal);
+        final int partCount = (int) ((bytesTotal + partSize - 1) / partSize);
+        final ContentValues[] valuesArray = new ContentValues[partCount + 1];
+        valuesArray[0] = dbUtil.generateContentValuesForMultiPartUpload("bucket", "key", file,
+                0, 0, "", bytesTotal, 0, new ObjectMetadata(), null, null);
+        for (int i = 1; i <= partCount; i++) {
+            final long fileOffset = (i - 1) * partSize;
+            valuesArray[i] = dbUtil.generateContentValuesForMultiPartUpload("bucket", "key", file,
+                    fileOffset, i, "", Math.min(partSize, bytesTotal - fileOffset),
+                    i == partCount ? 1 : 0, new ObjectMetadata(), null, null);
+        }
+        return dbUtil.bulkInsertTransferRecords(valuesArray);
+    }
+}
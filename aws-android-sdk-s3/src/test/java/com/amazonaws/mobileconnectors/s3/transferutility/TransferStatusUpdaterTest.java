@@ -0,0 +1,120 @@
+/**
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests that progress updates are coalesced and delivered before state
+ * changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TransferStatusUpdaterTest {
+    private static final int TRANSFER_ID = 7;
+
+    private TransferDBUtil dbUtil;
+    private TransferStatusUpdater updater;
+    private RecordingListener listener;
+
+    @Before
+    public void setup() {
+        dbUtil = mock(TransferDBUtil.class);
+        updater = new TransferStatusUpdater(dbUtil);
+        updater.addTransfer(new TransferRecord(TRANSFER_ID));
+        listener = new RecordingListener();
+        TransferStatusUpdater.registerListener(TRANSFER_ID, listener);
+    }
+
+    @After
+    public void teardown() {
+        updater.clear();
+    }
+
+    @Test
+    public void testProgressWithinIntervalIsCoalesced() {
+        updater.setProgressUpdateInterval(60 * 1000);
+        for (int i = 1; i <= 100; i++) {
+            updater.updateProgress(TRANSFER_ID, i, 100, true);
+        }
+        // A state change delivers the pending progress first
+        updater.updateState(TRANSFER_ID, TransferState.IN_PROGRESS);
+        ShadowLooper.idleMainLooper();
+
+        verify(dbUtil, times(1)).updateBytesTransferred(eq(TRANSFER_ID), anyLong());
+        verify(dbUtil).updateBytesTransferred(TRANSFER_ID, 100);
+        assertEquals(2, listener.events.size());
+        assertEquals("progress 100/100", listener.events.get(0));
+        assertEquals("state IN_PROGRESS", listener.events.get(1));
+    }
+
+    @Test
+    public void testProgressIsDispatchedAfterInterval() {
+        updater.setProgressUpdateInterval(10);
+        updater.updateProgress(TRANSFER_ID, 5, 100, true);
+
+        verify(dbUtil, timeout(1000)).updateBytesTransferred(TRANSFER_ID, 5);
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, listener.events.size());
+        assertEquals("progress 5/100", listener.events.get(0));
+    }
+
+    @Test
+    public void testProgressWithoutNotificationIsOnlySaved() {
+        updater.setProgressUpdateInterval(60 * 1000);
+        updater.updateProgress(TRANSFER_ID, 5, 100, false);
+        updater.updateState(TRANSFER_ID, TransferState.IN_PROGRESS);
+        ShadowLooper.idleMainLooper();
+
+        verify(dbUtil).updateBytesTransferred(TRANSFER_ID, 5);
+        assertEquals(1, listener.events.size());
+        assertEquals("state IN_PROGRESS", listener.events.get(0));
+    }
+
+    private static class RecordingListener implements TransferListener {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void onStateChanged(int id, TransferState state) {
+            events.add("state " + state);
+        }
+
+        @Override
+        public void onProgressChanged(int id, long bytesCurrent, long bytesTotal) {
+            events.add("progress " + bytesCurrent + "/" + bytesTotal);
+        }
+
+        @Override
+        public void onError(int id, Exception ex) {
+            events.add("error " + ex);
+        }
+    }
+}
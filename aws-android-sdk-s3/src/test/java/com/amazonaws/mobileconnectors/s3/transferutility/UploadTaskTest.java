@@ -0,0 +1,170 @@
+/**
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the scheduling of uploads on the transfer thread pools.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class UploadTaskTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransferDBUtil dbUtil;
+    private TransferStatusUpdater updater;
+    private AmazonS3 s3;
+    private File file;
+
+    // Counted down to let the parts of the multipart uploads finish
+    private final CountDownLatch partsReleased = new CountDownLatch(1);
+
+    @Before
+    public void setup() throws IOException {
+        TransferThreadPool.closeThreadPool();
+        // Two threads run the transfers and two upload the parts
+        TransferThreadPool.init(4, 2);
+
+        file = folder.newFile("object");
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[10]);
+        out.close();
+
+        updater = mock(TransferStatusUpdater.class);
+        dbUtil = mock(TransferDBUtil.class);
+        when(dbUtil.getNonCompletedPartRequestsFromDB(anyInt(), anyString())).thenAnswer(
+                new Answer<List<UploadPartRequest>>() {
+                    @Override
+                    public List<UploadPartRequest> answer(InvocationOnMock invocation) {
+                        final int id = (Integer) invocation.getArguments()[0];
+                        return Collections.singletonList(new UploadPartRequest()
+                                .withId(100 + id)
+                                .withMainUploadId(id)
+                                .withBucketName("bucket")
+                                .withKey("key")
+                                .withUploadId("upload-" + id)
+                                .withFile(file)
+                                .withFileOffset(0)
+                                .withPartNumber(1)
+                                .withPartSize(file.length())
+                                .withLastPart(true));
+                    }
+                });
+
+        s3 = mock(AmazonS3.class);
+        when(s3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenAnswer(
+                new Answer<InitiateMultipartUploadResult>() {
+                    @Override
+                    public InitiateMultipartUploadResult answer(InvocationOnMock invocation) {
+                        final InitiateMultipartUploadResult result =
+                                new InitiateMultipartUploadResult();
+                        result.setUploadId("upload");
+                        return result;
+                    }
+                });
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenAnswer(
+                new Answer<UploadPartResult>() {
+                    @Override
+                    public UploadPartResult answer(InvocationOnMock invocation)
+                            throws InterruptedException {
+                        partsReleased.await();
+                        final UploadPartResult result = new UploadPartResult();
+                        result.setETag("etag");
+                        return result;
+                    }
+                });
+    }
+
+    @After
+    public void teardown() {
+        partsReleased.countDown();
+        TransferThreadPool.closeThreadPool();
+    }
+
+    @Test
+    public void testSinglePartUploadIsNotQueuedBehindMultipartUploads() throws Exception {
+        // More multipart uploads than threads in the main pool, all waiting
+        // for their parts
+        final List<Future<Boolean>> multipartUploads = new ArrayList<Future<Boolean>>();
+        for (int id = 1; id <= 3; id++) {
+            multipartUploads.add(TransferThreadPool.submitTask(
+                    new UploadTask(createUpload(id, true), s3, dbUtil, updater)));
+        }
+
+        final Future<Boolean> singlePartUpload = TransferThreadPool.submitTask(
+                new UploadTask(createUpload(10, false), s3, dbUtil, updater));
+        assertTrue(singlePartUpload.get(5, TimeUnit.SECONDS));
+        verify(s3).putObject(any(PutObjectRequest.class));
+        for (final Future<Boolean> upload : multipartUploads) {
+            assertFalse(upload.isDone());
+        }
+
+        partsReleased.countDown();
+        for (final Future<Boolean> upload : multipartUploads) {
+            assertTrue(upload.get(5, TimeUnit.SECONDS));
+        }
+        verify(updater).updateState(1, TransferState.COMPLETED);
+        verify(updater).updateState(3, TransferState.COMPLETED);
+    }
+
+    private TransferRecord createUpload(int id, boolean multipart) {
+        final TransferRecord upload = new TransferRecord(id);
+        upload.type = TransferType.UPLOAD;
+        upload.bucketName = "bucket";
+        upload.key = "key";
+        upload.file = file.getAbsolutePath();
+        upload.bytesTotal = file.length();
+        upload.isMultipart = multipart ? 1 : 0;
+        upload.transferUtilityOptions = new TransferUtilityOptions();
+        return upload;
+    }
+}
@@ -17,15 +17,26 @@ package com.amazonaws.services.s3;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.Protocol;
 import com.amazonaws.Request;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.Signer;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.http.HttpClient;
 import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.http.HttpRequest;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.internal.FileRegionInputStream;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.internal.AWSS3V4Signer;
@@ -33,13 +44,26 @@ import com.amazonaws.services.s3.internal.Constants;
 import com.amazonaws.services.s3.model.DeleteBucketRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
 
 public class Amazons3ClientTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private AmazonS3Client s3;
     private AWSCredentials creds;
     private S3ClientOptions accelerateOption;
@@ -256,5 +280,124 @@ public class Amazons3ClientTest {
     public void testSetNotificationThreshold() {
         s3.setNotificationThreshold(8 * 1024);
     }
-}
 
+    @Test
+    public void testPutObjectFromFileIsSentFromFileRegion() throws Exception {
+        final byte[] content = createContent(300 * 1024);
+        final File file = writeFile(content);
+        final RecordingHttpClient httpClient = new RecordingHttpClient(content);
+        s3 = new AmazonS3Client(creds, Region.getRegion(Regions.US_EAST_1),
+                new ClientConfiguration(), httpClient);
+
+        final long[] bytesTransferred = new long[1];
+        s3.putObject(new PutObjectRequest("bucket", "key", file)
+                .withGeneralProgressListener(new ProgressListener() {
+                    @Override
+                    public void progressChanged(ProgressEvent progressEvent) {
+                        bytesTransferred[0] += progressEvent.getBytesTransferred();
+                    }
+                }));
+
+        assertTrue(httpClient.fromFileRegion);
+        assertArrayEquals(content, httpClient.body);
+        final HttpRequest request = httpClient.request;
+        assertEquals("UNSIGNED-PAYLOAD", request.getHeaders().get("x-amz-content-sha256"));
+        assertNull(request.getHeaders().get("x-amz-decoded-content-length"));
+        assertEquals(String.valueOf(content.length), request.getHeaders().get("Content-Length"));
+        assertEquals(content.length, bytesTransferred[0]);
+    }
+
+    @Test
+    public void testPutObjectFromFileOverHttpSignsFileContent() throws Exception {
+        final byte[] content = createContent(1024);
+        final File file = writeFile(content);
+        final RecordingHttpClient httpClient = new RecordingHttpClient(content);
+        s3 = new AmazonS3Client(creds, Region.getRegion(Regions.US_EAST_1),
+                new ClientConfiguration().withProtocol(Protocol.HTTP), httpClient);
+
+        s3.putObject(new PutObjectRequest("bucket", "key", file));
+
+        assertTrue(httpClient.fromFileRegion);
+        assertArrayEquals(content, httpClient.body);
+        assertEquals(BinaryUtils.toHex(MessageDigest.getInstance("SHA-256").digest(content)),
+                httpClient.request.getHeaders().get("x-amz-content-sha256"));
+    }
+
+    @Test
+    public void testPutObjectFromTruncatedFileFails() throws Exception {
+        final byte[] content = createContent(1024);
+        final File file = writeFile(content);
+        final RecordingHttpClient httpClient = new RecordingHttpClient(content) {
+            @Override
+            public HttpResponse execute(HttpRequest request) throws IOException {
+                final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                raf.setLength(content.length / 2);
+                raf.close();
+                return super.execute(request);
+            }
+        };
+        s3 = new AmazonS3Client(creds, Region.getRegion(Regions.US_EAST_1),
+                new ClientConfiguration().withMaxErrorRetry(0), httpClient);
+
+        try {
+            s3.putObject(new PutObjectRequest("bucket", "key", file));
+            fail("Expected the short file to be detected");
+        } catch (final AmazonClientException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] createContent(int length) {
+        final byte[] content = new byte[length];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    private File writeFile(byte[] content) throws IOException {
+        final File file = folder.newFile();
+        final FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+        return file;
+    }
+
+    /**
+     * Records the last request and answers it like S3 does a PutObject.
+     */
+    private static class RecordingHttpClient implements HttpClient {
+        private final byte[] expectedContent;
+        HttpRequest request;
+        boolean fromFileRegion;
+        byte[] body;
+
+        RecordingHttpClient(byte[] expectedContent) {
+            this.expectedContent = expectedContent;
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            this.request = request;
+            final FileRegionInputStream fileRegion =
+                    FileRegionInputStream.find(request.getContent());
+            fromFileRegion = fileRegion != null;
+            if (fromFileRegion) {
+                final ByteArrayOutputStream os = new ByteArrayOutputStream();
+                fileRegion.writeTo(request.getContent(), os);
+                body = os.toByteArray();
+            } else {
+                body = IOUtils.toByteArray(request.getContent());
+            }
+            return HttpResponse.builder()
+                    .statusCode(200)
+                    .statusText("OK")
+                    .header("ETag", BinaryUtils.toHex(Md5Utils.computeMD5Hash(expectedContent)))
+                    .build();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -186,7 +186,8 @@ public class AmazonSimpleDBClient extends AmazonWebServiceClient implements Amaz
      */
     public AmazonSimpleDBClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration,
+                AmazonHttpClient.createDefaultHttpClient(clientConfiguration));
     }
 
     /**